@@ -0,0 +1,62 @@
+/*
+ * Copyright 2016, BlobCity iSolutions Pvt. Ltd.
+ */
+package com.blobcity.db;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shared background threads of the adapter. All threads are daemons so that the adapter never keeps an application
+ * from exiting, and all are created lazily so that applications not using background features pay nothing.
+ *
+ * @author Prikshit Kumar
+ */
+class AdapterThreads {
+
+    private AdapterThreads() {
+        // do nothing
+    }
+
+    /**
+     * @return single threaded scheduler for short timer tasks such as deadline expiry. Tasks must never block.
+     */
+    static ScheduledExecutorService scheduler() {
+        return SchedulerHolder.INSTANCE;
+    }
+
+    /**
+     * @return unbounded pool for work that runs alongside the calling thread, such as hedged request attempts. Idle
+     * threads are discarded after a minute.
+     */
+    static ExecutorService workers() {
+        return WorkersHolder.INSTANCE;
+    }
+
+    static ThreadFactory daemonThreadFactory(final String namePrefix) {
+        return new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, namePrefix + "-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    private static class WorkersHolder {
+
+        private static final ExecutorService INSTANCE = Executors.newCachedThreadPool(daemonThreadFactory("blobcity-adapter-worker"));
+    }
+
+    private static class SchedulerHolder {
+
+        private static final ScheduledExecutorService INSTANCE = new ScheduledThreadPoolExecutor(1, daemonThreadFactory("blobcity-adapter-timer"));
+    }
+}
@@ -0,0 +1,29 @@
+/*
+ * Copyright 2016, BlobCity iSolutions Pvt. Ltd.
+ */
+package com.blobcity.db;
+
+import java.util.List;
+
+/**
+ * Receives progress of a {@link BulkLoader} or file import. Methods are called on worker threads, possibly
+ * concurrently, as chunks complete, which is not necessarily in the order they were read.
+ *
+ * @author Prikshit Kumar
+ */
+public interface BulkLoadListener {
+
+    /**
+     * @param chunkIndex index of the chunk among all chunks of the load, starting at 0
+     * @param rowCount number of rows in the chunk
+     * @param totalRowsInserted number of rows of all chunks inserted so far
+     */
+    void onChunkInserted(long chunkIndex, int rowCount, long totalRowsInserted);
+
+    /**
+     * @param chunkIndex index of the chunk among all chunks of the load, starting at 0
+     * @param rows the rows of the chunk, for example to be retried or written aside
+     * @param error the failure reported by the database or the adapter
+     */
+    void onChunkFailed(long chunkIndex, List<String> rows, RuntimeException error);
+}
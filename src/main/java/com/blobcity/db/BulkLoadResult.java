@@ -0,0 +1,63 @@
+/*
+ * Copyright 2016, BlobCity iSolutions Pvt. Ltd.
+ */
+package com.blobcity.db;
+
+/**
+ * Outcome of a completed {@link BulkLoader} run or file import. Details of failed chunks are reported to the
+ * {@link BulkLoadListener}.
+ *
+ * @author Prikshit Kumar
+ */
+public final class BulkLoadResult {
+
+    private final long rowsRead;
+    private final long rowsInserted;
+    private final long chunkCount;
+    private final long failedChunkCount;
+    private final RuntimeException firstFailure;
+
+    BulkLoadResult(final long rowsRead, final long rowsInserted, final long chunkCount, final long failedChunkCount, final RuntimeException firstFailure) {
+        this.rowsRead = rowsRead;
+        this.rowsInserted = rowsInserted;
+        this.chunkCount = chunkCount;
+        this.failedChunkCount = failedChunkCount;
+        this.firstFailure = firstFailure;
+    }
+
+    public long getRowsRead() {
+        return rowsRead;
+    }
+
+    public long getRowsInserted() {
+        return rowsInserted;
+    }
+
+    public long getChunkCount() {
+        return chunkCount;
+    }
+
+    public long getFailedChunkCount() {
+        return failedChunkCount;
+    }
+
+    /**
+     * @return {@code true} if every chunk was inserted
+     */
+    public boolean isSuccessful() {
+        return failedChunkCount == 0;
+    }
+
+    /**
+     * @return the failure of the first chunk that failed, or {@code null} if none failed
+     */
+    public RuntimeException getFirstFailure() {
+        return firstFailure;
+    }
+
+    @Override
+    public String toString() {
+        return "BulkLoadResult{" + "rowsRead=" + rowsRead + ", rowsInserted=" + rowsInserted + ", chunkCount=" + chunkCount + ", failedChunkCount="
+                + failedChunkCount + '}';
+    }
+}
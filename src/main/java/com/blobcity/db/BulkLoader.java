@@ -0,0 +1,274 @@
+/*
+ * Copyright 2016, BlobCity iSolutions Pvt. Ltd.
+ */
+package com.blobcity.db;
+
+import com.blobcity.db.config.Credentials;
+import com.blobcity.db.exceptions.InternalAdapterException;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonPrimitive;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Streams rows to be inserted through an interpreter ({@link QueryType#INSERT_CUSTOM}) to the database in chunks,
+ * sending several chunks concurrently. Only the chunks being sent are held in memory, so that inputs of any size can
+ * be loaded. A failed chunk does not stop the load; it is reported to the {@link BulkLoadListener} and counted in
+ * the {@link BulkLoadResult}.
+ *
+ * Obtain an instance through {@link Db#bulkLoader(String, String)}. A loader may be reused, but not by concurrent
+ * loads.
+ *
+ * @author Prikshit Kumar
+ */
+public final class BulkLoader {
+
+    private static final int DEFAULT_CHUNK_SIZE = 1000;
+    private static final int DEFAULT_CONCURRENCY = 4;
+
+    private final Credentials credentials;
+    private final String collection;
+    private final String interpreterName;
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+    private int concurrency = DEFAULT_CONCURRENCY;
+    private BulkLoadListener listener;
+
+    BulkLoader(final Credentials credentials, final String collection, final String interpreterName) {
+        this.credentials = credentials;
+        this.collection = collection;
+        this.interpreterName = interpreterName;
+    }
+
+    /**
+     * @param rows number of rows sent per request; defaults to 1000
+     * @return this loader
+     */
+    public BulkLoader chunkSize(final int rows) {
+        if (rows < 1) {
+            throw new InternalAdapterException("chunk size must be at least 1");
+        }
+        this.chunkSize = rows;
+        return this;
+    }
+
+    /**
+     * @param chunks maximum number of chunks sent concurrently; defaults to 4
+     * @return this loader
+     */
+    public BulkLoader concurrency(final int chunks) {
+        if (chunks < 1) {
+            throw new InternalAdapterException("concurrency must be at least 1");
+        }
+        this.concurrency = chunks;
+        return this;
+    }
+
+    /**
+     * @param listener listener to report progress and failed chunks to; {@code null} for none
+     * @return this loader
+     */
+    public BulkLoader listener(final BulkLoadListener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    /**
+     * Loads every row of a file, one row per line
+     *
+     * @param file a UTF-8 encoded text file
+     * @return the outcome of the load
+     */
+    public BulkLoadResult load(final File file) {
+        if (file == null) {
+            throw new InternalAdapterException("file to load must be specified");
+        }
+
+        Reader reader = null;
+        try {
+            reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+            return load(reader);
+        } catch (IOException ex) {
+            throw new InternalAdapterException("Unable to read " + file, ex);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException ex) {
+                    // ignore exception
+                }
+            }
+        }
+    }
+
+    /**
+     * Loads every row read from a reader, one row per line. The reader is not closed.
+     *
+     * @param reader the reader to read rows from
+     * @return the outcome of the load
+     */
+    public BulkLoadResult load(final Reader reader) {
+        if (reader == null) {
+            throw new InternalAdapterException("reader to load from must be specified");
+        }
+        return load(new LineIterator(reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader)));
+    }
+
+    /**
+     * Loads every row returned by an iterator. Rows are consumed on the calling thread.
+     *
+     * @param rows the rows to load
+     * @return the outcome of the load
+     */
+    public BulkLoadResult load(final Iterator<String> rows) {
+        if (rows == null) {
+            throw new InternalAdapterException("rows to load must be specified");
+        }
+
+        final Load load = new Load();
+        final Deadline deadline = Deadline.current();
+        long rowsRead = 0;
+        long chunkIndex = 0;
+        List<String> chunk = new ArrayList<String>(chunkSize);
+        try {
+            while (rows.hasNext()) {
+                chunk.add(rows.next());
+                rowsRead++;
+                if (chunk.size() == chunkSize) {
+                    if (deadline != null) {
+                        deadline.check();
+                    }
+                    submit(load, chunkIndex++, chunk, deadline);
+                    chunk = new ArrayList<String>(chunkSize);
+                }
+            }
+
+            if (!chunk.isEmpty()) {
+                submit(load, chunkIndex++, chunk, deadline);
+            }
+        } finally {
+            // chunks in flight complete before the load returns or fails
+            load.permits.acquireUninterruptibly(concurrency);
+        }
+
+        return new BulkLoadResult(rowsRead, load.rowsInserted.get(), chunkIndex, load.failedChunks.get(), load.firstFailure.get());
+    }
+
+    private void submit(final Load load, final long chunkIndex, final List<String> chunk, final Deadline deadline) {
+        try {
+            load.permits.acquire();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InternalAdapterException("Interrupted while waiting to send a chunk", ex);
+        }
+
+        try {
+            AdapterThreads.workers().execute(new Runnable() {
+                @Override
+                public void run() {
+                    final Deadline previous = Deadline.attach(deadline);
+                    try {
+                        send(load, chunkIndex, chunk);
+                    } finally {
+                        Deadline.restore(previous);
+                        load.permits.release();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            load.permits.release();
+            throw new InternalAdapterException("Unable to send a chunk", ex);
+        }
+    }
+
+    private void send(final Load load, final long chunkIndex, final List<String> chunk) {
+        RuntimeException failure = null;
+        try {
+            final JsonArray rows = new JsonArray();
+            for (final String row : chunk) {
+                rows.add(row != null ? new JsonPrimitive(row) : JsonNull.INSTANCE);
+            }
+
+            final DbQueryResponse response = Db.sendCustomInsert(credentials, collection, interpreterName, rows);
+            if (!response.isSuccessful()) {
+                failure = response.createException();
+            }
+        } catch (RuntimeException ex) {
+            failure = ex;
+        }
+
+        if (failure == null) {
+            final long totalRowsInserted = load.rowsInserted.addAndGet(chunk.size());
+            if (listener != null) {
+                listener.onChunkInserted(chunkIndex, chunk.size(), totalRowsInserted);
+            }
+            return;
+        }
+
+        load.failedChunks.incrementAndGet();
+        load.firstFailure.compareAndSet(null, failure);
+        if (listener != null) {
+            listener.onChunkFailed(chunkIndex, chunk, failure);
+        }
+    }
+
+    /**
+     * State of a single run of the loader
+     */
+    private class Load {
+
+        private final Semaphore permits = new Semaphore(concurrency);
+        private final AtomicLong rowsInserted = new AtomicLong();
+        private final AtomicLong failedChunks = new AtomicLong();
+        private final AtomicReference<RuntimeException> firstFailure = new AtomicReference<RuntimeException>();
+    }
+
+    private static class LineIterator implements Iterator<String> {
+
+        private final BufferedReader reader;
+        private String next;
+
+        LineIterator(final BufferedReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null) {
+                try {
+                    next = reader.readLine();
+                } catch (IOException ex) {
+                    throw new InternalAdapterException("Unable to read rows to load", ex);
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public String next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final String line = next;
+            next = null;
+            return line;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
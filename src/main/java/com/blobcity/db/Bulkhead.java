@@ -0,0 +1,92 @@
+/*
+ * Copyright 2016, BlobCity iSolutions Pvt. Ltd.
+ */
+package com.blobcity.db;
+
+import com.blobcity.db.config.AdapterConfig;
+import com.blobcity.db.config.BulkheadConfig;
+import com.blobcity.db.exceptions.BulkheadFullException;
+import com.blobcity.db.exceptions.DeadlineExceededException;
+import com.blobcity.db.exceptions.InternalAdapterException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Semaphore isolating one {@link QueryType.Category} of requests, so that a slow category (such as schema changes or
+ * stored procedures) can only occupy the number of threads it has been allotted.
+ *
+ * @author Prikshit Kumar
+ */
+class Bulkhead {
+
+    private static final ConcurrentMap<QueryType.Category, Bulkhead> bulkheads = new ConcurrentHashMap<QueryType.Category, Bulkhead>();
+
+    private final QueryType.Category category;
+    private final BulkheadConfig config;
+    private final Semaphore semaphore;
+
+    private Bulkhead(final QueryType.Category category, final BulkheadConfig config) {
+        this.category = category;
+        this.config = config;
+        this.semaphore = new Semaphore(config.getMaxConcurrentCalls());
+    }
+
+    /**
+     * Fetches the bulkhead for a category, creating it on first use or when the configuration has been changed
+     *
+     * @param category category of the query being executed
+     * @return the bulkhead for the category, or {@code null} if the category is not limited
+     */
+    static Bulkhead forCategory(final QueryType.Category category) {
+        final BulkheadConfig config = AdapterConfig.getBulkheadConfig(category);
+        if (config == null) {
+            return null;
+        }
+
+        final Bulkhead bulkhead = bulkheads.get(category);
+        if (bulkhead != null && bulkhead.config == config) {
+            return bulkhead;
+        }
+
+        final Bulkhead created = new Bulkhead(category, config);
+        if (bulkhead == null) {
+            final Bulkhead existing = bulkheads.putIfAbsent(category, created);
+            return existing != null ? existing : created;
+        }
+
+        bulkheads.replace(category, bulkhead, created);
+        return bulkheads.get(category);
+    }
+
+    /**
+     * Takes a slot, waiting at most the configured time for one to free up, but never beyond the {@link Deadline} of
+     * the current thread. Every successful call must be paired with a {@link #release()} on the same instance.
+     *
+     * @throws BulkheadFullException if no slot freed up within the configured time
+     * @throws DeadlineExceededException if the deadline expired first
+     */
+    void acquire() {
+        final Deadline deadline = Deadline.current();
+        final long remainingMillis = deadline == null ? Long.MAX_VALUE : deadline.remaining(TimeUnit.MILLISECONDS);
+        final boolean limitedByDeadline = remainingMillis < config.getMaxWaitMillis();
+        try {
+            if (!semaphore.tryAcquire(Math.min(config.getMaxWaitMillis(), remainingMillis), TimeUnit.MILLISECONDS)) {
+                if (limitedByDeadline || (deadline != null && deadline.isExpired())) {
+                    throw new DeadlineExceededException("Deadline for the operation expired while waiting for a free " + category
+                            + " request slot. Request was not sent.");
+                }
+                throw new BulkheadFullException("Maximum of " + config.getMaxConcurrentCalls() + " concurrent " + category
+                        + " requests already in flight. Request was not sent.");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InternalAdapterException("Interrupted while waiting for a free " + category + " request slot", ex);
+        }
+    }
+
+    void release() {
+        semaphore.release();
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2016, BlobCity iSolutions Pvt. Ltd.
+ */
+package com.blobcity.db;
+
+import com.blobcity.db.config.AdapterConfig;
+import com.blobcity.db.config.CircuitBreakerConfig;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Count based circuit breaker guarding a single database endpoint. Outcomes of the most recent calls are kept in a
+ * ring; once enough calls are recorded and either the failure rate or the slow call rate crosses its threshold the
+ * breaker opens and rejects calls. After the open duration a limited number of probe calls are let through
+ * (half-open); the breaker closes if all of them succeed and opens again on the first failure.
+ *
+ * @author Prikshit Kumar
+ */
+class CircuitBreaker {
+
+    enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private static final ConcurrentMap<String, CircuitBreaker> breakers = new ConcurrentHashMap<String, CircuitBreaker>();
+
+    private final String endpoint;
+    private final CircuitBreakerConfig config;
+    private final long slowCallNanos;
+    private final boolean[] failedCalls;
+    private final boolean[] slowCalls;
+    private int position;
+    private int recordedCalls;
+    private int failedCount;
+    private int slowCount;
+    private State state = State.CLOSED;
+    private long openedAt;
+    private int halfOpenPermits;
+    private int halfOpenSuccesses;
+
+    private CircuitBreaker(final String endpoint, final CircuitBreakerConfig config) {
+        this.endpoint = endpoint;
+        this.config = config;
+        this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(config.getSlowCallDurationMillis());
+        this.failedCalls = new boolean[config.getSlidingWindowSize()];
+        this.slowCalls = new boolean[config.getSlidingWindowSize()];
+    }
+
+    /**
+     * Fetches the breaker for an endpoint, creating it on first use or when the configuration has been changed
+     *
+     * @param endpoint address of the database node
+     * @return the breaker for the endpoint, or {@code null} if circuit breaking is disabled
+     */
+    static CircuitBreaker forEndpoint(final String endpoint) {
+        final CircuitBreakerConfig config = AdapterConfig.getCircuitBreakerConfig();
+        if (config == null) {
+            return null;
+        }
+
+        final CircuitBreaker breaker = breakers.get(endpoint);
+        if (breaker != null && breaker.config == config) {
+            return breaker;
+        }
+
+        final CircuitBreaker created = new CircuitBreaker(endpoint, config);
+        if (breaker == null) {
+            final CircuitBreaker existing = breakers.putIfAbsent(endpoint, created);
+            return existing != null ? existing : created;
+        }
+
+        breakers.replace(endpoint, breaker, created);
+        return breakers.get(endpoint);
+    }
+
+    String getEndpoint() {
+        return endpoint;
+    }
+
+    synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Checks whether a call would currently be permitted, without consuming a probe permit. Used to route requests
+     * away from endpoints whose breaker is open.
+     *
+     * @return {@code true} if {@link #tryAcquirePermission()} would presently succeed
+     */
+    synchronized boolean isCallPermitted() {
+        switch (state) {
+            case OPEN:
+                return System.currentTimeMillis() - openedAt >= config.getOpenStateDurationMillis();
+            case HALF_OPEN:
+                return halfOpenPermits > 0;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Checks whether a call may be sent, consuming a probe permit when half-open. Every permitted call must be followed
+     * by exactly one of {@link #onSuccess(long)} or {@link #onError(long)}.
+     *
+     * @return {@code true} if the call may proceed
+     */
+    synchronized boolean tryAcquirePermission() {
+        if (state == State.OPEN) {
+            if (System.currentTimeMillis() - openedAt < config.getOpenStateDurationMillis()) {
+                return false;
+            }
+            transitionTo(State.HALF_OPEN);
+        }
+
+        if (state == State.HALF_OPEN) {
+            if (halfOpenPermits == 0) {
+                return false;
+            }
+            halfOpenPermits--;
+        }
+
+        return true;
+    }
+
+    synchronized void onSuccess(final long durationNanos) {
+        final boolean slow = durationNanos >= slowCallNanos;
+        if (state == State.HALF_OPEN) {
+            if (slow) {
+                transitionTo(State.OPEN);
+            } else if (++halfOpenSuccesses == config.getPermittedCallsInHalfOpenState()) {
+                transitionTo(State.CLOSED);
+            }
+            return;
+        }
+
+        record(false, slow);
+    }
+
+    synchronized void onError(final long durationNanos) {
+        if (state == State.HALF_OPEN) {
+            transitionTo(State.OPEN);
+            return;
+        }
+
+        record(true, durationNanos >= slowCallNanos);
+    }
+
+    private void record(final boolean failed, final boolean slow) {
+        if (recordedCalls == failedCalls.length) {
+            failedCount -= failedCalls[position] ? 1 : 0;
+            slowCount -= slowCalls[position] ? 1 : 0;
+        } else {
+            recordedCalls++;
+        }
+
+        failedCalls[position] = failed;
+        slowCalls[position] = slow;
+        failedCount += failed ? 1 : 0;
+        slowCount += slow ? 1 : 0;
+        position = (position + 1) % failedCalls.length;
+
+        if (state == State.CLOSED && recordedCalls >= config.getMinimumNumberOfCalls()
+                && (failedCount * 100f / recordedCalls >= config.getFailureRateThreshold()
+                || slowCount * 100f / recordedCalls >= config.getSlowCallRateThreshold())) {
+            transitionTo(State.OPEN);
+        }
+    }
+
+    private void transitionTo(final State newState) {
+        state = newState;
+        switch (newState) {
+            case OPEN:
+                openedAt = System.currentTimeMillis();
+                break;
+            case HALF_OPEN:
+                halfOpenPermits = config.getPermittedCallsInHalfOpenState();
+                halfOpenSuccesses = 0;
+                break;
+            case CLOSED:
+                position = 0;
+                recordedCalls = 0;
+                failedCount = 0;
+                slowCount = 0;
+                break;
+        }
+    }
+}
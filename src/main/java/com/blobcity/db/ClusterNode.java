@@ -0,0 +1,198 @@
+/*
+ * Copyright 2016, BlobCity iSolutions Pvt. Ltd.
+ */
+package com.blobcity.db;
+
+import com.blobcity.db.config.AdapterConfig;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.Socket;
+import java.net.URL;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Health and load state of a single database node, shared by every {@link NodeBalancer} that includes the node.
+ *
+ * A node is ejected from balancing after {@link AdapterConfig#getEjectionThreshold()} consecutive communication
+ * failures. Ejected nodes are probed in the background with a plain TCP connect and readmitted on probation as soon
+ * as they are reachable, or in any case once their ejection time runs out. A node on probation is ejected again by
+ * its next failure.
+ *
+ * @author Prikshit Kumar
+ */
+class ClusterNode {
+
+    private static final ConcurrentMap<String, ClusterNode> nodes = new ConcurrentHashMap<String, ClusterNode>();
+    private static final AtomicBoolean healthChecksStarted = new AtomicBoolean();
+    private static final int MAX_EJECTION_DOUBLINGS = 5;
+
+    private final String address;
+    private final AtomicInteger outstandingRequests = new AtomicInteger();
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private final AtomicInteger ejections = new AtomicInteger();
+    private volatile long ejectedUntil;
+    private volatile long latencyEwmaNanos;
+
+    private ClusterNode(final String address) {
+        this.address = address;
+    }
+
+    static ClusterNode forAddress(final String address) {
+        final ClusterNode node = nodes.get(address);
+        if (node != null) {
+            return node;
+        }
+
+        final ClusterNode created = new ClusterNode(address);
+        final ClusterNode existing = nodes.putIfAbsent(address, created);
+        return existing != null ? existing : created;
+    }
+
+    String getAddress() {
+        return address;
+    }
+
+    int getOutstandingRequests() {
+        return outstandingRequests.get();
+    }
+
+    long getEjectedUntil() {
+        return ejectedUntil;
+    }
+
+    /**
+     * @return exponentially weighted moving average of the latency of successful requests, 0 if none completed yet
+     */
+    long getLatencyEwmaNanos() {
+        return latencyEwmaNanos;
+    }
+
+    boolean isEjected() {
+        return ejectedUntil != 0 && System.currentTimeMillis() < ejectedUntil;
+    }
+
+    /**
+     * @return {@code true} if the node is neither ejected nor behind an open circuit breaker
+     */
+    boolean isAvailable() {
+        if (isEjected()) {
+            return false;
+        }
+
+        final CircuitBreaker breaker = CircuitBreaker.forEndpoint(address);
+        return breaker == null || breaker.isCallPermitted();
+    }
+
+    void requestStarted() {
+        outstandingRequests.incrementAndGet();
+    }
+
+    void requestFinished() {
+        outstandingRequests.decrementAndGet();
+    }
+
+    void onSuccess(final long latencyNanos) {
+        // races between concurrent updates only lose a sample, which is acceptable for an average
+        final long ewma = latencyEwmaNanos;
+        latencyEwmaNanos = ewma == 0 ? Math.max(1, latencyNanos) : ewma + (latencyNanos - ewma) / 8;
+
+        if (consecutiveFailures.get() != 0) {
+            consecutiveFailures.set(0);
+        }
+        if (ejections.get() != 0) {
+            ejections.set(0);
+        }
+    }
+
+    void onFailure() {
+        if (consecutiveFailures.incrementAndGet() >= AdapterConfig.getEjectionThreshold()) {
+            eject();
+        }
+    }
+
+    private void eject() {
+        final int doublings = Math.min(ejections.getAndIncrement(), MAX_EJECTION_DOUBLINGS);
+        ejectedUntil = System.currentTimeMillis() + (AdapterConfig.getEjectionDurationMillis() << doublings);
+        consecutiveFailures.set(0);
+        startHealthChecks();
+    }
+
+    /**
+     * Returns an ejected node to balancing. One more failure ejects it again, for a longer time.
+     */
+    private void readmit() {
+        consecutiveFailures.set(AdapterConfig.getEjectionThreshold() - 1);
+        ejectedUntil = 0;
+    }
+
+    /**
+     * @return {@code true} if a TCP connection to the node's web service port could be opened
+     */
+    private boolean isReachable() {
+        final URL url;
+        try {
+            url = new URL("http://" + address);
+        } catch (MalformedURLException ex) {
+            return false;
+        }
+
+        final Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(url.getHost(), url.getPort() == -1 ? url.getDefaultPort() : url.getPort()),
+                    AdapterConfig.getConnectTimeoutMillis());
+            return true;
+        } catch (IOException ex) {
+            return false;
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException ex) {
+                // ignore exception
+            }
+        }
+    }
+
+    private static void startHealthChecks() {
+        if (healthChecksStarted.compareAndSet(false, true)) {
+            final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(AdapterThreads.daemonThreadFactory("blobcity-adapter-health"));
+            executor.schedule(new HealthCheck(executor), AdapterConfig.getEjectionDurationMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Probes every ejected node and reschedules itself with the currently configured interval
+     */
+    private static class HealthCheck implements Runnable {
+
+        private static final long DISABLED_RECHECK_MILLIS = 1000;
+
+        private final ScheduledExecutorService executor;
+
+        HealthCheck(final ScheduledExecutorService executor) {
+            this.executor = executor;
+        }
+
+        @Override
+        public void run() {
+            final long interval = AdapterConfig.getHealthCheckIntervalMillis();
+            try {
+                if (interval > 0) {
+                    for (final ClusterNode node : nodes.values()) {
+                        if (node.isEjected() && node.isReachable()) {
+                            node.readmit();
+                        }
+                    }
+                }
+            } finally {
+                executor.schedule(this, interval > 0 ? interval : DISABLED_RECHECK_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+}
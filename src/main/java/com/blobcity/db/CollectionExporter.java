@@ -0,0 +1,305 @@
+/*
+ * Copyright 2016, BlobCity iSolutions Pvt. Ltd.
+ */
+package com.blobcity.db;
+
+import com.blobcity.db.config.Credentials;
+import com.blobcity.db.enums.FileFormat;
+import com.blobcity.db.exceptions.InternalAdapterException;
+import com.blobcity.db.search.Order;
+import com.blobcity.db.search.OrderElement;
+import com.blobcity.db.search.Query;
+import com.blobcity.db.search.SearchParam;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Exports all records of a collection to a file, as done by {@link Db#export(String, File, FileFormat)}.
+ *
+ * Records are fetched in pages of {@link #PAGE_SIZE} records ordered on the key column, which must be unique, and
+ * every page is written with a single write to the file channel. Each page follows on from the last key of the
+ * previous page rather than from an offset, as in {@link KeyIterator}, so that records added or removed during the
+ * export do not shift later pages. The next page is fetched on a worker thread while the previous one is written, so
+ * that at most two pages are held in memory.
+ *
+ * After every page a checkpoint holding the last key written, and the number of records and bytes written, is stored
+ * next to the file, in a file named after it with {@code .checkpoint} appended. An export finding a checkpoint resumes
+ * after the last key written instead of starting over. The checkpoint is deleted once the export completes.
+ *
+ * @author Prikshit Kumar
+ */
+class CollectionExporter {
+
+    static final int PAGE_SIZE = 1000;
+    private static final Gson gson = new Gson();
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String KEY_COLUMN = "key-column";
+    private static final String LAST_KEY = "last-key";
+    private static final String RECORDS = "records";
+    private static final String BYTES = "bytes";
+    private static final String FORMAT = "format";
+    private static final String COLUMNS = "columns";
+
+    private final Credentials credentials;
+    private final Class<? extends Db> clazz;
+    private final String ds;
+    private final String collection;
+    private final String keyColumn;
+    private final FileFormat format;
+    private List<String> columns;
+
+    /**
+     * @param clazz the entity class of the collection, or {@code null} for a collection given by name
+     * @param keyColumn the column to page on, or {@code null} to page on the primary key of {@code clazz}
+     */
+    CollectionExporter(final Credentials credentials, final Class<? extends Db> clazz, final String ds, final String collection, final String keyColumn,
+            final FileFormat format) {
+        this.credentials = credentials;
+        this.clazz = clazz;
+        this.ds = ds;
+        this.collection = collection;
+        this.keyColumn = keyColumn;
+        this.format = format;
+    }
+
+    /**
+     * @return total number of records in the file, including records written by an earlier export that was resumed
+     */
+    long export(final File file) {
+        final File checkpointFile = new File(file.getPath() + ".checkpoint");
+        final String orderColumn = orderColumn();
+        final Deadline deadline = Deadline.current();
+        Future<JsonArray> nextPage = null;
+        RandomAccessFile randomAccessFile = null;
+        try {
+            randomAccessFile = new RandomAccessFile(file, "rw");
+            final FileChannel channel = randomAccessFile.getChannel();
+            JsonElement lastKey = null;
+            long records = 0;
+            long bytes = 0;
+            if (checkpointFile.exists()) {
+                final Properties checkpoint = readCheckpoint(checkpointFile);
+                lastKey = gson.fromJson(checkpoint.getProperty(LAST_KEY), JsonElement.class);
+                records = Long.parseLong(checkpoint.getProperty(RECORDS));
+                bytes = Long.parseLong(checkpoint.getProperty(BYTES));
+                if (!format.name().equals(checkpoint.getProperty(FORMAT)) || !orderColumn.equals(checkpoint.getProperty(KEY_COLUMN)) || bytes > channel.size()) {
+                    throw new InternalAdapterException("Checkpoint " + checkpointFile + " does not match " + file + "; delete it to export again");
+                }
+                if (checkpoint.getProperty(COLUMNS) != null) {
+                    columns = Csv.parseLine(checkpoint.getProperty(COLUMNS));
+                }
+            }
+            // drop anything written after the last checkpoint
+            channel.truncate(bytes);
+            channel.position(bytes);
+
+            nextPage = fetch(orderColumn, lastKey, deadline);
+            while (nextPage != null) {
+                final JsonArray page = await(nextPage);
+                nextPage = null;
+                if (page.size() == 0) {
+                    break;
+                }
+
+                lastKey = page.get(page.size() - 1).getAsJsonObject().get(orderColumn);
+                if (lastKey == null || !lastKey.isJsonPrimitive()) {
+                    throw new InternalAdapterException("Record of collection " + collection + " has no single value in key column " + orderColumn);
+                }
+                // a short page is the last one; the next is fetched while this one is written
+                if (page.size() == PAGE_SIZE) {
+                    nextPage = fetch(orderColumn, lastKey, deadline);
+                }
+
+                write(channel, page);
+                records += page.size();
+                // the page must be on disk before the checkpoint refers to it
+                channel.force(false);
+                writeCheckpoint(checkpointFile, orderColumn, lastKey, records, channel.position());
+            }
+
+            if (!checkpointFile.delete() && checkpointFile.exists()) {
+                throw new InternalAdapterException("Unable to delete " + checkpointFile + " of the completed export");
+            }
+            return records;
+        } catch (IOException ex) {
+            throw new InternalAdapterException("Unable to export to " + file, ex);
+        } finally {
+            if (nextPage != null) {
+                nextPage.cancel(false);
+            }
+            if (randomAccessFile != null) {
+                try {
+                    randomAccessFile.close();
+                } catch (IOException ex) {
+                    // ignore exception
+                }
+            }
+        }
+    }
+
+    /**
+     * @param after the key of the last record written, or {@code null} to fetch the first page
+     */
+    private Future<JsonArray> fetch(final String orderColumn, final JsonElement after, final Deadline deadline) {
+        final String sql = pageSql(clazz, collection, orderColumn, after != null ? KeyIterator.decode(after, Object.class) : null);
+
+        return AdapterThreads.workers().submit(new Callable<JsonArray>() {
+            @Override
+            public JsonArray call() {
+                final Deadline previous = Deadline.attach(deadline);
+                try {
+                    final DbQueryResponse response = QueryExecuter.executeSql(DbQueryRequest.create(credentials, QueryType.SEARCH, ds, collection, sql));
+                    if (!response.isSuccessful()) {
+                        throw response.createException();
+                    }
+                    return response.getPayload().getAsJsonArray();
+                } finally {
+                    Deadline.restore(previous);
+                }
+            }
+        });
+    }
+
+    /**
+     * @return the SQL selecting the page of records that follows the key {@code after}, from the first record if
+     * {@code null}, from the collection of {@code clazz} if it is set, else from {@code collection}
+     */
+    private static <T extends Db> String pageSql(final Class<T> clazz, final String collection, final String orderColumn, final Object after) {
+        @SuppressWarnings("unchecked") // the factory methods of Query return the raw type
+        final Query<T> query = clazz != null ? Query.table(clazz) : Query.select().from(collection);
+        if (after != null) {
+            query.where(SearchParam.create(orderColumn).gt(after));
+        }
+        query.orderBy(OrderElement.create(orderColumn, Order.ASC)).limit(PAGE_SIZE);
+        return query.asSql();
+    }
+
+    private void write(final FileChannel channel, final JsonArray page) throws IOException {
+        final StringBuilder sb = new StringBuilder();
+        for (final JsonElement element : page) {
+            if (format == FileFormat.NDJSON) {
+                sb.append(element.toString()).append('\n');
+                continue;
+            }
+
+            final JsonObject record = element.getAsJsonObject();
+            if (columns == null) {
+                // columns of the first record name the columns of the file
+                columns = new ArrayList<String>();
+                for (final Map.Entry<String, JsonElement> entry : record.entrySet()) {
+                    columns.add(entry.getKey());
+                }
+                Csv.appendLine(sb, columns);
+            }
+
+            final List<String> fields = new ArrayList<String>(columns.size());
+            for (final String column : columns) {
+                final JsonElement value = record.get(column);
+                if (value == null || value.isJsonNull()) {
+                    fields.add("");
+                } else {
+                    fields.add(value.isJsonPrimitive() ? value.getAsString() : value.toString());
+                }
+            }
+            Csv.appendLine(sb, fields);
+        }
+
+        final ByteBuffer buffer = ByteBuffer.wrap(sb.toString().getBytes(UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * @return the column to order pages on
+     * @throws InternalAdapterException if no key column is given and the entity class has no primary key
+     */
+    private String orderColumn() {
+        if (keyColumn != null) {
+            return keyColumn;
+        }
+
+        CollectionStore.getInstance().registerClass(ds, collection, clazz);
+        final String pkColumn = CollectionStore.getInstance().getPkColumn(ds, collection);
+        if (pkColumn == null) {
+            throw new InternalAdapterException("Collection " + collection + " has no primary key to order the export on");
+        }
+        return pkColumn;
+    }
+
+    private static JsonArray await(final Future<JsonArray> page) {
+        try {
+            return page.get();
+        } catch (ExecutionException ex) {
+            throw ex.getCause() instanceof RuntimeException ? (RuntimeException) ex.getCause() : new InternalAdapterException(ex.getCause());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InternalAdapterException("Interrupted while waiting for a page of the export", ex);
+        }
+    }
+
+    private static Properties readCheckpoint(final File checkpointFile) throws IOException {
+        final Properties checkpoint = new Properties();
+        final InputStream in = new FileInputStream(checkpointFile);
+        try {
+            checkpoint.load(in);
+        } finally {
+            in.close();
+        }
+
+        if (checkpoint.getProperty(LAST_KEY) == null || checkpoint.getProperty(RECORDS) == null || checkpoint.getProperty(BYTES) == null) {
+            throw new InternalAdapterException("Checkpoint " + checkpointFile + " is incomplete; delete it to export again");
+        }
+        return checkpoint;
+    }
+
+    /**
+     * Replaces the checkpoint by renaming a new file over it, so that a checkpoint is never partially written
+     */
+    private void writeCheckpoint(final File checkpointFile, final String orderColumn, final JsonElement lastKey, final long records, final long bytes)
+            throws IOException {
+        final Properties checkpoint = new Properties();
+        checkpoint.setProperty(KEY_COLUMN, orderColumn);
+        checkpoint.setProperty(LAST_KEY, lastKey.toString());
+        checkpoint.setProperty(RECORDS, Long.toString(records));
+        checkpoint.setProperty(BYTES, Long.toString(bytes));
+        checkpoint.setProperty(FORMAT, format.name());
+        if (columns != null) {
+            final StringBuilder header = new StringBuilder();
+            Csv.appendLine(header, columns);
+            checkpoint.setProperty(COLUMNS, header.substring(0, header.length() - 1));
+        }
+
+        final File newCheckpointFile = new File(checkpointFile.getPath() + ".new");
+        final OutputStream out = new FileOutputStream(newCheckpointFile);
+        try {
+            checkpoint.store(out, null);
+        } finally {
+            out.close();
+        }
+
+        // renaming over an existing file fails on some platforms
+        if (!newCheckpointFile.renameTo(checkpointFile) && !(checkpointFile.delete() && newCheckpointFile.renameTo(checkpointFile))) {
+            throw new IOException("Unable to replace " + checkpointFile);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2016, BlobCity iSolutions Pvt. Ltd.
+ */
+package com.blobcity.db;
+
+import com.blobcity.db.config.Credentials;
+import com.blobcity.db.enums.ReplicationType;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Caches metadata of collections that influences where requests are routed, currently the {@link ReplicationType}.
+ *
+ * Entries are seeded by collections created through the adapter and otherwise fetched from the database in the
+ * background, so that a lookup never delays a request: until the metadata is known the request is routed as for a
+ * collection of unknown type. Failed lookups are retried after a short while.
+ *
+ * @author Prikshit Kumar
+ */
+class CollectionMetadataCache {
+
+    private static final long KNOWN_TTL_MILLIS = 10 * 60 * 1000;
+    private static final long UNKNOWN_TTL_MILLIS = 60 * 1000;
+
+    // keyed on ds.collection, as in CollectionStore
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+    private CollectionMetadataCache() {
+    }
+
+    public static CollectionMetadataCache getInstance() {
+        return CollectionMetadataCacheHolder.INSTANCE;
+    }
+
+    private static class CollectionMetadataCacheHolder {
+
+        private static final CollectionMetadataCache INSTANCE = new CollectionMetadataCache();
+    }
+
+    /**
+     * @param credentials credentials to fetch the metadata with, if not cached
+     * @param ds the datastore of the collection
+     * @param collection name of the collection
+     * @return the cached replication type, or {@code null} if not (yet) known
+     */
+    ReplicationType getReplicationType(final Credentials credentials, final String ds, final String collection) {
+        final String key = ds + "." + collection;
+        final Entry entry = entries.get(key);
+        if (entry != null && (entry.fetching || System.currentTimeMillis() < entry.expiresAt)) {
+            return entry.replicationType;
+        }
+
+        final Entry fetching = new Entry(entry != null ? entry.replicationType : null, 0, true);
+        if (entry == null ? entries.putIfAbsent(key, fetching) == null : entries.replace(key, entry, fetching)) {
+            fetchInBackground(credentials, ds, collection, key, fetching);
+        }
+        return fetching.replicationType;
+    }
+
+    void put(final String ds, final String collection, final ReplicationType replicationType) {
+        entries.put(ds + "." + collection, new Entry(replicationType, System.currentTimeMillis() + KNOWN_TTL_MILLIS, false));
+    }
+
+    void invalidate(final String ds, final String collection) {
+        entries.remove(ds + "." + collection);
+    }
+
+    void invalidate(final String ds) {
+        final String prefix = ds + ".";
+        for (final String key : entries.keySet()) {
+            if (key.startsWith(prefix)) {
+                entries.remove(key);
+            }
+        }
+    }
+
+    private void fetchInBackground(final Credentials credentials, final String ds, final String collection, final String key, final Entry fetching) {
+        try {
+            AdapterThreads.workers().execute(new Runnable() {
+                @Override
+                public void run() {
+                    ReplicationType replicationType = null;
+                    try {
+                        replicationType = Db.getReplicationType(credentials, ds, collection);
+                    } catch (RuntimeException ex) {
+                        // metadata unavailable; requests keep being routed as for an unknown collection
+                    }
+
+                    final long ttl = replicationType != null ? KNOWN_TTL_MILLIS : UNKNOWN_TTL_MILLIS;
+                    entries.replace(key, fetching, new Entry(replicationType, System.currentTimeMillis() + ttl, false));
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            entries.remove(key, fetching);
+        }
+    }
+
+    private static class Entry {
+
+        private final ReplicationType replicationType;
+        private final long expiresAt;
+        private final boolean fetching;
+
+        Entry(final ReplicationType replicationType, final long expiresAt, final boolean fetching) {
+            this.replicationType = replicationType;
+            this.expiresAt = expiresAt;
+            this.fetching = fetching;
+        }
+    }
+}
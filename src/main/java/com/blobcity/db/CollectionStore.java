@@ -11,6 +11,7 @@ import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Caches collection structures, so that annotations are not require to be processed on every operation.
@@ -24,14 +25,16 @@ import java.util.Map;
  */
 class CollectionStore {
     // outer key is mapped on dbName.tableName instead of just tableName
+    // concurrent, as entities are created and mapped on any thread; a structure loaded twice by a race is the same
     private final Map<String, Map<String, Field>> tableStructureMap;
     private final Map<String, Class<? extends Db>> tableClassMap;
+    // collections without a primary key field have no entry
     private final Map<String, Field> tablePrimaryMap;
 
     private CollectionStore() {
-        this.tablePrimaryMap = new HashMap<String, Field>();
-        this.tableClassMap = new HashMap<String, Class<? extends Db>>();
-        this.tableStructureMap = new HashMap<String, Map<String, Field>>();
+        this.tablePrimaryMap = new ConcurrentHashMap<String, Field>();
+        this.tableClassMap = new ConcurrentHashMap<String, Class<? extends Db>>();
+        this.tableStructureMap = new ConcurrentHashMap<String, Map<String, Field>>();
     }
 
     public static CollectionStore getInstance() {
@@ -45,7 +48,9 @@ class CollectionStore {
 
     public <T extends Db> void registerClass(String dbName, String tableName, Class<T> clazz) {
         String key = dbName + "." + tableName;
-        tableClassMap.put(key, clazz);
+        if (tableClassMap.get(key) != clazz) {
+            tableClassMap.put(key, clazz);
+        }
     }
     
     /**
@@ -77,6 +82,23 @@ class CollectionStore {
         return tablePrimaryMap.get(key);
     }
 
+    /**
+     * @return name of the column of the primary key, or {@code null} if the collection has no primary key field
+     */
+    public String getPkColumn(final String dbName, final String tableName) {
+        final Field pkField = getPkField(dbName, tableName);
+        if (pkField == null) {
+            return null;
+        }
+
+        for (final Map.Entry<String, Field> entry : getStructure(dbName, tableName).entrySet()) {
+            if (entry.getValue().equals(pkField)) {
+                return entry.getKey();
+            }
+        }
+        return pkField.getName();
+    }
+
     /**
      * Loads the structure of a class into maps defined earlier
      * 
@@ -115,7 +137,10 @@ class CollectionStore {
             allFieldMap.put(columnName, field);
         }
 
-        tablePrimaryMap.put(key, primaryKeyField);
+        if (primaryKeyField != null) {
+            tablePrimaryMap.put(key, primaryKeyField);
+        }
+        // published last, as its presence marks the structure loaded
         tableStructureMap.put(key, columnFieldMap.isEmpty() ? allFieldMap : columnFieldMap);
     }
 
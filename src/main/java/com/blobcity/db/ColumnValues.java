@@ -0,0 +1,195 @@
+/*
+ * Copyright 2016, BlobCity iSolutions Pvt. Ltd.
+ */
+package com.blobcity.db;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonPrimitive;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Conversions between the values of entity fields and the JSON representation of their columns, shared by the
+ * reflective mapping of {@link Db} and the mappers generated by {@link com.blobcity.db.processor.EntityMapperProcessor}
+ * so that both map records alike. Not meant to be used by applications directly.
+ *
+ * @author Prikshit Kumar
+ */
+public final class ColumnValues {
+
+    private static final Logger logger = Logger.getLogger(Db.class.getName());
+    private static final Gson gson = new Gson();
+
+    private ColumnValues() {
+        // do nothing
+    }
+
+    /**
+     * Converts the value of a field to the JSON representation of its column
+     *
+     * @param value value of the field
+     * @param type declared type of the field
+     * @return the value of the column, {@link JsonNull} if the field is {@code null}
+     */
+    public static JsonElement toJson(final Object value, final Class<?> type) {
+        if (value == null) {
+            return JsonNull.INSTANCE;
+        }
+
+        if (type == java.util.Date.class) {
+            return new JsonPrimitive(((java.util.Date) value).getTime());
+        } else if (type == java.sql.Date.class) {
+            return new JsonPrimitive(((java.sql.Date) value).getTime());
+        } else if (type == List.class
+                || type == ArrayList.class
+                || type == LinkedList.class
+                || type == Set.class
+                || type == HashSet.class
+                || type == SortedSet.class
+                || type == TreeSet.class
+                || type.isArray()) {
+            return gson.toJsonTree(value);
+        }
+
+        return new JsonPrimitive(value.toString());
+    }
+
+    /**
+     * Provides a standard service to cast input types from JSON's format
+     * ({@link Integer}, {@link String}, {@link JsonArray} etc.) to Java's internal data types.
+     *
+     * @param value value of the column
+     * @param type declared type of the field to be set
+     * @param fieldName name of the field to be set, only required for proper error logging
+     * @param entityClass {@link Class} of the entity for which the casted field is being requested, only required for
+     * proper error logging
+     * @return appropriately casted value
+     */
+    public static Object fromJson(final JsonElement value, final Class<?> type, final String fieldName, final Class<?> entityClass) {
+        if (type == String.class) { // Pre-exit most common use cases
+            return value.isJsonNull() ? null : value.getAsString();
+        }
+
+        if (type.isEnum()) {
+            return "".equals(value.getAsString()) ? null : enumConstant(type, value.getAsString());
+        }
+
+        if (type == Character.TYPE || type == Character.class) {
+            return value.getAsString().charAt(0);
+        }
+
+        if (type == List.class
+                || type == ArrayList.class
+                || type == LinkedList.class
+                || type == Set.class
+                || type == HashSet.class
+                || type == SortedSet.class
+                || type == TreeSet.class
+                || type.isArray()) { // doesn't always return inside this block, BEWARE!
+            if (value.isJsonArray()) {
+                final JsonArray arr = value.getAsJsonArray();
+                final int length = arr.size();
+                final List<Object> list = new ArrayList<Object>(length);
+
+                for (int i = 0; i < length; i++) {
+                    list.add(arr.get(i).getAsString());
+                }
+                return list;
+            } else if ("".equals(value.getAsString()) || value.isJsonNull()) {
+                return new ArrayList<Object>();
+            }
+
+            logger.log(Level.WARNING, "Class of type \"{0}\" has field with name \"{1}\" and data type \"{2}\" for value to be set was \"{3}\" has a type of {4}. This will probably cause an exception.", new Object[]{entityClass, fieldName, type, value, value.getClass()});
+        }
+
+        /* Beyound this point empty string should return null as the below types cannot have empty string values */
+        if (value.getAsString().isEmpty() && !type.isPrimitive()) {
+            return null;
+        }
+
+        if (type == Double.TYPE || type == Double.class) {
+            if (value.getAsString().isEmpty()) {
+                return 0.0;
+            }
+            return value.getAsDouble();
+        }
+
+        if (type == Float.TYPE || type == Float.class) {
+            if (value.getAsString().isEmpty()) {
+                return 0.0f;
+            }
+            return value.getAsFloat();
+        }
+
+        if (type == Boolean.TYPE || type == Boolean.class) {
+            if (value.getAsString().isEmpty()) {
+                return false;
+            }
+            return value.getAsBoolean();
+        }
+
+        if (type == BigDecimal.class) {
+            if (value.getAsString().isEmpty()) {
+                return BigDecimal.ZERO;
+            }
+            return value.getAsBigDecimal();
+        }
+
+        if (type == java.util.Date.class) {
+            if (value.getAsString().isEmpty()) {
+                return null;
+            }
+            return new java.util.Date(value.getAsLong());
+        }
+
+        if (type == java.sql.Date.class) {
+            if (value.getAsString().isEmpty()) {
+                return null;
+            }
+            return new java.sql.Date(value.getAsLong());
+        }
+
+        if (type == Integer.TYPE || type == Integer.class) {
+            if (value.getAsString().isEmpty()) {
+                return 0;
+            }
+            return value.getAsInt();
+        }
+
+        if (type == Long.TYPE || type == Long.class) {
+            if (value.getAsString().isEmpty()) {
+                return 0L;
+            }
+            return value.getAsLong();
+        }
+
+        // The if for List check does not always return a value. Be sure before putting any code below here
+        // If weird types are left, lets get their String versions..
+        return value.getAsString();
+    }
+
+    /**
+     * Looks up an enum constant by name, as {@link Enum#valueOf(Class, String)} does
+     *
+     * @throws IllegalArgumentException if the enum has no constant of that name
+     */
+    private static Object enumConstant(final Class<?> type, final String name) {
+        for (final Object constant : type.getEnumConstants()) {
+            if (((Enum<?>) constant).name().equals(name)) {
+                return constant;
+            }
+        }
+        throw new IllegalArgumentException("No enum constant " + type.getName() + "." + name);
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2016, BlobCity iSolutions Pvt. Ltd.
+ */
+package com.blobcity.db;
+
+import java.net.HttpURLConnection;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Drops the connection of an in-flight request when the deadline of its operation expires.
+ *
+ * A cancelled task stays queued in the scheduler until its delay elapses, so a cancelled expiry lets go of its
+ * connection at once rather than keeping the connection, and its buffers, reachable until the deadline.
+ *
+ * @author Prikshit Kumar
+ */
+final class ConnectionExpiry implements Runnable {
+
+    private final AtomicReference<HttpURLConnection> connection;
+    private volatile ScheduledFuture<?> task;
+
+    private ConnectionExpiry(final HttpURLConnection connection) {
+        this.connection = new AtomicReference<HttpURLConnection>(connection);
+    }
+
+    /**
+     * @param connection connection of the request
+     * @param deadline deadline of the operation
+     * @return the scheduled expiry
+     */
+    static ConnectionExpiry schedule(final HttpURLConnection connection, final Deadline deadline) {
+        final ConnectionExpiry expiry = new ConnectionExpiry(connection);
+        expiry.task = AdapterThreads.scheduler().schedule(expiry, deadline.remaining(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+        return expiry;
+    }
+
+    @Override
+    public void run() {
+        final HttpURLConnection con = connection.getAndSet(null);
+        if (con != null) {
+            con.disconnect();
+        }
+    }
+
+    /**
+     * Stops the expiry once the request no longer needs it, releasing the connection
+     */
+    void cancel() {
+        connection.set(null);
+        final ScheduledFuture<?> scheduled = task;
+        if (scheduled != null) {
+            scheduled.cancel(false);
+        }
+    }
+}
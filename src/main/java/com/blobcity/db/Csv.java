@@ -0,0 +1,88 @@
+/*
+ * Copyright 2016, BlobCity iSolutions Pvt. Ltd.
+ */
+package com.blobcity.db;
+
+import com.blobcity.db.exceptions.InternalAdapterException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads and writes lines of {@link com.blobcity.db.enums.FileFormat#CSV} files. Fields are separated by commas and
+ * may be enclosed in double quotes, in which case a double quote inside the field is written twice.
+ *
+ * @author Prikshit Kumar
+ */
+class Csv {
+
+    private Csv() {
+    }
+
+    /**
+     * @param line a line without its line terminator
+     * @return the fields of the line, unquoted
+     * @throws InternalAdapterException if a quoted field is not terminated
+     */
+    static List<String> parseLine(final String line) {
+        final List<String> fields = new ArrayList<String>();
+        final StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        int i = 0;
+        while (i < line.length()) {
+            final char c = line.charAt(i++);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i < line.length() && line.charAt(i) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+
+        if (quoted) {
+            throw new InternalAdapterException("Quoted CSV field is not terminated on its line");
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    /**
+     * Appends a line of fields, quoting fields where required, followed by a line feed
+     */
+    static void appendLine(final StringBuilder sb, final List<String> fields) {
+        for (int i = 0; i < fields.size(); i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            appendField(sb, fields.get(i));
+        }
+        sb.append('\n');
+    }
+
+    private static void appendField(final StringBuilder sb, final String field) {
+        if (field.indexOf(',') < 0 && field.indexOf('"') < 0 && field.indexOf('\n') < 0 && field.indexOf('\r') < 0) {
+            sb.append(field);
+            return;
+        }
+
+        sb.append('"');
+        for (int i = 0; i < field.length(); i++) {
+            final char c = field.charAt(i);
+            if (c == '"') {
+                sb.append('"');
+            }
+            sb.append(c);
+        }
+        sb.append('"');
+    }
+}
@@ -6,30 +6,37 @@ package com.blobcity.db;
 import com.blobcity.db.enums.CollectionType;
 import com.blobcity.db.search.SearchParam;
 import com.blobcity.db.annotations.Entity;
+import com.blobcity.db.config.AdapterConfig;
 import com.blobcity.db.config.Credentials;
 import com.blobcity.db.annotations.Primary;
 import com.blobcity.db.enums.AutoDefineType;
 import com.blobcity.db.enums.ColumnType;
+import com.blobcity.db.enums.FileFormat;
 import com.blobcity.db.enums.IndexType;
 import com.blobcity.db.enums.ReplicationType;
 import com.blobcity.db.exceptions.DbOperationException;
 import com.blobcity.db.exceptions.InternalAdapterException;
 import com.blobcity.db.exceptions.InternalDbException;
 import com.blobcity.db.search.Query;
-import com.blobcity.db.search.StringUtil;
 import com.google.gson.Gson;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
 
+import java.io.File;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Field;
 import java.math.BigDecimal;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import org.json.JSONArray;
 
 /**
  * This class provides the connection and query execution framework for performing operations on the BlobCity data
@@ -45,34 +52,46 @@ public abstract class Db {
 
     private String collection = null;
     private String ds = null;
+    // values of the record when last loaded or saved, kept only for classes with dirty tracking enabled
+    private transient JsonObject snapshot = null;
 
-    public Db() {
-        for (Annotation annotation : this.getClass().getAnnotations()) {
-            if (annotation instanceof Entity) {
-                final Entity blobCityEntity = (Entity) annotation;
-                collection = blobCityEntity.collection();
-                // if no ds is present in the entity
-                if (StringUtil.isEmpty(blobCityEntity.ds())) {
-                    ds = Credentials.getInstance().getDb();
-                }
-                else{
-                    ds = blobCityEntity.ds();
-                    String dbName = Credentials.getInstance().getDb();
-                    if(dbName.equals("dummy")) {
-                        Credentials.getInstance().setDb(ds);
-                    }
-                }
+    /**
+     * Location of the records being mapped by the current thread, handed to the constructor by
+     * {@link #newMappedInstance(Class, String, String)}
+     */
+    private static final Logger logger = Logger.getLogger(Db.class.getName());
 
-                if (StringUtil.isEmpty(collection)) {
-                    collection = this.getClass().getSimpleName();
-                }
-                break;
+    private static final ThreadLocal<String[]> mappedLocation = new ThreadLocal<String[]>();
+
+    /**
+     * Nodes, by their addresses, that rejected an {@link QueryType#UPDATE}; tracked records are saved whole to them
+     */
+    private static final Set<List<String>> updateRejectedBy = Collections.newSetFromMap(new ConcurrentHashMap<List<String>, Boolean>());
+
+    public Db() {
+        final String[] location = mappedLocation.get();
+        if (location != null) {
+            // created by a row mapper, which has already resolved and registered the collection
+            mappedLocation.remove();
+            ds = location[0];
+            collection = location[1];
+            return;
+        }
+
+        final EntityMetadata metadata = EntityMetadata.forClass(this.getClass());
+        collection = metadata.getCollection();
+        // if no ds is present in the entity
+        if (metadata.getDs() == null) {
+            ds = Credentials.getInstance().getDb();
+        }
+        else{
+            ds = metadata.getDs();
+            String dbName = Credentials.getInstance().getDb();
+            if(dbName.equals("dummy")) {
+                Credentials.getInstance().setDb(ds);
             }
         }
 
-        if (collection == null) {
-            collection = this.getClass().getSimpleName();
-        }
         if( ds ==null || ds.isEmpty() ){
             throw new InternalAdapterException("No datastore information found. Did you make a call to Credentials.init() ");
         }
@@ -80,6 +99,24 @@ public abstract class Db {
         CollectionStore.getInstance().registerClass(ds, collection, this.getClass());
     }
 
+    /**
+     * Creates an entity for a record read from a collection, without resolving the collection of the entity class or
+     * registering its structure again. Used by row mappers, which do both once per result.
+     *
+     * @param ds the datastore of the records, as given by {@link #getDs(Class)}
+     * @param collection the collection of the records, as given by {@link #getCollection(Class)}, already registered
+     * with {@link CollectionStore}
+     */
+    static <T extends Db> T newMappedInstance(final Class<T> clazz, final String ds, final String collection) {
+        mappedLocation.set(new String[]{ds, collection});
+        try {
+            return newInstance(clazz);
+        } finally {
+            // not consumed if the class could not be instantiated
+            mappedLocation.remove();
+        }
+    }
+
     /**
      * Statically provides the ds name for any instance/child of {@link Db} that is internally used by the
      * adapter for querying. Note, this method is used by the adapter internally for SQL queries and the logic here
@@ -91,8 +128,8 @@ public abstract class Db {
      * @return Name of the DB
      */
     public static <T extends Db> String getDs(final Class<T> clazz) {
-        final Entity entity = (Entity) clazz.getAnnotation(Entity.class);
-        return entity != null && !StringUtil.isEmpty(entity.ds()) ? entity.ds() : Credentials.getInstance().getDb();
+        final String ds = EntityMetadata.forClass(clazz).getDs();
+        return ds != null ? ds : Credentials.getInstance().getDb();
     }
     
     public static String getDs() {
@@ -110,11 +147,107 @@ public abstract class Db {
      * @return Name of the collection
      */
     public static <T extends Db> String getCollection(final Class<T> clazz) {
-        final Entity entity = (Entity) clazz.getAnnotation(Entity.class);
-        return entity != null && !StringUtil.isEmpty(entity.collection()) ? entity.collection() : clazz.getSimpleName();
+        return EntityMetadata.forClass(clazz).getCollection();
     }
     
     
+    /**
+     * Reads the primary key of an entity through an accessor cached per entity class, without scanning its fields or
+     * annotations. Meant for bulk operations, caches and deduplication keyed on primary keys.
+     *
+     * @param entity the entity
+     * @return the value of the {@link Primary} field of the entity, {@code null} if it is not set or the class has no
+     * such field
+     */
+    public static Object pkOf(final Db entity) {
+        if (entity == null) {
+            throw new InternalAdapterException("entity must be specified");
+        }
+
+        return PrimaryKeyAccessor.forClass(entity.getClass()).get(entity);
+    }
+
+    /**
+     * Checks whether two entities represent the same record: both belong to the same collection of the same datastore
+     * and have equal primary keys. Entities without a primary key represent no record and are never the same.
+     *
+     * @param first an entity
+     * @param second another entity
+     * @return {@code true} if both entities represent the same record
+     */
+    public static boolean pkEquals(final Db first, final Db second) {
+        if (first == null || second == null) {
+            throw new InternalAdapterException("entities must be specified");
+        }
+
+        if (!(first.collection == null ? second.collection == null : first.collection.equals(second.collection))
+                || !(first.ds == null ? second.ds == null : first.ds.equals(second.ds))) {
+            return false;
+        }
+
+        final Object pk = pkOf(first);
+        return pk != null && pk.equals(pkOf(second));
+    }
+
+    /**
+     * Bounds the total time of one or more operations. The deadline applies to every request sent by the operations
+     * run through the returned {@link DeadlineScope} and aborts requests still in flight when it expires, failing them
+     * with a {@link com.blobcity.db.exceptions.DeadlineExceededException}.
+     *
+     * @param timeout time from now within which the operations must complete
+     * @param unit unit of {@code timeout}
+     * @return a {@link DeadlineScope} through which operations are to be executed
+     */
+    public static DeadlineScope withDeadline(final long timeout, final TimeUnit unit) {
+        return withDeadline(Deadline.after(timeout, unit));
+    }
+
+    public static DeadlineScope withDeadline(final Deadline deadline) {
+        if (deadline == null) {
+            throw new InternalAdapterException("deadline must be specified");
+        }
+        return new DeadlineScope(deadline);
+    }
+
+    /**
+     * Sends all saves buffered by write-behind to the database and waits for them to complete
+     *
+     * @see com.blobcity.db.config.AdapterConfig#setWriteBehindConfig(Class, com.blobcity.db.config.WriteBehindConfig)
+     * @throws DbOperationException if the database refused a buffered save
+     * @throws InternalAdapterException if a buffered save could not be sent; it remains buffered
+     */
+    public static void flush() {
+        WriteBehindBuffer.flushAll();
+    }
+
+    /**
+     * Sends the saves of an entity class buffered by write-behind to the database and waits for them to complete
+     *
+     * @param <T> Any class reference which extends {@link Db}
+     * @param clazz the entity class
+     * @throws DbOperationException if the database refused a buffered save
+     * @throws InternalAdapterException if a buffered save could not be sent; it remains buffered
+     */
+    public static <T extends Db> void flush(final Class<T> clazz) {
+        final WriteBehindBuffer buffer = WriteBehindBuffer.forClass(clazz);
+        if (buffer != null) {
+            buffer.flush();
+        }
+    }
+
+    /**
+     * Sends all inserts held in the local write journal to the database and waits for them to be sent
+     *
+     * @see com.blobcity.db.config.AdapterConfig#setJournalConfig(com.blobcity.db.config.JournalConfig)
+     * @throws InternalAdapterException if an insert could not be sent; it remains in the journal
+     */
+    public static void flushJournal() {
+        final WriteJournal journal = WriteJournal.getInstance();
+        if (journal != null) {
+            journal.flush();
+        }
+    }
+
     // Public instance methods
     public boolean load() {
         return load(Credentials.getInstance());
@@ -133,29 +266,7 @@ public abstract class Db {
     }
     
     protected void setPk(Object pk) {
-        final Field primaryKeyField = CollectionStore.getInstance().getPkField(ds, collection);
-        if (primaryKeyField == null) {
-            throw new InternalAdapterException("Missing mandatory @Primary annotation for entity " + collection + " [" + this.getClass().getName() + "]");
-        }
-        synchronized (primaryKeyField) {
-            final boolean accessible = primaryKeyField.isAccessible();
-
-            try {
-                if (!accessible) {
-                    primaryKeyField.setAccessible(true);
-                }
-
-                primaryKeyField.set(this, pk);
-            } catch (IllegalArgumentException ex) {
-                throw new InternalAdapterException("An error has occurred in the adapter. Check stack trace for more details.", ex);
-            } catch (IllegalAccessException ex) {
-                throw new InternalAdapterException("An error has occurred in the adapter. Check stack trace for more details.", ex);
-            } finally {
-                if (!accessible) {
-                    primaryKeyField.setAccessible(false);
-                }
-            }
-        }
+        PrimaryKeyAccessor.forClass(getClass()).set(this, pk);
     }
     
     @Override
@@ -163,41 +274,28 @@ public abstract class Db {
         return super.clone();
     }
 
+    /**
+     * Creates an entity through the constructor without parameters of its class, which is looked up once per class
+     *
+     * @throws InternalAdapterException if the class cannot be instantiated
+     */
     public static <T extends Db> T newInstance(Class<T> clazz) {
-        try {
-            return clazz.newInstance();
-        } catch (InstantiationException ex) {
-            throw new InternalAdapterException("An error has occurred in the adapter. Check stack trace for more details.", ex);
-        } catch (IllegalAccessException ex) {
-            throw new InternalAdapterException("An error has occurred in the adapter. Check stack trace for more details.", ex);
-        }
+        return EntityMetadata.forClass(clazz).newInstance(clazz);
     }
 
     public static <T extends Db> T newInstance(Class<T> clazz, Object pk) {
-        try {
-            T obj = clazz.newInstance();
-            obj.setPk(pk);
-            return obj;
-        } catch (InstantiationException ex) {
-            throw new InternalAdapterException("An error has occurred in the adapter. Check stack trace for more details.", ex);
-        } catch (IllegalAccessException ex) {
-            throw new InternalAdapterException("An error has occurred in the adapter. Check stack trace for more details.", ex);
-        }
+        T obj = newInstance(clazz);
+        obj.setPk(pk);
+        return obj;
     }
 
     public static <T extends Db> T newLoadedInstance(Class<T> clazz, Object pk) {
-        try {
-            T obj = clazz.newInstance();
-            obj.setPk(pk);
-            if (obj.load()) {
-                return obj;
-            }
-            return null;
-        } catch (InstantiationException ex) {
-            throw new InternalAdapterException("An error has occurred in the adapter. Check stack trace for more details.", ex);
-        } catch (IllegalAccessException ex) {
-            throw new InternalAdapterException("An error has occurred in the adapter. Check stack trace for more details.", ex);
+        T obj = newInstance(clazz);
+        obj.setPk(pk);
+        if (obj.load()) {
+            return obj;
         }
+        return null;
     }
     
     /**
@@ -229,6 +327,90 @@ public abstract class Db {
         throw new DbOperationException(response.getErrorCode(), response.getErrorCause());
     }
 
+    public static <T extends Db> LongKeySet selectAllLongKeys(final Class<T> clazz) {
+        return selectAllLongKeys(Credentials.getInstance(), clazz);
+    }
+
+    /**
+     * Selects all primary keys of a collection with numeric keys as a {@link LongKeySet}, which holds them without
+     * boxing and without the loss of precision of {@link #selectAll(java.lang.Class)} for keys beyond 2^53
+     *
+     * @param <T> Any class reference which extends {@link Db}
+     * @param credentials the credentials used to connect to the database
+     * @param clazz the entity class of the collection
+     * @return all keys of the collection
+     * @throws InternalAdapterException if a key is not an integral number
+     */
+    public static <T extends Db> LongKeySet selectAllLongKeys(final Credentials credentials, final Class<T> clazz) {
+        if(credentials == null) {
+            throw new InternalAdapterException("connection credentials must be specified");
+        }
+
+        final DbQueryResponse response = postStaticRequest(credentials, clazz, QueryType.SELECT_ALL);
+
+        if (response.isSuccessful()) {
+            final JsonElement keys = response.getKeysJson();
+            return keys != null && keys.isJsonArray() ? LongKeySet.fromJson(keys.getAsJsonArray()) : LongKeySet.empty();
+        }
+
+        throw new DbOperationException(response.getErrorCode(), response.getErrorCause());
+    }
+
+    /**
+     * Iterates over the primary keys of the collection of an entity class in pages of 1000 keys, using default
+     * credentials
+     *
+     * @see #keys(com.blobcity.db.config.Credentials, java.lang.Class, java.lang.Class, int)
+     */
+    public static <T extends Db, K> KeyIterator<K> keys(final Class<T> clazz, final Class<K> keyType) {
+        return keys(Credentials.getInstance(), clazz, keyType, 1000);
+    }
+
+    public static <T extends Db, K> KeyIterator<K> keys(final Credentials credentials, final Class<T> clazz, final Class<K> keyType) {
+        return keys(credentials, clazz, keyType, 1000);
+    }
+
+    /**
+     * Iterates over the primary keys of the collection of an entity class in ascending order. Unlike
+     * {@link #selectAll(java.lang.Class)}, keys are fetched lazily in pages, so that only a page of keys is held in
+     * memory at a time, and are decoded into {@code keyType}.
+     *
+     * @param <T> Any class reference which extends {@link Db}
+     * @param <K> type of the keys
+     * @param credentials the credentials used to connect to the database
+     * @param clazz the entity class of the collection; must have a {@link Primary} field
+     * @param keyType type to decode keys into, as listed by {@link KeyIterator}
+     * @param pageSize number of keys fetched per request
+     * @return a {@link KeyIterator}, which should be closed if not iterated to the end
+     */
+    public static <T extends Db, K> KeyIterator<K> keys(final Credentials credentials, final Class<T> clazz, final Class<K> keyType, final int pageSize) {
+        if(credentials == null) {
+            throw new InternalAdapterException("connection credentials must be specified");
+        }
+
+        if(clazz == null) {
+            throw new InternalAdapterException("class of the collection must be specified");
+        }
+
+        if(keyType == null || !KeyIterator.isSupported(keyType)) {
+            throw new InternalAdapterException("Primary keys cannot be decoded as " + (keyType != null ? keyType.getName() : null));
+        }
+
+        if(pageSize < 1) {
+            throw new InternalAdapterException("page size must be at least 1");
+        }
+
+        final String ds = getDs(clazz);
+        final String collection = getCollection(clazz);
+        CollectionStore.getInstance().registerClass(ds, collection, clazz);
+        final String pkColumn = CollectionStore.getInstance().getPkColumn(ds, collection);
+        if(pkColumn == null) {
+            throw new InternalAdapterException("No primary key field found in " + clazz.getName() + ". Keys can only be listed for classes with a @Primary field");
+        }
+
+        return new KeyIterator<K>(credentials, clazz, pkColumn, keyType, pageSize);
+    }
+
     public static <T extends Db> boolean contains(final Class<T> clazz, final Object key) {
         return contains(Credentials.getInstance(), clazz, key);
     }
@@ -261,7 +443,7 @@ public abstract class Db {
     }
 
     public static DbQueryResponse execute(final Credentials credentials, final String sql) {
-        return QueryExecuter.executeSql(DbQueryRequest.create(credentials, sql));
+        return QueryExecuter.executeSql(DbQueryRequest.create(credentials, QueryType.SQL, sql));
     }
     
     public static <T extends Db> Object execute(final Query<T> query) {
@@ -269,15 +451,27 @@ public abstract class Db {
     }
 
     public static <T extends Db> Object execute(final Credentials credentials, final Query<T> query) {
+        final RequestTimer timer = RequestTimer.begin();
+        try {
+            return executeUntimed(credentials, query);
+        } finally {
+            if (timer != null) {
+                timer.end();
+            }
+        }
+    }
+
+    private static <T extends Db> Object executeUntimed(final Credentials credentials, final Query<T> query) {
         if (query.getFromTables() == null && query.getFromTables().isEmpty()) {
             throw new InternalAdapterException("No collection name set. Table name is a mandatory field queries.");
         }
 
         final String queryStr = query.asSql();
-
-        final DbQueryResponse response = QueryExecuter.executeSql(DbQueryRequest.create(credentials, queryStr));
-
         final Class<T> clazz = (query.getFromTables() == null || query.getFromTables().isEmpty()) ? null : query.getFromTables().get(0);
+        final String tableName = clazz == null ? query.getFromTableStrings().get(0) : getCollection(clazz);
+        final String dbName = clazz == null ? Db.getDs() : getDs(clazz);
+
+        final DbQueryResponse response = QueryExecuter.executeSql(DbQueryRequest.create(credentials, QueryType.SEARCH, dbName, tableName, queryStr));
 
         if (response.isSuccessful()) {
 
@@ -286,39 +480,11 @@ public abstract class Db {
                 final JsonArray resultJsonArray = response.getPayload().getAsJsonArray();
                 final int resultCount = resultJsonArray.size();
                 final List<T> responseList = new ArrayList<T>();
-                final String tableName = clazz == null ? query.getFromTableStrings().get(0) : getCollection(clazz);
-                final String dbName = clazz == null ? Db.getDs() : getDs(clazz);
                 CollectionStore.getInstance().registerClass(dbName, tableName, clazz);
                 final Map<String, Field> structureMap = CollectionStore.getInstance().getStructure(dbName, tableName);
 
                 for (int i = 0; i < resultCount; i++) {
-                    final T instance = Db.newInstance(clazz);
-                    final JsonObject instanceData = resultJsonArray.get(i).getAsJsonObject();
-                    final Set<Map.Entry<String, JsonElement>> entrySet = instanceData.entrySet();
-
-                    for (final Map.Entry<String, JsonElement> entry : entrySet) {
-                        final String columnName = entry.getKey();
-
-                        final Field field = structureMap.get(columnName);
-                        if(field == null) {
-                            continue;
-                        }
-                        synchronized (field) {
-                            final boolean oldAccessibilityValue = field.isAccessible();
-                            field.setAccessible(true);
-
-                            try {
-                                field.set(instance, getCastedValue(field, instanceData.get(columnName), clazz));
-                            } catch (IllegalArgumentException ex) {
-                                throw new InternalAdapterException("Unable to set data into field \"" + clazz.getSimpleName() + "." + field.getName() + "\"", ex);
-                            } catch (IllegalAccessException ex) {
-                                throw new InternalAdapterException("Unable to set data into field \"" + clazz.getSimpleName() + "." + field.getName() + "\"", ex);
-                            } finally {
-                                field.setAccessible(oldAccessibilityValue);
-                            }
-                        }
-                    }
-
+                    final T instance = toInstance(clazz, dbName, tableName, structureMap, resultJsonArray.get(i).getAsJsonObject());
                     responseList.add(instance);
                 }
                 return responseList;
@@ -347,10 +513,186 @@ public abstract class Db {
             throw new InternalAdapterException("json data to insert cannot be null");
         }
 
+        final WriteJournal journal = WriteJournal.getInstance();
+        if (journal != null) {
+            journal.append(credentials.getDb(), collection, insertJson);
+            return;
+        }
+
         final DbQueryResponse response = postStaticRequest(credentials, QueryType.INSERT, collection, insertJson);
         reportIfError(response);
     }
 
+    /**
+     * Sends an insert of a record drained from the {@link WriteJournal}
+     */
+    static DbQueryResponse sendInsert(final Credentials credentials, final String collection, final JsonObject insertJson) {
+        return postStaticRequest(credentials, QueryType.INSERT, collection, insertJson);
+    }
+
+    /**
+     * Sends a single insert of several records without parsing them
+     *
+     * @param records the text of a JSON object for every record
+     */
+    static DbQueryResponse sendInsert(final Credentials credentials, final String collection, final List<String> records) {
+        // the records are spliced in as an array payload, as the envelope is the only part that needs encoding
+        final String envelope = staticRequestEnvelope(credentials, QueryType.INSERT, collection).toString();
+        int length = envelope.length() + 8;
+        for (final String record : records) {
+            length += record.length() + 1;
+        }
+        final StringBuilder query = new StringBuilder(length);
+        query.append(envelope, 0, envelope.length() - 1).append(",\"").append(QueryConstants.PAYLOAD).append("\":[");
+        for (int i = 0; i < records.size(); i++) {
+            if (i > 0) {
+                query.append(',');
+            }
+            query.append(records.get(i));
+        }
+        query.append("]}");
+
+        return QueryExecuter.executeBql(DbQueryRequest.create(credentials, QueryType.INSERT, credentials.getDb(), collection, query.toString()));
+    }
+
+    /**
+     * Imports all records of a file into a collection using default credentials
+     *
+     * @param collection the collection to insert into
+     * @param file a UTF-8 encoded file holding one record per line
+     * @param format format of the file
+     * @return the outcome of the import
+     * @see #importFile(com.blobcity.db.config.Credentials, java.lang.String, java.io.File, com.blobcity.db.enums.FileFormat, com.blobcity.db.BulkLoadListener)
+     */
+    public static BulkLoadResult importFile(final String collection, final File file, final FileFormat format) {
+        return importFile(Credentials.getInstance(), collection, file, format, null);
+    }
+
+    public static BulkLoadResult importFile(final Credentials credentials, final String collection, final File file, final FileFormat format) {
+        return importFile(credentials, collection, file, format, null);
+    }
+
+    /**
+     * Imports all records of a file into a collection. The file is memory-mapped and read on worker threads, and its
+     * records are sent in batches, several batches at a time. Lines of an {@link FileFormat#NDJSON} file are sent as
+     * they are, without being parsed. Every field of a {@link FileFormat#CSV} file is sent as a string. Records are
+     * always sent directly, even if a {@link WriteJournal} is configured.
+     *
+     * A batch that fails does not stop the import; it is reported to the listener and counted in the result.
+     *
+     * @param credentials the credentials used to connect to the database
+     * @param collection the collection to insert into
+     * @param file a UTF-8 encoded file holding one record per line; blank lines are skipped
+     * @param format format of the file
+     * @param listener listener to report progress and failed batches to; {@code null} for none
+     * @return the outcome of the import
+     */
+    public static BulkLoadResult importFile(final Credentials credentials, final String collection, final File file, final FileFormat format,
+            final BulkLoadListener listener) {
+        if(credentials == null) {
+            throw new InternalAdapterException("connection credentials must be specified");
+        }
+
+        if(collection == null || collection.isEmpty()) {
+            throw new InternalAdapterException("collection name must be specified");
+        }
+
+        if(file == null) {
+            throw new InternalAdapterException("file to import must be specified");
+        }
+
+        if(format == null) {
+            throw new InternalAdapterException("format of the file to import must be specified");
+        }
+
+        return new FileImporter(credentials, collection, format, listener).importFile(file);
+    }
+
+    /**
+     * Exports all records of the collection of an entity class to a file using default credentials
+     *
+     * @see #export(com.blobcity.db.config.Credentials, java.lang.Class, java.io.File, com.blobcity.db.enums.FileFormat)
+     */
+    public static <T extends Db> long export(final Class<T> clazz, final File file, final FileFormat format) {
+        return export(Credentials.getInstance(), clazz, file, format);
+    }
+
+    /**
+     * Exports all records of the collection of an entity class to a file. Records are read in pages ordered on the
+     * primary key, each page following on from the last key of the previous one, and written as they arrive, so that
+     * memory use does not depend on the size of the collection. Records added or removed during the export do not
+     * cause others to be skipped or written twice.
+     *
+     * Progress is recorded after every page in a checkpoint file next to {@code file}, named after it with
+     * {@code .checkpoint} appended. If the export fails, calling this method again with the same file resumes it after
+     * the last key written. The checkpoint is deleted when the export completes.
+     *
+     * @param <T> Any class reference which extends {@link Db}
+     * @param credentials the credentials used to connect to the database
+     * @param clazz the entity class of the collection
+     * @param file the file to write; replaced unless a checkpoint of it exists
+     * @param format format to write the records in; the columns of a {@link FileFormat#CSV} file are those of the first
+     * record
+     * @return total number of records in the file
+     */
+    public static <T extends Db> long export(final Credentials credentials, final Class<T> clazz, final File file, final FileFormat format) {
+        if(clazz == null) {
+            throw new InternalAdapterException("class of the collection to export must be specified");
+        }
+
+        return export(credentials, clazz, getDs(clazz), getCollection(clazz), null, file, format);
+    }
+
+    /**
+     * Exports all records of a collection to a file using default credentials
+     *
+     * @see #export(com.blobcity.db.config.Credentials, java.lang.String, java.lang.String, java.io.File, com.blobcity.db.enums.FileFormat)
+     */
+    public static long export(final String collection, final String keyColumn, final File file, final FileFormat format) {
+        return export(Credentials.getInstance(), collection, keyColumn, file, format);
+    }
+
+    /**
+     * Exports all records of a collection to a file in the same way as
+     * {@link #export(com.blobcity.db.config.Credentials, java.lang.Class, java.io.File, com.blobcity.db.enums.FileFormat)}.
+     * As the primary key of a collection given by name is not known, the column to order pages on has to be given.
+     *
+     * @param credentials the credentials used to connect to the database
+     * @param collection the collection to export
+     * @param keyColumn column to order pages on; its values must be unique, such as those of the primary key
+     * @param file the file to write; replaced unless a checkpoint of it exists
+     * @param format format to write the records in
+     * @return total number of records in the file
+     */
+    public static long export(final Credentials credentials, final String collection, final String keyColumn, final File file, final FileFormat format) {
+        if(collection == null || collection.isEmpty()) {
+            throw new InternalAdapterException("collection name must be specified");
+        }
+
+        if(keyColumn == null || keyColumn.isEmpty()) {
+            throw new InternalAdapterException("key column to order the export on must be specified");
+        }
+
+        return export(credentials, null, getDs(), collection, keyColumn, file, format);
+    }
+
+    private static long export(final Credentials credentials, final Class<? extends Db> clazz, final String ds, final String collection,
+            final String keyColumn, final File file, final FileFormat format) {
+        if(credentials == null) {
+            throw new InternalAdapterException("connection credentials must be specified");
+        }
+
+        if(file == null) {
+            throw new InternalAdapterException("file to export to must be specified");
+        }
+
+        if(format == null) {
+            throw new InternalAdapterException("format of the file to export to must be specified");
+        }
+
+        return new CollectionExporter(credentials, clazz, ds, collection, keyColumn, format).export(file);
+    }
+
     //TODO: Add support for inserting other data formats
 
     /**
@@ -494,6 +836,7 @@ public abstract class Db {
         JsonObject jsonObject = new JsonObject();
         jsonObject.addProperty("name", ds);
         DbQueryResponse response = postStaticRequest(credentials, QueryType.DROP_DATASTORE, jsonObject);
+        CollectionMetadataCache.getInstance().invalidate(ds);
         return response.getAckCode() == 1;
     }
 
@@ -582,7 +925,11 @@ public abstract class Db {
         payloadJson.addProperty("replication-factor", replicationFactor);
 
         DbQueryResponse response = postStaticRequest(credentials, QueryType.CREATE_COLLECTION, collection, payloadJson);
-        return response.getAckCode() == 1;
+        if (response.getAckCode() == 1) {
+            CollectionMetadataCache.getInstance().put(credentials.getDb(), collection, replicationType);
+            return true;
+        }
+        return false;
     }
 
     /**
@@ -670,11 +1017,84 @@ public abstract class Db {
         return responsePayload.get("exists").getAsBoolean();
     }
 
-    public static boolean truncateCollection(final String collection){
-        return truncateCollection(Credentials.getInstance(), collection);
+    /**
+     * Fetches the replication type of a collection from the database
+     * @param ds name of the datastore
+     * @param collection name of the collection
+     * @return the {@link ReplicationType} of the collection; <code>null</code> if the database did not report one
+     */
+    public static ReplicationType getReplicationType(final String ds, final String collection) {
+        return getReplicationType(Credentials.getInstance(), ds, collection);
     }
 
-    public static boolean truncateCollection(final Credentials credentials, final String collection){
+    /**
+     * Fetches the replication type of a collection from the database, by connecting to the database using the
+     * specified credentials
+     * @param credentials the credentials used to connect to the database
+     * @param ds name of the datastore
+     * @param collection name of the collection
+     * @return the {@link ReplicationType} of the collection; <code>null</code> if the database did not report one
+     */
+    public static ReplicationType getReplicationType(final Credentials credentials, final String ds, final String collection) {
+        if(credentials == null) {
+            throw new InternalAdapterException("connection credentials must be specified");
+        }
+
+        if(ds == null || ds.isEmpty()) {
+            throw new InternalAdapterException("ds (datastore) name must be specified");
+        }
+
+        if(collection == null || collection.isEmpty()) {
+            throw new InternalAdapterException("collection name must be specified");
+        }
+
+        JsonObject requestPayload = new JsonObject();
+        requestPayload.addProperty("ds", ds);
+        requestPayload.addProperty("c", collection);
+        DbQueryResponse response = postStaticRequest(credentials, QueryType.COLLECTION_INFO, requestPayload);
+
+        if(response.getAckCode() != 1) {
+            throw new InternalAdapterException(response.getErrorCode() + " : " + response.getErrorCause());
+        }
+
+        JsonElement replicationElement = response.getPayload().getAsJsonObject().get("replication-type");
+        return replicationElement == null || replicationElement.isJsonNull() ? null : ReplicationType.fromType(replicationElement.getAsString());
+    }
+
+    /**
+     * Fetches the partition map of a {@link ReplicationType#DISTRIBUTED} collection from the database. The records of
+     * the collection are hashed into buckets, each owned by a single node.
+     * @param credentials the credentials used to connect to the database
+     * @param ds name of the datastore
+     * @param collection name of the collection
+     * @return addresses of the owning node of each bucket, indexed by bucket; empty if the collection is not partitioned
+     */
+    static List<String> getPartitionOwners(final Credentials credentials, final String ds, final String collection) {
+        JsonObject requestPayload = new JsonObject();
+        requestPayload.addProperty("ds", ds);
+        requestPayload.addProperty("c", collection);
+        DbQueryResponse response = postStaticRequest(credentials, QueryType.PARTITION_MAP, requestPayload);
+
+        if(response.getAckCode() != 1) {
+            throw new InternalAdapterException(response.getErrorCode() + " : " + response.getErrorCause());
+        }
+
+        final List<String> owners = new ArrayList<String>();
+        final JsonElement bucketsElement = response.getPayload() != null && response.getPayload().isJsonObject()
+                ? response.getPayload().getAsJsonObject().get("buckets") : null;
+        if (bucketsElement != null && bucketsElement.isJsonArray()) {
+            for (JsonElement ownerElement : bucketsElement.getAsJsonArray()) {
+                owners.add(ownerElement.getAsString());
+            }
+        }
+        return owners;
+    }
+
+    public static boolean truncateCollection(final String collection){
+        return truncateCollection(Credentials.getInstance(), collection);
+    }
+
+    public static boolean truncateCollection(final Credentials credentials, final String collection){
         if(credentials == null) {
             throw new InternalAdapterException("connection credentials must be specified");
         }
@@ -701,6 +1121,7 @@ public abstract class Db {
         }
 
         DbQueryResponse response = postStaticRequest(credentials, QueryType.DROP_COLLECTION, collection, null);
+        CollectionMetadataCache.getInstance().invalidate(credentials.getDb(), collection);
         return response != null;
     }
     
@@ -856,6 +1277,46 @@ public abstract class Db {
             throw new InternalAdapterException("filter name must be specified");
         }
 
+        final JsonArray keysArray = searchFilteredKeys(credentials, collection, filterName, params);
+        List<Object> keys = new ArrayList<Object>();
+        for(JsonElement key: keysArray){
+            keys.add(key.getAsString());
+        }
+        return keys.iterator();
+    }
+
+    public static LongKeySet searchFilteredLongKeys(final String collection, final String filterName, final Object... params) {
+        return searchFilteredLongKeys(Credentials.getInstance(), collection, filterName, params);
+    }
+
+    /**
+     * Runs a filter on a collection with numeric primary keys, returning the keys of the matching records as a
+     * {@link LongKeySet} instead of boxed objects. Results of several filters can then be combined on the client.
+     *
+     * @param credentials the credentials used to connect to the database
+     * @param collection the collection to search
+     * @param filterName name of the filter
+     * @param params parameters of the filter
+     * @return keys of the matching records
+     * @throws InternalAdapterException if a key is not an integral number
+     */
+    public static LongKeySet searchFilteredLongKeys(final Credentials credentials, final String collection, final String filterName, final Object... params) {
+        if(credentials == null) {
+            throw new InternalAdapterException("connection credentials must be specified");
+        }
+
+        if(collection == null || collection.isEmpty()){
+            throw new InternalAdapterException("collection name must be specified");
+        }
+
+        if(filterName == null || filterName.isEmpty()) {
+            throw new InternalAdapterException("filter name must be specified");
+        }
+
+        return LongKeySet.fromJson(searchFilteredKeys(credentials, collection, filterName, params));
+    }
+
+    private static JsonArray searchFilteredKeys(final Credentials credentials, final String collection, final String filterName, final Object... params) {
         JsonObject payloadJson = new JsonObject();
         Gson gson = new Gson();
         payloadJson.addProperty("name", filterName);
@@ -865,12 +1326,7 @@ public abstract class Db {
 
         reportIfError(response);
 
-        final JsonArray keysArray = response.getPayload().getAsJsonArray();
-        List<Object> keys = new ArrayList<Object>();
-        for(JsonElement key: keysArray){
-            keys.add(key.getAsString());
-        }
-        return keys.iterator();
+        return response.getPayload().getAsJsonArray();
     }
 
     public static <T extends Db, U extends Object> U invokeProcedure(final String storedProcedureName, final Class<U> retClazz, final Object... params) {
@@ -897,10 +1353,158 @@ public abstract class Db {
 
         /* If ack:0 then check for error code and report accordingly */
         reportIfError(response);
-        //todo proper handling here.
-        // some things can return null also.
-        U returnObj = gson.fromJson(response.getPayload().getAsString(), retClazz);
-        return returnObj;
+        return decodeProcedureResult(gson, response.getPayload(), retClazz);
+    }
+
+    /**
+     * @see #invokeProcedureCursor(com.blobcity.db.config.Credentials, java.lang.String, java.lang.Class, java.lang.Object...)
+     */
+    public static <U extends Object> ProcedureCursor<U> invokeProcedureCursor(final String storedProcedureName, final Class<U> elementClazz, final Object... params) {
+        return invokeProcedureCursor(Credentials.getInstance(), storedProcedureName, elementClazz, params);
+    }
+
+    /**
+     * Invokes a stored procedure returning a large output, which is decoded element by element as it arrives instead
+     * of being held in memory whole. The cursor must be closed if it is not read to its end.
+     *
+     * As the output is still being read when this method returns, the invocation bypasses the
+     * {@link RequestInterceptor}s, the {@link com.blobcity.db.metrics.MetricsRegistry}, the
+     * {@link com.blobcity.db.metrics.TimingListener} and the {@link SlowQueryLog}, and is never hedged or retried on
+     * another node. The deadline, bulkhead and circuit breakers still apply.
+     *
+     * @param credentials the credentials used to connect to the database
+     * @param storedProcedureName name of the stored procedure
+     * @param elementClazz type of the elements of the output
+     * @param params parameters of the invocation
+     * @return a cursor over the output of the stored procedure
+     * @see com.blobcity.db.ProcedureCursor
+     */
+    public static <U extends Object> ProcedureCursor<U> invokeProcedureCursor(final Credentials credentials, final String storedProcedureName, final Class<U> elementClazz, final Object... params) {
+        if(credentials == null) {
+            throw new InternalAdapterException("connection credentials must be specified");
+        }
+
+        if(storedProcedureName == null || storedProcedureName.isEmpty()) {
+            throw new InternalAdapterException("stored procedure name must be specified");
+        }
+
+        final JsonObject payloadJson = new JsonObject();
+        payloadJson.addProperty("name", storedProcedureName);
+        payloadJson.addProperty("params", new Gson().toJson(params));
+
+        // the same dummy collection as invokeProcedure
+        final ResponseStream stream = QueryExecuter.openBql(createStaticRequest(credentials, QueryType.STORED_PROC, "dummy", payloadJson));
+        return new ProcedureCursor<U>(elementClazz, stream, Deadline.current());
+    }
+
+    /**
+     * Invokes a stored procedure on a worker thread, so that the caller can continue while it executes
+     *
+     * @see #invokeProcedure(com.blobcity.db.config.Credentials, java.lang.String, java.lang.Class, java.lang.Object...)
+     */
+    public static <U extends Object> Future<U> invokeProcedureAsync(final String storedProcedureName, final Class<U> retClazz, final Object... params) {
+        return invokeProcedureAsync(Credentials.getInstance(), storedProcedureName, retClazz, params);
+    }
+
+    /**
+     * Invokes a stored procedure on a worker thread, so that the caller can continue while it executes. The deadline
+     * of the calling thread, if any, applies to the invocation.
+     *
+     * @param credentials the credentials used to connect to the database
+     * @param storedProcedureName name of the stored procedure
+     * @param retClazz type of the value returned by the stored procedure
+     * @param params parameters of the invocation
+     * @return the pending value returned by the stored procedure
+     * @see #invokeProcedure(com.blobcity.db.config.Credentials, java.lang.String, java.lang.Class, java.lang.Object...)
+     */
+    public static <U extends Object> Future<U> invokeProcedureAsync(final Credentials credentials, final String storedProcedureName, final Class<U> retClazz, final Object... params) {
+        if(credentials == null) {
+            throw new InternalAdapterException("connection credentials must be specified");
+        }
+
+        if(storedProcedureName == null || storedProcedureName.isEmpty()) {
+            throw new InternalAdapterException("stored procedure name must be specified");
+        }
+
+        final Object[] paramsCopy = params != null ? params.clone() : null;
+        final Deadline deadline = Deadline.current();
+        return AdapterThreads.workers().submit(new Callable<U>() {
+            @Override
+            public U call() {
+                final Deadline previous = Deadline.attach(deadline);
+                try {
+                    return invokeProcedure(credentials, storedProcedureName, retClazz, paramsCopy);
+                } finally {
+                    Deadline.restore(previous);
+                }
+            }
+        });
+    }
+
+    /**
+     * @see #invokeProcedureBatch(com.blobcity.db.config.Credentials, java.lang.Class, java.util.List)
+     */
+    public static <U extends Object> List<ProcedureResult<U>> invokeProcedureBatch(final Class<U> retClazz, final List<ProcedureCall> calls) {
+        return invokeProcedureBatch(Credentials.getInstance(), retClazz, calls);
+    }
+
+    /**
+     * Invokes several stored procedures in a single request. The database executes the calls in order and reports
+     * the outcome of each separately, so that a failing call does not fail the others.
+     *
+     * @param credentials the credentials used to connect to the database
+     * @param retClazz type of the values returned by the stored procedures
+     * @param calls the invocations
+     * @return the outcome of each invocation, in the order of {@code calls}
+     * @throws DbOperationException if the database rejects the batch as a whole
+     */
+    public static <U extends Object> List<ProcedureResult<U>> invokeProcedureBatch(final Credentials credentials, final Class<U> retClazz, final List<ProcedureCall> calls) {
+        if(credentials == null) {
+            throw new InternalAdapterException("connection credentials must be specified");
+        }
+
+        if(calls == null) {
+            throw new InternalAdapterException("stored procedure calls must be specified");
+        }
+
+        if(calls.isEmpty()) {
+            return new ArrayList<ProcedureResult<U>>(0);
+        }
+
+        final Gson gson = new Gson();
+        final JsonArray callsJson = new JsonArray();
+        for (final ProcedureCall call : calls) {
+            final JsonObject callJson = new JsonObject();
+            callJson.addProperty("name", call.getName());
+            callJson.addProperty("params", gson.toJson(call.getParams()));
+            callsJson.add(callJson);
+        }
+        final JsonObject payloadJson = new JsonObject();
+        payloadJson.add("calls", callsJson);
+
+        final DbQueryResponse response = postStaticRequest(credentials, QueryType.STORED_PROC_BATCH, payloadJson);
+
+        /* If ack:0 then check for error code and report accordingly */
+        reportIfError(response);
+
+        final JsonElement payload = response.getPayload();
+        if (payload == null || !payload.isJsonArray() || payload.getAsJsonArray().size() != calls.size()) {
+            throw new InternalAdapterException("Invalid response received for a batch of " + calls.size() + " stored procedure calls");
+        }
+
+        final List<ProcedureResult<U>> results = new ArrayList<ProcedureResult<U>>(calls.size());
+        for (final JsonElement element : payload.getAsJsonArray()) {
+            final JsonObject resultJson = element.getAsJsonObject();
+            final JsonElement ack = resultJson.get(QueryConstants.ACK);
+            if (ack != null && ack.getAsInt() == 1) {
+                results.add(ProcedureResult.success(decodeProcedureResult(gson, resultJson.get(QueryConstants.PAYLOAD), retClazz)));
+            } else {
+                final JsonElement code = resultJson.get(QueryConstants.CODE);
+                final JsonElement cause = resultJson.get(QueryConstants.CAUSE);
+                results.add(ProcedureResult.<U>failure(code != null && !code.isJsonNull() ? code.getAsString() : null, cause != null && !cause.isJsonNull() ? cause.getAsString() : null));
+            }
+        }
+        return results;
     }
 
     public static <T extends Db, U extends Object> U repopulateTable(final String collectionName, final Class<U> retClazz, final String... params) {
@@ -924,9 +1528,23 @@ public abstract class Db {
 
         /* If ack:0 then check for error code and report accordingly */
         reportIfError(response);
+        return decodeProcedureResult(new Gson(), response.getPayload(), retClazz);
+    }
 
-        U returnObj = new Gson().fromJson(response.getPayload().getAsString(), retClazz);
-        return returnObj;
+    /**
+     * Decodes the value returned by user code. Values sent as JSON text inside a string are parsed from that string,
+     * any other value is decoded directly from the already parsed element.
+     *
+     * @return the decoded value, {@code null} if nothing was returned
+     */
+    private static <U> U decodeProcedureResult(final Gson gson, final JsonElement payload, final Class<U> retClazz) {
+        if (payload == null || payload.isJsonNull()) {
+            return null;
+        }
+        if (payload.isJsonPrimitive() && payload.getAsJsonPrimitive().isString()) {
+            return gson.fromJson(payload.getAsString(), retClazz);
+        }
+        return gson.fromJson(payload, retClazz);
     }
     
     public static void insert(final String collection, final String interpreterName, final String... data){
@@ -966,12 +1584,53 @@ public abstract class Db {
             throw new InternalAdapterException("cannot invoke an insert with interpreter on null data");
         }
 
-        JsonObject payloadJson = new JsonObject();
+        final JsonArray rows = new JsonArray();
+        for (final String row : data) {
+            rows.add(row != null ? new JsonPrimitive(row) : JsonNull.INSTANCE);
+        }
+        reportIfError(sendCustomInsert(credentials, collection, interpreterName, rows));
+    }
+
+    /**
+     * Creates a loader streaming rows to be inserted through an interpreter in chunks, using default credentials
+     *
+     * @param collection the collection to insert into
+     * @param interpreterName name of the interpreter converting rows to records
+     * @return a {@link BulkLoader} with default settings
+     */
+    public static BulkLoader bulkLoader(final String collection, final String interpreterName) {
+        return bulkLoader(Credentials.getInstance(), collection, interpreterName);
+    }
+
+    /**
+     * Creates a loader streaming rows to be inserted through an interpreter in chunks
+     *
+     * @param credentials the credentials used to connect to the database
+     * @param collection the collection to insert into
+     * @param interpreterName name of the interpreter converting rows to records
+     * @return a {@link BulkLoader} with default settings
+     */
+    public static BulkLoader bulkLoader(final Credentials credentials, final String collection, final String interpreterName) {
+        if(credentials == null) {
+            throw new InternalAdapterException("connection credentials must be specified");
+        }
+
+        if(collection == null || collection.isEmpty()) {
+            throw new InternalAdapterException("collection name must be specified");
+        }
+
+        if(interpreterName == null || interpreterName.isEmpty()) {
+            throw new InternalAdapterException("interpreter name must be specified");
+        }
+
+        return new BulkLoader(credentials, collection, interpreterName);
+    }
+
+    static DbQueryResponse sendCustomInsert(final Credentials credentials, final String collection, final String interpreterName, final JsonArray rows) {
+        final JsonObject payloadJson = new JsonObject();
         payloadJson.addProperty("interpreter", interpreterName);
-        JSONArray arr = new JSONArray(data);
-        payloadJson.add("payload", new JsonParser().parse(arr.toString()).getAsJsonArray());
-        final DbQueryResponse response = postStaticRequest(credentials, QueryType.INSERT_CUSTOM, collection, payloadJson);
-        reportIfError(response);
+        payloadJson.add("payload", rows);
+        return postStaticRequest(credentials, QueryType.INSERT_CUSTOM, collection, payloadJson);
     }
 
     public static <T extends Db> boolean contains(final Credentials credentials, final Class<T> clazz, final Object key) {
@@ -991,34 +1650,7 @@ public abstract class Db {
             
             final Map<String, Field> structureMap = CollectionStore.getInstance().getStructure(dbName, tableName);
             for (int i = 0; i < resultCount; i++) {
-                final T instance = Db.newInstance(clazz);
-                final JsonObject instanceData = resultJsonArray.get(i).getAsJsonObject();
-                final Set<Map.Entry<String, JsonElement>> entrySet = instanceData.entrySet();
-
-                for (final Map.Entry<String, JsonElement> entry : entrySet) {
-                    final String columnName = entry.getKey();
-
-                    final Field field = structureMap.get(columnName);
-                    if(field == null) {
-                        continue;
-                    }
-                    // Field field = structureMap.get(columnName);
-                    synchronized (field) {
-                        final boolean oldAccessibilityValue = field.isAccessible();
-                        field.setAccessible(true);
-
-                        try {
-                            field.set(instance, getCastedValue(field, instanceData.get(columnName), clazz));
-                        } catch (IllegalArgumentException ex) {
-                            throw new InternalAdapterException("Unable to set data into field \"" + clazz.getSimpleName() + "." + field.getName() + "\"", ex);
-                        } catch (IllegalAccessException ex) {
-                            throw new InternalAdapterException("Unable to set data into field \"" + clazz.getSimpleName() + "." + field.getName() + "\"", ex);
-                        } finally {
-                            field.setAccessible(oldAccessibilityValue);
-                        }
-                    }
-                }
-
+                final T instance = toInstance(clazz, dbName, tableName, structureMap, resultJsonArray.get(i).getAsJsonObject());
                 responseList.add(instance);
             }
             return response.contains();
@@ -1055,6 +1687,17 @@ public abstract class Db {
      * @return {@link List} of {@code T} that matches {@code searchParams}
      */
     public static <T extends Db> List<T> search(final Credentials credentials, final Query<T> query) {
+        final RequestTimer timer = RequestTimer.begin();
+        try {
+            return searchUntimed(credentials, query);
+        } finally {
+            if (timer != null) {
+                timer.end();
+            }
+        }
+    }
+
+    private static <T extends Db> List<T> searchUntimed(final Credentials credentials, final Query<T> query) {
         if(credentials == null) {
             throw new InternalAdapterException("connection credentials must be specified");
         }
@@ -1064,49 +1707,21 @@ public abstract class Db {
         }
 
         final String queryStr = query.asSql();
-        
-        final DbQueryResponse response = QueryExecuter.executeSql(DbQueryRequest.create(credentials, queryStr));
-        
         final Class<T> clazz = query.getFromTables().get(0);
+        final String tableName = getCollection(clazz);
+        final String dbName = getDs(clazz);
+        
+        final DbQueryResponse response = QueryExecuter.executeSql(DbQueryRequest.create(credentials, QueryType.SEARCH, dbName, tableName, queryStr));
 
         if (response.isSuccessful()) {
             final JsonArray resultJsonArray = response.getPayload().getAsJsonArray();
-            System.out.println(resultJsonArray);
             final int resultCount = resultJsonArray.size();
             final List<T> responseList = new ArrayList<T>();
-            final String tableName = getCollection(clazz);
-            final String dbName = getDs(clazz);
             CollectionStore.getInstance().registerClass(dbName, tableName, clazz);
             final Map<String, Field> structureMap = CollectionStore.getInstance().getStructure(dbName, tableName);
 
             for (int i = 0; i < resultCount; i++) {
-                final T instance = Db.newInstance(clazz);
-                final JsonObject instanceData = resultJsonArray.get(i).getAsJsonObject();
-                final Set<Map.Entry<String, JsonElement>> entrySet = instanceData.entrySet();
-
-                for (final Map.Entry<String, JsonElement> entry : entrySet) {
-                    final String columnName = entry.getKey();
-
-                    final Field field = structureMap.get(columnName);
-                    if(field == null) {
-                        continue;
-                    }
-                    synchronized (field) {
-                        final boolean oldAccessibilityValue = field.isAccessible();
-                        field.setAccessible(true);
-
-                        try {
-                            field.set(instance, getCastedValue(field, instanceData.get(columnName), clazz));
-                        } catch (IllegalArgumentException ex) {
-                            throw new InternalAdapterException("Unable to set data into field \"" + clazz.getSimpleName() + "." + field.getName() + "\"", ex);
-                        } catch (IllegalAccessException ex) {
-                            throw new InternalAdapterException("Unable to set data into field \"" + clazz.getSimpleName() + "." + field.getName() + "\"", ex);
-                        } finally {
-                            field.setAccessible(oldAccessibilityValue);
-                        }
-                    }
-                }
-
+                final T instance = toInstance(clazz, dbName, tableName, structureMap, resultJsonArray.get(i).getAsJsonObject());
                 responseList.add(instance);
             }
             return responseList;
@@ -1115,65 +1730,144 @@ public abstract class Db {
         throw new DbOperationException(response.getErrorCode(), response.getErrorCause());
     }
 
-    // we need some intelligent idea to send large amount of data over network. Until then, this is of no use to us.
     public static <T extends Db> Iterator<T> searchFiltered(final Credentials credentials, final Class<T> clazz, final String filter, final Object... params){
         if(credentials == null) {
             throw new InternalAdapterException("connection credentials must be specified");
         }
 
-        JsonObject payloadJson = new JsonObject();
-        Gson gson = new Gson();
-        payloadJson.addProperty("name", filter);
-        payloadJson.addProperty("full-data", Boolean.TRUE);
-        payloadJson.addProperty("params", gson.toJson(params));
-        
-        final Entity entity = (Entity) clazz.getAnnotation(Entity.class);
-        final String tableName = getDs(clazz);
-        final DbQueryResponse response = postStaticRequest(credentials, QueryType.SEARCH_FILTERED, tableName, payloadJson);
-        
+        final String tableName = getCollection(clazz);
+        final DbQueryResponse response = QueryExecuter.executeBql(fullDataFilterRequest(credentials, tableName, filter, params));
         reportIfError(response);
-        // Query successfull, proceeding...
+
+        final String dbName = getDs(clazz);
+        CollectionStore.getInstance().registerClass(dbName, tableName, clazz);
+        final Map<String, Field> structureMap = CollectionStore.getInstance().getStructure(dbName, tableName);
+
         final JsonArray resultJsonArray = response.getPayload().getAsJsonArray();
         final int resultCount = resultJsonArray.size();
-        final List<T> responseList = new ArrayList<T>();
-        
+        final List<T> responseList = new ArrayList<T>(resultCount);
+        for (int i = 0; i < resultCount; i++) {
+            responseList.add(toInstance(clazz, dbName, tableName, structureMap, resultJsonArray.get(i).getAsJsonObject()));
+        }
+        return responseList.iterator();
+    }
+
+    /**
+     * @see #streamFiltered(com.blobcity.db.config.Credentials, java.lang.Class, java.lang.String, java.lang.Object...)
+     */
+    public static <T extends Db> RecordIterator<T> streamFiltered(final Class<T> clazz, final String filter, final Object... params) {
+        return streamFiltered(Credentials.getInstance(), clazz, filter, params);
+    }
+
+    /**
+     * Runs a filter on the collection of an entity class, as
+     * {@link #searchFiltered(com.blobcity.db.config.Credentials, java.lang.Class, java.lang.String, java.lang.Object...)}
+     * does, but decodes the matching records one at a time as the response arrives, so that the first record is
+     * available as soon as it is received and memory use does not depend on the number of records.
+     *
+     * The response is read after this method returns, so the request is not passed to {@link RequestInterceptor}s, is
+     * not reported to the {@link com.blobcity.db.metrics.MetricsRegistry}, the
+     * {@link com.blobcity.db.metrics.TimingListener} or the {@link SlowQueryLog}, and is neither hedged nor retried on
+     * another node. It is subject to the deadline, bulkhead and circuit breakers.
+     *
+     * @param <T> Any class reference which extends {@link Db}
+     * @param credentials the credentials used to connect to the database
+     * @param clazz the entity class of the collection
+     * @param filter name of the filter
+     * @param params parameters of the filter
+     * @return a {@link RecordIterator} over the matching records, which must be closed if not iterated to the end
+     */
+    public static <T extends Db> RecordIterator<T> streamFiltered(final Credentials credentials, final Class<T> clazz, final String filter, final Object... params) {
+        if(credentials == null) {
+            throw new InternalAdapterException("connection credentials must be specified");
+        }
+
+        final String tableName = getCollection(clazz);
         final String dbName = getDs(clazz);
         CollectionStore.getInstance().registerClass(dbName, tableName, clazz);
         final Map<String, Field> structureMap = CollectionStore.getInstance().getStructure(dbName, tableName);
 
-        for (int i = 0; i < resultCount; i++) {
-            final T instance = Db.newInstance(clazz);
-            final JsonObject instanceData = resultJsonArray.get(i).getAsJsonObject();
-            final Set<Map.Entry<String, JsonElement>> entrySet = instanceData.entrySet();
-
-            for (final Map.Entry<String, JsonElement> entry : entrySet) {
-                final String columnName = entry.getKey();
-                final Field field = structureMap.get(columnName);
-                if(field == null) {
-                    continue;
-                }
-                synchronized (field) {
-                    final boolean oldAccessibilityValue = field.isAccessible();
-                    field.setAccessible(true);
-
-                    try {
-                        field.set(instance, getCastedValue(field, instanceData.get(columnName), clazz));
-                    } catch (IllegalArgumentException ex) {
-                        throw new InternalAdapterException("Unable to set data into field \"" + clazz.getSimpleName() + "." + field.getName() + "\"", ex);
-                    } catch (IllegalAccessException ex) {
-                        throw new InternalAdapterException("Unable to set data into field \"" + clazz.getSimpleName() + "." + field.getName() + "\"", ex);
-                    } finally {
-                        field.setAccessible(oldAccessibilityValue);
-                    }
+        final ResponseStream stream = QueryExecuter.openBql(fullDataFilterRequest(credentials, tableName, filter, params));
+        return new RecordIterator<T>(clazz, dbName, tableName, structureMap, stream, Deadline.current());
+    }
+
+    /**
+     * @return the request running a filter that returns the matching records in full, shared by
+     * {@link #searchFiltered(Credentials, Class, String, Object...)} and {@link #streamFiltered(Credentials, Class, String, Object...)}
+     */
+    private static DbQueryRequest fullDataFilterRequest(final Credentials credentials, final String collection, final String filter, final Object... params) {
+        JsonObject payloadJson = new JsonObject();
+        Gson gson = new Gson();
+        payloadJson.addProperty("name", filter);
+        payloadJson.addProperty("full-data", Boolean.TRUE);
+        payloadJson.addProperty("params", gson.toJson(params));
+        return createStaticRequest(credentials, QueryType.SEARCH_FILTERED, collection, payloadJson);
+    }
+
+    /**
+     * Creates an instance of an entity class holding the data of a record
+     *
+     * @param ds the datastore of the record, as given by {@link #getDs(Class)}
+     * @param collection the collection of the record, already registered with {@link CollectionStore}
+     * @param structureMap the structure of the collection as held by {@link CollectionStore}
+     * @param instanceData the record as returned by the database
+     */
+    static <T extends Db> T toInstance(final Class<T> clazz, final String ds, final String collection, final Map<String, Field> structureMap,
+            final JsonObject instanceData) {
+        final T instance = newMappedInstance(clazz, ds, collection);
+        final EntityMapper<Db> mapper = EntityMetadata.forClass(clazz).getMapper();
+        if (mapper != null) {
+            instance.fromMappedJson(mapper, instanceData);
+            instance.takeSnapshot();
+            return instance;
+        }
+
+        final Set<Map.Entry<String, JsonElement>> entrySet = instanceData.entrySet();
+
+        for (final Map.Entry<String, JsonElement> entry : entrySet) {
+            final String columnName = entry.getKey();
+            final Field field = structureMap.get(columnName);
+            if(field == null) {
+                continue;
+            }
+            synchronized (field) {
+                final boolean oldAccessibilityValue = field.isAccessible();
+                field.setAccessible(true);
+
+                try {
+                    field.set(instance, ColumnValues.fromJson(entry.getValue(), field.getType(), field.getName(), clazz));
+                } catch (IllegalArgumentException ex) {
+                    throw new InternalAdapterException("Unable to set data into field \"" + clazz.getSimpleName() + "." + field.getName() + "\"", ex);
+                } catch (IllegalAccessException ex) {
+                    throw new InternalAdapterException("Unable to set data into field \"" + clazz.getSimpleName() + "." + field.getName() + "\"", ex);
+                } finally {
+                    field.setAccessible(oldAccessibilityValue);
                 }
             }
-            responseList.add(instance);
         }
-        return responseList.iterator();
+        instance.takeSnapshot();
+        return instance;
     }
 
     //private post request methods
     private DbQueryResponse postRequest(final Credentials credentials, QueryType queryType) {
+        final DbQueryRequest request = createRequest(credentials, queryType);
+        final WriteBehindBuffer buffer = WriteBehindBuffer.forClass(getClass());
+        if (buffer != null) {
+            // the record must not be read or changed behind a buffered save
+            buffer.flush(request);
+        }
+        return QueryExecuter.executeBql(request);
+    }
+
+    private DbQueryRequest createRequest(final Credentials credentials, QueryType queryType) {
+        return createRequest(credentials, queryType, null);
+    }
+
+    /**
+     * @param changes the changed columns of an {@link QueryType#UPDATE}, otherwise ignored
+     */
+    private DbQueryRequest createRequest(final Credentials credentials, QueryType queryType, final JsonObject changes) {
         if(credentials == null) {
             throw new InternalAdapterException("connection credentials must be specified");
         }
@@ -1186,21 +1880,26 @@ public abstract class Db {
             final Credentials dbSpecificCredentials = ds != null ? Credentials.create(credentials, null, null, null, ds) : credentials;
             queryJson.addProperty(QueryConstants.DB, dbSpecificCredentials.getDb());
 
+            final Object pk = getPrimaryKeyValue();
             switch (queryType) {
                 case LOAD:
                 case REMOVE:
-                    queryJson.addProperty(QueryConstants.PRIMARY_KEY, getPrimaryKeyValue().toString());
+                    queryJson.addProperty(QueryConstants.PRIMARY_KEY, pk.toString());
                     break;
                 case INSERT:
                 case SAVE:
                     queryJson.add(QueryConstants.PAYLOAD, toJson());
                     break;
+                case UPDATE:
+                    queryJson.addProperty(QueryConstants.PRIMARY_KEY, pk.toString());
+                    queryJson.add(QueryConstants.PAYLOAD, changes);
+                    break;
                 default:
                     throw new InternalDbException("Attempting to executed unknown or unidentifed query");
             }
 
-            final DbQueryResponse response = QueryExecuter.executeBql(DbQueryRequest.create(dbSpecificCredentials, queryJson.toString()));
-            return response;
+            return DbQueryRequest.create(dbSpecificCredentials, queryType, dbSpecificCredentials.getDb(), collection, pk != null ? pk.toString() : null,
+                    queryJson.toString());
         } catch (IllegalArgumentException ex) {
             throw new InternalAdapterException("An error has occurred in the adapter. Check stack trace for more details.", ex);
         } catch (IllegalAccessException ex) {
@@ -1228,23 +1927,38 @@ public abstract class Db {
         }
         queryJson.add(QueryConstants.PAYLOAD, payloadJson);
 
-        final DbQueryResponse response = QueryExecuter.executeBql(DbQueryRequest.create(credentials, queryJson.toString()));
+        final DbQueryResponse response = QueryExecuter.executeBql(DbQueryRequest.create(credentials, queryType, queryJson.toString()));
         return response;
     }
     
     private static  DbQueryResponse postStaticRequest(final Credentials credentials, final QueryType queryType, final String table, final JsonObject payloadJson){
-        JsonObject queryJson = new JsonObject();
+        final DbQueryResponse response = QueryExecuter.executeBql(createStaticRequest(credentials, queryType, table, payloadJson));
+        return response;
+    }
+
+    /**
+     * @return a request on a collection that is not tied to a record, such as those posted by
+     * {@link #postStaticRequest(Credentials, QueryType, String, JsonObject)}
+     */
+    private static DbQueryRequest createStaticRequest(final Credentials credentials, final QueryType queryType, final String table, final JsonObject payloadJson) {
+        final JsonObject queryJson = staticRequestEnvelope(credentials, queryType, table);
+        queryJson.add(QueryConstants.PAYLOAD, payloadJson);
+        return DbQueryRequest.create(credentials, queryType, credentials.getDb(), table, queryJson.toString());
+    }
+    
+    /**
+     * @return the fields of a request on a collection other than its payload
+     */
+    private static JsonObject staticRequestEnvelope(final Credentials credentials, final QueryType queryType, final String table) {
+        final JsonObject queryJson = new JsonObject();
         queryJson.addProperty(QueryConstants.DB, credentials.getDb());
         queryJson.addProperty(QueryConstants.TABLE, table);
         queryJson.addProperty(QueryConstants.QUERY, queryType.getQueryCode());
         queryJson.addProperty(QueryConstants.USER, credentials.getUsername());
         queryJson.addProperty(QueryConstants.PASS, credentials.getPassword());
-        queryJson.add(QueryConstants.PAYLOAD, payloadJson);
-        
-        final DbQueryResponse response = QueryExecuter.executeBql(DbQueryRequest.create(credentials, queryJson.toString()));
-        return response;
+        return queryJson;
     }
-    
+
     private static <T extends Db> DbQueryResponse postStaticRequest(final Credentials credentials, final Class<T> clazz, final QueryType queryType) {
         final Entity entity = (Entity) clazz.getAnnotation(Entity.class);
 
@@ -1260,7 +1974,7 @@ public abstract class Db {
         jsonObject.addProperty(QueryConstants.QUERY, queryType.getQueryCode());
         final String queryStr = jsonObject.toString();
 
-        final DbQueryResponse response = QueryExecuter.executeBql(DbQueryRequest.create(dbSpecificCredentials, queryStr));
+        final DbQueryResponse response = QueryExecuter.executeBql(DbQueryRequest.create(dbSpecificCredentials, queryType, db, tableName, queryStr));
         return response;
     }
     
@@ -1278,7 +1992,13 @@ public abstract class Db {
         queryJson.addProperty(QueryConstants.QUERY, queryType.getQueryCode());
         queryJson.addProperty(QueryConstants.PRIMARY_KEY, pk.toString());
 
-        final DbQueryResponse response = QueryExecuter.executeBql(DbQueryRequest.create(dbSpecificCredentials, queryJson.toString()));
+        final DbQueryRequest request = DbQueryRequest.create(dbSpecificCredentials, queryType, db, tableName, pk.toString(), queryJson.toString());
+        final WriteBehindBuffer buffer = WriteBehindBuffer.forClass(clazz);
+        if (buffer != null) {
+            buffer.flush(request);
+        }
+
+        final DbQueryResponse response = QueryExecuter.executeBql(request);
         return response;
     }
     
@@ -1292,6 +2012,17 @@ public abstract class Db {
     }
 
     public boolean load(final Credentials credentials) {
+        final RequestTimer timer = RequestTimer.begin();
+        try {
+            return loadUntimed(credentials);
+        } finally {
+            if (timer != null) {
+                timer.end();
+            }
+        }
+    }
+
+    private boolean loadUntimed(final Credentials credentials) {
         final DbQueryResponse response = postRequest(credentials, QueryType.LOAD);
 
         /* If ack:0 then check for error code and report accordingly */
@@ -1308,11 +2039,62 @@ public abstract class Db {
     }
 
     public void save(final Credentials credentials) {
-        final DbQueryResponse responseJson = postRequest(credentials, QueryType.SAVE);
+        final JsonObject changes = getChangedColumns();
+        if (changes != null) {
+            if(credentials == null) {
+                throw new InternalAdapterException("connection credentials must be specified");
+            }
+
+            if (changes.entrySet().isEmpty()) {
+                return;
+            }
+
+            if (!updateRejectedBy.contains(credentials.getServiceAddresses())) {
+                final DbQueryResponse responseJson = QueryExecuter.executeBql(createRequest(credentials, QueryType.UPDATE, changes));
+                if (responseJson.isSuccessful()) {
+                    for (final Map.Entry<String, JsonElement> entry : changes.entrySet()) {
+                        snapshot.add(entry.getKey(), entry.getValue());
+                    }
+                    return;
+                }
+
+                // a missing record is created again by the save below, as an untracked save would
+                if (!"DB200".equals(responseJson.getErrorCode())) {
+                    logger.log(Level.INFO, "Update of changed columns rejected ({0}: {1}), saving tracked records whole from now on",
+                            new Object[]{responseJson.getErrorCode(), responseJson.getErrorCause()});
+                    updateRejectedBy.add(credentials.getServiceAddresses());
+                }
+            }
+        }
+
+        final DbQueryRequest request = createRequest(credentials, QueryType.SAVE);
+        final WriteBehindBuffer buffer = request.getPrimaryKey() != null ? WriteBehindBuffer.forClass(getClass()) : null;
+        if (buffer != null && buffer.enqueue(request)) {
+            takeSnapshot();
+            return;
+        }
+
+        final DbQueryResponse responseJson = QueryExecuter.executeBql(request);
         reportIfError(responseJson);
+        takeSnapshot();
     }
 
     public boolean insert(final Credentials credentials) {
+        final WriteJournal journal = WriteJournal.getInstance();
+        if (journal != null) {
+            if(credentials == null) {
+                throw new InternalAdapterException("connection credentials must be specified");
+            }
+
+            // acknowledged locally; values generated by the database are not known yet
+            try {
+                journal.append(ds != null ? ds : credentials.getDb(), collection, toJson());
+            } catch (IllegalAccessException ex) {
+                throw new InternalAdapterException("An error has occurred in the adapter. Check stack trace for more details.", ex);
+            }
+            return true;
+        }
+
         final DbQueryResponse response = postRequest(credentials, QueryType.INSERT);
         if (response.isSuccessful()) {
             final JsonElement payloadJson = response.getPayload();
@@ -1336,6 +2118,8 @@ public abstract class Db {
         if (!response.isSuccessful() && !"DB200".equals(response.getErrorCode())) {
             reportIfError(response);
         }
+        // a later save creates the record again
+        snapshot = null;
     }
     
     /**
@@ -1352,6 +2136,13 @@ public abstract class Db {
      * @param jsonData input {@link JsonObject} from which the data for the current instance are to be loaded.
      */
     private void fromJson(final JsonObject jsonData) {
+        final EntityMapper<Db> mapper = EntityMetadata.forClass(getClass()).getMapper();
+        if (mapper != null) {
+            fromMappedJson(mapper, jsonData);
+            takeSnapshot();
+            return;
+        }
+
         final Map<String, Field> structureMap = CollectionStore.getInstance().getStructure(ds, collection);
 
         for (final String columnName : structureMap.keySet()) {
@@ -1369,6 +2160,55 @@ public abstract class Db {
                 throw new InternalAdapterException("An error has occurred in the adapter. Check stack trace for more details.", ex);
             }
         }
+        takeSnapshot();
+    }
+
+    /**
+     * Remembers the current values of the record, if dirty tracking is enabled for its class, so that a later save
+     * sends only the columns changed since
+     *
+     * @see com.blobcity.db.config.AdapterConfig#setDirtyTracking(Class, boolean)
+     */
+    void takeSnapshot() {
+        if (!AdapterConfig.isDirtyTracking(getClass())) {
+            snapshot = null;
+            return;
+        }
+
+        try {
+            snapshot = toJson();
+        } catch (IllegalAccessException ex) {
+            throw new InternalAdapterException("An error has occurred in the adapter. Check stack trace for more details.", ex);
+        }
+    }
+
+    /**
+     * Compares the record with its values when last loaded or saved
+     *
+     * @return the columns whose values changed, or {@code null} if the record has to be saved whole: dirty tracking
+     * is disabled, the record was not loaded, write-behind is enabled or the primary key changed
+     */
+    private JsonObject getChangedColumns() {
+        if (snapshot == null || !AdapterConfig.isDirtyTracking(getClass()) || WriteBehindBuffer.forClass(getClass()) != null) {
+            return null;
+        }
+
+        final JsonObject current;
+        try {
+            current = toJson();
+        } catch (IllegalAccessException ex) {
+            throw new InternalAdapterException("An error has occurred in the adapter. Check stack trace for more details.", ex);
+        }
+
+        final JsonObject changes = new JsonObject();
+        for (final Map.Entry<String, JsonElement> entry : current.entrySet()) {
+            if (!entry.getValue().equals(snapshot.get(entry.getKey()))) {
+                changes.add(entry.getKey(), entry.getValue());
+            }
+        }
+
+        final String pkColumn = CollectionStore.getInstance().getPkColumn(ds, collection);
+        return pkColumn == null || changes.has(pkColumn) ? null : changes;
     }
 
     /**
@@ -1381,6 +2221,11 @@ public abstract class Db {
      * underlying field is inaccessible.
      */
     private JsonObject toJson() throws IllegalArgumentException, IllegalAccessException {
+        final EntityMapper<Db> mapper = EntityMetadata.forClass(getClass()).getMapper();
+        if (mapper != null) {
+            return mapper.toJson(this);
+        }
+
         final Map<String, Field> structureMap = CollectionStore.getInstance().getStructure(ds, collection);
         final JsonObject dataJson = new JsonObject();
 
@@ -1395,25 +2240,7 @@ public abstract class Db {
                 field.setAccessible(true);
 
                 try {
-                    if (field.getType() == java.util.Date.class) {
-                        dataJson.addProperty(columnName, field.get(this) != null ? ((java.util.Date) field.get(this)).getTime() : null);
-                        continue;
-                    } else if (field.getType() == java.sql.Date.class) {
-                        dataJson.addProperty(columnName, field.get(this) != null ? ((java.sql.Date) field.get(this)).getTime() : null);
-                        continue;
-                    } else if (field.getType() == List.class
-                            || field.getType() == ArrayList.class
-                            || field.getType() == LinkedList.class
-                            || field.getType() == Set.class
-                            || field.getType() == HashSet.class
-                            || field.getType() == SortedSet.class
-                            || field.getType() == TreeSet.class
-                            || field.getType().isArray()) {
-                        dataJson.add(columnName, field.get(this) != null ? new Gson().toJsonTree(field.get(this)) : null);
-                        continue;
-                    }
-
-                    dataJson.addProperty(columnName, field.get(this) != null ? field.get(this).toString() : null);
+                    dataJson.add(columnName, ColumnValues.toJson(field.get(this), field.getType()));
                 } catch (IllegalAccessException iae) {
                     throw iae;
                 } finally {
@@ -1425,37 +2252,26 @@ public abstract class Db {
         return dataJson;
     }
 
-    private Object getPrimaryKeyValue() throws IllegalArgumentException, IllegalAccessException {
-        Map<String, Field> structureMap = CollectionStore.getInstance().getStructure(ds, collection);
-
-        for (String columnName : structureMap.keySet()) {
-            Field field = structureMap.get(columnName);
-            if(field == null) {
-                continue;
-            }
-            if (field.getAnnotation(Primary.class) != null) {
-                final boolean accessible = field.isAccessible();
-
-                field.setAccessible(true);
-                try {
-                    final Object value = field.get(this);
-                    return value;
-                } catch (IllegalAccessException iae) {
-                    throw iae;
-                } finally {
-                    field.setAccessible(accessible);
-                }
-            }
+    /**
+     * Sets the fields of the record through its generated mapper
+     */
+    void fromMappedJson(final EntityMapper<Db> mapper, final JsonObject jsonData) {
+        try {
+            mapper.fromJson(this, jsonData);
+        } catch (ClassCastException ex) {
+            throw new InternalAdapterException("Unable to set data into entity \"" + getClass().getSimpleName() + "\"", ex);
         }
+    }
 
-        return null;
+    private Object getPrimaryKeyValue() {
+        return PrimaryKeyAccessor.forClass(getClass()).get(this);
     }
 
     /**
      * Sets field level values by ensuring appropriate conversion between the input type (JSON) and Java's inherent data
      * types.
      *
-     * @see #getCastedValue(java.lang.reflect.Field, java.lang.Object)
+     * @see com.blobcity.db.ColumnValues#fromJson(com.google.gson.JsonElement, java.lang.Class, java.lang.String, java.lang.Class)
      * @param field field in current {@link Object} that needs to be updated
      * @param value value to be set for the field
      * @throws IllegalAccessException if the underlying field being changed is final
@@ -1465,7 +2281,7 @@ public abstract class Db {
             final boolean oldAccessibilityValue = field.isAccessible();
             field.setAccessible(true);
             try {
-                field.set(this, getCastedValue(field, value, this.getClass()));
+                field.set(this, ColumnValues.fromJson(value, field.getType(), field.getName(), this.getClass()));
             } catch (IllegalAccessException iae) {
                 throw iae;
             } finally {
@@ -1503,120 +2319,5 @@ public abstract class Db {
         // String
         return value;
     }
-
-    /**
-     * Provides a standard service to cast input types from JSON's format
-     * ({@link Integer}, {@link String}, {@link JsonArray} etc.) to Java's internal data types.
-     *
-     * @param field field in current {@link Object} that needs to be updated
-     * @param value value to be set for the field
-     * @param parentClazz {@link Class} value of the parent object for which the casted field is being requested. This
-     * field is only required for proper error logging in case of exceptions
-     * @return appropriately casted value
-     */
-    private static Object getCastedValue(final Field field, final JsonElement value, final Class<?> parentClazz) {
-        final Class<?> type = field.getType();
-
-        if (type == String.class) { // Pre-exit most common use cases
-            return value.isJsonNull() ? null : value.getAsString();
-        }
-
-        if (type.isEnum()) {
-            return "".equals(value.getAsString()) ? null : Enum.valueOf((Class<? extends Enum>) type, value.getAsString());
-        }
-
-        if (type == Character.TYPE || type == Character.class) {
-            return value.getAsCharacter();
-        }
-
-        if (type == List.class
-                || type == ArrayList.class
-                || type == LinkedList.class
-                || type == Set.class
-                || type == HashSet.class
-                || type == SortedSet.class
-                || type == TreeSet.class
-                || type.isArray()) { // doesn't always return inside this block, BEWARE!
-            if (value.isJsonArray()) {
-                final JsonArray arr = value.getAsJsonArray();
-                final int length = arr.size();
-                final List<Object> list = new ArrayList(length);
-
-                for (int i = 0; i < length; i++) {
-                    list.add(arr.get(i).getAsString());
-                }
-                return list;
-            } else if ("".equals(value.getAsString()) || value.isJsonNull()) {
-                return new ArrayList();
-            }
-
-            Logger.getLogger(Db.class.getName()).log(Level.WARNING, "Class of type \"{0}\" has field with name \"{1}\" and data type \"{2}\" for value to be set was \"{3}\" has a type of {4}. This will probably cause an exception.", new Object[]{parentClazz, field.getName(), type, value, value.getClass()});
-        }
-
-        /* Beyound this point empty string should return null as the below types cannot have empty string values */
-        if ((value.getAsString().isEmpty() || value == null) && !field.getType().isPrimitive()) {
-            return null;
-        }
-
-        if (type == Double.TYPE || type == Double.class) {
-            if (value == null || value.getAsString().isEmpty()) {
-                return 0.0;
-            }
-            return value.getAsDouble();
-        }
-
-        if (type == Float.TYPE || type == Float.class) {
-            if (value == null || value.getAsString().isEmpty()) {
-                return 0.0f;
-            }
-            return value.getAsFloat();
-        }
-
-        if (type == Boolean.TYPE || type == Boolean.class) {
-            if (value == null || value.getAsString().isEmpty()) {
-                return false;
-            }
-            return value.getAsBoolean();
-        }
-
-        if (type == BigDecimal.class) {
-            if (value == null || value.getAsString().isEmpty()) {
-                return BigDecimal.ZERO;
-            }
-            return value.getAsBigInteger();
-        }
-
-        if (type == java.util.Date.class) {
-            if (value == null || value.getAsString().isEmpty()) {
-                return null;
-            }
-            return new java.util.Date(value.getAsLong());
-        }
-
-        if (type == java.sql.Date.class) {
-            if (value == null || value.getAsString().isEmpty()) {
-                return null;
-            }
-            return new java.sql.Date(value.getAsLong());
-        }
-
-        if (type == Integer.TYPE || type == Integer.class) {
-            if (value == null || value.getAsString().isEmpty()) {
-                return 0;
-            }
-            return value.getAsInt();
-        }
-
-        if (type == Long.TYPE || type == Long.class) {
-            if (value == null || value.getAsString().isEmpty()) {
-                return 0;
-            }
-            return value.getAsLong();
-        }
-
-        // The if for List check does not always return a value. Be sure before putting any code below here
-        // If weird types are left, lets get their String versions..
-        return value.getAsString();
-    } 
     
 }
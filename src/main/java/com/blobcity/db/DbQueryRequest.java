@@ -8,6 +8,8 @@ import com.blobcity.db.exceptions.DbOperationException;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
 import java.text.MessageFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -20,25 +22,86 @@ import java.util.logging.Logger;
 class DbQueryRequest {
 
     private final Credentials credentials;
+    private final QueryType queryType;
+    private final String ds;
+    private final String collection;
+    private final String primaryKey;
     private final String query;
+    private Map<String, String> headers;
 
-    private DbQueryRequest(final Credentials credentials, final String query) {
+    private DbQueryRequest(final Credentials credentials, final QueryType queryType, final String ds, final String collection, final String primaryKey,
+            final String query) {
         this.credentials = credentials;
+        this.queryType = queryType;
+        this.ds = ds;
+        this.collection = collection;
+        this.primaryKey = primaryKey;
         this.query = query;
     }
 
-    public static DbQueryRequest create(final Credentials credentials, final String query) {
-        return new DbQueryRequest(credentials, query);
+    /**
+     * Creates a request that does not operate on a specific collection
+     */
+    public static DbQueryRequest create(final Credentials credentials, final QueryType queryType, final String query) {
+        return new DbQueryRequest(credentials, queryType, credentials.getDb(), null, null, query);
+    }
+
+    public static DbQueryRequest create(final Credentials credentials, final QueryType queryType, final String ds, final String collection, final String query) {
+        return new DbQueryRequest(credentials, queryType, ds, collection, null, query);
+    }
+
+    /**
+     * Creates a request that operates on a single record of a collection, identified by its primary key
+     */
+    public static DbQueryRequest create(final Credentials credentials, final QueryType queryType, final String ds, final String collection,
+            final String primaryKey, final String query) {
+        return new DbQueryRequest(credentials, queryType, ds, collection, primaryKey, query);
     }
 
     public Credentials getCredentials() {
         return credentials;
     }
 
+    public QueryType getQueryType() {
+        return queryType;
+    }
+
+    public String getDs() {
+        return ds;
+    }
+
+    /**
+     * @return the collection operated upon, or {@code null} if the request is not specific to a collection
+     */
+    public String getCollection() {
+        return collection;
+    }
+
+    /**
+     * @return the primary key of the record operated upon, or {@code null} if the request is not for a single record
+     */
+    public String getPrimaryKey() {
+        return primaryKey;
+    }
+
     public String getQuery() {
         return query;
     }
 
+    /**
+     * @return HTTP headers to send along with the request, or {@code null} if none were set
+     */
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    public void setHeader(final String name, final String value) {
+        if (headers == null) {
+            headers = new LinkedHashMap<String, String>();
+        }
+        headers.put(name, value);
+    }
+
     public String createPostParam() {
         try {
             return MessageFormat.format("username={0}&password={1}&ds={2}&q={3}", credentials.getUsername(), credentials.getPassword(), credentials.getDb(), URLEncoder.encode(query, "UTF-8"));
@@ -3,39 +3,63 @@
  */
 package com.blobcity.db;
 
+import com.blobcity.db.config.AdapterConfig;
 import com.blobcity.db.exceptions.DbOperationException;
 import com.google.gson.Gson;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
 import com.google.gson.reflect.TypeToken;
+import java.lang.reflect.Type;
+import java.nio.charset.Charset;
 import java.util.List;
 
 /**
- * Class to wrap responses from the database for internal representation before it gets returned to the client
+ * Class to wrap responses from the database for internal representation before it gets returned to the client. Also
+ * exposed to {@link RequestInterceptor}s, which may create responses of their own from the JSON form.
  *
  * @author Karun AB
  */
-class DbQueryResponse {
+public class DbQueryResponse {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Gson gson = new Gson();
+    private static final Type KEYS_TYPE = new TypeToken<List<Object>>() {
+    }.getType();
 
     // Ack code
     private final int ackCode;
-    // Select keys
-    private final List keys;
+    // Select keys, decoded on first use
+    private final JsonElement keys;
+    private volatile List<?> decodedKeys;
     // Contains
     private final boolean contains;
     // Error handling
     private final String errorCode;
     private final String errorCause;
+    private final String redirect;
     // Response data
     private final JsonElement payload;
+    private final long size;
+    private final long parseNanos;
 
+    /**
+     * @param response the response in its JSON form, the size of which is taken as its length in UTF-8
+     */
     public DbQueryResponse(final String response) {
-        final JsonObject jsonObj = new JsonParser().parse(response).getAsJsonObject();
+        this(response, response.getBytes(UTF_8).length);
+    }
+
+    /**
+     * @param response the response in its JSON form
+     * @param size number of bytes in which the response was received
+     */
+    DbQueryResponse(final String response, final long size) {
+        final long parseStart = AdapterConfig.getTimingListener() != null ? System.nanoTime() : 0;
+        this.size = size;
+        final JsonObject jsonObj = gson.fromJson(response, JsonObject.class);
 
         ackCode = jsonObj.get(QueryConstants.ACK).getAsInt();
-        keys = new Gson().fromJson(jsonObj.get(QueryConstants.KEYS), new TypeToken<List>() {
-        }.getType());
+        keys = jsonObj.get(QueryConstants.KEYS);
 
         final JsonElement containsElement = jsonObj.get(QueryConstants.CONTAINS);
         contains = containsElement != null ? jsonObj.get(QueryConstants.CONTAINS).getAsBoolean() : false;
@@ -44,8 +68,11 @@ class DbQueryResponse {
         errorCode = codeElement != null ? jsonObj.get(QueryConstants.CODE).getAsString() : null;
         final JsonElement causeElement = jsonObj.get(QueryConstants.CAUSE);
         errorCause = causeElement != null ? jsonObj.get(QueryConstants.CAUSE).getAsString() : null;
+        final JsonElement redirectElement = jsonObj.get(QueryConstants.REDIRECT);
+        redirect = redirectElement != null && !redirectElement.isJsonNull() ? redirectElement.getAsString() : null;
 
         payload = jsonObj.get(QueryConstants.PAYLOAD);
+        parseNanos = parseStart != 0 ? System.nanoTime() - parseStart : 0;
     }
 
     public int getAckCode() {
@@ -57,6 +84,19 @@ class DbQueryResponse {
     }
 
     public List getKeys() {
+        List<?> decoded = decodedKeys;
+        if (decoded == null && keys != null) {
+            // a race only decodes the keys twice
+            decoded = gson.fromJson(keys, KEYS_TYPE);
+            decodedKeys = decoded;
+        }
+        return decoded;
+    }
+
+    /**
+     * @return the keys as returned by the database, or {@code null} if the response carries none
+     */
+    JsonElement getKeysJson() {
         return keys;
     }
 
@@ -72,6 +112,20 @@ class DbQueryResponse {
         return errorCause;
     }
 
+    /**
+     * @return {@code true} if the request was refused because the node does not own the record operated upon
+     */
+    public boolean isOwnershipError() {
+        return ackCode != 1 && (redirect != null || QueryConstants.NOT_OWNER.equals(errorCode));
+    }
+
+    /**
+     * @return address of the node owning the record, if reported along with an ownership error
+     */
+    public String getRedirect() {
+        return redirect;
+    }
+
     public DbOperationException createException() {
         return new DbOperationException(errorCode, errorCause);
     }
@@ -79,4 +133,18 @@ class DbQueryResponse {
     public JsonElement getPayload() {
         return payload;
     }
+
+    /**
+     * @return number of bytes in the body of the response as received from the database
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * @return time taken to parse the response, if timing was enabled when it was received; 0 otherwise
+     */
+    public long getParseNanos() {
+        return parseNanos;
+    }
 }
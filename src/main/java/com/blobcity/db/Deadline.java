@@ -0,0 +1,110 @@
+/*
+ * Copyright 2016, BlobCity iSolutions Pvt. Ltd.
+ */
+package com.blobcity.db;
+
+import com.blobcity.db.exceptions.DeadlineExceededException;
+import com.blobcity.db.exceptions.InternalAdapterException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A point in time by which an adapter operation must complete. The deadline active on the current thread applies to
+ * every request the adapter sends on behalf of the operation, including follow-up requests such as further pages or
+ * batches, and bounds connect/read timeouts as well as time spent waiting in bulkheads. An in-flight request is
+ * aborted when the deadline expires.
+ *
+ * Deadlines are normally set using {@link Db#withDeadline(long, java.util.concurrent.TimeUnit)}. Code handing work to
+ * other threads should capture {@link #current()} and re-apply it there through a {@link DeadlineScope}.
+ *
+ * @author Prikshit Kumar
+ */
+public final class Deadline {
+
+    private static final ThreadLocal<Deadline> current = new ThreadLocal<Deadline>();
+
+    private final long expiresAtNanos;
+
+    private Deadline(final long expiresAtNanos) {
+        this.expiresAtNanos = expiresAtNanos;
+    }
+
+    /**
+     * @param timeout time from now after which the deadline expires
+     * @param unit unit of {@code timeout}
+     * @return a new {@link Deadline}
+     */
+    public static Deadline after(final long timeout, final TimeUnit unit) {
+        if (timeout < 0) {
+            throw new InternalAdapterException("deadline timeout cannot be negative");
+        }
+        return new Deadline(System.nanoTime() + unit.toNanos(timeout));
+    }
+
+    /**
+     * @return the deadline active on the current thread, or {@code null} if operations on this thread are unbounded
+     */
+    public static Deadline current() {
+        return current.get();
+    }
+
+    /**
+     * @param unit unit in which the remaining time is required
+     * @return time left before expiry, rounded down; 0 if already expired
+     */
+    public long remaining(final TimeUnit unit) {
+        final long remainingNanos = expiresAtNanos - System.nanoTime();
+        return remainingNanos > 0 ? unit.convert(remainingNanos, TimeUnit.NANOSECONDS) : 0;
+    }
+
+    public boolean isExpired() {
+        return expiresAtNanos - System.nanoTime() <= 0;
+    }
+
+    /**
+     * @param other another deadline, may be {@code null}
+     * @return whichever of this and {@code other} expires first
+     */
+    public Deadline earliest(final Deadline other) {
+        return other == null || expiresAtNanos - other.expiresAtNanos <= 0 ? this : other;
+    }
+
+    /**
+     * @throws DeadlineExceededException if this deadline has expired
+     */
+    void check() {
+        if (isExpired()) {
+            throw new DeadlineExceededException("Deadline for the operation expired before the request could be sent to the database");
+        }
+    }
+
+    /**
+     * Bounds a timeout, as understood by {@link java.net.URLConnection}, by the time left before this deadline
+     *
+     * @param timeoutMillis configured timeout, where 0 means infinite
+     * @return the smaller of the configured timeout and the remaining time, never 0 since that means infinite
+     */
+    int boundTimeout(final int timeoutMillis) {
+        final long remainingMillis = Math.max(1, remaining(TimeUnit.MILLISECONDS));
+        return (int) (timeoutMillis == 0 ? Math.min(remainingMillis, Integer.MAX_VALUE) : Math.min(remainingMillis, timeoutMillis));
+    }
+
+    /**
+     * Makes a deadline the active deadline of the current thread
+     *
+     * @param deadline the deadline to activate, {@code null} to clear
+     * @return the previously active deadline, to be passed back to {@link #restore(Deadline)}
+     */
+    static Deadline attach(final Deadline deadline) {
+        final Deadline previous = current.get();
+        current.set(deadline);
+        return previous;
+    }
+
+    static void restore(final Deadline previous) {
+        if (previous == null) {
+            current.remove();
+        } else {
+            current.set(previous);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2016, BlobCity iSolutions Pvt. Ltd.
+ */
+package com.blobcity.db;
+
+import com.blobcity.db.exceptions.InternalAdapterException;
+import com.blobcity.db.search.Query;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Runs adapter operations under a {@link Deadline}. Obtained through
+ * {@link Db#withDeadline(long, java.util.concurrent.TimeUnit)}, for example:
+ *
+ * <pre>
+ * List&lt;Person&gt; people = Db.withDeadline(2, TimeUnit.SECONDS).search(Query.table(Person.class));
+ * </pre>
+ *
+ * Operations without a shortcut here can be wrapped using {@link #call(Callable)}. If a deadline is already active
+ * on the calling thread, whichever expires first applies.
+ *
+ * @author Prikshit Kumar
+ */
+public final class DeadlineScope {
+
+    private final Deadline deadline;
+
+    DeadlineScope(final Deadline deadline) {
+        this.deadline = deadline;
+    }
+
+    public Deadline getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * Executes arbitrary code with this scope's deadline active on the current thread
+     *
+     * @param <V> return type of the callable
+     * @param callable code making one or more adapter calls
+     * @return the value returned by {@code callable}
+     */
+    public <V> V call(final Callable<V> callable) {
+        final Deadline previous = Deadline.attach(deadline.earliest(Deadline.current()));
+        try {
+            return callable.call();
+        } catch (RuntimeException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new InternalAdapterException("Operation run under a deadline failed", ex);
+        } finally {
+            Deadline.restore(previous);
+        }
+    }
+
+    public void run(final Runnable runnable) {
+        call(new Callable<Void>() {
+            @Override
+            public Void call() {
+                runnable.run();
+                return null;
+            }
+        });
+    }
+
+    public <T extends Db> List<T> search(final Query<T> query) {
+        return call(new Callable<List<T>>() {
+            @Override
+            public List<T> call() {
+                return Db.search(query);
+            }
+        });
+    }
+
+    public <T extends Db> Object execute(final Query<T> query) {
+        return call(new Callable<Object>() {
+            @Override
+            public Object call() {
+                return Db.execute(query);
+            }
+        });
+    }
+
+    public <T extends Db> List<T> select(final Class<T> clazz, final String columnName, final Object... values) {
+        return call(new Callable<List<T>>() {
+            @Override
+            public List<T> call() {
+                return Db.select(clazz, columnName, values);
+            }
+        });
+    }
+
+    public <T extends Db, K> List<K> selectAll(final Class<T> clazz, final Class<K> returnTypeClazz) {
+        return call(new Callable<List<K>>() {
+            @Override
+            public List<K> call() {
+                return Db.selectAll(clazz, returnTypeClazz);
+            }
+        });
+    }
+
+    public <T extends Db> boolean contains(final Class<T> clazz, final Object key) {
+        return call(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return Db.contains(clazz, key);
+            }
+        });
+    }
+
+    public boolean load(final Db entity) {
+        return call(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return entity.load();
+            }
+        });
+    }
+
+    public void save(final Db entity) {
+        run(new Runnable() {
+            @Override
+            public void run() {
+                entity.save();
+            }
+        });
+    }
+
+    public boolean insert(final Db entity) {
+        return call(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return entity.insert();
+            }
+        });
+    }
+
+    public void remove(final Db entity) {
+        run(new Runnable() {
+            @Override
+            public void run() {
+                entity.remove();
+            }
+        });
+    }
+
+    public <U> U invokeProcedure(final String storedProcedureName, final Class<U> retClazz, final Object... params) {
+        return call(new Callable<U>() {
+            @Override
+            public U call() {
+                return Db.invokeProcedure(storedProcedureName, retClazz, params);
+            }
+        });
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2016, BlobCity iSolutions Pvt. Ltd.
+ */
+package com.blobcity.db;
+
+import com.google.gson.JsonObject;
+
+/**
+ * Maps the entities of one class to and from records without reflection. Implementations are generated at build time
+ * by {@link com.blobcity.db.processor.EntityMapperProcessor}, when it is enabled, as a class named after the entity
+ * class with a {@code Mapper} suffix, in the same package, and are used by the adapter in place of reflection whenever
+ * present.
+ * Implementations must be thread-safe and have a public constructor without parameters.
+ *
+ * @param <T> the entity class
+ * @author Prikshit Kumar
+ */
+public interface EntityMapper<T extends Db> {
+
+    /**
+     * @param entity the entity
+     * @return the columns of the entity, converted as by {@link ColumnValues#toJson(Object, Class)}
+     */
+    JsonObject toJson(T entity);
+
+    /**
+     * Sets the fields of the columns present in a record, converted as by
+     * {@link ColumnValues#fromJson(com.google.gson.JsonElement, Class, String, Class)}. Fields of columns absent from
+     * the record are left unchanged.
+     *
+     * @param entity the entity
+     * @param record the record
+     */
+    void fromJson(T entity, JsonObject record);
+}
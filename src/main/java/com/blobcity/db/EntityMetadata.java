@@ -0,0 +1,149 @@
+/*
+ * Copyright 2016, BlobCity iSolutions Pvt. Ltd.
+ */
+package com.blobcity.db;
+
+import com.blobcity.db.annotations.Entity;
+import com.blobcity.db.exceptions.InternalAdapterException;
+import com.blobcity.db.search.StringUtil;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The collection and datastore of an entity class as declared by its {@link Entity} annotation, and the constructor
+ * used to create its entities, resolved once per class so that entities can be created without reading annotations
+ * or repeating the access checks of {@link Class#newInstance()}.
+ *
+ * @author Prikshit Kumar
+ */
+final class EntityMetadata {
+
+    private static final ConcurrentMap<Class<?>, EntityMetadata> metadata = new ConcurrentHashMap<Class<?>, EntityMetadata>();
+
+    private final String collection;
+    private final String ds;
+    private final Constructor<?> constructor; // null if the class has no constructor without parameters
+    private final EntityMapper<Db> mapper; // null if none was generated for the class
+
+    private EntityMetadata(final String collection, final String ds, final Constructor<?> constructor, final EntityMapper<Db> mapper) {
+        this.collection = collection;
+        this.ds = ds;
+        this.constructor = constructor;
+        this.mapper = mapper;
+    }
+
+    static EntityMetadata forClass(final Class<?> clazz) {
+        EntityMetadata entityMetadata = metadata.get(clazz);
+        if (entityMetadata == null) {
+            final Entity entity = clazz.getAnnotation(Entity.class);
+            final String collection = entity != null && !StringUtil.isEmpty(entity.collection()) ? entity.collection() : clazz.getSimpleName();
+            final String ds = entity != null && !StringUtil.isEmpty(entity.ds()) ? entity.ds() : null;
+            entityMetadata = new EntityMetadata(collection, ds, findConstructor(clazz), findMapper(clazz));
+
+            final EntityMetadata existing = metadata.putIfAbsent(clazz, entityMetadata);
+            if (existing != null) {
+                entityMetadata = existing;
+            }
+        }
+        return entityMetadata;
+    }
+
+    String getCollection() {
+        return collection;
+    }
+
+    /**
+     * @return the datastore named by the entity, or {@code null} if it belongs to the datastore of the credentials
+     */
+    String getDs() {
+        return ds;
+    }
+
+    /**
+     * @return the mapper generated for the class by {@link com.blobcity.db.processor.EntityMapperProcessor}, or
+     * {@code null} if there is none and entities are to be mapped through reflection
+     */
+    EntityMapper<Db> getMapper() {
+        return mapper;
+    }
+
+    /**
+     * Creates an entity through the constructor without parameters of its class. Exceptions thrown by the constructor
+     * are rethrown as is if unchecked, as by {@link Class#newInstance()}.
+     *
+     * @throws InternalAdapterException if the class cannot be instantiated or its constructor throws a checked exception
+     */
+    <T> T newInstance(final Class<T> clazz) {
+        if (constructor == null) {
+            throw new InternalAdapterException("Entity class " + clazz.getName() + " must declare a constructor without parameters");
+        }
+
+        try {
+            return clazz.cast(constructor.newInstance());
+        } catch (InvocationTargetException ex) {
+            throw rethrowCause(ex, "An error has occurred in the adapter. Check stack trace for more details.");
+        } catch (InstantiationException ex) {
+            throw new InternalAdapterException("An error has occurred in the adapter. Check stack trace for more details.", ex);
+        } catch (IllegalAccessException ex) {
+            throw new InternalAdapterException("An error has occurred in the adapter. Check stack trace for more details.", ex);
+        }
+    }
+
+    private static Constructor<?> findConstructor(final Class<?> clazz) {
+        try {
+            final Constructor<?> constructor = clazz.getDeclaredConstructor();
+            // checked once here rather than on every instantiation
+            constructor.setAccessible(true);
+            return constructor;
+        } catch (NoSuchMethodException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Loads the mapper generated for an entity class, named as described by
+     * {@link com.blobcity.db.processor.EntityMapperProcessor}
+     */
+    @SuppressWarnings("unchecked")
+    private static EntityMapper<Db> findMapper(final Class<?> clazz) {
+        final String binaryName = clazz.getName();
+        final int packageEnd = binaryName.lastIndexOf('.') + 1;
+        final String mapperName = binaryName.substring(0, packageEnd) + binaryName.substring(packageEnd).replace('$', '_') + "Mapper";
+        try {
+            final Class<?> mapperClass = Class.forName(mapperName, true, clazz.getClassLoader());
+            if (!EntityMapper.class.isAssignableFrom(mapperClass)) {
+                return null;
+            }
+            return (EntityMapper<Db>) mapperClass.getDeclaredConstructor().newInstance();
+        } catch (ClassNotFoundException ex) {
+            return null;
+        } catch (NoSuchMethodException ex) {
+            throw new InternalAdapterException("Unable to create mapper " + mapperName, ex);
+        } catch (InvocationTargetException ex) {
+            throw rethrowCause(ex, "Unable to create mapper " + mapperName);
+        } catch (InstantiationException ex) {
+            throw new InternalAdapterException("Unable to create mapper " + mapperName, ex);
+        } catch (IllegalAccessException ex) {
+            throw new InternalAdapterException("Unable to create mapper " + mapperName, ex);
+        }
+    }
+
+    /**
+     * Rethrows the exception thrown by a constructor as is if unchecked, as {@link Class#newInstance()} does
+     *
+     * @param message message of the {@link InternalAdapterException} wrapping a checked exception
+     * @return the exception to throw, if the cause is a checked exception
+     */
+    private static InternalAdapterException rethrowCause(final InvocationTargetException ex, final String message) {
+        final Throwable cause = ex.getCause();
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new InternalAdapterException(message, cause);
+    }
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright 2016, BlobCity iSolutions Pvt. Ltd.
+ */
+package com.blobcity.db;
+
+import com.blobcity.db.config.Credentials;
+import com.blobcity.db.enums.FileFormat;
+import com.blobcity.db.exceptions.InternalAdapterException;
+import com.google.gson.JsonObject;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Imports a file of records into a collection, as done by {@link Db#importFile(String, File, FileFormat)}.
+ *
+ * The file is memory-mapped and split into segments on line boundaries, which are read concurrently on worker
+ * threads. Records of a segment are sent in batches of up to {@link #BATCH_SIZE} records, a single insert request each.
+ * Lines of {@link FileFormat#NDJSON} files are forwarded as read; they are checked to look like a JSON object but not
+ * parsed. Fields of {@link FileFormat#CSV} files are untyped, so every value, including numbers and empty fields, is
+ * sent as a JSON string. A failed batch does not stop the import; it is reported to the {@link BulkLoadListener} and
+ * counted in the {@link BulkLoadResult}.
+ *
+ * @author Prikshit Kumar
+ */
+class FileImporter {
+
+    static final int BATCH_SIZE = 500;
+    private static final int MAX_BATCH_CHARS = 4 * 1024 * 1024;
+    private static final int CONCURRENCY = 4;
+    private static final long MIN_SEGMENT_BYTES = 1024 * 1024;
+    private static final long MAX_SEGMENT_BYTES = 64 * 1024 * 1024;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final byte[] BYTE_ORDER_MARK = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+
+    private final Credentials credentials;
+    private final String collection;
+    private final FileFormat format;
+    private final BulkLoadListener listener;
+    private final Semaphore permits = new Semaphore(CONCURRENCY);
+    private final AtomicLong rowsRead = new AtomicLong();
+    private final AtomicLong rowsInserted = new AtomicLong();
+    private final AtomicLong batchCount = new AtomicLong();
+    private final AtomicLong failedBatches = new AtomicLong();
+    private final AtomicReference<RuntimeException> firstFailure = new AtomicReference<RuntimeException>();
+    private List<String> columns;
+
+    FileImporter(final Credentials credentials, final String collection, final FileFormat format, final BulkLoadListener listener) {
+        this.credentials = credentials;
+        this.collection = collection;
+        this.format = format;
+        this.listener = listener;
+    }
+
+    BulkLoadResult importFile(final File file) {
+        RandomAccessFile randomAccessFile = null;
+        try {
+            randomAccessFile = new RandomAccessFile(file, "r");
+            final FileChannel channel = randomAccessFile.getChannel();
+            final long size = channel.size();
+
+            // a byte order mark written by some editors is not part of the first record
+            long position = size >= 3 && Arrays.equals(read(channel, 0, 3), BYTE_ORDER_MARK) ? 3 : 0;
+            if (format == FileFormat.CSV) {
+                final long headerEnd = lineEndAfter(channel, position, size);
+                final String header = new String(read(channel, position, (int) (headerEnd - position)), UTF_8).trim();
+                if (header.isEmpty()) {
+                    throw new InternalAdapterException("CSV file must start with a line naming the columns");
+                }
+                columns = Csv.parseLine(header);
+                position = headerEnd;
+            }
+
+            final long segmentBytes = Math.min(MAX_SEGMENT_BYTES, Math.max(MIN_SEGMENT_BYTES, size / CONCURRENCY));
+            final Deadline deadline = Deadline.current();
+            try {
+                while (position < size) {
+                    if (deadline != null) {
+                        deadline.check();
+                    }
+                    final long end = position + segmentBytes < size ? lineEndAfter(channel, position + segmentBytes, size) : size;
+                    submit(channel.map(FileChannel.MapMode.READ_ONLY, position, end - position), deadline);
+                    position = end;
+                }
+            } finally {
+                // segments in flight complete before the file is closed
+                permits.acquireUninterruptibly(CONCURRENCY);
+            }
+        } catch (IOException ex) {
+            throw new InternalAdapterException("Unable to read " + file, ex);
+        } finally {
+            if (randomAccessFile != null) {
+                try {
+                    randomAccessFile.close();
+                } catch (IOException ex) {
+                    // ignore exception
+                }
+            }
+        }
+
+        return new BulkLoadResult(rowsRead.get(), rowsInserted.get(), batchCount.get(), failedBatches.get(), firstFailure.get());
+    }
+
+    private void submit(final MappedByteBuffer segment, final Deadline deadline) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InternalAdapterException("Interrupted while waiting to import a segment", ex);
+        }
+
+        try {
+            AdapterThreads.workers().execute(new Runnable() {
+                @Override
+                public void run() {
+                    final Deadline previous = Deadline.attach(deadline);
+                    try {
+                        importSegment(segment);
+                    } finally {
+                        Deadline.restore(previous);
+                        permits.release();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            permits.release();
+            throw new InternalAdapterException("Unable to import a segment", ex);
+        }
+    }
+
+    private void importSegment(final MappedByteBuffer segment) {
+        List<String> batch = new ArrayList<String>(BATCH_SIZE);
+        int batchChars = 0;
+        byte[] line = new byte[1024];
+        while (segment.hasRemaining()) {
+            int length = 0;
+            while (segment.hasRemaining()) {
+                final byte b = segment.get();
+                if (b == '\n') {
+                    break;
+                }
+                if (length == line.length) {
+                    line = Arrays.copyOf(line, length * 2);
+                }
+                line[length++] = b;
+            }
+
+            int from = 0;
+            while (from < length && isWhitespace(line[from])) {
+                from++;
+            }
+            while (length > from && isWhitespace(line[length - 1])) {
+                length--;
+            }
+            if (from == length) {
+                continue;
+            }
+
+            final String record = new String(line, from, length - from, UTF_8);
+            rowsRead.incrementAndGet();
+            batch.add(record);
+            batchChars += record.length();
+            if (batch.size() == BATCH_SIZE || batchChars >= MAX_BATCH_CHARS) {
+                send(batch);
+                batch = new ArrayList<String>(BATCH_SIZE);
+                batchChars = 0;
+            }
+        }
+
+        if (!batch.isEmpty()) {
+            send(batch);
+        }
+    }
+
+    /**
+     * @param record a non-blank line of the file
+     * @return the text of the JSON object to insert for the line
+     */
+    private String toJson(final String record) {
+        if (format == FileFormat.NDJSON) {
+            if (record.charAt(0) != '{' || record.charAt(record.length() - 1) != '}') {
+                throw new InternalAdapterException("Line is not a JSON object: " + abbreviate(record));
+            }
+            return record;
+        }
+
+        final List<String> fields = Csv.parseLine(record);
+        if (fields.size() != columns.size()) {
+            throw new InternalAdapterException("Line has " + fields.size() + " fields instead of " + columns.size() + ": " + abbreviate(record));
+        }
+        final JsonObject recordJson = new JsonObject();
+        for (int i = 0; i < fields.size(); i++) {
+            recordJson.addProperty(columns.get(i), fields.get(i));
+        }
+        return recordJson.toString();
+    }
+
+    /**
+     * @param batch non-blank lines of the file, trimmed
+     */
+    private void send(final List<String> batch) {
+        final long batchIndex = batchCount.getAndIncrement();
+        RuntimeException failure = null;
+        try {
+            final List<String> records = new ArrayList<String>(batch.size());
+            for (final String line : batch) {
+                records.add(toJson(line));
+            }
+
+            final DbQueryResponse response = Db.sendInsert(credentials, collection, records);
+            if (!response.isSuccessful()) {
+                failure = response.createException();
+            }
+        } catch (RuntimeException ex) {
+            failure = ex;
+        }
+
+        if (failure == null) {
+            final long totalRowsInserted = rowsInserted.addAndGet(batch.size());
+            if (listener != null) {
+                listener.onChunkInserted(batchIndex, batch.size(), totalRowsInserted);
+            }
+            return;
+        }
+
+        failedBatches.incrementAndGet();
+        firstFailure.compareAndSet(null, failure);
+        if (listener != null) {
+            listener.onChunkFailed(batchIndex, batch, failure);
+        }
+    }
+
+    /**
+     * @return position just past the first line terminator at or after {@code position}, or {@code size} if there is
+     * none
+     */
+    private static long lineEndAfter(final FileChannel channel, long position, final long size) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(8192);
+        while (position < size) {
+            buffer.clear();
+            final int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    private static byte[] read(final FileChannel channel, final long position, final int length) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining() && channel.read(buffer, position + buffer.position()) > 0) {
+            // keep reading
+        }
+        return buffer.array();
+    }
+
+    private static boolean isWhitespace(final byte b) {
+        return b == ' ' || b == '\t' || b == '\r';
+    }
+
+    private static String abbreviate(final String record) {
+        return record.length() <= 100 ? record : record.substring(0, 100) + "...";
+    }
+}
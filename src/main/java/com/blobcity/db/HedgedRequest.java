@@ -0,0 +1,220 @@
+/*
+ * Copyright 2016, BlobCity iSolutions Pvt. Ltd.
+ */
+package com.blobcity.db;
+
+import com.blobcity.db.config.AdapterConfig;
+import com.blobcity.db.config.HedgingConfig;
+import com.blobcity.db.exceptions.DeadlineExceededException;
+import com.blobcity.db.exceptions.InternalAdapterException;
+import com.blobcity.db.metrics.LatencyHistogram;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executes a read-only request with a hedge: the first attempt is sent to one node and, if it has not answered within
+ * the hedge delay, a second attempt is sent to another node. The first successful response wins and the other attempt
+ * is aborted. A first attempt that fails early is hedged immediately, so that hedging also covers failover.
+ *
+ * The hedge delay is the configured percentile of recently observed latencies of the query type. Latencies are kept
+ * in two alternating histograms so that the estimate follows changes in cluster behaviour.
+ *
+ * @author Prikshit Kumar
+ */
+class HedgedRequest {
+
+    private static final long HISTOGRAM_ROTATION_MILLIS = 60000;
+    private static final Map<QueryType, LatencyWindow> latencies = createLatencyWindows();
+
+    private final NodeBalancer balancer;
+    private final NodeBalancer.Route route;
+    private final ClusterNode first;
+    private final QueryType queryType;
+    private final String service;
+    private final String postParams;
+    private final Map<String, String> headers;
+    private final Deadline deadline;
+    private final CompletionService<DbQueryResponse> completionService = new ExecutorCompletionService<DbQueryResponse>(AdapterThreads.workers());
+    private final List<ClusterNode> triedNodes = new ArrayList<ClusterNode>(2);
+    private final List<RequestHandle> handles = new ArrayList<RequestHandle>(2);
+
+    private HedgedRequest(final NodeBalancer balancer, final NodeBalancer.Route route, final ClusterNode first, final QueryType queryType,
+            final String service, final String postParams, final Map<String, String> headers) {
+        this.balancer = balancer;
+        this.route = route;
+        this.first = first;
+        this.queryType = queryType;
+        this.service = service;
+        this.postParams = postParams;
+        this.headers = headers;
+        this.deadline = Deadline.current();
+    }
+
+    /**
+     * @return {@code true} if requests of this type to these nodes should be hedged
+     */
+    static boolean isApplicable(final QueryType queryType, final NodeBalancer balancer) {
+        return queryType.isReadOnly() && balancer.size() > 1 && AdapterConfig.getHedgingConfig() != null;
+    }
+
+    /**
+     * @param route route of the first attempt; the hedge may go to any other node
+     * @param first node to send the first attempt to, or {@code null} to route it by {@code route}
+     * @param headers HTTP headers to send along with each attempt, or {@code null}
+     */
+    static DbQueryResponse execute(final NodeBalancer balancer, final NodeBalancer.Route route, final ClusterNode first, final QueryType queryType,
+            final String service, final String postParams, final Map<String, String> headers) {
+        return new HedgedRequest(balancer, route, first, queryType, service, postParams, headers).execute();
+    }
+
+    /**
+     * Records the latency of a successful read, from which hedge delays are derived
+     */
+    static void recordLatency(final QueryType queryType, final long durationNanos) {
+        final LatencyWindow window = latencies.get(queryType);
+        if (window != null && AdapterConfig.getHedgingConfig() != null) {
+            window.record(durationNanos);
+        }
+    }
+
+    private DbQueryResponse execute() {
+        final HedgingConfig config = AdapterConfig.getHedgingConfig();
+        final long hedgeDelayNanos = latencies.get(queryType).hedgeDelayNanos(config);
+        boolean hedged = false;
+        int pending = send() ? 1 : 0;
+        RuntimeException failure = new InternalAdapterException("No database node available to send the request to");
+
+        try {
+            while (pending > 0) {
+                final Future<DbQueryResponse> completed = hedged ? awaitNext(-1) : awaitNext(hedgeDelayNanos);
+                if (completed == null) {
+                    if (hedged) {
+                        throw new DeadlineExceededException("Deadline for the operation expired while waiting for the database");
+                    }
+                    hedged = true;
+                    pending += send() ? 1 : 0;
+                    continue;
+                }
+
+                pending--;
+                try {
+                    return completed.get();
+                } catch (ExecutionException ex) {
+                    failure = ex.getCause() instanceof RuntimeException ? (RuntimeException) ex.getCause() : new InternalAdapterException(ex.getCause());
+                    if (!hedged && failure instanceof InternalAdapterException
+                            && QueryExecuter.isSafeToRetry(queryType, (InternalAdapterException) failure)) {
+                        hedged = true;
+                        pending += send() ? 1 : 0;
+                    }
+                }
+            }
+
+            throw failure;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InternalAdapterException("Interrupted while waiting for the database", ex);
+        } finally {
+            for (final RequestHandle handle : handles) {
+                handle.cancel();
+            }
+        }
+    }
+
+    /**
+     * Sends an attempt to a node not yet tried for this request
+     *
+     * @return {@code false} if every node has already been tried
+     */
+    private boolean send() {
+        final ClusterNode node = triedNodes.isEmpty() && first != null && first.isAvailable()
+                ? first : balancer.select(triedNodes.isEmpty() ? route : NodeBalancer.Route.BALANCED, triedNodes);
+        if (node == null) {
+            return false;
+        }
+
+        final RequestHandle handle = new RequestHandle();
+        triedNodes.add(node);
+        handles.add(handle);
+        completionService.submit(new Callable<DbQueryResponse>() {
+            @Override
+            public DbQueryResponse call() {
+                final Deadline previous = Deadline.attach(deadline);
+                try {
+                    return QueryExecuter.executeOnNode(node, queryType, service, postParams, headers, handle);
+                } finally {
+                    Deadline.restore(previous);
+                }
+            }
+        });
+        return true;
+    }
+
+    /**
+     * @param timeoutNanos maximum time to wait, or a negative value to wait as long as the deadline allows
+     * @return the next completed attempt, or {@code null} if none completed in time
+     */
+    private Future<DbQueryResponse> awaitNext(final long timeoutNanos) throws InterruptedException {
+        long waitNanos = timeoutNanos;
+        if (deadline != null) {
+            final long remainingNanos = deadline.remaining(TimeUnit.NANOSECONDS);
+            waitNanos = waitNanos < 0 ? remainingNanos : Math.min(waitNanos, remainingNanos);
+        }
+        return waitNanos < 0 ? completionService.take() : completionService.poll(waitNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private static Map<QueryType, LatencyWindow> createLatencyWindows() {
+        final Map<QueryType, LatencyWindow> windows = new EnumMap<QueryType, LatencyWindow>(QueryType.class);
+        for (final QueryType queryType : QueryType.values()) {
+            if (queryType.isReadOnly()) {
+                windows.put(queryType, new LatencyWindow());
+            }
+        }
+        return windows;
+    }
+
+    /**
+     * Latencies of the current and the previous rotation period of one query type
+     */
+    private static class LatencyWindow {
+
+        private volatile LatencyHistogram current = new LatencyHistogram();
+        private volatile LatencyHistogram previous = new LatencyHistogram();
+        private volatile long rotateAt = System.currentTimeMillis() + HISTOGRAM_ROTATION_MILLIS;
+
+        void record(final long durationNanos) {
+            if (System.currentTimeMillis() >= rotateAt) {
+                rotate();
+            }
+            current.record(durationNanos);
+        }
+
+        private synchronized void rotate() {
+            final long now = System.currentTimeMillis();
+            if (now >= rotateAt) {
+                previous = current;
+                current = new LatencyHistogram();
+                rotateAt = now + HISTOGRAM_ROTATION_MILLIS;
+            }
+        }
+
+        long hedgeDelayNanos(final HedgingConfig config) {
+            LatencyHistogram histogram = current;
+            if (histogram.getCount() < config.getMinSamples()) {
+                histogram = previous;
+            }
+
+            final long delayNanos = histogram.getCount() < config.getMinSamples()
+                    ? TimeUnit.MILLISECONDS.toNanos(config.getInitialDelayMillis())
+                    : histogram.getValueAtPercentile(config.getPercentile());
+            return Math.max(delayNanos, TimeUnit.MILLISECONDS.toNanos(config.getMinDelayMillis()));
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2016, BlobCity iSolutions Pvt. Ltd.
+ */
+package com.blobcity.db;
+
+import com.blobcity.db.exceptions.InternalAdapterException;
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import java.util.List;
+
+/**
+ * Position of a request in the list of registered {@link RequestInterceptor}s
+ *
+ * @author Prikshit Kumar
+ */
+final class InterceptorChain implements RequestInterceptor.Chain {
+
+    private static final Gson gson = new Gson();
+    private static final String MASKED_PASSWORD = "****";
+
+    private final List<RequestInterceptor> interceptors;
+    private final int index;
+    private final DbQueryRequest request;
+    private final String service;
+
+    InterceptorChain(final List<RequestInterceptor> interceptors, final int index, final DbQueryRequest request, final String service) {
+        this.interceptors = interceptors;
+        this.index = index;
+        this.request = request;
+        this.service = service;
+    }
+
+    @Override
+    public QueryType getQueryType() {
+        return request.getQueryType();
+    }
+
+    @Override
+    public String getDs() {
+        return request.getDs();
+    }
+
+    @Override
+    public String getCollection() {
+        return request.getCollection();
+    }
+
+    @Override
+    public String getUsername() {
+        return request.getCredentials().getUsername();
+    }
+
+    @Override
+    public List<String> getServiceAddresses() {
+        return request.getCredentials().getServiceAddresses();
+    }
+
+    @Override
+    public String getQuery() {
+        final String query = request.getQuery();
+        if (!query.contains("\"" + QueryConstants.PASS + "\"")) {
+            return query;
+        }
+
+        try {
+            final JsonElement queryJson = gson.fromJson(query, JsonElement.class);
+            if (queryJson.isJsonObject() && queryJson.getAsJsonObject().has(QueryConstants.PASS)) {
+                queryJson.getAsJsonObject().addProperty(QueryConstants.PASS, MASKED_PASSWORD);
+            }
+            return queryJson.toString();
+        } catch (JsonParseException ex) {
+            return query;
+        }
+    }
+
+    @Override
+    public void setHeader(final String name, final String value) {
+        if (name == null || name.isEmpty()) {
+            throw new InternalAdapterException("header name must be specified");
+        }
+        request.setHeader(name, value);
+    }
+
+    @Override
+    public DbQueryResponse proceed() {
+        if (index == interceptors.size()) {
+            return QueryExecuter.proceed(request, service);
+        }
+
+        final RequestInterceptor interceptor = interceptors.get(index);
+        final DbQueryResponse response = interceptor.intercept(new InterceptorChain(interceptors, index + 1, request, service));
+        if (response == null) {
+            throw new InternalAdapterException("Request interceptor " + interceptor.getClass().getName() + " returned no response");
+        }
+        return response;
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright 2016, BlobCity iSolutions Pvt. Ltd.
+ */
+package com.blobcity.db;
+
+import com.blobcity.db.config.Credentials;
+import com.blobcity.db.exceptions.InternalAdapterException;
+import com.blobcity.db.search.Order;
+import com.blobcity.db.search.OrderElement;
+import com.blobcity.db.search.Query;
+import com.blobcity.db.search.SearchParam;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonPrimitive;
+import java.io.Closeable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Iterates over the primary keys of a collection in ascending order, fetching them in pages of a fixed size. Pages
+ * are fetched on demand, each page being requested in the background when the previous one is handed out, and
+ * follow on from the last key of the previous page rather than from an offset, so that keys added or removed while
+ * iterating do not shift later pages.
+ *
+ * Keys are decoded into the requested type: {@link String}, {@link Long}, {@link Integer}, {@link Short},
+ * {@link Byte}, {@link Double}, {@link Float}, {@link BigDecimal} or {@link BigInteger}. Keys requested as
+ * {@link Object} are decoded to {@link Long} if integral, {@link Double} if otherwise numeric and {@link String}
+ * otherwise.
+ *
+ * Obtain an instance through {@link Db#keys(Class, Class)}. An iterator should be closed when abandoned before its
+ * end, to cancel the fetch of the next page. Instances are not thread-safe.
+ *
+ * @param <K> type of the keys
+ * @author Prikshit Kumar
+ */
+public final class KeyIterator<K> implements Iterator<K>, Closeable {
+
+    private static final Set<Class<?>> KEY_TYPES = new HashSet<Class<?>>(Arrays.<Class<?>>asList(String.class, Long.class, Integer.class,
+            Short.class, Byte.class, Double.class, Float.class, BigDecimal.class, BigInteger.class, Object.class));
+
+    private final Credentials credentials;
+    private final Class<? extends Db> clazz;
+    private final String pkColumn;
+    private final Class<K> keyType;
+    private final int pageSize;
+    private List<K> page = Collections.emptyList();
+    private int index;
+    private Future<List<K>> nextPage;
+    private boolean started;
+    private boolean closed;
+
+    KeyIterator(final Credentials credentials, final Class<? extends Db> clazz, final String pkColumn, final Class<K> keyType, final int pageSize) {
+        this.credentials = credentials;
+        this.clazz = clazz;
+        this.pkColumn = pkColumn;
+        this.keyType = keyType;
+        this.pageSize = pageSize;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (closed) {
+            return false;
+        }
+        if (!started) {
+            started = true;
+            nextPage = fetch(null);
+        }
+
+        while (index == page.size()) {
+            if (nextPage == null) {
+                return false;
+            }
+
+            page = await(nextPage);
+            index = 0;
+            // a short page is the last one
+            nextPage = page.size() == pageSize ? fetch(page.get(page.size() - 1)) : null;
+        }
+        return true;
+    }
+
+    @Override
+    public K next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return page.get(index++);
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Stops the iteration, cancelling the fetch of the next page if any
+     */
+    @Override
+    public void close() {
+        closed = true;
+        page = Collections.emptyList();
+        if (nextPage != null) {
+            nextPage.cancel(true);
+            nextPage = null;
+        }
+    }
+
+    private Future<List<K>> fetch(final K after) {
+        final String sql = pageSql(clazz, pkColumn, after, pageSize);
+        final String ds = Db.getDs(clazz);
+        final String collection = Db.getCollection(clazz);
+        final Deadline deadline = Deadline.current();
+
+        return AdapterThreads.workers().submit(new Callable<List<K>>() {
+            @Override
+            public List<K> call() {
+                final Deadline previous = Deadline.attach(deadline);
+                try {
+                    final DbQueryResponse response = QueryExecuter.executeSql(DbQueryRequest.create(credentials, QueryType.SEARCH, ds, collection, sql));
+                    if (!response.isSuccessful()) {
+                        throw response.createException();
+                    }
+
+                    final JsonArray records = response.getPayload().getAsJsonArray();
+                    final List<K> keys = new ArrayList<K>(records.size());
+                    for (final JsonElement record : records) {
+                        keys.add(decode(record.getAsJsonObject().get(pkColumn), keyType));
+                    }
+                    return keys;
+                } finally {
+                    Deadline.restore(previous);
+                }
+            }
+        });
+    }
+
+    /**
+     * @return the SQL selecting the page of keys that follows {@code after}, from the first key if {@code null}
+     */
+    private static <T extends Db> String pageSql(final Class<T> clazz, final String pkColumn, final Object after, final int pageSize) {
+        @SuppressWarnings("unchecked") // the factory methods of Query return the raw type
+        final Query<T> query = Query.select(pkColumn);
+        query.from(clazz);
+        if (after != null) {
+            query.where(SearchParam.create(pkColumn).gt(after));
+        }
+        query.orderBy(OrderElement.create(pkColumn, Order.ASC)).limit(pageSize);
+        return query.asSql();
+    }
+
+    private List<K> await(final Future<List<K>> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException ex) {
+            throw ex.getCause() instanceof RuntimeException ? (RuntimeException) ex.getCause() : new InternalAdapterException(ex.getCause());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InternalAdapterException("Interrupted while waiting for a page of keys", ex);
+        }
+    }
+
+    /**
+     * @return {@code true} if keys can be decoded as {@code keyType}
+     */
+    static boolean isSupported(final Class<?> keyType) {
+        return KEY_TYPES.contains(keyType);
+    }
+
+    /**
+     * Decodes a primary key returned by the database
+     *
+     * @param value the key as returned by the database
+     * @param keyType one of the types supported by {@link KeyIterator}
+     * @return the key as an instance of {@code keyType}
+     */
+    static <K> K decode(final JsonElement value, final Class<K> keyType) {
+        if (value == null || !value.isJsonPrimitive()) {
+            throw new InternalAdapterException("Primary key value " + value + " is not a single value");
+        }
+
+        final JsonPrimitive primitive = value.getAsJsonPrimitive();
+        final Object key;
+        try {
+            if (keyType == String.class) {
+                key = primitive.getAsString();
+            } else if (keyType == Long.class) {
+                key = primitive.getAsLong();
+            } else if (keyType == Integer.class) {
+                key = primitive.getAsInt();
+            } else if (keyType == Short.class) {
+                key = primitive.getAsShort();
+            } else if (keyType == Byte.class) {
+                key = primitive.getAsByte();
+            } else if (keyType == Double.class) {
+                key = primitive.getAsDouble();
+            } else if (keyType == Float.class) {
+                key = primitive.getAsFloat();
+            } else if (keyType == BigDecimal.class) {
+                key = primitive.getAsBigDecimal();
+            } else if (keyType == BigInteger.class) {
+                key = primitive.getAsBigInteger();
+            } else if (keyType == Object.class) {
+                key = decodeUntyped(primitive);
+            } else {
+                throw new InternalAdapterException("Primary keys cannot be decoded as " + keyType.getName());
+            }
+        } catch (NumberFormatException ex) {
+            throw new InternalAdapterException("Primary key value " + value + " is not a " + keyType.getSimpleName(), ex);
+        }
+        return keyType.cast(key);
+    }
+
+    private static Object decodeUntyped(final JsonPrimitive primitive) {
+        if (!primitive.isNumber()) {
+            return primitive.getAsString();
+        }
+
+        final String number = primitive.getAsString();
+        if (number.indexOf('.') < 0 && number.indexOf('e') < 0 && number.indexOf('E') < 0) {
+            try {
+                return Long.parseLong(number);
+            } catch (NumberFormatException ex) {
+                // beyond the range of long
+            }
+        }
+        return primitive.getAsDouble();
+    }
+}
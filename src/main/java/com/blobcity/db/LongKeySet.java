@@ -0,0 +1,212 @@
+/*
+ * Copyright 2016, BlobCity iSolutions Pvt. Ltd.
+ */
+package com.blobcity.db;
+
+import com.blobcity.db.exceptions.InternalAdapterException;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+/**
+ * An immutable set of numeric primary keys, held as a sorted array of {@code long} values without boxing. Sets of
+ * keys returned by different operations can be combined on the client with {@link #intersect(LongKeySet)},
+ * {@link #union(LongKeySet)} and {@link #difference(LongKeySet)}, each of which takes time linear in the sizes of
+ * both sets.
+ *
+ * @author Prikshit Kumar
+ */
+public final class LongKeySet {
+
+    private static final LongKeySet EMPTY = new LongKeySet(new long[0]);
+
+    // sorted and free of duplicates
+    private final long[] keys;
+
+    private LongKeySet(final long[] keys) {
+        this.keys = keys;
+    }
+
+    /**
+     * @param keys the keys of the set, in any order and possibly repeated
+     * @return a set of the given keys
+     */
+    public static LongKeySet of(final long... keys) {
+        return fromUnsorted(keys.clone(), keys.length);
+    }
+
+    public static LongKeySet empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Creates a set from an array the set may take ownership of
+     *
+     * @param keys array holding the keys in its first {@code count} elements, in any order
+     * @param count number of keys in {@code keys}
+     */
+    static LongKeySet fromUnsorted(final long[] keys, final int count) {
+        Arrays.sort(keys, 0, count);
+        int size = 0;
+        for (int i = 0; i < count; i++) {
+            if (size == 0 || keys[i] != keys[size - 1]) {
+                keys[size++] = keys[i];
+            }
+        }
+        return size == 0 ? EMPTY : new LongKeySet(size == keys.length ? keys : Arrays.copyOf(keys, size));
+    }
+
+    /**
+     * Creates a set from a JSON array of keys as returned by the database
+     *
+     * @throws InternalAdapterException if a key is not an integral number
+     */
+    static LongKeySet fromJson(final JsonArray keysArray) {
+        final long[] keys = new long[keysArray.size()];
+        int count = 0;
+        for (final JsonElement key : keysArray) {
+            keys[count++] = toLong(key);
+        }
+        return fromUnsorted(keys, count);
+    }
+
+    private static long toLong(final JsonElement key) {
+        if (key.isJsonPrimitive()) {
+            final String text = key.getAsString();
+            try {
+                return Long.parseLong(text);
+            } catch (NumberFormatException ex) {
+                // possibly written in decimal or exponent notation, such as 1.0 or 1E3
+            }
+            try {
+                return new BigDecimal(text).longValueExact();
+            } catch (NumberFormatException ex) {
+                // not a number
+            } catch (ArithmeticException ex) {
+                // fractional or out of range
+            }
+        }
+        throw new InternalAdapterException("Key " + key + " is not an integral number within the range of long");
+    }
+
+    public int size() {
+        return keys.length;
+    }
+
+    public boolean isEmpty() {
+        return keys.length == 0;
+    }
+
+    public boolean contains(final long key) {
+        return Arrays.binarySearch(keys, key) >= 0;
+    }
+
+    /**
+     * @param index position of the key in ascending order, from 0 to {@link #size()} - 1
+     * @return the key at {@code index}
+     */
+    public long get(final int index) {
+        if (index < 0 || index >= keys.length) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + keys.length);
+        }
+        return keys[index];
+    }
+
+    /**
+     * @return a copy of the keys in ascending order
+     */
+    public long[] toArray() {
+        return keys.clone();
+    }
+
+    /**
+     * @return a set of the keys present in both this set and {@code other}
+     */
+    public LongKeySet intersect(final LongKeySet other) {
+        final long[] result = new long[Math.min(keys.length, other.keys.length)];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < keys.length && j < other.keys.length) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                result[size++] = keys[i];
+                i++;
+                j++;
+            }
+        }
+        return ofSorted(result, size);
+    }
+
+    /**
+     * @return a set of the keys present in this set, {@code other} or both
+     */
+    public LongKeySet union(final LongKeySet other) {
+        final long[] result = new long[keys.length + other.keys.length];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < keys.length || j < other.keys.length) {
+            if (j == other.keys.length || (i < keys.length && keys[i] < other.keys[j])) {
+                result[size++] = keys[i++];
+            } else if (i == keys.length || keys[i] > other.keys[j]) {
+                result[size++] = other.keys[j++];
+            } else {
+                result[size++] = keys[i];
+                i++;
+                j++;
+            }
+        }
+        return ofSorted(result, size);
+    }
+
+    /**
+     * @return a set of the keys present in this set but not in {@code other}
+     */
+    public LongKeySet difference(final LongKeySet other) {
+        final long[] result = new long[keys.length];
+        int size = 0;
+        int j = 0;
+        for (final long key : keys) {
+            while (j < other.keys.length && other.keys[j] < key) {
+                j++;
+            }
+            if (j == other.keys.length || other.keys[j] != key) {
+                result[size++] = key;
+            }
+        }
+        return ofSorted(result, size);
+    }
+
+    /**
+     * @param sorted keys already sorted and free of duplicates in the first {@code size} elements
+     */
+    private static LongKeySet ofSorted(final long[] sorted, final int size) {
+        if (size == 0) {
+            return EMPTY;
+        }
+        return new LongKeySet(size == sorted.length ? sorted : Arrays.copyOf(sorted, size));
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        return obj instanceof LongKeySet && Arrays.equals(keys, ((LongKeySet) obj).keys);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(keys);
+    }
+
+    @Override
+    public String toString() {
+        if (keys.length <= 20) {
+            return "LongKeySet" + Arrays.toString(keys);
+        }
+        return "LongKeySet{size=" + keys.length + ", first=" + keys[0] + ", last=" + keys[keys.length - 1] + '}';
+    }
+}
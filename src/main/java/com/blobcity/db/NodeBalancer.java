@@ -0,0 +1,140 @@
+/*
+ * Copyright 2016, BlobCity iSolutions Pvt. Ltd.
+ */
+package com.blobcity.db;
+
+import com.blobcity.db.config.AdapterConfig;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Picks the node of a cluster to which a request is sent, according to the {@link Route} of the request. Ejected nodes
+ * and nodes behind an open circuit breaker are skipped; if no node is available at all, the node due to come back
+ * soonest is used rather than failing without trying.
+ *
+ * @author Prikshit Kumar
+ */
+class NodeBalancer {
+
+    enum Route {
+        /* Any node, chosen by the BalancingStrategy configured in AdapterConfig */
+        BALANCED,
+        /* The coordinator (first) node while it is available, otherwise as BALANCED */
+        COORDINATOR,
+        /* The node with the lowest observed latency */
+        NEAREST
+    }
+
+    private static final ConcurrentMap<List<String>, NodeBalancer> balancers = new ConcurrentHashMap<List<String>, NodeBalancer>();
+    private static final Random random = new Random();
+
+    private final ClusterNode[] nodes;
+    private final AtomicInteger nextIndex = new AtomicInteger();
+
+    private NodeBalancer(final List<String> addresses) {
+        this.nodes = new ClusterNode[addresses.size()];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = ClusterNode.forAddress(addresses.get(i));
+        }
+    }
+
+    /**
+     * @param addresses node addresses as held by {@link com.blobcity.db.config.Credentials}, coordinator first
+     * @return the balancer shared by all credentials naming the same nodes
+     */
+    static NodeBalancer forAddresses(final List<String> addresses) {
+        final NodeBalancer balancer = balancers.get(addresses);
+        if (balancer != null) {
+            return balancer;
+        }
+
+        final NodeBalancer created = new NodeBalancer(addresses);
+        final NodeBalancer existing = balancers.putIfAbsent(addresses, created);
+        return existing != null ? existing : created;
+    }
+
+    int size() {
+        return nodes.length;
+    }
+
+    ClusterNode getCoordinator() {
+        return nodes[0];
+    }
+
+    /**
+     * @param route how the node is to be chosen
+     * @param excluded nodes already tried for the current request, may be {@code null}
+     * @return the node to send the request to, or {@code null} if every node is excluded
+     */
+    ClusterNode select(final Route route, final Collection<ClusterNode> excluded) {
+        if (nodes.length == 1) {
+            return excluded != null && excluded.contains(nodes[0]) ? null : nodes[0];
+        }
+
+        if (route == Route.COORDINATOR && (excluded == null || !excluded.contains(nodes[0])) && nodes[0].isAvailable()) {
+            return nodes[0];
+        }
+
+        final ClusterNode[] candidates = new ClusterNode[nodes.length];
+        int count = 0;
+        ClusterNode fallback = null;
+        for (final ClusterNode node : nodes) {
+            if (excluded != null && excluded.contains(node)) {
+                continue;
+            }
+            if (node.isAvailable()) {
+                candidates[count++] = node;
+            } else if (fallback == null || node.getEjectedUntil() < fallback.getEjectedUntil()) {
+                fallback = node;
+            }
+        }
+
+        if (count == 0) {
+            return fallback;
+        }
+
+        return route == Route.NEAREST ? nearest(candidates, count) : pick(candidates, count);
+    }
+
+    /**
+     * Nodes without any latency measured yet are preferred, so that every node gets measured
+     */
+    private ClusterNode nearest(final ClusterNode[] candidates, final int count) {
+        ClusterNode nearest = candidates[0];
+        for (int i = 1; i < count; i++) {
+            if (candidates[i].getLatencyEwmaNanos() < nearest.getLatencyEwmaNanos()) {
+                nearest = candidates[i];
+            }
+        }
+        return nearest;
+    }
+
+    private ClusterNode pick(final ClusterNode[] candidates, final int count) {
+        if (count == 1) {
+            return candidates[0];
+        }
+
+        final int offset = (nextIndex.getAndIncrement() & Integer.MAX_VALUE) % count;
+        switch (AdapterConfig.getBalancingStrategy()) {
+            case LEAST_OUTSTANDING_REQUESTS:
+                ClusterNode least = null;
+                for (int i = 0; i < count; i++) {
+                    final ClusterNode node = candidates[(offset + i) % count];
+                    if (least == null || node.getOutstandingRequests() < least.getOutstandingRequests()) {
+                        least = node;
+                    }
+                }
+                return least;
+            case POWER_OF_TWO_CHOICES:
+                final int first = random.nextInt(count);
+                final int second = (first + 1 + random.nextInt(count - 1)) % count;
+                return candidates[first].getOutstandingRequests() <= candidates[second].getOutstandingRequests() ? candidates[first] : candidates[second];
+            default:
+                return candidates[offset];
+        }
+    }
+}
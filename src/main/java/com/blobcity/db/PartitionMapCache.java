@@ -0,0 +1,110 @@
+/*
+ * Copyright 2016, BlobCity iSolutions Pvt. Ltd.
+ */
+package com.blobcity.db;
+
+import com.blobcity.db.config.Credentials;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Caches the partition maps of {@link com.blobcity.db.enums.ReplicationType#DISTRIBUTED} collections, so that
+ * requests for a single record can be sent straight to the node owning it instead of being forwarded inside the
+ * cluster.
+ *
+ * A record belongs to bucket {@code (pk.hashCode() & 0x7fffffff) % buckets}, where {@code pk} is the string form of
+ * its primary key, as on the database. Maps are fetched in the background in the same way as
+ * {@link CollectionMetadataCache} fetches metadata; until a map is known requests are routed as usual. A map is
+ * dropped and fetched again when a node reports that it does not own a record.
+ *
+ * @author Prikshit Kumar
+ */
+class PartitionMapCache {
+
+    private static final long KNOWN_TTL_MILLIS = 5 * 60 * 1000;
+    private static final long UNKNOWN_TTL_MILLIS = 60 * 1000;
+
+    // keyed on ds.collection, as in CollectionStore
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+    private PartitionMapCache() {
+    }
+
+    public static PartitionMapCache getInstance() {
+        return PartitionMapCacheHolder.INSTANCE;
+    }
+
+    private static class PartitionMapCacheHolder {
+
+        private static final PartitionMapCache INSTANCE = new PartitionMapCache();
+    }
+
+    /**
+     * @param credentials credentials to fetch the partition map with, if not cached
+     * @param ds the datastore of the collection
+     * @param collection name of the collection
+     * @param primaryKey string form of the primary key of the record
+     * @return address of the node owning the record, or {@code null} if not (yet) known
+     */
+    String getOwner(final Credentials credentials, final String ds, final String collection, final String primaryKey) {
+        final String key = ds + "." + collection;
+        Entry entry = entries.get(key);
+        if (entry == null || (!entry.fetching && System.currentTimeMillis() >= entry.expiresAt)) {
+            final Entry fetching = new Entry(entry != null ? entry.owners : null, 0, true);
+            if (entry == null ? entries.putIfAbsent(key, fetching) == null : entries.replace(key, entry, fetching)) {
+                fetchInBackground(credentials, ds, collection, key, fetching);
+            }
+            entry = fetching;
+        }
+
+        final String[] owners = entry.owners;
+        if (owners == null || owners.length == 0) {
+            return null;
+        }
+        return owners[(primaryKey.hashCode() & 0x7fffffff) % owners.length];
+    }
+
+    /**
+     * Drops the partition map of a collection, after ownership of its records was found to have moved
+     */
+    void invalidate(final String ds, final String collection) {
+        entries.remove(ds + "." + collection);
+    }
+
+    private void fetchInBackground(final Credentials credentials, final String ds, final String collection, final String key, final Entry fetching) {
+        try {
+            AdapterThreads.workers().execute(new Runnable() {
+                @Override
+                public void run() {
+                    String[] owners = null;
+                    try {
+                        final List<String> ownerList = Db.getPartitionOwners(credentials, ds, collection);
+                        owners = ownerList.toArray(new String[ownerList.size()]);
+                    } catch (RuntimeException ex) {
+                        // map unavailable; requests keep being forwarded by the node they are sent to
+                    }
+
+                    final long ttl = owners != null ? KNOWN_TTL_MILLIS : UNKNOWN_TTL_MILLIS;
+                    entries.replace(key, fetching, new Entry(owners, System.currentTimeMillis() + ttl, false));
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            entries.remove(key, fetching);
+        }
+    }
+
+    private static class Entry {
+
+        private final String[] owners;
+        private final long expiresAt;
+        private final boolean fetching;
+
+        Entry(final String[] owners, final long expiresAt, final boolean fetching) {
+            this.owners = owners;
+            this.expiresAt = expiresAt;
+            this.fetching = fetching;
+        }
+    }
+}
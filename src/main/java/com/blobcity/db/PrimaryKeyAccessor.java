@@ -0,0 +1,107 @@
+/*
+ * Copyright 2016, BlobCity iSolutions Pvt. Ltd.
+ */
+package com.blobcity.db;
+
+import com.blobcity.db.annotations.Primary;
+import com.blobcity.db.exceptions.InternalAdapterException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Reads and writes the primary key of the entities of one class. The {@link Primary} field is looked up once per class
+ * and kept accessible, so that neither annotations nor the structure of the collection are scanned per entity, and
+ * no lock is taken to toggle the accessibility of the field.
+ *
+ * @author Prikshit Kumar
+ */
+final class PrimaryKeyAccessor {
+
+    private static final ConcurrentMap<Class<?>, PrimaryKeyAccessor> accessors = new ConcurrentHashMap<Class<?>, PrimaryKeyAccessor>();
+
+    private final Class<?> clazz;
+    private final Field field;
+
+    private PrimaryKeyAccessor(final Class<?> clazz, final Field field) {
+        this.clazz = clazz;
+        this.field = field;
+    }
+
+    /**
+     * @return the accessor of the primary key of an entity class
+     * @throws InternalAdapterException if the class has more than one {@link Primary} field
+     */
+    static PrimaryKeyAccessor forClass(final Class<? extends Db> clazz) {
+        PrimaryKeyAccessor accessor = accessors.get(clazz);
+        if (accessor == null) {
+            // a race only resolves the same field twice
+            accessor = new PrimaryKeyAccessor(clazz, findPkField(clazz));
+            final PrimaryKeyAccessor existing = accessors.putIfAbsent(clazz, accessor);
+            if (existing != null) {
+                accessor = existing;
+            }
+        }
+        return accessor;
+    }
+
+    /**
+     * @return the primary key of the entity, {@code null} if it has none or its class has no {@link Primary} field
+     */
+    Object get(final Db entity) {
+        if (field == null) {
+            return null;
+        }
+
+        try {
+            return field.get(entity);
+        } catch (IllegalAccessException ex) {
+            throw new InternalAdapterException("Unable to read primary key field \"" + clazz.getSimpleName() + "." + field.getName() + "\"", ex);
+        }
+    }
+
+    /**
+     * @throws InternalAdapterException if the class has no {@link Primary} field or the value cannot be assigned to it
+     */
+    void set(final Db entity, final Object pk) {
+        if (field == null) {
+            throw new InternalAdapterException("Missing mandatory @Primary annotation for entity class " + clazz.getName());
+        }
+
+        try {
+            field.set(entity, pk);
+        } catch (IllegalArgumentException ex) {
+            throw new InternalAdapterException("Unable to set data into field \"" + clazz.getSimpleName() + "." + field.getName() + "\"", ex);
+        } catch (IllegalAccessException ex) {
+            throw new InternalAdapterException("Unable to set data into field \"" + clazz.getSimpleName() + "." + field.getName() + "\"", ex);
+        }
+    }
+
+    /**
+     * Finds the primary key field as {@link CollectionStore} does
+     */
+    private static Field findPkField(final Class<?> clazz) {
+        Field primaryKeyField = null;
+        for (final Field field : clazz.getDeclaredFields()) {
+            if (Modifier.isTransient(field.getModifiers()) || Modifier.isStatic(field.getModifiers())) {
+                continue;
+            }
+
+            if (field.getAnnotation(Primary.class) != null) {
+                if (primaryKeyField != null) {
+                    throw new InternalAdapterException("Repetition of primary key annotation in entity class " + clazz.getName()
+                            + ". Repeat value found for fields " + primaryKeyField.getName() + " and " + field.getName()
+                            + ". The @Primary annotation may be applied to only one field in an entity class");
+                }
+                primaryKeyField = field;
+            }
+        }
+
+        if (primaryKeyField != null) {
+            // a copy private to this accessor, so that other users of the field are not affected
+            primaryKeyField.setAccessible(true);
+        }
+        return primaryKeyField;
+    }
+}
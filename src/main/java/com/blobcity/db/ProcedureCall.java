@@ -0,0 +1,49 @@
+/*
+ * Copyright 2016, BlobCity iSolutions Pvt. Ltd.
+ */
+package com.blobcity.db;
+
+import com.blobcity.db.exceptions.InternalAdapterException;
+import java.util.Arrays;
+
+/**
+ * An invocation of a stored procedure, to be sent along with others through
+ * {@link Db#invokeProcedureBatch(Class, java.util.List)}. Instances are immutable.
+ *
+ * @author Prikshit Kumar
+ */
+public final class ProcedureCall {
+
+    private final String name;
+    private final Object[] params;
+
+    private ProcedureCall(final String name, final Object[] params) {
+        this.name = name;
+        this.params = params;
+    }
+
+    /**
+     * @param storedProcedureName name of the stored procedure
+     * @param params parameters of the invocation
+     * @return a new {@link ProcedureCall}
+     */
+    public static ProcedureCall of(final String storedProcedureName, final Object... params) {
+        if (storedProcedureName == null || storedProcedureName.isEmpty()) {
+            throw new InternalAdapterException("stored procedure name must be specified");
+        }
+        return new ProcedureCall(storedProcedureName, params != null ? params.clone() : new Object[0]);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    Object[] getParams() {
+        return params;
+    }
+
+    @Override
+    public String toString() {
+        return "ProcedureCall{" + "name=" + name + ", params=" + Arrays.toString(params) + '}';
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2016, BlobCity iSolutions Pvt. Ltd.
+ */
+package com.blobcity.db;
+
+import com.blobcity.db.exceptions.InternalAdapterException;
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates over the output of a stored procedure, decoding one element at a time from the body of the response as it
+ * arrives. A procedure returning an array has each of its elements decoded in turn, with only one element held in
+ * memory at a time. A procedure returning any other value has that value as its only element.
+ *
+ * Output sent as JSON text inside a string, as returned by procedures to {@link Db#invokeProcedure}, is still
+ * supported but has to be received whole before its elements are decoded.
+ *
+ * The cursor releases its connection when the last element has been read or reading fails. A cursor abandoned before
+ * its end must be closed, which drops the connection. Instances are not thread-safe.
+ *
+ * @param <U> type of the elements
+ * @author Prikshit Kumar
+ */
+public final class ProcedureCursor<U> implements Iterator<U>, Closeable {
+
+    private final Class<U> clazz;
+    private final Gson gson = new Gson();
+    private final ResponseStream stream;
+    private final Deadline deadline;
+    private JsonReader reader;
+    private boolean open = true;
+    private boolean singleValue;
+    private boolean singleValueRead;
+
+    /**
+     * Reads the response up to the output of the procedure
+     *
+     * @throws com.blobcity.db.exceptions.DbOperationException if the database reports an error
+     */
+    ProcedureCursor(final Class<U> clazz, final ResponseStream stream, final Deadline deadline) {
+        this.clazz = clazz;
+        this.stream = stream;
+        this.deadline = deadline;
+        this.reader = new JsonReader(stream.getReader());
+        try {
+            final JsonToken token = ResponseStream.seekPayload(reader);
+            if (token == JsonToken.STRING) {
+                final JsonElement output = gson.fromJson(reader.nextString(), JsonElement.class);
+                stream.close();
+                if (output == null || output.isJsonNull()) {
+                    position(JsonToken.END_DOCUMENT);
+                } else {
+                    // a strict reader rejects top-level values other than arrays and objects
+                    reader = new JsonReader(new StringReader(output.isJsonArray() ? output.toString() : "[" + output + "]"));
+                    position(reader.peek());
+                }
+            } else if (token != null) {
+                position(token);
+            } else {
+                // no output
+                close();
+            }
+        } catch (IOException ex) {
+            stream.abort();
+            throw QueryExecuter.toAdapterException(ex, deadline);
+        } catch (RuntimeException ex) {
+            stream.abort();
+            throw ex;
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (!open) {
+            return false;
+        }
+
+        try {
+            if (singleValue ? !singleValueRead : reader.hasNext()) {
+                return true;
+            }
+        } catch (IOException ex) {
+            abort();
+            throw QueryExecuter.toAdapterException(ex, deadline);
+        }
+        close();
+        return false;
+    }
+
+    @Override
+    public U next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        try {
+            singleValueRead = singleValue;
+            if (clazz != String.class && reader.peek() == JsonToken.STRING) {
+                return gson.fromJson(reader.nextString(), clazz);
+            }
+            return gson.<U>fromJson(reader, clazz);
+        } catch (IOException ex) {
+            abort();
+            throw QueryExecuter.toAdapterException(ex, deadline);
+        } catch (JsonParseException ex) {
+            abort();
+            if (ex.getCause() instanceof IOException) {
+                throw QueryExecuter.toAdapterException((IOException) ex.getCause(), deadline);
+            }
+            throw new InternalAdapterException("Invalid output received from the stored procedure", ex);
+        } catch (RuntimeException ex) {
+            abort();
+            throw ex;
+        }
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Stops the iteration, dropping the connection if output remains unread
+     */
+    @Override
+    public void close() {
+        if (!open) {
+            return;
+        }
+
+        boolean complete = singleValueRead;
+        if (!singleValue) {
+            try {
+                complete = !reader.hasNext();
+            } catch (IOException ex) {
+                // incomplete
+            }
+        }
+        if (complete) {
+            open = false;
+            stream.close();
+        } else {
+            abort();
+        }
+    }
+
+    private void abort() {
+        open = false;
+        stream.abort();
+    }
+
+    /**
+     * Positions the reader at the first element of the output
+     *
+     * @param token the first token of the output
+     */
+    private void position(final JsonToken token) throws IOException {
+        if (token == JsonToken.BEGIN_ARRAY) {
+            reader.beginArray();
+        } else if (token == JsonToken.NULL || token == JsonToken.END_DOCUMENT) {
+            // no output
+            singleValue = true;
+            singleValueRead = true;
+            close();
+        } else {
+            singleValue = true;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2016, BlobCity iSolutions Pvt. Ltd.
+ */
+package com.blobcity.db;
+
+import com.blobcity.db.exceptions.DbOperationException;
+
+/**
+ * Outcome of one {@link ProcedureCall} of a batch: either the value returned by the stored procedure or the error it
+ * failed with
+ *
+ * @param <U> type of the value returned
+ * @author Prikshit Kumar
+ */
+public final class ProcedureResult<U> {
+
+    private final U value;
+    private final String errorCode;
+    private final String errorCause;
+    private final boolean successful;
+
+    private ProcedureResult(final U value, final String errorCode, final String errorCause, final boolean successful) {
+        this.value = value;
+        this.errorCode = errorCode;
+        this.errorCause = errorCause;
+        this.successful = successful;
+    }
+
+    static <U> ProcedureResult<U> success(final U value) {
+        return new ProcedureResult<U>(value, null, null, true);
+    }
+
+    static <U> ProcedureResult<U> failure(final String errorCode, final String errorCause) {
+        return new ProcedureResult<U>(null, errorCode, errorCause, false);
+    }
+
+    public boolean isSuccessful() {
+        return successful;
+    }
+
+    /**
+     * @return the value returned by the stored procedure, possibly {@code null}
+     * @throws DbOperationException if the invocation failed
+     */
+    public U get() {
+        if (!successful) {
+            throw new DbOperationException(errorCode, errorCause);
+        }
+        return value;
+    }
+
+    /**
+     * @return the error code if the invocation failed, otherwise {@code null}
+     */
+    public String getErrorCode() {
+        return errorCode;
+    }
+
+    /**
+     * @return the cause of the error if the invocation failed, otherwise {@code null}
+     */
+    public String getErrorCause() {
+        return errorCause;
+    }
+
+    @Override
+    public String toString() {
+        return successful ? "ProcedureResult{value=" + value + '}' : "ProcedureResult{errorCode=" + errorCode + ", errorCause=" + errorCause + '}';
+    }
+}
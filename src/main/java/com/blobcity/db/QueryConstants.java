@@ -25,4 +25,8 @@ class QueryConstants {
     public static final String CAUSE = "cause";
     public static final String KEYS = "keys";
     public static final String CONTAINS = "contains";
+    public static final String REDIRECT = "redirect"; // node owning the record, when refused by a non-owner
+
+    /* Error codes */
+    public static final String NOT_OWNER = "NOT_OWNER";
 }
@@ -3,17 +3,30 @@
  */
 package com.blobcity.db;
 
-import com.blobcity.db.config.Credentials;
+import com.blobcity.db.config.AdapterConfig;
+import com.blobcity.db.enums.ReadRouting;
+import com.blobcity.db.enums.ReplicationType;
+import com.blobcity.db.exceptions.BulkheadFullException;
+import com.blobcity.db.exceptions.CircuitBreakerOpenException;
+import com.blobcity.db.exceptions.DeadlineExceededException;
 import com.blobcity.db.exceptions.InternalAdapterException;
+import com.blobcity.db.metrics.MetricTags;
+import com.blobcity.db.metrics.MetricsRegistry;
 import java.io.BufferedReader;
 import java.io.DataOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.net.ConnectException;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
+import java.net.NoRouteToHostException;
 import java.net.ProtocolException;
+import java.net.SocketTimeoutException;
 import java.net.URL;
+import java.net.UnknownHostException;
 import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Handles execution of different types of queries
@@ -22,12 +35,15 @@ import java.text.MessageFormat;
  */
 
 class QueryExecuter {
+    private static final String BQL_SERVICE = "bquery";
+    private static final String SQL_SERVICE = "sql";
+
     private QueryExecuter() {
         // do nothing
     }
 
     public static DbQueryResponse executeBql(final DbQueryRequest queryRequest) {
-        return executeQuery(getBqlServiceUrl(queryRequest.getCredentials()), queryRequest.createPostParam());
+        return execute(queryRequest, BQL_SERVICE);
     }
 
     public static DbQueryResponse executeSql(final DbQueryRequest queryRequest) {
@@ -78,12 +94,368 @@ class QueryExecuter {
 //        catch(ClassNotFoundException ex) {
 //             Logger.getLogger(QueryExecuter.class.getName()).log(Level.OFF, null, ex);
 //        }
-        return executeQuery(getSqlServiceUrl(queryRequest.getCredentials()), queryRequest.createPostParam());
+        return execute(queryRequest, SQL_SERVICE);
+    }
+
+    /**
+     * Executes a request within the bulkhead of its query category, on a node picked by the {@link NodeBalancer} for
+     * the request's credentials. Reads on mirrored collections may go to any node, while writes on them go to the
+     * coordinator. If the node cannot be reached the request moves on to the next node, provided that it
+     * is read-only or is known not to have been sent. Features not configured in
+     * {@link com.blobcity.db.config.AdapterConfig} are skipped entirely.
+     */
+    private static DbQueryResponse execute(final DbQueryRequest queryRequest, final String service) {
+        final List<RequestInterceptor> interceptors = AdapterConfig.getInterceptors();
+        if (interceptors.isEmpty()) {
+            return proceed(queryRequest, service);
+        }
+        return new InterceptorChain(interceptors, 0, queryRequest, service).proceed();
+    }
+
+    /**
+     * Executes a request that has passed all {@link RequestInterceptor}s
+     */
+    static DbQueryResponse proceed(final DbQueryRequest queryRequest, final String service) {
+        final RequestTimer timer = RequestTimer.forRequest();
+        try {
+            return execute(queryRequest, service, timer);
+        } finally {
+            if (timer != null && timer.isOwnedByRequest()) {
+                timer.end();
+            }
+        }
+    }
+
+    private static DbQueryResponse execute(final DbQueryRequest queryRequest, final String service, final RequestTimer timer) {
+        final MetricsRegistry metrics = AdapterConfig.getMetricsRegistry();
+        if (metrics == null) {
+            return dispatch(queryRequest, encode(queryRequest, timer), service, timer);
+        }
+
+        final MetricTags tags = MetricTags.of(queryRequest.getQueryType(), queryRequest.getDs(), queryRequest.getCollection());
+        metrics.onRequestStarted(tags);
+        final long startTime = System.nanoTime();
+        String postParams = null;
+        DbQueryResponse response = null;
+        RuntimeException error = null;
+        try {
+            postParams = encode(queryRequest, timer);
+            response = dispatch(queryRequest, postParams, service, timer);
+            return response;
+        } catch (RuntimeException ex) {
+            error = ex;
+            throw ex;
+        } finally {
+            final String errorCode;
+            if (response == null) {
+                errorCode = MetricsRegistry.ADAPTER_ERROR;
+            } else if (!response.isSuccessful()) {
+                errorCode = response.getErrorCode() != null ? response.getErrorCode() : "UNKNOWN";
+            } else {
+                errorCode = null;
+            }
+            // the form is URL encoded and written a byte per character
+            metrics.onRequestCompleted(tags, System.nanoTime() - startTime, postParams != null ? postParams.length() : 0,
+                    response != null ? response.getSize() : 0, errorCode, error);
+        }
+    }
+
+    /**
+     * @return the request encoded as the form posted to the database
+     */
+    private static String encode(final DbQueryRequest queryRequest, final RequestTimer timer) {
+        final String postParams = queryRequest.createPostParam();
+        if (timer != null) {
+            timer.encoded(queryRequest);
+        }
+        return postParams;
+    }
+
+    /**
+     * Sends a request to the nodes of the cluster, within the limits of the deadline, bulkhead and circuit breakers
+     */
+    private static DbQueryResponse dispatch(final DbQueryRequest queryRequest, final String postParams, final String service, final RequestTimer timer) {
+        final Deadline deadline = Deadline.current();
+        if (deadline != null) {
+            deadline.check();
+        }
+
+        final Bulkhead bulkhead = Bulkhead.forCategory(queryRequest.getQueryType().getCategory());
+        if (bulkhead != null) {
+            bulkhead.acquire();
+        }
+
+        try {
+            final NodeBalancer balancer = NodeBalancer.forAddresses(queryRequest.getCredentials().getServiceAddresses());
+            final QueryType queryType = queryRequest.getQueryType();
+            final NodeBalancer.Route route = balancer.size() == 1 ? NodeBalancer.Route.BALANCED : routeOf(queryRequest);
+            final ClusterNode owner = balancer.size() == 1 ? null : partitionOwnerOf(queryRequest);
+            DbQueryResponse response = HedgedRequest.isApplicable(queryType, balancer)
+                    ? HedgedRequest.execute(balancer, route, owner, queryType, service, postParams, queryRequest.getHeaders())
+                    : executeWithFailover(balancer, route, owner, queryType, service, postParams, queryRequest.getHeaders());
+
+            if (queryRequest.getPrimaryKey() != null && response.isOwnershipError()) {
+                // ownership of the record has moved; the refused request was not applied, so it is safe to send again
+                PartitionMapCache.getInstance().invalidate(queryRequest.getDs(), queryRequest.getCollection());
+                if (deadline != null) {
+                    deadline.check();
+                }
+                final ClusterNode redirectNode = response.getRedirect() != null ? ClusterNode.forAddress(response.getRedirect()) : balancer.getCoordinator();
+                response = executeOnNode(redirectNode, queryType, service, postParams, queryRequest.getHeaders(), null);
+            }
+            if (timer != null) {
+                timer.responded(response);
+            }
+            return response;
+        } finally {
+            if (bulkhead != null) {
+                bulkhead.release();
+            }
+        }
+    }
+
+    /**
+     * Sends a request to one node, failing over to other nodes for as long as that is safe
+     *
+     * @param first node to send the request to first, or {@code null} to let the balancer pick one
+     */
+    private static DbQueryResponse executeWithFailover(final NodeBalancer balancer, final NodeBalancer.Route route, final ClusterNode first,
+            final QueryType queryType, final String service, final String postParams, final Map<String, String> headers) {
+        List<ClusterNode> triedNodes = null;
+        ClusterNode node = first != null && first.isAvailable() ? first : balancer.select(route, null);
+        while (true) {
+            try {
+                return executeOnNode(node, queryType, service, postParams, headers, null);
+            } catch (InternalAdapterException ex) {
+                if (balancer.size() == 1 || !isSafeToRetry(queryType, ex)) {
+                    throw ex;
+                }
+
+                if (triedNodes == null) {
+                    triedNodes = new ArrayList<ClusterNode>(balancer.size());
+                }
+                triedNodes.add(node);
+                node = balancer.select(route, triedNodes);
+                if (node == null) {
+                    throw ex;
+                }
+
+                final Deadline deadline = Deadline.current();
+                if (deadline != null) {
+                    deadline.check();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the node owning the record of a single record request on a distributed collection, or {@code null} if
+     * the request is of another kind or the owner is not (yet) known
+     */
+    private static ClusterNode partitionOwnerOf(final DbQueryRequest queryRequest) {
+        if (queryRequest.getPrimaryKey() == null || queryRequest.getCollection() == null || queryRequest.getDs() == null) {
+            return null;
+        }
+
+        final ReplicationType replicationType = CollectionMetadataCache.getInstance()
+                .getReplicationType(queryRequest.getCredentials(), queryRequest.getDs(), queryRequest.getCollection());
+        if (replicationType != ReplicationType.DISTRIBUTED) {
+            return null;
+        }
+
+        final String owner = PartitionMapCache.getInstance()
+                .getOwner(queryRequest.getCredentials(), queryRequest.getDs(), queryRequest.getCollection(), queryRequest.getPrimaryKey());
+        return owner != null ? ClusterNode.forAddress(owner) : null;
+    }
+
+    /**
+     * Decides how the node for a request on a multi-node cluster is chosen, based on the replication type of the
+     * collection it operates on
+     */
+    private static NodeBalancer.Route routeOf(final DbQueryRequest queryRequest) {
+        final QueryType queryType = queryRequest.getQueryType();
+        if (queryRequest.getCollection() == null || queryRequest.getDs() == null || queryType.getCategory() == QueryType.Category.DATABASE) {
+            return NodeBalancer.Route.BALANCED;
+        }
+
+        final ReplicationType replicationType = CollectionMetadataCache.getInstance()
+                .getReplicationType(queryRequest.getCredentials(), queryRequest.getDs(), queryRequest.getCollection());
+        if (replicationType != ReplicationType.MIRRORED) {
+            return NodeBalancer.Route.BALANCED;
+        }
+
+        if (!queryType.isReadOnly()) {
+            return NodeBalancer.Route.COORDINATOR;
+        }
+
+        return AdapterConfig.getMirroredReadRouting() == ReadRouting.NEAREST ? NodeBalancer.Route.NEAREST : NodeBalancer.Route.BALANCED;
+    }
+
+    /**
+     * Sends a request to one node, within the circuit breaker of the node, and records the outcome against the node's
+     * health. An attempt aborted through its {@link RequestHandle} does not count against the node.
+     *
+     * @param handle handle through which the request may be aborted, may be {@code null}
+     */
+    static DbQueryResponse executeOnNode(final ClusterNode node, final QueryType queryType, final String service, final String postParams,
+            final Map<String, String> headers, final RequestHandle handle) {
+        final String endpoint = node.getAddress();
+        final CircuitBreaker breaker = CircuitBreaker.forEndpoint(endpoint);
+        if (breaker != null && !breaker.tryAcquirePermission()) {
+            throw new CircuitBreakerOpenException(endpoint);
+        }
+
+        node.requestStarted();
+        final long startTime = System.nanoTime();
+        boolean failed = true;
+        try {
+            final DbQueryResponse response = executeQuery(getServiceUrl(endpoint, service), postParams, headers, handle);
+            failed = false;
+            final long duration = System.nanoTime() - startTime;
+            node.onSuccess(duration);
+            if (queryType.isReadOnly()) {
+                HedgedRequest.recordLatency(queryType, duration);
+            }
+            return response;
+        } catch (InternalAdapterException ex) {
+            final boolean aborted = handle != null && handle.isCancelled();
+            // neither an expired deadline nor an aborted hedge says anything about the health of the node
+            if (aborted) {
+                failed = false;
+            } else if (!(ex instanceof DeadlineExceededException)) {
+                node.onFailure();
+            }
+            throw ex;
+        } finally {
+            node.requestFinished();
+            if (breaker != null) {
+                final long duration = System.nanoTime() - startTime;
+                if (failed) {
+                    breaker.onError(duration);
+                } else {
+                    breaker.onSuccess(duration);
+                }
+            }
+        }
     }
 
-    private static DbQueryResponse executeQuery(final String serviceUrl, final String postParams) {
-        BufferedReader in = null;
+    /**
+     * @return {@code true} if a failed request may be sent to another node without risk of applying it twice
+     */
+    static boolean isSafeToRetry(final QueryType queryType, final InternalAdapterException ex) {
+        if (ex instanceof DeadlineExceededException || ex instanceof BulkheadFullException) {
+            return false;
+        }
+
+        if (ex instanceof CircuitBreakerOpenException) {
+            return true;
+        }
+
+        final Throwable cause = ex.getCause();
+        if (cause instanceof ConnectException || cause instanceof NoRouteToHostException || cause instanceof UnknownHostException) {
+            return true;
+        }
+
+        return queryType.isReadOnly() && cause instanceof IOException;
+    }
+
+    private static DbQueryResponse executeQuery(final String serviceUrl, final String postParams, final Map<String, String> headers,
+            final RequestHandle handle) {
+        final Deadline deadline = Deadline.current();
+        ResponseStream stream = null;
+        try {
+            stream = openStream(serviceUrl, postParams, headers, handle, deadline);
+            final BufferedReader in = new BufferedReader(stream.getReader());
+            String inputLine;
+            final StringBuilder response = new StringBuilder();
+
+            while ((inputLine = in.readLine()) != null) {
+                response.append(inputLine);
+            }
+            
+            return new DbQueryResponse(response.toString(), stream.getBytesRead());
+        } catch (IOException ex) {
+            throw toAdapterException(ex, deadline);
+        } finally {
+            if (stream != null) {
+                stream.close();
+            }
+        }
+    }
+
+    /**
+     * Sends a BQL request and returns the body of the response as it arrives, for responses too large to be held in
+     * memory. The request is sent to a single node chosen as for {@link #executeBql(DbQueryRequest)}, within the
+     * deadline, bulkhead and circuit breaker of the node, but is neither passed to {@link RequestInterceptor}s nor
+     * recorded in metrics, and is not retried on another node. The bulkhead is held only until the response starts
+     * to arrive; the deadline bounds reading the whole body.
+     *
+     * @return the body of the response, which the caller must close or abort
+     */
+    static ResponseStream openBql(final DbQueryRequest queryRequest) {
+        final Deadline deadline = Deadline.current();
+        if (deadline != null) {
+            deadline.check();
+        }
+
+        final String postParams = queryRequest.createPostParam();
+        final Bulkhead bulkhead = Bulkhead.forCategory(queryRequest.getQueryType().getCategory());
+        if (bulkhead != null) {
+            bulkhead.acquire();
+        }
+
+        try {
+            final NodeBalancer balancer = NodeBalancer.forAddresses(queryRequest.getCredentials().getServiceAddresses());
+            final NodeBalancer.Route route = balancer.size() == 1 ? NodeBalancer.Route.BALANCED : routeOf(queryRequest);
+            final ClusterNode node = balancer.select(route, null);
+            final String endpoint = node.getAddress();
+            final CircuitBreaker breaker = CircuitBreaker.forEndpoint(endpoint);
+            if (breaker != null && !breaker.tryAcquirePermission()) {
+                throw new CircuitBreakerOpenException(endpoint);
+            }
+
+            node.requestStarted();
+            final long startTime = System.nanoTime();
+            boolean failed = true;
+            try {
+                final ResponseStream stream = openStream(getServiceUrl(endpoint, BQL_SERVICE), postParams, queryRequest.getHeaders(), null, deadline);
+                failed = false;
+                node.onSuccess(System.nanoTime() - startTime);
+                return stream;
+            } catch (IOException ex) {
+                final InternalAdapterException adapterException = toAdapterException(ex, deadline);
+                if (!(adapterException instanceof DeadlineExceededException)) {
+                    node.onFailure();
+                }
+                throw adapterException;
+            } finally {
+                node.requestFinished();
+                if (breaker != null) {
+                    final long duration = System.nanoTime() - startTime;
+                    if (failed) {
+                        breaker.onError(duration);
+                    } else {
+                        breaker.onSuccess(duration);
+                    }
+                }
+            }
+        } finally {
+            if (bulkhead != null) {
+                bulkhead.release();
+            }
+        }
+    }
+
+    /**
+     * Sends a request and waits for the response to start arriving
+     *
+     * @return the body of the response
+     */
+    private static ResponseStream openStream(final String serviceUrl, final String postParams, final Map<String, String> headers,
+            final RequestHandle handle, final Deadline deadline) throws IOException {
         DataOutputStream wr = null;
+        ConnectionExpiry expiry = null;
+        boolean opened = false;
         try {
             final URL url = new URL(serviceUrl);
             final HttpURLConnection con = (HttpURLConnection) url.openConnection();
@@ -91,6 +463,21 @@ class QueryExecuter {
             //add request header
             con.setRequestMethod("POST");
             con.setRequestProperty("Accept-Language", "en-US,en-GB;q=0.8, en;q=0.5");
+            if (headers != null) {
+                for (final Map.Entry<String, String> header : headers.entrySet()) {
+                    con.setRequestProperty(header.getKey(), header.getValue());
+                }
+            }
+            con.setConnectTimeout(deadline == null ? AdapterConfig.getConnectTimeoutMillis() : deadline.boundTimeout(AdapterConfig.getConnectTimeoutMillis()));
+            con.setReadTimeout(deadline == null ? AdapterConfig.getReadTimeoutMillis() : deadline.boundTimeout(AdapterConfig.getReadTimeoutMillis()));
+            if (handle != null) {
+                handle.attach(con);
+            }
+
+            // Drop the connection if the deadline expires while the request is in flight
+            if (deadline != null) {
+                expiry = ConnectionExpiry.schedule(con, deadline);
+            }
 
             // Send post request
             con.setDoOutput(true);
@@ -100,22 +487,13 @@ class QueryExecuter {
 
             con.getResponseCode();
 
-            in = new BufferedReader(new InputStreamReader(con.getInputStream()));
-            String inputLine;
-            final StringBuilder response = new StringBuilder();
-
-            while ((inputLine = in.readLine()) != null) {
-                response.append(inputLine);
-            }
-            
-            return new DbQueryResponse(response.toString());
-        } catch (MalformedURLException ex) {
-            throw new InternalAdapterException("Invalid database endpoint address format", ex);
-        } catch (ProtocolException ex) {
-            throw new InternalAdapterException("Invalid communication protocol with the database endpoint", ex);
-        } catch (IOException ex) {
-            throw new InternalAdapterException("Unable to communicate with the database at this time", ex);
+            final ResponseStream stream = new ResponseStream(con, con.getInputStream(), expiry);
+            opened = true;
+            return stream;
         } finally {
+            if (expiry != null && !opened) {
+                expiry.cancel();
+            }
             if (wr != null) {
                 try {
                     wr.close();
@@ -123,21 +501,29 @@ class QueryExecuter {
                     // ignore exception
                 }
             }
-            if (in != null) {
-                try {
-                    in.close();
-                } catch (IOException ex) {
-                    // ignore exception
-                }
-            }
         }
     }
 
-    private static String getBqlServiceUrl(final Credentials credentials) {
-        return MessageFormat.format("http://{0}/rest/bquery", credentials.getServiceAddress());
+    /**
+     * Translates a failure to communicate with the database
+     */
+    static InternalAdapterException toAdapterException(final IOException ex, final Deadline deadline) {
+        if (ex instanceof MalformedURLException) {
+            return new InternalAdapterException("Invalid database endpoint address format", ex);
+        }
+        if (ex instanceof ProtocolException) {
+            return new InternalAdapterException("Invalid communication protocol with the database endpoint", ex);
+        }
+        if (deadline != null && deadline.isExpired()) {
+            return new DeadlineExceededException("Deadline for the operation expired while waiting for the database", ex);
+        }
+        if (ex instanceof SocketTimeoutException) {
+            return new InternalAdapterException("Timed out communicating with the database", ex);
+        }
+        return new InternalAdapterException("Unable to communicate with the database at this time", ex);
     }
 
-    private static String getSqlServiceUrl(final Credentials credentials) {
-        return MessageFormat.format("http://{0}/rest/sql", credentials.getServiceAddress());
+    private static String getServiceUrl(final String serviceAddress, final String service) {
+        return MessageFormat.format("http://{0}/rest/{1}", serviceAddress, service);
     }
 }
@@ -8,47 +8,90 @@ package com.blobcity.db;
  * @author Karishma
  * @author Sanket Sarang
  */
-enum QueryType {
+public enum QueryType {
     
     // data related commands
-    LOAD("select"),
-    SAVE("save"),
-    INSERT("insert"), 
-    REMOVE("delete"),
-    SELECT_ALL("select-all"),
-    SEARCH("search"),
-    CONTAINS("contains"),
-    INSERT_CUSTOM("insert-custom"),
+    LOAD("select", Category.DATA),
+    SAVE("save", Category.DATA),
+    UPDATE("update", Category.DATA), // changed columns only, see AdapterConfig.setDirtyTracking
+    INSERT("insert", Category.DATA), 
+    REMOVE("delete", Category.DATA),
+    SELECT_ALL("select-all", Category.DATA),
+    SEARCH("search", Category.DATA),
+    CONTAINS("contains", Category.DATA),
+    INSERT_CUSTOM("insert-custom", Category.DATA),
+    SQL("sql", Category.DATA), // free form SQL sent through Db.execute(String)
 
     // database related commands
-    CREATE_DS("create-ds"),
-    CREATE_COLLECTION("create-collection"),
-    LIST_DS("list-ds"),
-    LIST_COLLECTIONS("list-collections"),
-    DROP_DATASTORE("drop-ds"),
-    DROP_COLLECTION("drop-collection"),
-    TRUNCATE_DS("truncate-ds"),
-    TRUNCATE_COLLECTION("truncate-collection"),
-    DS_EXISTS("ds-exists"),
-    COLLECTION_EXISTS("collection-exists"),
-    ADD_COLUMN("add-column"),
-    DROP_COLUMN("drop-column"),
-    INDEX("index"),
-    DROP_INDEX("drop-index"),
+    CREATE_DS("create-ds", Category.DATABASE),
+    CREATE_COLLECTION("create-collection", Category.DATABASE),
+    LIST_DS("list-ds", Category.DATABASE),
+    LIST_COLLECTIONS("list-collections", Category.DATABASE),
+    DROP_DATASTORE("drop-ds", Category.DATABASE),
+    DROP_COLLECTION("drop-collection", Category.DATABASE),
+    TRUNCATE_DS("truncate-ds", Category.DATABASE),
+    TRUNCATE_COLLECTION("truncate-collection", Category.DATABASE),
+    DS_EXISTS("ds-exists", Category.DATABASE),
+    COLLECTION_EXISTS("collection-exists", Category.DATABASE),
+    COLLECTION_INFO("collection-info", Category.DATABASE),
+    PARTITION_MAP("partition-map", Category.DATABASE),
+    ADD_COLUMN("add-column", Category.DATABASE),
+    DROP_COLUMN("drop-column", Category.DATABASE),
+    INDEX("index", Category.DATABASE),
+    DROP_INDEX("drop-index", Category.DATABASE),
 
     // user-provided code related commands
-    SEARCH_FILTERED("search-filtered"),
-    STORED_PROC("sp"),
-    REPOP_TABLE("repop"); //possibly depricate this function
+    SEARCH_FILTERED("search-filtered", Category.USER_CODE),
+    STORED_PROC("sp", Category.USER_CODE),
+    STORED_PROC_BATCH("sp-batch", Category.USER_CODE),
+    REPOP_TABLE("repop", Category.USER_CODE); //possibly depricate this function
     
+    /**
+     * Broad classes of queries. Isolation features such as bulkheads are configured per category, so that slow
+     * schema changes or user code executing on the database cannot starve regular data traffic.
+     */
+    public enum Category {
+        DATA,
+        DATABASE,
+        USER_CODE
+    }
+
     private final String queryCode;
+    private final Category category;
     
-    QueryType(final String queryCode) {
+    QueryType(final String queryCode, final Category category) {
         this.queryCode = queryCode;
+        this.category = category;
     }
 
     public String getQueryCode() {
         return queryCode;
     }
-}
 
+    public Category getCategory() {
+        return category;
+    }
+
+    /**
+     * @return {@code true} if the query never modifies data or schema, so that it may safely be sent again to the same
+     * or another node of the cluster
+     */
+    public boolean isReadOnly() {
+        switch (this) {
+            case LOAD:
+            case SELECT_ALL:
+            case SEARCH:
+            case CONTAINS:
+            case SEARCH_FILTERED:
+            case LIST_DS:
+            case LIST_COLLECTIONS:
+            case DS_EXISTS:
+            case COLLECTION_EXISTS:
+            case COLLECTION_INFO:
+            case PARTITION_MAP:
+                return true;
+            default:
+                return false;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2016, BlobCity iSolutions Pvt. Ltd.
+ */
+package com.blobcity.db;
+
+import com.blobcity.db.exceptions.InternalAdapterException;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates over records decoded one at a time from the body of a response as it arrives, so that the first record is
+ * available as soon as it is received and only one record is held in memory at a time.
+ *
+ * The iterator releases its connection when the last record has been read or reading fails. An iterator abandoned
+ * before its end must be closed, which drops the connection. Instances are not thread-safe.
+ *
+ * @param <T> type of the records
+ * @author Prikshit Kumar
+ */
+public final class RecordIterator<T extends Db> implements Iterator<T>, Closeable {
+
+    private static final Gson gson = new Gson();
+
+    private final Class<T> clazz;
+    private final String ds;
+    private final String collection;
+    private final Map<String, Field> structureMap;
+    private final ResponseStream stream;
+    private final Deadline deadline;
+    private final JsonReader reader;
+    private boolean open = true;
+
+    /**
+     * Reads the response up to its first record
+     *
+     * @throws com.blobcity.db.exceptions.DbOperationException if the database reports an error
+     */
+    RecordIterator(final Class<T> clazz, final String ds, final String collection, final Map<String, Field> structureMap,
+            final ResponseStream stream, final Deadline deadline) {
+        this.clazz = clazz;
+        this.ds = ds;
+        this.collection = collection;
+        this.structureMap = structureMap;
+        this.stream = stream;
+        this.deadline = deadline;
+        this.reader = new JsonReader(stream.getReader());
+        try {
+            final JsonToken token = ResponseStream.seekPayload(reader);
+            if (token == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+            } else {
+                // no records, though an error may still be reported after the payload
+                if (token != null) {
+                    reader.skipValue();
+                    ResponseStream.finishResponse(reader);
+                }
+                close();
+            }
+        } catch (IOException ex) {
+            stream.abort();
+            throw QueryExecuter.toAdapterException(ex, deadline);
+        } catch (RuntimeException ex) {
+            stream.abort();
+            throw ex;
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (!open) {
+            return false;
+        }
+
+        try {
+            if (reader.hasNext()) {
+                return true;
+            }
+            reader.endArray();
+            ResponseStream.finishResponse(reader);
+        } catch (IOException ex) {
+            abort();
+            throw QueryExecuter.toAdapterException(ex, deadline);
+        } catch (RuntimeException ex) {
+            abort();
+            throw ex;
+        }
+        close();
+        return false;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        try {
+            final JsonObject record = gson.fromJson(reader, JsonObject.class);
+            return Db.toInstance(clazz, ds, collection, structureMap, record);
+        } catch (JsonParseException ex) {
+            abort();
+            if (ex.getCause() instanceof IOException) {
+                throw QueryExecuter.toAdapterException((IOException) ex.getCause(), deadline);
+            }
+            throw new InternalAdapterException("Invalid record received from the database", ex);
+        } catch (RuntimeException ex) {
+            abort();
+            throw ex;
+        }
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Stops the iteration, dropping the connection if records remain unread
+     */
+    @Override
+    public void close() {
+        if (!open) {
+            return;
+        }
+
+        boolean complete = false;
+        try {
+            complete = !reader.hasNext();
+        } catch (IOException ex) {
+            // incomplete
+        }
+        if (complete) {
+            open = false;
+            stream.close();
+        } else {
+            abort();
+        }
+    }
+
+    private void abort() {
+        open = false;
+        stream.abort();
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2016, BlobCity iSolutions Pvt. Ltd.
+ */
+package com.blobcity.db;
+
+import java.net.HttpURLConnection;
+
+/**
+ * Allows a request executing on one thread to be aborted from another, by dropping its connection
+ *
+ * @author Prikshit Kumar
+ */
+class RequestHandle {
+
+    private HttpURLConnection connection;
+    private boolean cancelled;
+
+    /**
+     * Associates the connection of the request with this handle, dropping it immediately if already cancelled
+     */
+    synchronized void attach(final HttpURLConnection connection) {
+        this.connection = connection;
+        if (cancelled) {
+            connection.disconnect();
+        }
+    }
+
+    synchronized void cancel() {
+        cancelled = true;
+        if (connection != null) {
+            connection.disconnect();
+        }
+    }
+
+    synchronized boolean isCancelled() {
+        return cancelled;
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2016, BlobCity iSolutions Pvt. Ltd.
+ */
+package com.blobcity.db;
+
+import java.util.List;
+
+/**
+ * Intercepts every request sent by the adapter to the database, for example to add tracing headers, record metrics,
+ * serve cached responses, audit operations or inject faults.
+ *
+ * Interceptors are registered through {@link com.blobcity.db.config.AdapterConfig#addInterceptor(RequestInterceptor)}
+ * and run in the order of registration, each wrapping the ones registered after it. An interceptor passes the request
+ * on by calling {@link Chain#proceed()}, or short-circuits it by returning a response of its own or throwing an
+ * exception. Interceptors are called on the thread executing the operation and must be thread safe.
+ *
+ * @author Prikshit Kumar
+ */
+public interface RequestInterceptor {
+
+    /**
+     * @param chain the intercepted request and the rest of the chain
+     * @return the response to the request; never {@code null}
+     */
+    DbQueryResponse intercept(Chain chain);
+
+    /**
+     * An intercepted request. Credentials are not exposed beyond the user name.
+     */
+    interface Chain {
+
+        QueryType getQueryType();
+
+        /**
+         * @return the datastore operated upon
+         */
+        String getDs();
+
+        /**
+         * @return the collection operated upon, or {@code null} if the request is not specific to a collection
+         */
+        String getCollection();
+
+        String getUsername();
+
+        /**
+         * @return addresses of the database nodes the request may be sent to
+         */
+        List<String> getServiceAddresses();
+
+        /**
+         * @return the query sent to the database, with any password in it masked
+         */
+        String getQuery();
+
+        /**
+         * Sets an HTTP header to be sent along with the request
+         *
+         * @param name name of the header
+         * @param value value of the header
+         */
+        void setHeader(String name, String value);
+
+        /**
+         * Passes the request on to the next interceptor, or to the database if this is the last one
+         *
+         * @return the response to the request
+         */
+        DbQueryResponse proceed();
+    }
+}
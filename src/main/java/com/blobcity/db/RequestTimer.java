@@ -0,0 +1,141 @@
+/*
+ * Copyright 2016, BlobCity iSolutions Pvt. Ltd.
+ */
+package com.blobcity.db;
+
+import com.blobcity.db.config.AdapterConfig;
+import com.blobcity.db.config.SlowQueryLogConfig;
+import com.blobcity.db.metrics.RequestTimings;
+import com.blobcity.db.metrics.TimingListener;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Times the phases of an operation on the thread executing it, for the {@link TimingListener} and the
+ * {@link SlowQueryLog}. Operations of
+ * {@link Db} that bind responses onto entities start a timer with {@link #begin()} so that building the query and
+ * binding are included; {@link QueryExecuter} times requests sent outside of such an operation by itself.
+ *
+ * Nothing is timed or allocated unless a listener is registered or the slow query log is enabled.
+ *
+ * @author Prikshit Kumar
+ */
+final class RequestTimer {
+
+    private static final ThreadLocal<RequestTimer> current = new ThreadLocal<RequestTimer>();
+
+    private final TimingListener listener;
+    private final SlowQueryLogConfig slowQueryLogConfig;
+    private final boolean ownedByRequest;
+    private long mark;
+    private long encodeNanos;
+    private long networkNanos;
+    private long parseNanos;
+    private boolean awaitingResponse;
+    private DbQueryRequest request;
+    private DbQueryResponse response;
+
+    private RequestTimer(final TimingListener listener, final SlowQueryLogConfig slowQueryLogConfig, final boolean ownedByRequest) {
+        this.listener = listener;
+        this.slowQueryLogConfig = slowQueryLogConfig;
+        this.ownedByRequest = ownedByRequest;
+        this.mark = System.nanoTime();
+    }
+
+    /**
+     * Starts timing an operation on the current thread
+     *
+     * @return the timer, to be ended when the operation completes; {@code null} if timing is disabled or an enclosing
+     * operation is already being timed
+     */
+    static RequestTimer begin() {
+        final TimingListener listener = AdapterConfig.getTimingListener();
+        final SlowQueryLogConfig slowQueryLogConfig = AdapterConfig.getSlowQueryLogConfig();
+        if ((listener == null && slowQueryLogConfig == null) || current.get() != null) {
+            return null;
+        }
+
+        final RequestTimer timer = new RequestTimer(listener, slowQueryLogConfig, false);
+        current.set(timer);
+        return timer;
+    }
+
+    /**
+     * @return the timer of the operation sending a request, started for just the request if no operation is being
+     * timed; {@code null} if timing is disabled
+     */
+    static RequestTimer forRequest() {
+        final TimingListener listener = AdapterConfig.getTimingListener();
+        final SlowQueryLogConfig slowQueryLogConfig = AdapterConfig.getSlowQueryLogConfig();
+        if (listener == null && slowQueryLogConfig == null) {
+            return null;
+        }
+
+        RequestTimer timer = current.get();
+        if (timer == null) {
+            timer = new RequestTimer(listener, slowQueryLogConfig, true);
+            current.set(timer);
+        }
+        return timer;
+    }
+
+    /**
+     * @return {@code true} if the timer was started for a single request rather than by an operation of {@link Db}
+     */
+    boolean isOwnedByRequest() {
+        return ownedByRequest;
+    }
+
+    /**
+     * Marks the end of encoding a request
+     */
+    void encoded(final DbQueryRequest request) {
+        final long now = System.nanoTime();
+        encodeNanos += now - mark;
+        mark = now;
+        awaitingResponse = true;
+        this.request = request;
+        this.response = null;
+    }
+
+    /**
+     * Marks the receipt of a parsed response
+     */
+    void responded(final DbQueryResponse response) {
+        final long now = System.nanoTime();
+        parseNanos += response.getParseNanos();
+        networkNanos += Math.max(0, now - mark - response.getParseNanos());
+        mark = now;
+        awaitingResponse = false;
+        this.response = response;
+    }
+
+    /**
+     * Ends timing and reports the timings. The time since the last response is attributed to binding, or to the
+     * network if the last request failed.
+     */
+    void end() {
+        long bindNanos = System.nanoTime() - mark;
+        if (awaitingResponse) {
+            networkNanos += bindNanos;
+            bindNanos = 0;
+        }
+        current.remove();
+        if (request == null) {
+            return;
+        }
+
+        final RequestTimings timings = RequestTimings.create(request.getQueryType(), request.getDs(), request.getCollection(), encodeNanos,
+                networkNanos, parseNanos, bindNanos);
+        try {
+            if (listener != null) {
+                listener.onRequestTimed(timings);
+            }
+            if (slowQueryLogConfig != null) {
+                SlowQueryLog.getInstance().offer(slowQueryLogConfig, timings, request, response);
+            }
+        } catch (RuntimeException ex) {
+            Logger.getLogger(RequestTimer.class.getName()).log(Level.WARNING, "Reporting timings failed", ex);
+        }
+    }
+}
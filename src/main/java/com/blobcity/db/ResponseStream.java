@@ -0,0 +1,174 @@
+/*
+ * Copyright 2016, BlobCity iSolutions Pvt. Ltd.
+ */
+package com.blobcity.db;
+
+import com.blobcity.db.exceptions.DbOperationException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+
+/**
+ * The body of a response from the database, read as it arrives. A stream read to its end is released with
+ * {@link #close()}, which lets the connection be reused; a stream abandoned part way is released with
+ * {@link #abort()}, which drops the connection rather than reading the rest of the body.
+ *
+ * @author Prikshit Kumar
+ */
+class ResponseStream implements Closeable {
+
+    private final HttpURLConnection connection;
+    private final CountingInputStream in;
+    private final Reader reader;
+    private final ConnectionExpiry expiry;
+
+    /**
+     * @param in the body of the response
+     * @param expiry expiry dropping the connection when the deadline of the operation expires, may be {@code null}
+     */
+    ResponseStream(final HttpURLConnection connection, final InputStream in, final ConnectionExpiry expiry) {
+        this.connection = connection;
+        this.in = new CountingInputStream(in);
+        this.reader = new InputStreamReader(this.in);
+        this.expiry = expiry;
+    }
+
+    Reader getReader() {
+        return reader;
+    }
+
+    /**
+     * @return number of bytes of the body read so far
+     */
+    long getBytesRead() {
+        return in.count;
+    }
+
+    @Override
+    public void close() {
+        if (expiry != null) {
+            expiry.cancel();
+        }
+        try {
+            reader.close();
+        } catch (IOException ex) {
+            // ignore exception
+        }
+    }
+
+    void abort() {
+        if (expiry != null) {
+            expiry.cancel();
+        }
+        connection.disconnect();
+    }
+
+    /**
+     * Reads the fields of a response until its payload, checking the acknowledgement if it comes first. A payload
+     * is only ever sent with a successful response, and a {@code null} payload is treated as no payload.
+     *
+     * @param reader reader positioned at the start of the response
+     * @return the first token of the payload, at which the reader is left, or {@code null} if there is no payload
+     * @throws DbOperationException if the database reports an error
+     */
+    static JsonToken seekPayload(final JsonReader reader) throws IOException {
+        reader.beginObject();
+        Integer ackCode = null;
+        String errorCode = null;
+        String errorCause = null;
+        while (reader.hasNext()) {
+            final String name = reader.nextName();
+            if (QueryConstants.ACK.equals(name)) {
+                ackCode = reader.peek() == JsonToken.STRING ? Integer.valueOf(reader.nextString()) : reader.nextInt();
+            } else if (QueryConstants.CODE.equals(name) && reader.peek() == JsonToken.STRING) {
+                errorCode = reader.nextString();
+            } else if (QueryConstants.CAUSE.equals(name) && reader.peek() == JsonToken.STRING) {
+                errorCause = reader.nextString();
+            } else if (QueryConstants.PAYLOAD.equals(name) && reader.peek() != JsonToken.NULL && (ackCode == null || ackCode == 1)) {
+                return reader.peek();
+            } else {
+                reader.skipValue();
+            }
+        }
+
+        if (ackCode == null || ackCode != 1) {
+            throw new DbOperationException(errorCode, errorCause);
+        }
+        return null;
+    }
+
+    /**
+     * Reads the fields of a response that follow its payload, checking the acknowledgement if it comes after the
+     * payload
+     *
+     * @param reader reader positioned after the payload
+     * @throws DbOperationException if the database reports an error
+     */
+    static void finishResponse(final JsonReader reader) throws IOException {
+        Integer ackCode = null;
+        String errorCode = null;
+        String errorCause = null;
+        while (reader.hasNext()) {
+            final String name = reader.nextName();
+            if (QueryConstants.ACK.equals(name)) {
+                ackCode = reader.peek() == JsonToken.STRING ? Integer.valueOf(reader.nextString()) : reader.nextInt();
+            } else if (QueryConstants.CODE.equals(name) && reader.peek() == JsonToken.STRING) {
+                errorCode = reader.nextString();
+            } else if (QueryConstants.CAUSE.equals(name) && reader.peek() == JsonToken.STRING) {
+                errorCause = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (ackCode != null && ackCode != 1) {
+            throw new DbOperationException(errorCode, errorCause);
+        }
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+
+        private long count;
+
+        CountingInputStream(final InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            final int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            final long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
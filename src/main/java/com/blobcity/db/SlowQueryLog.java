@@ -0,0 +1,303 @@
+/*
+ * Copyright 2016, BlobCity iSolutions Pvt. Ltd.
+ */
+package com.blobcity.db;
+
+import com.blobcity.db.config.SlowQueryLogConfig;
+import com.blobcity.db.metrics.MetricsRegistry;
+import com.blobcity.db.metrics.RequestTimings;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonPrimitive;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * Log of operations that took longer than the threshold of the {@link SlowQueryLogConfig}, kept in a ring buffer of
+ * the most recent entries and written to the logger of this class at {@link Level#WARNING}.
+ *
+ * Values in recorded queries are replaced by {@code ?}, so that the log never holds data or credentials. Recording is
+ * rate limited: slow operations beyond the configured rate are counted but neither rendered nor logged.
+ *
+ * @author Prikshit Kumar
+ */
+public final class SlowQueryLog {
+
+    private static final Logger logger = Logger.getLogger(SlowQueryLog.class.getName());
+    private static final Gson gson = new Gson();
+    private static final String REDACTED = "?";
+    private static final Pattern SQL_STRING_LITERAL = Pattern.compile("'(?:[^'\\\\]|\\\\.|'')*'");
+    private static final Pattern SQL_NUMBER_LITERAL = Pattern.compile("(?<![\\w`.])-?\\d+(?:\\.\\d+)?(?![\\w`])");
+    // keys of BQL queries that describe the operation rather than carry data
+    private static final Set<String> BQL_STRUCTURE_KEYS = new HashSet<String>(Arrays.asList(QueryConstants.DB, QueryConstants.TABLE, QueryConstants.QUERY));
+
+    private volatile Ring ring;
+    private final AtomicLong dropped = new AtomicLong();
+    private long rateWindow;
+    private int rateCount;
+
+    private SlowQueryLog() {
+    }
+
+    public static SlowQueryLog getInstance() {
+        return SlowQueryLogHolder.INSTANCE;
+    }
+
+    private static class SlowQueryLogHolder {
+
+        private static final SlowQueryLog INSTANCE = new SlowQueryLog();
+    }
+
+    /**
+     * @return the recorded slow operations, oldest first
+     */
+    public List<Entry> getEntries() {
+        final Ring current = ring;
+        if (current == null) {
+            return Collections.emptyList();
+        }
+
+        final int capacity = current.slots.length();
+        final long next = current.next.get();
+        final List<Entry> entries = new ArrayList<Entry>(capacity);
+        for (long i = Math.max(0, next - capacity); i < next; i++) {
+            final Entry entry = current.slots.get((int) (i % capacity));
+            if (entry != null) {
+                entries.add(entry);
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * @return number of slow operations not recorded because of the rate limit
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public void clear() {
+        ring = null;
+        dropped.set(0);
+    }
+
+    /**
+     * Records an operation if it took longer than the threshold
+     *
+     * @param request the last request sent by the operation
+     * @param response the response to the last request, or {@code null} if it failed
+     */
+    void offer(final SlowQueryLogConfig config, final RequestTimings timings, final DbQueryRequest request, final DbQueryResponse response) {
+        if (timings.getTotalNanos() < config.getThresholdMillis() * 1000000) {
+            return;
+        }
+
+        if (!tryAcquire(config.getMaxEntriesPerSecond())) {
+            dropped.incrementAndGet();
+            return;
+        }
+
+        final String errorCode;
+        if (response == null) {
+            errorCode = MetricsRegistry.ADAPTER_ERROR;
+        } else if (!response.isSuccessful()) {
+            errorCode = response.getErrorCode() != null ? response.getErrorCode() : "UNKNOWN";
+        } else {
+            errorCode = null;
+        }
+
+        final Entry entry = new Entry(System.currentTimeMillis(), timings, redact(request.getQuery()), rowCountOf(response), request.getQuery().length(),
+                response != null ? response.getSize() : 0, errorCode);
+        ringFor(config.getCapacity()).add(entry);
+        if (logger.isLoggable(Level.WARNING)) {
+            logger.log(Level.WARNING, "Slow operation: {0}", entry);
+        }
+    }
+
+    private synchronized boolean tryAcquire(final int maxPerSecond) {
+        final long window = System.currentTimeMillis() / 1000;
+        if (window != rateWindow) {
+            rateWindow = window;
+            rateCount = 0;
+        }
+        return ++rateCount <= maxPerSecond;
+    }
+
+    private Ring ringFor(final int capacity) {
+        Ring current = ring;
+        if (current == null || current.slots.length() != capacity) {
+            synchronized (this) {
+                current = ring;
+                if (current == null || current.slots.length() != capacity) {
+                    current = new Ring(capacity);
+                    ring = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    private static int rowCountOf(final DbQueryResponse response) {
+        if (response == null) {
+            return -1;
+        }
+        if (response.getPayload() != null && response.getPayload().isJsonArray()) {
+            return response.getPayload().getAsJsonArray().size();
+        }
+        if (response.getKeysJson() != null && response.getKeysJson().isJsonArray()) {
+            return response.getKeysJson().getAsJsonArray().size();
+        }
+        return -1;
+    }
+
+    /**
+     * Replaces the values in a query with {@code ?}, keeping its structure
+     *
+     * @param query a BQL (JSON) or SQL query
+     * @return the redacted query
+     */
+    static String redact(final String query) {
+        if (query.startsWith("{")) {
+            try {
+                return redact(gson.fromJson(query, JsonElement.class), false).toString();
+            } catch (JsonParseException ex) {
+                // not BQL after all; redact as SQL
+            }
+        }
+
+        final String withoutStrings = SQL_STRING_LITERAL.matcher(query).replaceAll(REDACTED);
+        return SQL_NUMBER_LITERAL.matcher(withoutStrings).replaceAll(REDACTED);
+    }
+
+    private static JsonElement redact(final JsonElement element, final boolean keep) {
+        if (element.isJsonObject()) {
+            final JsonObject redacted = new JsonObject();
+            for (final Map.Entry<String, JsonElement> entry : element.getAsJsonObject().entrySet()) {
+                redacted.add(entry.getKey(), redact(entry.getValue(), BQL_STRUCTURE_KEYS.contains(entry.getKey())));
+            }
+            return redacted;
+        }
+        if (element.isJsonArray()) {
+            final JsonArray redacted = new JsonArray();
+            for (final JsonElement item : element.getAsJsonArray()) {
+                redacted.add(redact(item, false));
+            }
+            return redacted;
+        }
+        if (element.isJsonPrimitive() && !keep) {
+            return new JsonPrimitive(REDACTED);
+        }
+        return element;
+    }
+
+    private static class Ring {
+
+        private final AtomicReferenceArray<Entry> slots;
+        private final AtomicLong next = new AtomicLong();
+
+        Ring(final int capacity) {
+            this.slots = new AtomicReferenceArray<Entry>(capacity);
+        }
+
+        void add(final Entry entry) {
+            slots.set((int) (next.getAndIncrement() % slots.length()), entry);
+        }
+    }
+
+    /**
+     * A recorded slow operation
+     */
+    public static final class Entry {
+
+        private final long timestamp;
+        private final RequestTimings timings;
+        private final String query;
+        private final int rowCount;
+        private final long requestBytes;
+        private final long responseBytes;
+        private final String errorCode;
+
+        private Entry(final long timestamp, final RequestTimings timings, final String query, final int rowCount, final long requestBytes,
+                final long responseBytes, final String errorCode) {
+            this.timestamp = timestamp;
+            this.timings = timings;
+            this.query = query;
+            this.rowCount = rowCount;
+            this.requestBytes = requestBytes;
+            this.responseBytes = responseBytes;
+            this.errorCode = errorCode;
+        }
+
+        /**
+         * @return time the operation completed, in milliseconds since the epoch
+         */
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public QueryType getQueryType() {
+            return timings.getQueryType();
+        }
+
+        public String getDs() {
+            return timings.getDs();
+        }
+
+        public String getCollection() {
+            return timings.getCollection();
+        }
+
+        /**
+         * @return the (last) query sent by the operation, with values redacted
+         */
+        public String getQuery() {
+            return query;
+        }
+
+        /**
+         * @return number of records returned, or -1 if the operation does not return records or failed
+         */
+        public int getRowCount() {
+            return rowCount;
+        }
+
+        public long getRequestBytes() {
+            return requestBytes;
+        }
+
+        public long getResponseBytes() {
+            return responseBytes;
+        }
+
+        /**
+         * @return {@code null} if the operation succeeded, otherwise the error code as reported to the
+         * {@link MetricsRegistry}
+         */
+        public String getErrorCode() {
+            return errorCode;
+        }
+
+        public RequestTimings getTimings() {
+            return timings;
+        }
+
+        @Override
+        public String toString() {
+            return "SlowQueryLog.Entry{" + "timestamp=" + timestamp + ", query=" + query + ", rowCount=" + rowCount + ", requestBytes=" + requestBytes
+                    + ", responseBytes=" + responseBytes + ", errorCode=" + errorCode + ", timings=" + timings + '}';
+        }
+    }
+}
@@ -0,0 +1,398 @@
+/*
+ * Copyright 2016, BlobCity iSolutions Pvt. Ltd.
+ */
+package com.blobcity.db;
+
+import com.blobcity.db.config.AdapterConfig;
+import com.blobcity.db.config.WriteBehindConfig;
+import com.blobcity.db.exceptions.InternalAdapterException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Buffers saves of one entity class as configured by its {@link WriteBehindConfig}. Pending saves are keyed on the
+ * record, so that a save replaces an earlier pending save of the same record, and are sent in batches on worker
+ * threads. A record is never sent again while a previous save of it is in flight, which keeps saves of a record in
+ * order.
+ *
+ * Saves that fail to reach the database are put back in the buffer unless a newer save of the record is pending;
+ * saves refused by the database are logged and dropped.
+ *
+ * @author Prikshit Kumar
+ */
+class WriteBehindBuffer {
+
+    private static final Logger logger = Logger.getLogger(WriteBehindBuffer.class.getName());
+    private static final ConcurrentMap<Class<?>, WriteBehindBuffer> buffers = new ConcurrentHashMap<Class<?>, WriteBehindBuffer>();
+    private static final AtomicBoolean shutdownHookRegistered = new AtomicBoolean();
+
+    private final Class<? extends Db> clazz;
+    private final WriteBehindConfig config;
+    private final Map<String, DbQueryRequest> pending = new LinkedHashMap<String, DbQueryRequest>(); // guarded by this
+    private final Set<String> inFlight = new HashSet<String>(); // guarded by this
+    private boolean flushScheduled; // guarded by this
+    private boolean closed; // guarded by this
+    private ScheduledFuture<?> timer;
+
+    private WriteBehindBuffer(final Class<? extends Db> clazz, final WriteBehindConfig config) {
+        this.clazz = clazz;
+        this.config = config;
+    }
+
+    /**
+     * @return the buffer of an entity class, or {@code null} if write-behind is not enabled for it
+     */
+    static WriteBehindBuffer forClass(final Class<? extends Db> clazz) {
+        final WriteBehindConfig config = AdapterConfig.getWriteBehindConfig(clazz);
+        WriteBehindBuffer buffer = buffers.get(clazz);
+        if (buffer == null ? config == null : buffer.config == config) {
+            return buffer;
+        }
+
+        synchronized (buffers) {
+            buffer = buffers.get(clazz);
+            if (buffer != null && buffer.config == config) {
+                return buffer;
+            }
+
+            if (buffer != null) {
+                buffers.remove(clazz);
+                buffer.close();
+            }
+            if (config == null) {
+                return null;
+            }
+
+            registerShutdownHook();
+            buffer = new WriteBehindBuffer(clazz, config);
+            buffer.start();
+            buffers.put(clazz, buffer);
+            return buffer;
+        }
+    }
+
+    /**
+     * Sends the buffered saves of every entity class, waiting for them to complete
+     *
+     * @throws RuntimeException the first failure encountered
+     */
+    static void flushAll() {
+        RuntimeException failure = null;
+        for (final WriteBehindBuffer buffer : buffers.values()) {
+            try {
+                buffer.flush();
+            } catch (RuntimeException ex) {
+                if (failure == null) {
+                    failure = ex;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Buffers a save, waiting for room if the buffer is full
+     *
+     * @param request a save request carrying the primary key of the record
+     * @return {@code false} if the buffer was closed by a change of configuration, in which case the save must be sent
+     * directly
+     */
+    synchronized boolean enqueue(final DbQueryRequest request) {
+        if (closed) {
+            return false;
+        }
+
+        final String key = keyOf(request);
+        if (!pending.containsKey(key) && pending.size() >= config.getMaxPending()) {
+            final long waitUntil = System.currentTimeMillis() + config.getMaxBlockMillis();
+            scheduleFlush();
+            while (pending.size() >= config.getMaxPending()) {
+                final long remaining = waitUntil - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    throw new InternalAdapterException("Write-behind buffer of " + clazz.getName() + " is full");
+                }
+                try {
+                    wait(remaining);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new InternalAdapterException("Interrupted while waiting for room in the write-behind buffer", ex);
+                }
+            }
+        }
+
+        pending.put(key, request);
+        if (pending.size() >= config.getBatchSize()) {
+            scheduleFlush();
+        }
+        return true;
+    }
+
+    /**
+     * Sends the buffered save of the record a request operates on, if any, waiting for it to complete
+     */
+    void flush(final DbQueryRequest request) {
+        if (request.getPrimaryKey() == null) {
+            return;
+        }
+
+        final String key = keyOf(request);
+        final List<Map.Entry<String, DbQueryRequest>> batch = new ArrayList<Map.Entry<String, DbQueryRequest>>(1);
+        synchronized (this) {
+            awaitNotInFlight(key);
+            final DbQueryRequest save = pending.remove(key);
+            if (save == null) {
+                return;
+            }
+            inFlight.add(key);
+            batch.add(new AbstractMap.SimpleImmutableEntry<String, DbQueryRequest>(key, save));
+            notifyAll();
+        }
+
+        final RuntimeException failure = send(batch);
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Sends all buffered saves, waiting for them to complete
+     *
+     * @throws RuntimeException the first failure encountered; failed saves that can be retried remain buffered
+     */
+    void flush() {
+        while (true) {
+            final List<Map.Entry<String, DbQueryRequest>> batch;
+            synchronized (this) {
+                batch = takeBatch();
+                if (batch.isEmpty()) {
+                    if (pending.isEmpty() && inFlight.isEmpty()) {
+                        return;
+                    }
+                    // everything pending is in flight by the background flush
+                    awaitChange();
+                    continue;
+                }
+            }
+
+            final RuntimeException failure = send(batch);
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    private void start() {
+        final long interval = config.getFlushIntervalMillis();
+        timer = AdapterThreads.scheduler().scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                // flushing, including the flush on close, runs on a worker, as the scheduler also times out requests
+                if (AdapterConfig.getWriteBehindConfig(clazz) != config) {
+                    scheduleReplace();
+                } else {
+                    scheduleFlush();
+                }
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Replaces this buffer on a worker following a change of configuration, which closes and flushes it
+     */
+    private void scheduleReplace() {
+        try {
+            AdapterThreads.workers().execute(new Runnable() {
+                @Override
+                public void run() {
+                    forClass(clazz);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            // retried on the next tick of the timer
+        }
+    }
+
+    /**
+     * Stops the timer and sends all buffered saves; failures are logged
+     */
+    private void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        timer.cancel(false);
+        try {
+            flush();
+        } catch (RuntimeException ex) {
+            logger.log(Level.WARNING, "Buffered saves of " + clazz.getName() + " could not be sent", ex);
+        }
+    }
+
+    private synchronized void scheduleFlush() {
+        if (flushScheduled || pending.isEmpty()) {
+            return;
+        }
+
+        flushScheduled = true;
+        try {
+            AdapterThreads.workers().execute(new Runnable() {
+                @Override
+                public void run() {
+                    flushInBackground();
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            flushScheduled = false;
+        }
+    }
+
+    private void flushInBackground() {
+        try {
+            while (true) {
+                final List<Map.Entry<String, DbQueryRequest>> batch;
+                synchronized (this) {
+                    batch = takeBatch();
+                    if (batch.isEmpty()) {
+                        return;
+                    }
+                }
+
+                final RuntimeException failure = send(batch);
+                if (failure != null) {
+                    logger.log(Level.WARNING, "Buffered saves of " + clazz.getName() + " could not be sent; retrying later", failure);
+                    return;
+                }
+            }
+        } finally {
+            synchronized (this) {
+                flushScheduled = false;
+            }
+        }
+    }
+
+    /**
+     * Removes up to a batch of pending saves of records not in flight, marking them in flight
+     */
+    private List<Map.Entry<String, DbQueryRequest>> takeBatch() {
+        final List<Map.Entry<String, DbQueryRequest>> batch = new ArrayList<Map.Entry<String, DbQueryRequest>>(Math.min(pending.size(), config.getBatchSize()));
+        final Iterator<Map.Entry<String, DbQueryRequest>> iterator = pending.entrySet().iterator();
+        while (iterator.hasNext() && batch.size() < config.getBatchSize()) {
+            final Map.Entry<String, DbQueryRequest> entry = iterator.next();
+            if (inFlight.add(entry.getKey())) {
+                batch.add(new AbstractMap.SimpleImmutableEntry<String, DbQueryRequest>(entry.getKey(), entry.getValue()));
+                iterator.remove();
+            }
+        }
+        if (!batch.isEmpty()) {
+            notifyAll();
+        }
+        return batch;
+    }
+
+    /**
+     * Sends a batch of saves concurrently and waits for all of them
+     *
+     * @return the first failure, or {@code null} if all saves were sent
+     */
+    private RuntimeException send(final List<Map.Entry<String, DbQueryRequest>> batch) {
+        final List<Future<DbQueryResponse>> futures = new ArrayList<Future<DbQueryResponse>>(batch.size());
+        for (final Map.Entry<String, DbQueryRequest> entry : batch) {
+            futures.add(AdapterThreads.workers().submit(new Callable<DbQueryResponse>() {
+                @Override
+                public DbQueryResponse call() {
+                    return QueryExecuter.executeBql(entry.getValue());
+                }
+            }));
+        }
+
+        RuntimeException failure = null;
+        for (int i = 0; i < batch.size(); i++) {
+            final Map.Entry<String, DbQueryRequest> entry = batch.get(i);
+            boolean retry = false;
+            try {
+                final DbQueryResponse response = futures.get(i).get();
+                if (!response.isSuccessful()) {
+                    logger.log(Level.WARNING, "Buffered save of {0} was refused by the database: {1} : {2}",
+                            new Object[]{entry.getKey(), response.getErrorCode(), response.getErrorCause()});
+                    if (failure == null) {
+                        failure = response.createException();
+                    }
+                }
+            } catch (ExecutionException ex) {
+                retry = true;
+                if (failure == null) {
+                    failure = ex.getCause() instanceof RuntimeException ? (RuntimeException) ex.getCause() : new InternalAdapterException(ex.getCause());
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                retry = true;
+                if (failure == null) {
+                    failure = new InternalAdapterException("Interrupted while sending buffered saves", ex);
+                }
+            }
+
+            synchronized (this) {
+                inFlight.remove(entry.getKey());
+                if (retry && !pending.containsKey(entry.getKey())) {
+                    pending.put(entry.getKey(), entry.getValue());
+                }
+                notifyAll();
+            }
+        }
+        return failure;
+    }
+
+    private void awaitNotInFlight(final String key) {
+        while (inFlight.contains(key)) {
+            awaitChange();
+        }
+    }
+
+    private void awaitChange() {
+        try {
+            wait();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InternalAdapterException("Interrupted while waiting for buffered saves to be sent", ex);
+        }
+    }
+
+    private static String keyOf(final DbQueryRequest request) {
+        return request.getDs() + "." + request.getCollection() + "." + request.getPrimaryKey();
+    }
+
+    private static void registerShutdownHook() {
+        if (!shutdownHookRegistered.compareAndSet(false, true)) {
+            return;
+        }
+
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    flushAll();
+                } catch (RuntimeException ex) {
+                    logger.log(Level.WARNING, "Buffered saves could not be sent on shutdown", ex);
+                }
+            }
+        }, "blobcity-write-behind-shutdown"));
+    }
+}
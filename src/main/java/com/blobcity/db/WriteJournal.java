@@ -0,0 +1,490 @@
+/*
+ * Copyright 2016, BlobCity iSolutions Pvt. Ltd.
+ */
+package com.blobcity.db;
+
+import com.blobcity.db.config.AdapterConfig;
+import com.blobcity.db.config.Credentials;
+import com.blobcity.db.config.JournalConfig;
+import com.blobcity.db.exceptions.InternalAdapterException;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of inserts, as configured by the {@link JournalConfig}, held in memory-mapped segment files and
+ * drained to the database in the background.
+ *
+ * Each record is laid out as {@code [length:int][crc32:int][state:byte][data]}, where the data is the UTF-8 JSON form
+ * of the insert. The length is written last, so that a torn append reads as the end of the segment. Drained records
+ * are flagged in place and segments are deleted once every record in them is drained, so that the journal resumes
+ * where it left off after a restart. Records are sent at least once: an insert that reached the database right before
+ * a crash is sent again, in which case the database reports it as existing.
+ *
+ * @author Prikshit Kumar
+ */
+class WriteJournal {
+
+    private static final Logger logger = Logger.getLogger(WriteJournal.class.getName());
+    private static final Gson gson = new Gson();
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final int HEADER_BYTES = 9;
+    private static final byte PENDING = 0;
+    private static final byte DRAINED = 1;
+    private static final String EXISTS_ERROR_CODE = "DB201";
+    private static volatile WriteJournal current;
+
+    private final JournalConfig config;
+    private final TreeMap<Long, Segment> segments = new TreeMap<Long, Segment>(); // guarded by this
+    private Segment writeSegment; // guarded by this
+    private int writeOffset; // guarded by this
+    private Segment readSegment; // guarded by this
+    private int readOffset; // guarded by this
+    private boolean drainScheduled; // guarded by this
+    private long retryAt; // guarded by this
+    private final Object drainLock = new Object();
+    private ScheduledFuture<?> timer;
+
+    private WriteJournal(final JournalConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * @return the journal, or {@code null} if journalling is disabled
+     */
+    static WriteJournal getInstance() {
+        final JournalConfig config = AdapterConfig.getJournalConfig();
+        WriteJournal journal = current;
+        if (journal == null ? config == null : journal.config == config) {
+            return journal;
+        }
+
+        synchronized (WriteJournal.class) {
+            journal = current;
+            if (journal != null && journal.config == config) {
+                return journal;
+            }
+
+            if (journal != null) {
+                journal.close();
+                current = null;
+            }
+            if (config == null) {
+                return null;
+            }
+
+            journal = new WriteJournal(config);
+            journal.open();
+            current = journal;
+            return journal;
+        }
+    }
+
+    /**
+     * Appends an insert to the journal
+     *
+     * @param ds the datastore to insert into
+     * @param collection the collection to insert into
+     * @param data the record to insert
+     */
+    void append(final String ds, final String collection, final JsonObject data) {
+        final JsonObject recordJson = new JsonObject();
+        recordJson.addProperty(QueryConstants.DB, ds);
+        recordJson.addProperty(QueryConstants.TABLE, collection);
+        recordJson.add(QueryConstants.PAYLOAD, data);
+        final byte[] bytes = toBytes(recordJson.toString());
+        if (HEADER_BYTES + bytes.length > config.getSegmentSizeBytes()) {
+            throw new InternalAdapterException("Record of " + bytes.length + " bytes does not fit in a journal segment");
+        }
+
+        final CRC32 crc = new CRC32();
+        crc.update(bytes);
+        synchronized (this) {
+            if (writeOffset + HEADER_BYTES + bytes.length > writeSegment.buffer.capacity()) {
+                writeSegment = createSegment(writeSegment.sequence + 1);
+                writeOffset = 0;
+            }
+
+            final MappedByteBuffer buffer = writeSegment.buffer;
+            buffer.position(writeOffset + HEADER_BYTES);
+            buffer.put(bytes);
+            buffer.putInt(writeOffset + 4, (int) crc.getValue());
+            buffer.put(writeOffset + 8, PENDING);
+            buffer.putInt(writeOffset, bytes.length);
+            if (config.isSyncOnAppend()) {
+                buffer.force();
+            }
+            writeOffset += HEADER_BYTES + bytes.length;
+        }
+        scheduleDrain(false);
+    }
+
+    /**
+     * Sends every journalled record to the database, waiting for them to be sent
+     *
+     * @throws InternalAdapterException if a record could not be sent; it remains in the journal
+     */
+    void flush() {
+        while (true) {
+            final RuntimeException failure;
+            synchronized (drainLock) {
+                failure = drainBatch();
+            }
+            if (failure != null) {
+                throw failure instanceof InternalAdapterException ? failure : new InternalAdapterException("Unable to drain the write journal", failure);
+            }
+            synchronized (this) {
+                if (readSegment == writeSegment && readOffset >= writeOffset) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void open() {
+        final File directory = config.getDirectory();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new InternalAdapterException("Unable to create journal directory " + directory);
+        }
+
+        final File[] files = directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(final File dir, final String name) {
+                return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+            }
+        });
+
+        synchronized (this) {
+            for (final File file : files) {
+                final String sequence = file.getName().substring(SEGMENT_PREFIX.length(), file.getName().length() - SEGMENT_SUFFIX.length());
+                try {
+                    segments.put(Long.parseLong(sequence), null);
+                } catch (NumberFormatException ex) {
+                    // not a segment of this journal
+                }
+            }
+
+            for (final Long sequence : new ArrayList<Long>(segments.keySet())) {
+                final Segment segment = mapSegment(sequence, segmentFile(sequence), false);
+                segments.put(sequence, segment);
+                final int end = recover(segment);
+                if (readSegment == null && segment.firstPending >= 0) {
+                    readSegment = segment;
+                    readOffset = segment.firstPending;
+                }
+                writeSegment = segment;
+                writeOffset = end;
+            }
+
+            if (writeSegment == null) {
+                writeSegment = createSegment(1);
+                writeOffset = 0;
+            }
+            if (readSegment == null) {
+                readSegment = writeSegment;
+                readOffset = writeOffset;
+            }
+            deleteDrainedSegments();
+        }
+
+        final long interval = config.getDrainIntervalMillis();
+        timer = AdapterThreads.scheduler().scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                scheduleDrain(true);
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    private void close() {
+        timer.cancel(false);
+        synchronized (this) {
+            for (final Segment segment : segments.values()) {
+                segment.buffer.force();
+            }
+        }
+    }
+
+    /**
+     * Scans a segment for valid records
+     *
+     * @return offset following the last valid record
+     */
+    private static int recover(final Segment segment) {
+        final MappedByteBuffer buffer = segment.buffer;
+        int offset = 0;
+        while (offset + HEADER_BYTES <= buffer.capacity()) {
+            final int length = buffer.getInt(offset);
+            if (length <= 0 || offset + HEADER_BYTES + length > buffer.capacity()) {
+                break;
+            }
+
+            final byte[] bytes = new byte[length];
+            buffer.position(offset + HEADER_BYTES);
+            buffer.get(bytes);
+            final CRC32 crc = new CRC32();
+            crc.update(bytes);
+            if ((int) crc.getValue() != buffer.getInt(offset + 4)) {
+                break;
+            }
+
+            if (segment.firstPending < 0 && buffer.get(offset + 8) == PENDING) {
+                segment.firstPending = offset;
+            }
+            offset += HEADER_BYTES + length;
+        }
+        return offset;
+    }
+
+    private void scheduleDrain(final boolean timerTick) {
+        synchronized (this) {
+            if (drainScheduled || (readSegment == writeSegment && readOffset >= writeOffset)) {
+                return;
+            }
+            // while the database is unreachable, only the timer retries
+            if (!timerTick && System.currentTimeMillis() < retryAt) {
+                return;
+            }
+            drainScheduled = true;
+        }
+
+        try {
+            AdapterThreads.workers().execute(new Runnable() {
+                @Override
+                public void run() {
+                    drainInBackground();
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            synchronized (this) {
+                drainScheduled = false;
+            }
+        }
+    }
+
+    private void drainInBackground() {
+        try {
+            while (true) {
+                final RuntimeException failure;
+                synchronized (drainLock) {
+                    failure = drainBatch();
+                }
+                synchronized (this) {
+                    if (failure != null) {
+                        retryAt = System.currentTimeMillis() + config.getDrainIntervalMillis();
+                        logger.log(Level.FINE, "Unable to drain the write journal; retrying later", failure);
+                        return;
+                    }
+                    if (readSegment == writeSegment && readOffset >= writeOffset) {
+                        return;
+                    }
+                }
+            }
+        } finally {
+            synchronized (this) {
+                drainScheduled = false;
+            }
+        }
+    }
+
+    /**
+     * Sends the next batch of records concurrently and flags those sent as drained
+     *
+     * @return the first failure to reach the database, or {@code null} if the whole batch was sent
+     */
+    private RuntimeException drainBatch() {
+        final List<Record> batch = readBatch();
+        final List<Future<DbQueryResponse>> futures = new ArrayList<Future<DbQueryResponse>>(batch.size());
+        for (final Record record : batch) {
+            futures.add(AdapterThreads.workers().submit(new Callable<DbQueryResponse>() {
+                @Override
+                public DbQueryResponse call() {
+                    final JsonObject recordJson = gson.fromJson(record.data, JsonObject.class);
+                    final String ds = recordJson.get(QueryConstants.DB).getAsString();
+                    final Credentials credentials = Credentials.create(Credentials.getInstance(), null, null, null, ds);
+                    return Db.sendInsert(credentials, recordJson.get(QueryConstants.TABLE).getAsString(), recordJson.getAsJsonObject(QueryConstants.PAYLOAD));
+                }
+            }));
+        }
+
+        RuntimeException failure = null;
+        boolean contiguous = true;
+        for (int i = 0; i < batch.size(); i++) {
+            final Record record = batch.get(i);
+            try {
+                final DbQueryResponse response = futures.get(i).get();
+                if (!response.isSuccessful() && !EXISTS_ERROR_CODE.equals(response.getErrorCode())) {
+                    logger.log(Level.WARNING, "Journalled insert into {0} was refused by the database and is dropped: {1} : {2}",
+                            new Object[]{record.data, response.getErrorCode(), response.getErrorCause()});
+                }
+            } catch (ExecutionException ex) {
+                if (failure == null) {
+                    failure = ex.getCause() instanceof RuntimeException ? (RuntimeException) ex.getCause() : new InternalAdapterException(ex.getCause());
+                }
+                contiguous = false;
+                continue;
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return new InternalAdapterException("Interrupted while draining the write journal", ex);
+            }
+
+            synchronized (this) {
+                record.segment.buffer.put(record.offset + 8, DRAINED);
+                if (contiguous) {
+                    readSegment = record.segment;
+                    readOffset = record.offset + HEADER_BYTES + record.length;
+                }
+            }
+        }
+
+        synchronized (this) {
+            deleteDrainedSegments();
+        }
+        return failure;
+    }
+
+    /**
+     * Reads up to a batch of pending records following the read position
+     */
+    private synchronized List<Record> readBatch() {
+        final List<Record> batch = new ArrayList<Record>(config.getBatchSize());
+        Segment segment = readSegment;
+        int offset = readOffset;
+        while (batch.size() < config.getBatchSize()) {
+            if (segment == writeSegment && offset >= writeOffset) {
+                break;
+            }
+
+            final MappedByteBuffer buffer = segment.buffer;
+            final int length = offset + HEADER_BYTES <= buffer.capacity() ? buffer.getInt(offset) : 0;
+            if (length <= 0) {
+                // end of a segment the writer has moved on from
+                segment = segments.higherEntry(segment.sequence).getValue();
+                offset = 0;
+                if (batch.isEmpty()) {
+                    readSegment = segment;
+                    readOffset = 0;
+                }
+                continue;
+            }
+
+            if (buffer.get(offset + 8) == PENDING) {
+                final byte[] bytes = new byte[length];
+                buffer.position(offset + HEADER_BYTES);
+                buffer.get(bytes);
+                batch.add(new Record(segment, offset, length, fromBytes(bytes)));
+            } else if (batch.isEmpty()) {
+                readSegment = segment;
+                readOffset = offset + HEADER_BYTES + length;
+            }
+            offset += HEADER_BYTES + length;
+        }
+        return batch;
+    }
+
+    private void deleteDrainedSegments() {
+        while (segments.firstKey() < readSegment.sequence) {
+            final Map.Entry<Long, Segment> drained = segments.pollFirstEntry();
+            if (!drained.getValue().file.delete()) {
+                logger.log(Level.WARNING, "Unable to delete drained journal segment {0}", drained.getValue().file);
+            }
+        }
+    }
+
+    private Segment createSegment(final long sequence) {
+        final Segment segment = mapSegment(sequence, segmentFile(sequence), true);
+        segments.put(sequence, segment);
+        return segment;
+    }
+
+    private File segmentFile(final long sequence) {
+        return new File(config.getDirectory(), SEGMENT_PREFIX + String.format("%019d", sequence) + SEGMENT_SUFFIX);
+    }
+
+    private Segment mapSegment(final long sequence, final File file, final boolean create) {
+        RandomAccessFile randomAccessFile = null;
+        try {
+            randomAccessFile = new RandomAccessFile(file, "rw");
+            if (create) {
+                randomAccessFile.setLength(config.getSegmentSizeBytes());
+            }
+            final MappedByteBuffer buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, randomAccessFile.length());
+            return new Segment(sequence, file, buffer);
+        } catch (IOException ex) {
+            throw new InternalAdapterException("Unable to map journal segment " + file, ex);
+        } finally {
+            if (randomAccessFile != null) {
+                try {
+                    randomAccessFile.close();
+                } catch (IOException ex) {
+                    // ignore exception; the mapping remains valid
+                }
+            }
+        }
+    }
+
+    private static byte[] toBytes(final String data) {
+        try {
+            return data.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException ex) {
+            throw new InternalAdapterException("UTF-8 encoding is not supported", ex);
+        }
+    }
+
+    private static String fromBytes(final byte[] bytes) {
+        try {
+            return new String(bytes, "UTF-8");
+        } catch (UnsupportedEncodingException ex) {
+            throw new InternalAdapterException("UTF-8 encoding is not supported", ex);
+        }
+    }
+
+    private static class Segment {
+
+        private final long sequence;
+        private final File file;
+        private final MappedByteBuffer buffer;
+        private int firstPending = -1;
+
+        Segment(final long sequence, final File file, final MappedByteBuffer buffer) {
+            this.sequence = sequence;
+            this.file = file;
+            this.buffer = buffer;
+        }
+    }
+
+    private static class Record {
+
+        private final Segment segment;
+        private final int offset;
+        private final int length;
+        private final String data;
+
+        Record(final Segment segment, final int offset, final int length, final String data) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.data = data;
+        }
+    }
+}
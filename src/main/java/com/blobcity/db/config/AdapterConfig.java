@@ -0,0 +1,357 @@
+/*
+ * Copyright 2016, BlobCity iSolutions Pvt. Ltd.
+ */
+package com.blobcity.db.config;
+
+import com.blobcity.db.Db;
+import com.blobcity.db.QueryType;
+import com.blobcity.db.RequestInterceptor;
+import com.blobcity.db.enums.BalancingStrategy;
+import com.blobcity.db.enums.ReadRouting;
+import com.blobcity.db.exceptions.InternalAdapterException;
+import com.blobcity.db.metrics.MetricsRegistry;
+import com.blobcity.db.metrics.TimingListener;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Holds application wide tuning of the adapter's communication with the database. Unlike {@link Credentials}, every
+ * setting here has a sensible default and may be changed at any time; changes apply to requests started afterwards.
+ *
+ * @author Prikshit Kumar
+ */
+public final class AdapterConfig {
+
+    private static volatile int connectTimeoutMillis = 10000;
+    private static volatile int readTimeoutMillis = 60000;
+    private static volatile CircuitBreakerConfig circuitBreakerConfig;
+    private static volatile BalancingStrategy balancingStrategy = BalancingStrategy.POWER_OF_TWO_CHOICES;
+    private static volatile int ejectionThreshold = 3;
+    private static volatile long ejectionDurationMillis = 10000;
+    private static volatile long healthCheckIntervalMillis = 5000;
+    private static volatile HedgingConfig hedgingConfig;
+    private static volatile ReadRouting mirroredReadRouting = ReadRouting.SPREAD;
+    private static volatile MetricsRegistry metricsRegistry;
+    private static volatile TimingListener timingListener;
+    private static volatile SlowQueryLogConfig slowQueryLogConfig;
+    private static volatile JournalConfig journalConfig;
+    // replaced as a whole on every change, so that requests read it without locking or copying
+    private static volatile List<RequestInterceptor> interceptors = Collections.emptyList();
+    private static final Map<QueryType.Category, BulkheadConfig> bulkheadConfigs = new ConcurrentHashMap<QueryType.Category, BulkheadConfig>();
+    private static final Map<Class<? extends Db>, WriteBehindConfig> writeBehindConfigs = new ConcurrentHashMap<Class<? extends Db>, WriteBehindConfig>();
+    private static final Set<Class<? extends Db>> dirtyTrackedClasses = Collections.newSetFromMap(new ConcurrentHashMap<Class<? extends Db>, Boolean>());
+
+    private AdapterConfig() {
+        // do nothing
+    }
+
+    /**
+     * @return maximum time in milliseconds to wait for a connection to the database to be established. Defaults to 10
+     * seconds; 0 means wait indefinitely.
+     */
+    public static int getConnectTimeoutMillis() {
+        return connectTimeoutMillis;
+    }
+
+    public static void setConnectTimeoutMillis(final int timeoutMillis) {
+        if (timeoutMillis < 0) {
+            throw new InternalAdapterException("connect timeout cannot be negative");
+        }
+        connectTimeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * @return maximum time in milliseconds to wait for data from the database once a request is sent. Defaults to 60
+     * seconds; 0 means wait indefinitely.
+     */
+    public static int getReadTimeoutMillis() {
+        return readTimeoutMillis;
+    }
+
+    public static void setReadTimeoutMillis(final int timeoutMillis) {
+        if (timeoutMillis < 0) {
+            throw new InternalAdapterException("read timeout cannot be negative");
+        }
+        readTimeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * @return the circuit breaker thresholds applied per database endpoint, or {@code null} if circuit breaking is
+     * disabled (default)
+     */
+    public static CircuitBreakerConfig getCircuitBreakerConfig() {
+        return circuitBreakerConfig;
+    }
+
+    /**
+     * Enables circuit breaking for every database endpoint. Existing breakers are reset to a closed state.
+     *
+     * @param config thresholds for the breakers; {@code null} disables circuit breaking
+     */
+    public static void setCircuitBreakerConfig(final CircuitBreakerConfig config) {
+        circuitBreakerConfig = config;
+    }
+
+    /**
+     * @param category the category of queries
+     * @return the bulkhead limiting concurrent requests of the category, or {@code null} if unlimited (default)
+     */
+    public static BulkheadConfig getBulkheadConfig(final QueryType.Category category) {
+        return bulkheadConfigs.get(category);
+    }
+
+    /**
+     * Caps the number of concurrent requests of a category. Requests already holding a slot are unaffected by a change.
+     *
+     * @param category the category of queries to limit
+     * @param config the limit to apply; {@code null} removes the limit
+     */
+    public static void setBulkheadConfig(final QueryType.Category category, final BulkheadConfig config) {
+        if (config == null) {
+            bulkheadConfigs.remove(category);
+        } else {
+            bulkheadConfigs.put(category, config);
+        }
+    }
+
+    public static BalancingStrategy getBalancingStrategy() {
+        return balancingStrategy;
+    }
+
+    /**
+     * Sets how requests are spread across the nodes of {@link Credentials} holding multiple server addresses. Defaults
+     * to {@link BalancingStrategy#POWER_OF_TWO_CHOICES}.
+     *
+     * @param strategy the strategy to use
+     */
+    public static void setBalancingStrategy(final BalancingStrategy strategy) {
+        if (strategy == null) {
+            throw new InternalAdapterException("balancing strategy must be specified");
+        }
+        balancingStrategy = strategy;
+    }
+
+    /**
+     * @return number of consecutive communication failures after which a node is ejected from balancing. Defaults to 3.
+     */
+    public static int getEjectionThreshold() {
+        return ejectionThreshold;
+    }
+
+    public static void setEjectionThreshold(final int consecutiveFailures) {
+        if (consecutiveFailures < 1) {
+            throw new InternalAdapterException("ejection threshold must be at least 1");
+        }
+        ejectionThreshold = consecutiveFailures;
+    }
+
+    /**
+     * @return time in milliseconds for which a node is first ejected. Repeated ejections of the same node double this
+     * time, up to 32 times the configured value. Defaults to 10 seconds.
+     */
+    public static long getEjectionDurationMillis() {
+        return ejectionDurationMillis;
+    }
+
+    public static void setEjectionDurationMillis(final long durationMillis) {
+        if (durationMillis < 1) {
+            throw new InternalAdapterException("ejection duration must be positive");
+        }
+        ejectionDurationMillis = durationMillis;
+    }
+
+    /**
+     * @return interval in milliseconds at which ejected nodes are probed for reachability, so that they can be
+     * readmitted before their ejection time runs out. Defaults to 5 seconds; 0 disables active health checks.
+     */
+    public static long getHealthCheckIntervalMillis() {
+        return healthCheckIntervalMillis;
+    }
+
+    public static void setHealthCheckIntervalMillis(final long intervalMillis) {
+        if (intervalMillis < 0) {
+            throw new InternalAdapterException("health check interval cannot be negative");
+        }
+        healthCheckIntervalMillis = intervalMillis;
+    }
+
+    /**
+     * @return settings for hedging read-only requests, or {@code null} if hedging is disabled (default)
+     */
+    public static HedgingConfig getHedgingConfig() {
+        return hedgingConfig;
+    }
+
+    /**
+     * Enables hedging of read-only requests. Hedging only applies to {@link Credentials} naming more than one node.
+     *
+     * @param config hedging settings; {@code null} disables hedging
+     */
+    public static void setHedgingConfig(final HedgingConfig config) {
+        hedgingConfig = config;
+    }
+
+    public static ReadRouting getMirroredReadRouting() {
+        return mirroredReadRouting;
+    }
+
+    /**
+     * Sets where reads on {@link com.blobcity.db.enums.ReplicationType#MIRRORED} collections are sent when
+     * {@link Credentials} name multiple nodes. Defaults to {@link ReadRouting#SPREAD}.
+     *
+     * @param routing the routing to use for reads on mirrored collections
+     */
+    public static void setMirroredReadRouting(final ReadRouting routing) {
+        if (routing == null) {
+            throw new InternalAdapterException("read routing must be specified");
+        }
+        mirroredReadRouting = routing;
+    }
+
+    public static MetricsRegistry getMetricsRegistry() {
+        return metricsRegistry;
+    }
+
+    /**
+     * Sets the registry receiving latency, payload size, error and in-flight measurements of every operation sent to
+     * the database.
+     *
+     * @param registry the registry to record metrics in; {@code null} disables metrics
+     */
+    public static void setMetricsRegistry(final MetricsRegistry registry) {
+        metricsRegistry = registry;
+    }
+
+    public static TimingListener getTimingListener() {
+        return timingListener;
+    }
+
+    /**
+     * Sets the listener receiving the breakdown of every operation into encode, network, parse and bind phases.
+     *
+     * @param listener the listener to report timings to; {@code null} disables timing
+     */
+    public static void setTimingListener(final TimingListener listener) {
+        timingListener = listener;
+    }
+
+    public static SlowQueryLogConfig getSlowQueryLogConfig() {
+        return slowQueryLogConfig;
+    }
+
+    /**
+     * Enables the slow query log, available through {@link com.blobcity.db.SlowQueryLog#getInstance()}.
+     *
+     * @param config slow query log settings; {@code null} disables the log
+     */
+    public static void setSlowQueryLogConfig(final SlowQueryLogConfig config) {
+        slowQueryLogConfig = config;
+    }
+
+    /**
+     * @return the registered request interceptors, in the order they are applied
+     */
+    public static List<RequestInterceptor> getInterceptors() {
+        return interceptors;
+    }
+
+    /**
+     * Registers an interceptor around every request sent to the database. Interceptors registered earlier wrap those
+     * registered later.
+     *
+     * @param interceptor the interceptor to add
+     */
+    public static synchronized void addInterceptor(final RequestInterceptor interceptor) {
+        if (interceptor == null) {
+            throw new InternalAdapterException("interceptor must be specified");
+        }
+
+        final List<RequestInterceptor> updated = new ArrayList<RequestInterceptor>(interceptors);
+        updated.add(interceptor);
+        interceptors = Collections.unmodifiableList(updated);
+    }
+
+    /**
+     * @param interceptor the interceptor to remove
+     * @return {@code true} if the interceptor was registered
+     */
+    public static synchronized boolean removeInterceptor(final RequestInterceptor interceptor) {
+        final List<RequestInterceptor> updated = new ArrayList<RequestInterceptor>(interceptors);
+        final boolean removed = updated.remove(interceptor);
+        interceptors = updated.isEmpty() ? Collections.<RequestInterceptor>emptyList() : Collections.unmodifiableList(updated);
+        return removed;
+    }
+
+    public static WriteBehindConfig getWriteBehindConfig(final Class<? extends Db> clazz) {
+        return writeBehindConfigs.get(clazz);
+    }
+
+    /**
+     * Enables write-behind of {@link Db#save()} for an entity class. Saves are buffered and sent asynchronously, so
+     * that a failing save is logged rather than reported to the caller; use {@link Db#flush(Class)} to send buffered
+     * saves and have failures reported. Buffered saves are sent when write-behind is disabled and on JVM shutdown.
+     *
+     * @param clazz the entity class
+     * @param config write-behind settings; {@code null} disables write-behind for the class
+     */
+    public static void setWriteBehindConfig(final Class<? extends Db> clazz, final WriteBehindConfig config) {
+        if (clazz == null) {
+            throw new InternalAdapterException("entity class must be specified");
+        }
+
+        if (config == null) {
+            writeBehindConfigs.remove(clazz);
+        } else {
+            writeBehindConfigs.put(clazz, config);
+        }
+    }
+
+    public static boolean isDirtyTracking(final Class<? extends Db> clazz) {
+        return dirtyTrackedClasses.contains(clazz);
+    }
+
+    /**
+     * Enables dirty tracking for an entity class. The values of a tracked record are remembered when it is loaded
+     * from or saved to the database, so that {@link Db#save()} sends only the columns changed since, and does nothing
+     * if none changed. Records created by the application rather than loaded are still saved whole. Saves of classes
+     * with write-behind enabled are always sent whole, as buffered saves of a record replace one another.
+     *
+     * The changed columns are sent as an {@code update} query, which merges them into the stored record and needs a
+     * database that supports it. A database rejecting the query is sent a whole {@code save} instead, and from then
+     * on tracked records are saved whole to the same nodes, skipping only saves without changes.
+     *
+     * @param clazz the entity class
+     * @param enabled {@code true} to enable dirty tracking, {@code false} to disable it
+     */
+    public static void setDirtyTracking(final Class<? extends Db> clazz, final boolean enabled) {
+        if (clazz == null) {
+            throw new InternalAdapterException("entity class must be specified");
+        }
+
+        if (enabled) {
+            dirtyTrackedClasses.add(clazz);
+        } else {
+            dirtyTrackedClasses.remove(clazz);
+        }
+    }
+
+    public static JournalConfig getJournalConfig() {
+        return journalConfig;
+    }
+
+    /**
+     * Enables the local write journal for {@link Db#insert()} and {@link Db#insertJsonData(String, com.google.gson.JsonObject)}.
+     * Journalled inserts are acknowledged once written locally and sent to the database in the background with the
+     * default {@link Credentials}, as credentials are never written to disk. Records already journalled remain in the
+     * journal directory when it is disabled and are sent once it is enabled again.
+     *
+     * @param config journal settings; {@code null} disables the journal
+     */
+    public static void setJournalConfig(final JournalConfig config) {
+        journalConfig = config;
+    }
+}
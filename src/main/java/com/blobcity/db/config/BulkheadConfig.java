@@ -0,0 +1,51 @@
+/*
+ * Copyright 2016, BlobCity iSolutions Pvt. Ltd.
+ */
+package com.blobcity.db.config;
+
+import com.blobcity.db.exceptions.InternalAdapterException;
+
+/**
+ * Immutable limit on the number of requests of one {@link com.blobcity.db.QueryType.Category} that may be in flight
+ * at the same time. A request that cannot get a slot within {@code maxWaitMillis} fails with a
+ * {@link com.blobcity.db.exceptions.BulkheadFullException} instead of queueing indefinitely.
+ *
+ * Register an instance using {@link AdapterConfig#setBulkheadConfig(com.blobcity.db.QueryType.Category, BulkheadConfig)}.
+ *
+ * @author Prikshit Kumar
+ */
+public final class BulkheadConfig {
+
+    private final int maxConcurrentCalls;
+    private final long maxWaitMillis;
+
+    private BulkheadConfig(final int maxConcurrentCalls, final long maxWaitMillis) {
+        this.maxConcurrentCalls = maxConcurrentCalls;
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    /**
+     * @param maxConcurrentCalls maximum number of requests allowed in flight at any time
+     * @param maxWaitMillis time a request may wait for a free slot; 0 fails immediately when the bulkhead is full
+     * @return an immutable {@link BulkheadConfig}
+     */
+    public static BulkheadConfig create(final int maxConcurrentCalls, final long maxWaitMillis) {
+        if (maxConcurrentCalls < 1) {
+            throw new InternalAdapterException("bulkhead must allow at least one concurrent call");
+        }
+
+        if (maxWaitMillis < 0) {
+            throw new InternalAdapterException("bulkhead wait time cannot be negative");
+        }
+
+        return new BulkheadConfig(maxConcurrentCalls, maxWaitMillis);
+    }
+
+    public int getMaxConcurrentCalls() {
+        return maxConcurrentCalls;
+    }
+
+    public long getMaxWaitMillis() {
+        return maxWaitMillis;
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2016, BlobCity iSolutions Pvt. Ltd.
+ */
+package com.blobcity.db.config;
+
+import com.blobcity.db.exceptions.InternalAdapterException;
+
+/**
+ * Immutable thresholds for the circuit breakers the adapter keeps per database endpoint. A breaker opens when the
+ * failure rate or the slow call rate over the last {@code slidingWindowSize} calls crosses the configured percentage,
+ * rejects all calls for {@code openStateDurationMillis}, and then lets a limited number of probe calls through before
+ * deciding whether to close again.
+ *
+ * Register an instance using {@link AdapterConfig#setCircuitBreakerConfig(CircuitBreakerConfig)}.
+ *
+ * @author Prikshit Kumar
+ */
+public final class CircuitBreakerConfig {
+
+    private final float failureRateThreshold;
+    private final float slowCallRateThreshold;
+    private final long slowCallDurationMillis;
+    private final int slidingWindowSize;
+    private final int minimumNumberOfCalls;
+    private final long openStateDurationMillis;
+    private final int permittedCallsInHalfOpenState;
+
+    private CircuitBreakerConfig(final float failureRateThreshold, final float slowCallRateThreshold, final long slowCallDurationMillis,
+            final int slidingWindowSize, final int minimumNumberOfCalls, final long openStateDurationMillis, final int permittedCallsInHalfOpenState) {
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.slowCallDurationMillis = slowCallDurationMillis;
+        this.slidingWindowSize = slidingWindowSize;
+        this.minimumNumberOfCalls = minimumNumberOfCalls;
+        this.openStateDurationMillis = openStateDurationMillis;
+        this.permittedCallsInHalfOpenState = permittedCallsInHalfOpenState;
+    }
+
+    /**
+     * Breaker opening at 50% failures or 80% of calls slower than 5 seconds over a window of 100 calls, staying open
+     * for 30 seconds and probing with 5 calls
+     *
+     * @return the default configuration
+     */
+    public static CircuitBreakerConfig defaults() {
+        return create(50, 80, 5000, 30000);
+    }
+
+    public static CircuitBreakerConfig create(final float failureRateThreshold, final float slowCallRateThreshold, final long slowCallDurationMillis,
+            final long openStateDurationMillis) {
+        return create(failureRateThreshold, slowCallRateThreshold, slowCallDurationMillis, 100, 20, openStateDurationMillis, 5);
+    }
+
+    /**
+     * Creates a fully specified breaker configuration
+     *
+     * @param failureRateThreshold percentage (0 - 100) of failed calls in the window at which the breaker opens
+     * @param slowCallRateThreshold percentage (0 - 100) of slow calls in the window at which the breaker opens
+     * @param slowCallDurationMillis calls taking longer than this are counted as slow
+     * @param slidingWindowSize number of most recent calls over which the rates are computed
+     * @param minimumNumberOfCalls rates are not evaluated until at least these many calls are recorded
+     * @param openStateDurationMillis time for which an open breaker rejects calls before probing the endpoint again
+     * @param permittedCallsInHalfOpenState number of probe calls that must succeed for the breaker to close
+     * @return an immutable {@link CircuitBreakerConfig}
+     */
+    public static CircuitBreakerConfig create(final float failureRateThreshold, final float slowCallRateThreshold, final long slowCallDurationMillis,
+            final int slidingWindowSize, final int minimumNumberOfCalls, final long openStateDurationMillis, final int permittedCallsInHalfOpenState) {
+        if (failureRateThreshold <= 0 || failureRateThreshold > 100 || slowCallRateThreshold <= 0 || slowCallRateThreshold > 100) {
+            throw new InternalAdapterException("circuit breaker rate thresholds must be percentages in the range (0, 100]");
+        }
+
+        if (slidingWindowSize < 1 || minimumNumberOfCalls < 1 || permittedCallsInHalfOpenState < 1) {
+            throw new InternalAdapterException("circuit breaker window size, minimum calls and half-open calls must be positive");
+        }
+
+        if (slowCallDurationMillis <= 0 || openStateDurationMillis <= 0) {
+            throw new InternalAdapterException("circuit breaker durations must be positive");
+        }
+
+        return new CircuitBreakerConfig(failureRateThreshold, slowCallRateThreshold, slowCallDurationMillis, slidingWindowSize,
+                Math.min(minimumNumberOfCalls, slidingWindowSize), openStateDurationMillis, permittedCallsInHalfOpenState);
+    }
+
+    public float getFailureRateThreshold() {
+        return failureRateThreshold;
+    }
+
+    public float getSlowCallRateThreshold() {
+        return slowCallRateThreshold;
+    }
+
+    public long getSlowCallDurationMillis() {
+        return slowCallDurationMillis;
+    }
+
+    public int getSlidingWindowSize() {
+        return slidingWindowSize;
+    }
+
+    public int getMinimumNumberOfCalls() {
+        return minimumNumberOfCalls;
+    }
+
+    public long getOpenStateDurationMillis() {
+        return openStateDurationMillis;
+    }
+
+    public int getPermittedCallsInHalfOpenState() {
+        return permittedCallsInHalfOpenState;
+    }
+}
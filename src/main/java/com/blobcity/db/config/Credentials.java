@@ -3,24 +3,31 @@ package com.blobcity.db.config;
 import com.blobcity.db.Db;
 import com.blobcity.db.exceptions.InternalAdapterException;
 import com.blobcity.db.search.StringUtil;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * Holds the default credentials for the application. If you require to set run time credentials that are different from the default for the application, this
  * class is not for you. Please look for appropriate {@link Db} methods
  *
+ * Credentials may name several nodes of a cluster, in which case requests are spread across the nodes as configured
+ * by {@link AdapterConfig#setBalancingStrategy(com.blobcity.db.enums.BalancingStrategy)}. The first node is treated as
+ * the coordinator of the cluster.
+ *
  * @author Karun AB
  */
 public class Credentials {
 
-    private final String serverAddress;
+    private final List<String> serverAddresses;
     private final String username;
     private final String password;
     private String db;
     private static Credentials instance;
     private static final String DEFAULT_SERVER_ADDRESS = "ds.blobcity.com";
 
-    private Credentials(final String serverAddress, final String username, final String password, final String db) {
-        this.serverAddress = serverAddress;
+    private Credentials(final List<String> serverAddresses, final String username, final String password, final String db) {
+        this.serverAddresses = serverAddresses;
         this.username = username;
         this.password = password;
         this.db = db;
@@ -54,6 +61,14 @@ public class Credentials {
         return instance = create(serverAddress, username, password, db);
     }
 
+    public static Credentials init(final List<String> serverAddresses, final String username, final String password, final String db) {
+        if (instance != null) {
+            throw new IllegalStateException("Credentials are already initialised");
+        }
+
+        return instance = create(serverAddresses, username, password, db);
+    }
+
     public static void unInit() {
         instance = null;
     }
@@ -67,19 +82,52 @@ public class Credentials {
     }
 
     public static Credentials create(final String serverAddress, final String username, final String password, final String db) {
-        return new Credentials(serverAddress, username, password, db);
+        return new Credentials(Collections.singletonList(serverAddress), username, password, db);
+    }
+
+    /**
+     * Creates credentials for a multi-node cluster
+     *
+     * @param serverAddresses addresses of the cluster nodes, coordinator first
+     * @param username the username
+     * @param password the password
+     * @param db the datastore name
+     * @return a new {@link Credentials} instance
+     */
+    public static Credentials create(final List<String> serverAddresses, final String username, final String password, final String db) {
+        if (serverAddresses == null || serverAddresses.isEmpty()) {
+            throw new InternalAdapterException("at least one server address must be specified");
+        }
+
+        for (final String serverAddress : serverAddresses) {
+            if (StringUtil.isEmpty(serverAddress)) {
+                throw new InternalAdapterException("server addresses cannot be empty");
+            }
+        }
+
+        return new Credentials(Collections.unmodifiableList(new ArrayList<String>(serverAddresses)), username, password, db);
     }
 
     public static Credentials create(final Credentials credentials, final String serverAddress, final String username, final String password, final String db) {
         return new Credentials(
-                StringUtil.isEmpty(serverAddress) ? credentials.getServiceAddress() : serverAddress,
+                StringUtil.isEmpty(serverAddress) ? credentials.getServiceAddresses() : Collections.singletonList(serverAddress),
                 StringUtil.isEmpty(username) ? credentials.getUsername() : username,
                 StringUtil.isEmpty(password) ? credentials.getPassword() : password,
                 StringUtil.isEmpty(db) ? credentials.getDb() : db);
     }
 
+    /**
+     * @return address of the only node, or of the coordinator node if multiple nodes are specified
+     */
     public String getServiceAddress() {
-        return serverAddress;
+        return serverAddresses.get(0);
+    }
+
+    /**
+     * @return unmodifiable list of all node addresses, coordinator first
+     */
+    public List<String> getServiceAddresses() {
+        return serverAddresses;
     }
 
     public String getUsername() {
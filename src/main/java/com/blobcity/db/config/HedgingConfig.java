@@ -0,0 +1,75 @@
+/*
+ * Copyright 2016, BlobCity iSolutions Pvt. Ltd.
+ */
+package com.blobcity.db.config;
+
+import com.blobcity.db.exceptions.InternalAdapterException;
+
+/**
+ * Immutable settings for hedging read-only requests against multi-node clusters. If the first attempt of a read has
+ * not completed within the observed latency percentile of its query type, a second attempt is sent to another node
+ * and whichever answers first is used; the other attempt is aborted.
+ *
+ * Register an instance using {@link AdapterConfig#setHedgingConfig(HedgingConfig)}.
+ *
+ * @author Prikshit Kumar
+ */
+public final class HedgingConfig {
+
+    private final double percentile;
+    private final long minDelayMillis;
+    private final long initialDelayMillis;
+    private final int minSamples;
+
+    private HedgingConfig(final double percentile, final long minDelayMillis, final long initialDelayMillis, final int minSamples) {
+        this.percentile = percentile;
+        this.minDelayMillis = minDelayMillis;
+        this.initialDelayMillis = initialDelayMillis;
+        this.minSamples = minSamples;
+    }
+
+    /**
+     * Hedges at the observed 95th percentile, never sooner than 5 ms, and after 100 ms until 100 latencies have been
+     * observed for the query type
+     *
+     * @return the default configuration
+     */
+    public static HedgingConfig defaults() {
+        return create(95, 5, 100, 100);
+    }
+
+    /**
+     * @param percentile observed latency percentile (0 - 100) after which the hedge is sent
+     * @param minDelayMillis lower bound on the hedge delay, limiting extra load when latencies are very low
+     * @param initialDelayMillis hedge delay used while too few latencies have been observed
+     * @param minSamples number of observed latencies required before the percentile is trusted
+     * @return an immutable {@link HedgingConfig}
+     */
+    public static HedgingConfig create(final double percentile, final long minDelayMillis, final long initialDelayMillis, final int minSamples) {
+        if (percentile <= 0 || percentile >= 100) {
+            throw new InternalAdapterException("hedging percentile must be in the range (0, 100)");
+        }
+
+        if (minDelayMillis < 0 || initialDelayMillis < 0 || minSamples < 1) {
+            throw new InternalAdapterException("hedging delays cannot be negative and at least one sample is required");
+        }
+
+        return new HedgingConfig(percentile, minDelayMillis, initialDelayMillis, minSamples);
+    }
+
+    public double getPercentile() {
+        return percentile;
+    }
+
+    public long getMinDelayMillis() {
+        return minDelayMillis;
+    }
+
+    public long getInitialDelayMillis() {
+        return initialDelayMillis;
+    }
+
+    public int getMinSamples() {
+        return minSamples;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2016, BlobCity iSolutions Pvt. Ltd.
+ */
+package com.blobcity.db.config;
+
+import com.blobcity.db.exceptions.InternalAdapterException;
+import java.io.File;
+
+/**
+ * Immutable settings of the local write journal. When enabled, inserts are appended to memory-mapped segment files
+ * in the journal directory and acknowledged as soon as they are appended; a background drainer sends them to the
+ * database in batches, at least once, removing segments once they are fully sent.
+ *
+ * Register an instance using {@link AdapterConfig#setJournalConfig(JournalConfig)}.
+ *
+ * @author Prikshit Kumar
+ */
+public final class JournalConfig {
+
+    private final File directory;
+    private final int segmentSizeBytes;
+    private final int batchSize;
+    private final long drainIntervalMillis;
+    private final boolean syncOnAppend;
+
+    private JournalConfig(final File directory, final int segmentSizeBytes, final int batchSize, final long drainIntervalMillis,
+            final boolean syncOnAppend) {
+        this.directory = directory;
+        this.segmentSizeBytes = segmentSizeBytes;
+        this.batchSize = batchSize;
+        this.drainIntervalMillis = drainIntervalMillis;
+        this.syncOnAppend = syncOnAppend;
+    }
+
+    /**
+     * Uses segments of 64 MB, drains up to 100 records at a time and checks for records to drain every second. Appends
+     * are not synced to disk, so they survive a crash of the application but not of the operating system.
+     *
+     * @param directory directory holding the journal segments; created if it does not exist
+     * @return the default configuration
+     */
+    public static JournalConfig defaults(final File directory) {
+        return create(directory, 64 * 1024 * 1024, 100, 1000, false);
+    }
+
+    /**
+     * @param directory directory holding the journal segments; created if it does not exist
+     * @param segmentSizeBytes size of each segment file, which bounds the size of a single record
+     * @param batchSize maximum number of records sent by the drainer at once
+     * @param drainIntervalMillis time between checks for records to drain while the database is unreachable or the
+     * journal is idle
+     * @param syncOnAppend {@code true} to force every append to disk before acknowledging it
+     * @return an immutable {@link JournalConfig}
+     */
+    public static JournalConfig create(final File directory, final int segmentSizeBytes, final int batchSize, final long drainIntervalMillis,
+            final boolean syncOnAppend) {
+        if (directory == null) {
+            throw new InternalAdapterException("journal directory must be specified");
+        }
+
+        if (segmentSizeBytes < 4096 || batchSize < 1 || drainIntervalMillis < 1) {
+            throw new InternalAdapterException("journal segments must be at least 4 KB, and batch size and drain interval must be positive");
+        }
+
+        return new JournalConfig(directory, segmentSizeBytes, batchSize, drainIntervalMillis, syncOnAppend);
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public int getSegmentSizeBytes() {
+        return segmentSizeBytes;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public long getDrainIntervalMillis() {
+        return drainIntervalMillis;
+    }
+
+    public boolean isSyncOnAppend() {
+        return syncOnAppend;
+    }
+}
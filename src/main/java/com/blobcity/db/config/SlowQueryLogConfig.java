@@ -0,0 +1,67 @@
+/*
+ * Copyright 2016, BlobCity iSolutions Pvt. Ltd.
+ */
+package com.blobcity.db.config;
+
+import com.blobcity.db.exceptions.InternalAdapterException;
+
+/**
+ * Immutable settings of the slow query log. Operations taking at least the threshold are recorded in a ring buffer
+ * of fixed capacity and written to the adapter's logger, at most the configured number per second; slow operations
+ * beyond that rate are only counted.
+ *
+ * Register an instance using {@link AdapterConfig#setSlowQueryLogConfig(SlowQueryLogConfig)}.
+ *
+ * @author Prikshit Kumar
+ */
+public final class SlowQueryLogConfig {
+
+    private final long thresholdMillis;
+    private final int capacity;
+    private final int maxEntriesPerSecond;
+
+    private SlowQueryLogConfig(final long thresholdMillis, final int capacity, final int maxEntriesPerSecond) {
+        this.thresholdMillis = thresholdMillis;
+        this.capacity = capacity;
+        this.maxEntriesPerSecond = maxEntriesPerSecond;
+    }
+
+    /**
+     * Records operations taking 1 second or more, keeping the last 256 and recording at most 10 per second
+     *
+     * @return the default configuration
+     */
+    public static SlowQueryLogConfig defaults() {
+        return create(1000, 256, 10);
+    }
+
+    /**
+     * @param thresholdMillis minimum duration of an operation for it to be recorded
+     * @param capacity number of most recent slow operations kept
+     * @param maxEntriesPerSecond maximum number of slow operations recorded per second
+     * @return an immutable {@link SlowQueryLogConfig}
+     */
+    public static SlowQueryLogConfig create(final long thresholdMillis, final int capacity, final int maxEntriesPerSecond) {
+        if (thresholdMillis < 0) {
+            throw new InternalAdapterException("slow query threshold cannot be negative");
+        }
+
+        if (capacity < 1 || maxEntriesPerSecond < 1) {
+            throw new InternalAdapterException("slow query log capacity and rate must be at least 1");
+        }
+
+        return new SlowQueryLogConfig(thresholdMillis, capacity, maxEntriesPerSecond);
+    }
+
+    public long getThresholdMillis() {
+        return thresholdMillis;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getMaxEntriesPerSecond() {
+        return maxEntriesPerSecond;
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2016, BlobCity iSolutions Pvt. Ltd.
+ */
+package com.blobcity.db.config;
+
+import com.blobcity.db.exceptions.InternalAdapterException;
+
+/**
+ * Immutable settings for write-behind of saves of an entity class. Saves are acknowledged once buffered, repeated saves
+ * of a record are coalesced into one, and buffered saves are sent to the database in batches, when enough records are
+ * pending or when the flush interval elapses. When the buffer is full, saves of records not yet buffered wait for
+ * room up to the maximum blocking time.
+ *
+ * Register an instance using {@link AdapterConfig#setWriteBehindConfig(Class, WriteBehindConfig)}.
+ *
+ * @author Prikshit Kumar
+ */
+public final class WriteBehindConfig {
+
+    private final int maxPending;
+    private final int batchSize;
+    private final long flushIntervalMillis;
+    private final long maxBlockMillis;
+
+    private WriteBehindConfig(final int maxPending, final int batchSize, final long flushIntervalMillis, final long maxBlockMillis) {
+        this.maxPending = maxPending;
+        this.batchSize = batchSize;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.maxBlockMillis = maxBlockMillis;
+    }
+
+    /**
+     * Buffers up to 10000 records, flushing every second or once 100 records are pending, and blocks saves for up to
+     * 5 seconds when full
+     *
+     * @return the default configuration
+     */
+    public static WriteBehindConfig defaults() {
+        return create(10000, 100, 1000, 5000);
+    }
+
+    /**
+     * @param maxPending maximum number of distinct records buffered
+     * @param batchSize number of pending records that triggers a flush, and the maximum number of records sent at once
+     * @param flushIntervalMillis maximum time a save stays buffered when fewer than {@code batchSize} are pending
+     * @param maxBlockMillis maximum time a save waits for room in a full buffer before failing
+     * @return an immutable {@link WriteBehindConfig}
+     */
+    public static WriteBehindConfig create(final int maxPending, final int batchSize, final long flushIntervalMillis, final long maxBlockMillis) {
+        if (maxPending < 1 || batchSize < 1 || batchSize > maxPending) {
+            throw new InternalAdapterException("write-behind batch size must be between 1 and the maximum number of pending records");
+        }
+
+        if (flushIntervalMillis < 1 || maxBlockMillis < 0) {
+            throw new InternalAdapterException("write-behind flush interval must be positive and blocking time cannot be negative");
+        }
+
+        return new WriteBehindConfig(maxPending, batchSize, flushIntervalMillis, maxBlockMillis);
+    }
+
+    public int getMaxPending() {
+        return maxPending;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public long getFlushIntervalMillis() {
+        return flushIntervalMillis;
+    }
+
+    public long getMaxBlockMillis() {
+        return maxBlockMillis;
+    }
+}
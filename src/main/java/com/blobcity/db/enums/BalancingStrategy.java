@@ -0,0 +1,19 @@
+/*
+ * Copyright 2016, BlobCity iSolutions Pvt. Ltd.
+ */
+package com.blobcity.db.enums;
+
+/**
+ * Strategies for spreading requests across the nodes of a cluster when {@link com.blobcity.db.config.Credentials}
+ * contain more than one server address
+ *
+ * @author Prikshit Kumar
+ */
+public enum BalancingStrategy {
+    /* Nodes are used in turn */
+    ROUND_ROBIN,
+    /* The node with the fewest requests currently in flight from this adapter is used */
+    LEAST_OUTSTANDING_REQUESTS,
+    /* Two nodes are picked at random and the one with fewer requests in flight is used */
+    POWER_OF_TWO_CHOICES
+}
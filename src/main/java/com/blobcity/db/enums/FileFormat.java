@@ -0,0 +1,21 @@
+/*
+ * Copyright 2016, BlobCity iSolutions Pvt. Ltd.
+ */
+package com.blobcity.db.enums;
+
+/**
+ * Formats of UTF-8 text files holding one record per line, used to import records into and export them out of a
+ * collection
+ *
+ * @author Prikshit Kumar
+ */
+public enum FileFormat {
+    /**
+     * Newline delimited JSON: every line is a JSON object
+     */
+    NDJSON,
+    /**
+     * Comma separated values as in RFC 4180: the first line names the columns; imported fields may not span lines
+     */
+    CSV
+}
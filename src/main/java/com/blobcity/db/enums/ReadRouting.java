@@ -0,0 +1,17 @@
+/*
+ * Copyright 2016, BlobCity iSolutions Pvt. Ltd.
+ */
+package com.blobcity.db.enums;
+
+/**
+ * Placement of reads on {@link ReplicationType#MIRRORED} collections, which hold the full data on every node of the
+ * cluster. Writes on such collections are always sent to the coordinator node.
+ *
+ * @author Prikshit Kumar
+ */
+public enum ReadRouting {
+    /* Reads are spread across all nodes using the configured BalancingStrategy */
+    SPREAD,
+    /* Reads are sent to the node with the lowest observed latency */
+    NEAREST
+}
@@ -24,5 +24,17 @@ public enum ReplicationType {
     public String getType() {
         return type;
     }
-    
+
+    /**
+     * @param type the type as used by the database, such as {@code "mirrored"}
+     * @return the matching {@link ReplicationType}, or {@code null} if there is none
+     */
+    public static ReplicationType fromType(final String type) {
+        for (final ReplicationType replicationType : values()) {
+            if (replicationType.type.equals(type)) {
+                return replicationType;
+            }
+        }
+        return null;
+    }
 }
@@ -0,0 +1,19 @@
+/*
+ * Copyright 2016, BlobCity iSolutions Pvt. Ltd.
+ */
+package com.blobcity.db.exceptions;
+
+/**
+ * Thrown when the maximum number of concurrent requests configured for a category of queries is already in flight and
+ * no slot became free within the configured wait time. The request was not sent to the database.
+ *
+ * @author Prikshit Kumar
+ */
+public class BulkheadFullException extends InternalAdapterException {
+
+    private static final long serialVersionUID = -5195283411749683204L;
+
+    public BulkheadFullException(final String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,27 @@
+/*
+ * Copyright 2016, BlobCity iSolutions Pvt. Ltd.
+ */
+package com.blobcity.db.exceptions;
+
+/**
+ * Thrown without contacting the database when the circuit breaker for the target endpoint is open, i.e. the endpoint
+ * has recently been failing or responding too slowly. The request may be retried once the breaker has had time to
+ * probe the endpoint again.
+ *
+ * @author Prikshit Kumar
+ */
+public class CircuitBreakerOpenException extends InternalAdapterException {
+
+    private static final long serialVersionUID = 3470285132190857154L;
+
+    private final String endpoint;
+
+    public CircuitBreakerOpenException(final String endpoint) {
+        super("Circuit breaker is open for database endpoint " + endpoint + ". Request was not sent.");
+        this.endpoint = endpoint;
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+}
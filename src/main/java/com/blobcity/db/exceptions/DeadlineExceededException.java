@@ -0,0 +1,24 @@
+/*
+ * Copyright 2016, BlobCity iSolutions Pvt. Ltd.
+ */
+package com.blobcity.db.exceptions;
+
+/**
+ * Thrown when the deadline set for an operation through {@link com.blobcity.db.Db#withDeadline(long,
+ * java.util.concurrent.TimeUnit)} expires, either before a request could be sent or while it was in flight. In the
+ * latter case the connection is dropped, so a write may or may not have been applied by the database.
+ *
+ * @author Prikshit Kumar
+ */
+public class DeadlineExceededException extends InternalAdapterException {
+
+    private static final long serialVersionUID = 1932657706240913587L;
+
+    public DeadlineExceededException(final String message) {
+        super(message);
+    }
+
+    public DeadlineExceededException(final String message, final Throwable throwable) {
+        super(message, throwable);
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2016, BlobCity iSolutions Pvt. Ltd.
+ */
+package com.blobcity.db.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link MetricsRegistry} keeping metrics in memory, per {@link MetricTags}. Latencies are recorded in nanoseconds in a
+ * {@link LatencyHistogram}.
+ *
+ * @author Prikshit Kumar
+ */
+public class InMemoryMetricsRegistry implements MetricsRegistry {
+
+    private final ConcurrentMap<MetricTags, OperationMetrics> metrics = new ConcurrentHashMap<MetricTags, OperationMetrics>();
+
+    @Override
+    public void onRequestStarted(final MetricTags tags) {
+        metricsFor(tags).inFlight.incrementAndGet();
+    }
+
+    @Override
+    public void onRequestCompleted(final MetricTags tags, final long latencyNanos, final long requestBytes, final long responseBytes,
+            final String errorCode, final Throwable error) {
+        final OperationMetrics operationMetrics = metricsFor(tags);
+        operationMetrics.inFlight.decrementAndGet();
+        operationMetrics.latency.record(latencyNanos);
+        operationMetrics.requestBytes.addAndGet(requestBytes);
+        operationMetrics.responseBytes.addAndGet(responseBytes);
+        if (errorCode != null) {
+            operationMetrics.errorCount(errorCode).incrementAndGet();
+        }
+    }
+
+    /**
+     * @return metrics of an operation, or {@code null} if the operation has not been executed
+     */
+    public OperationMetrics get(final MetricTags tags) {
+        return metrics.get(tags);
+    }
+
+    /**
+     * @return live view of the metrics of every operation executed so far
+     */
+    public Map<MetricTags, OperationMetrics> getAll() {
+        return Collections.unmodifiableMap(metrics);
+    }
+
+    /**
+     * Discards all metrics recorded so far
+     */
+    public void clear() {
+        metrics.clear();
+    }
+
+    private OperationMetrics metricsFor(final MetricTags tags) {
+        OperationMetrics operationMetrics = metrics.get(tags);
+        if (operationMetrics == null) {
+            final OperationMetrics created = new OperationMetrics();
+            operationMetrics = metrics.putIfAbsent(tags, created);
+            if (operationMetrics == null) {
+                operationMetrics = created;
+            }
+        }
+        return operationMetrics;
+    }
+
+    /**
+     * Metrics of a single operation
+     */
+    public static class OperationMetrics {
+
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final AtomicLong inFlight = new AtomicLong();
+        private final AtomicLong requestBytes = new AtomicLong();
+        private final AtomicLong responseBytes = new AtomicLong();
+        private final ConcurrentMap<String, AtomicLong> errorCounts = new ConcurrentHashMap<String, AtomicLong>();
+
+        /**
+         * @return latencies of completed operations, in nanoseconds
+         */
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+
+        /**
+         * @return number of operations currently executing
+         */
+        public long getInFlight() {
+            return inFlight.get();
+        }
+
+        public long getRequestBytes() {
+            return requestBytes.get();
+        }
+
+        public long getResponseBytes() {
+            return responseBytes.get();
+        }
+
+        /**
+         * @return number of failed operations per error code
+         */
+        public Map<String, Long> getErrorCounts() {
+            final Map<String, Long> counts = new ConcurrentHashMap<String, Long>();
+            for (final Map.Entry<String, AtomicLong> entry : errorCounts.entrySet()) {
+                counts.put(entry.getKey(), entry.getValue().get());
+            }
+            return counts;
+        }
+
+        private AtomicLong errorCount(final String errorCode) {
+            AtomicLong count = errorCounts.get(errorCode);
+            if (count == null) {
+                final AtomicLong created = new AtomicLong();
+                count = errorCounts.putIfAbsent(errorCode, created);
+                if (count == null) {
+                    count = created;
+                }
+            }
+            return count;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2016, BlobCity iSolutions Pvt. Ltd.
+ */
+package com.blobcity.db.metrics;
+
+import com.blobcity.db.QueryType;
+
+/**
+ * Identifies the operation a metric is recorded for: the {@link QueryType} and, where the operation is specific to
+ * them, the datastore and collection operated upon.
+ *
+ * @author Prikshit Kumar
+ */
+public final class MetricTags {
+
+    private final QueryType queryType;
+    private final String ds;
+    private final String collection;
+
+    private MetricTags(final QueryType queryType, final String ds, final String collection) {
+        this.queryType = queryType;
+        this.ds = ds;
+        this.collection = collection;
+    }
+
+    /**
+     * @param queryType type of the operation
+     * @param ds datastore operated upon, or {@code null}
+     * @param collection collection operated upon, or {@code null}
+     */
+    public static MetricTags of(final QueryType queryType, final String ds, final String collection) {
+        if (queryType == null) {
+            throw new IllegalArgumentException("query type must be specified");
+        }
+        return new MetricTags(queryType, ds, collection);
+    }
+
+    public QueryType getQueryType() {
+        return queryType;
+    }
+
+    /**
+     * @return the datastore operated upon, or {@code null} if the operation is not specific to one
+     */
+    public String getDs() {
+        return ds;
+    }
+
+    /**
+     * @return the collection operated upon, or {@code null} if the operation is not specific to one
+     */
+    public String getCollection() {
+        return collection;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof MetricTags)) {
+            return false;
+        }
+        final MetricTags other = (MetricTags) obj;
+        return queryType == other.queryType
+                && (ds == null ? other.ds == null : ds.equals(other.ds))
+                && (collection == null ? other.collection == null : collection.equals(other.collection));
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = queryType.hashCode();
+        hash = 31 * hash + (ds != null ? ds.hashCode() : 0);
+        hash = 31 * hash + (collection != null ? collection.hashCode() : 0);
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return "MetricTags{" + "queryType=" + queryType + ", ds=" + ds + ", collection=" + collection + '}';
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2016, BlobCity iSolutions Pvt. Ltd.
+ */
+package com.blobcity.db.metrics;
+
+/**
+ * Receives measurements of every operation the adapter sends to the database. Register an implementation through
+ * {@link com.blobcity.db.config.AdapterConfig#setMetricsRegistry(MetricsRegistry)}; use
+ * {@link InMemoryMetricsRegistry} or bridge to the metrics library of the application.
+ *
+ * Implementations are called on the threads executing the operations and must be thread safe and fast.
+ *
+ * @author Prikshit Kumar
+ */
+public interface MetricsRegistry {
+
+    /**
+     * Error code reported for operations that failed without a response from the database, such as on network
+     * failures, expired deadlines or rejections by a circuit breaker or bulkhead. The exception is available through
+     * the {@code error} argument of {@link #onRequestCompleted}.
+     */
+    String ADAPTER_ERROR = "ADAPTER_ERROR";
+
+    /**
+     * Called when an operation starts
+     *
+     * @param tags the operation
+     */
+    void onRequestStarted(MetricTags tags);
+
+    /**
+     * Called when an operation completes, successfully or not. Every call to {@link #onRequestStarted} is followed by
+     * exactly one call to this method with the same tags.
+     *
+     * @param tags the operation
+     * @param latencyNanos time taken by the operation, including retries and time spent waiting for a bulkhead
+     * @param requestBytes number of bytes in the body of the request sent to the database; 0 if the request could not
+     * be encoded
+     * @param responseBytes number of bytes in the body of the response received from the database; 0 if none was
+     * received
+     * @param errorCode {@code null} if the operation succeeded, the error code reported by the database if it
+     * failed the operation, or {@link #ADAPTER_ERROR}
+     * @param error the exception the operation failed with, if any
+     */
+    void onRequestCompleted(MetricTags tags, long latencyNanos, long requestBytes, long responseBytes, String errorCode, Throwable error);
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2016, BlobCity iSolutions Pvt. Ltd.
+ */
+package com.blobcity.db.metrics;
+
+import com.blobcity.db.QueryType;
+
+/**
+ * Breakdown of the time taken by an operation into its phases:
+ * <ul>
+ * <li>encode: building the query, such as rendering a {@link com.blobcity.db.search.Query} to SQL, and encoding
+ * the request for transmission</li>
+ * <li>network: sending the request and receiving the response, including retries and waiting for a bulkhead</li>
+ * <li>parse: parsing the JSON response</li>
+ * <li>bind: mapping the response onto entities</li>
+ * </ul>
+ * Operations that send multiple requests to the database report the sum of the phases of all requests.
+ *
+ * @author Prikshit Kumar
+ */
+public final class RequestTimings {
+
+    private final QueryType queryType;
+    private final String ds;
+    private final String collection;
+    private final long encodeNanos;
+    private final long networkNanos;
+    private final long parseNanos;
+    private final long bindNanos;
+
+    private RequestTimings(final QueryType queryType, final String ds, final String collection, final long encodeNanos, final long networkNanos,
+            final long parseNanos, final long bindNanos) {
+        this.queryType = queryType;
+        this.ds = ds;
+        this.collection = collection;
+        this.encodeNanos = encodeNanos;
+        this.networkNanos = networkNanos;
+        this.parseNanos = parseNanos;
+        this.bindNanos = bindNanos;
+    }
+
+    public static RequestTimings create(final QueryType queryType, final String ds, final String collection, final long encodeNanos,
+            final long networkNanos, final long parseNanos, final long bindNanos) {
+        return new RequestTimings(queryType, ds, collection, encodeNanos, networkNanos, parseNanos, bindNanos);
+    }
+
+    /**
+     * @return type of the (last) request sent by the operation
+     */
+    public QueryType getQueryType() {
+        return queryType;
+    }
+
+    public String getDs() {
+        return ds;
+    }
+
+    public String getCollection() {
+        return collection;
+    }
+
+    public long getEncodeNanos() {
+        return encodeNanos;
+    }
+
+    public long getNetworkNanos() {
+        return networkNanos;
+    }
+
+    public long getParseNanos() {
+        return parseNanos;
+    }
+
+    public long getBindNanos() {
+        return bindNanos;
+    }
+
+    public long getTotalNanos() {
+        return encodeNanos + networkNanos + parseNanos + bindNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "RequestTimings{" + "queryType=" + queryType + ", ds=" + ds + ", collection=" + collection + ", encodeNanos=" + encodeNanos
+                + ", networkNanos=" + networkNanos + ", parseNanos=" + parseNanos + ", bindNanos=" + bindNanos + '}';
+    }
+}
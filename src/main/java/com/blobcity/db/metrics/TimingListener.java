@@ -0,0 +1,20 @@
+/*
+ * Copyright 2016, BlobCity iSolutions Pvt. Ltd.
+ */
+package com.blobcity.db.metrics;
+
+/**
+ * Receives the phase breakdown of every operation once it completes. Register an implementation through
+ * {@link com.blobcity.db.config.AdapterConfig#setTimingListener(TimingListener)}.
+ *
+ * Listeners are called on the thread that executed the operation and must be thread safe and fast.
+ *
+ * @author Prikshit Kumar
+ */
+public interface TimingListener {
+
+    /**
+     * @param timings the phase breakdown of a completed operation, successful or not
+     */
+    void onRequestTimed(RequestTimings timings);
+}
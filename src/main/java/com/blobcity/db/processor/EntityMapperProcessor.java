@@ -0,0 +1,317 @@
+/*
+ * Copyright 2016, BlobCity iSolutions Pvt. Ltd.
+ */
+package com.blobcity.db.processor;
+
+import com.blobcity.db.annotations.Column;
+import com.blobcity.db.annotations.Entity;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+
+/**
+ * Generates an {@link com.blobcity.db.EntityMapper} for every {@link Entity} class compiled with this processor, so
+ * that the adapter maps its records without reflection. The mapper of {@code com.example.Item} is
+ * {@code com.example.ItemMapper}; the mapper of a nested class {@code com.example.Outer.Item} is
+ * {@code com.example.Outer_ItemMapper}.
+ *
+ * Columns are mapped as by the reflective mapping of the adapter: the fields declared by the entity class that are
+ * neither static nor transient, restricted to those annotated with {@link Column} if there are any. A private or final
+ * field is accessed through its getter and setter. No mapper is generated, and the class is mapped through reflection
+ * as before, if the class is abstract, generic, not accessible from its package or has a field that cannot be
+ * accessed; a warning names the cause.
+ *
+ * The processor is not registered as a service, so that the mapping of entities does not change merely by compiling
+ * them with the adapter on the class path. It has to be named explicitly, with the
+ * {@code -processor com.blobcity.db.processor.EntityMapperProcessor} option of the compiler or, with Maven, in the
+ * {@code annotationProcessors} of the maven-compiler-plugin.
+ *
+ * @author Prikshit Kumar
+ */
+@SupportedAnnotationTypes("com.blobcity.db.annotations.Entity")
+public class EntityMapperProcessor extends AbstractProcessor {
+
+    private static final String DB_CLASS = "com.blobcity.db.Db";
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(final Set<? extends TypeElement> annotations, final RoundEnvironment roundEnv) {
+        for (final Element element : roundEnv.getElementsAnnotatedWith(Entity.class)) {
+            if (element.getKind() == ElementKind.CLASS) {
+                generate((TypeElement) element);
+            }
+        }
+        // the annotation is left to other processors
+        return false;
+    }
+
+    private void generate(final TypeElement type) {
+        final String problem = checkClass(type);
+        if (problem != null) {
+            warn(type, problem);
+            return;
+        }
+
+        final Map<String, Accessor> columns = new LinkedHashMap<String, Accessor>();
+        for (final VariableElement field : mappedFields(type)) {
+            final Accessor accessor = accessorOf(type, field);
+            if (accessor == null) {
+                warn(field, "field " + field.getSimpleName() + " is private or final and has no getter and setter");
+                return;
+            }
+            columns.put(columnName(field), accessor);
+        }
+
+        final String packageName = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+        final String mapperName = mapperName(type);
+        try {
+            final Writer writer = processingEnv.getFiler()
+                    .createSourceFile(packageName.isEmpty() ? mapperName : packageName + "." + mapperName, type).openWriter();
+            try {
+                writer.write(source(packageName, mapperName, type.getQualifiedName().toString(), columns));
+            } finally {
+                writer.close();
+            }
+        } catch (IOException ex) {
+            warn(type, "the mapper could not be written: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * @return why no mapper can be generated for the class, or {@code null} if one can
+     */
+    private String checkClass(final TypeElement type) {
+        final TypeElement dbType = processingEnv.getElementUtils().getTypeElement(DB_CLASS);
+        if (dbType == null || !processingEnv.getTypeUtils().isSubtype(type.asType(), dbType.asType())) {
+            return "the class does not extend " + DB_CLASS;
+        }
+        if (type.getModifiers().contains(Modifier.ABSTRACT)) {
+            return "the class is abstract";
+        }
+        if (!type.getTypeParameters().isEmpty()) {
+            return "the class is generic";
+        }
+
+        Element enclosing = type;
+        while (enclosing.getKind().isClass() || enclosing.getKind().isInterface()) {
+            final TypeElement enclosingType = (TypeElement) enclosing;
+            if (enclosingType.getModifiers().contains(Modifier.PRIVATE)) {
+                return "the class is not accessible from its package";
+            }
+            if (enclosingType.getNestingKind() == NestingKind.MEMBER && !enclosingType.getModifiers().contains(Modifier.STATIC)
+                    && enclosingType.getKind() == ElementKind.CLASS) {
+                return "the class is an inner class";
+            }
+            if (enclosingType.getNestingKind() == NestingKind.LOCAL || enclosingType.getNestingKind() == NestingKind.ANONYMOUS) {
+                return "the class is a local class";
+            }
+            enclosing = enclosing.getEnclosingElement();
+        }
+        return null;
+    }
+
+    /**
+     * @return the fields mapped to columns, as selected by the reflective mapping of the adapter
+     */
+    private static List<VariableElement> mappedFields(final TypeElement type) {
+        final List<VariableElement> fields = ElementFilter.fieldsIn(type.getEnclosedElements());
+        final List<VariableElement> columnFields = new ArrayList<VariableElement>();
+        final List<VariableElement> allFields = new ArrayList<VariableElement>();
+        for (final VariableElement field : fields) {
+            if (field.getModifiers().contains(Modifier.STATIC) || field.getModifiers().contains(Modifier.TRANSIENT)) {
+                continue;
+            }
+            allFields.add(field);
+            if (field.getAnnotation(Column.class) != null) {
+                columnFields.add(field);
+            }
+        }
+        return columnFields.isEmpty() ? allFields : columnFields;
+    }
+
+    private static String columnName(final VariableElement field) {
+        final Column column = field.getAnnotation(Column.class);
+        return column != null && column.name() != null && !column.name().isEmpty() ? column.name() : field.getSimpleName().toString();
+    }
+
+    /**
+     * @return how the generated mapper reads and writes the field, or {@code null} if it cannot
+     */
+    private Accessor accessorOf(final TypeElement type, final VariableElement field) {
+        final String name = field.getSimpleName().toString();
+        final TypeMirror fieldType = field.asType();
+        final boolean readable = !field.getModifiers().contains(Modifier.PRIVATE);
+        final boolean writable = readable && !field.getModifiers().contains(Modifier.FINAL);
+
+        String getter = readable ? name : null;
+        String setter = writable ? name : null;
+        final String property = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        for (final ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+            if (method.getModifiers().contains(Modifier.PRIVATE) || method.getModifiers().contains(Modifier.STATIC)) {
+                continue;
+            }
+
+            final String methodName = method.getSimpleName().toString();
+            if (getter == null && method.getParameters().isEmpty()
+                    && (methodName.equals("get" + property) || (methodName.equals("is" + property) && fieldType.getKind() == TypeKind.BOOLEAN))
+                    && processingEnv.getTypeUtils().isSameType(method.getReturnType(), fieldType)) {
+                getter = methodName + "()";
+            } else if (setter == null && method.getParameters().size() == 1 && methodName.equals("set" + property)
+                    && processingEnv.getTypeUtils().isSameType(method.getParameters().get(0).asType(), fieldType)) {
+                setter = methodName + "(";
+            }
+        }
+
+        if (getter == null || setter == null) {
+            return null;
+        }
+        return new Accessor(name, fieldType, getter, setter);
+    }
+
+    private String source(final String packageName, final String mapperName, final String entityName, final Map<String, Accessor> columns) {
+        final StringBuilder source = new StringBuilder();
+        if (!packageName.isEmpty()) {
+            source.append("package ").append(packageName).append(";\n\n");
+        }
+        source.append("import com.blobcity.db.ColumnValues;\n")
+                .append("import com.blobcity.db.EntityMapper;\n")
+                .append("import com.google.gson.JsonElement;\n")
+                .append("import com.google.gson.JsonObject;\n\n")
+                .append("/**\n")
+                .append(" * Maps records of {@link ").append(entityName).append("} without reflection. Generated by ")
+                .append(getClass().getName()).append(", do not edit.\n")
+                .append(" */\n")
+                .append("public final class ").append(mapperName).append(" implements EntityMapper<").append(entityName).append("> {\n\n");
+
+        source.append("    @Override\n")
+                .append("    public JsonObject toJson(final ").append(entityName).append(" entity) {\n")
+                .append("        final JsonObject json = new JsonObject();\n");
+        for (final Map.Entry<String, Accessor> column : columns.entrySet()) {
+            final Accessor accessor = column.getValue();
+            source.append("        json.add(").append(literal(column.getKey())).append(", ColumnValues.toJson(entity.").append(accessor.getter)
+                    .append(", ").append(classLiteral(accessor.type)).append("));\n");
+        }
+        source.append("        return json;\n")
+                .append("    }\n\n");
+
+        source.append("    @Override\n")
+                .append("    @SuppressWarnings(\"unchecked\")\n")
+                .append("    public void fromJson(final ").append(entityName).append(" entity, final JsonObject record) {\n")
+                .append("        JsonElement value;\n");
+        for (final Map.Entry<String, Accessor> column : columns.entrySet()) {
+            final Accessor accessor = column.getValue();
+            final String converted = cast(accessor.type, "ColumnValues.fromJson(value, " + classLiteral(accessor.type) + ", "
+                    + literal(accessor.fieldName) + ", " + entityName + ".class)");
+            source.append("        value = record.get(").append(literal(column.getKey())).append(");\n")
+                    .append("        if (value != null) {\n")
+                    .append("            entity.").append(accessor.setter.endsWith("(") ? accessor.setter + converted + ")" : accessor.setter + " = " + converted)
+                    .append(";\n")
+                    .append("        }\n");
+        }
+        source.append("    }\n")
+                .append("}\n");
+        return source.toString();
+    }
+
+    /**
+     * @return an expression converting the value returned by {@code ColumnValues.fromJson} to the type of the field
+     */
+    private String cast(final TypeMirror type, final String expression) {
+        switch (type.getKind()) {
+            case BYTE:
+            case SHORT:
+            case INT:
+            case LONG:
+            case FLOAT:
+            case DOUBLE:
+                // numbers are not always returned boxed in the type of the field
+                return "((Number) " + expression + ")." + type.getKind().name().toLowerCase(Locale.ENGLISH) + "Value()";
+            case BOOLEAN:
+                return "(Boolean) " + expression;
+            case CHAR:
+                return "(Character) " + expression;
+            default:
+                return "(" + type + ") " + expression;
+        }
+    }
+
+    private String classLiteral(final TypeMirror type) {
+        return processingEnv.getTypeUtils().erasure(type) + ".class";
+    }
+
+    private static String literal(final String value) {
+        final StringBuilder literal = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                literal.append('\\').append(c);
+            } else if (c < ' ' || c > '~') {
+                literal.append(String.format("\\u%04x", (int) c));
+            } else {
+                literal.append(c);
+            }
+        }
+        return literal.append('"').toString();
+    }
+
+    /**
+     * @return the simple name of the mapper of the class: the names of the class and the classes enclosing it, joined
+     * by underscores, followed by {@code Mapper}
+     */
+    private static String mapperName(final TypeElement type) {
+        String name = type.getSimpleName().toString();
+        Element enclosing = type.getEnclosingElement();
+        while (enclosing.getKind().isClass() || enclosing.getKind().isInterface()) {
+            name = enclosing.getSimpleName() + "_" + name;
+            enclosing = enclosing.getEnclosingElement();
+        }
+        return name + "Mapper";
+    }
+
+    private void warn(final Element element, final String problem) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                "No entity mapper generated, records are mapped through reflection: " + problem, element);
+    }
+
+    /**
+     * How a generated mapper reads and writes a field: directly, or through its getter and setter
+     */
+    private static class Accessor {
+
+        private final String fieldName;
+        private final TypeMirror type;
+        private final String getter; // field name or getter call
+        private final String setter; // field name, or setter call without its argument and closing parenthesis
+
+        Accessor(final String fieldName, final TypeMirror type, final String getter, final String setter) {
+            this.fieldName = fieldName;
+            this.type = type;
+            this.getter = getter;
+            this.setter = setter;
+        }
+    }
+}
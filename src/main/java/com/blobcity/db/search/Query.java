@@ -255,6 +255,13 @@ public class Query<T extends Db> implements ObjectJsonable, Sqlable {
                 }
             }
         }
+
+        if (limit != null) {
+            sb.append(" LIMIT ").append(limit);
+            if (limitOffset != null) {
+                sb.append(" OFFSET ").append(limitOffset);
+            }
+        }
         return sb.toString();
     }
 
@@ -324,7 +324,7 @@ public class SearchParam implements ArrayJsonable, Sqlable {
      */
     private String padSqlArg(final JsonElement obj) {
         if (obj.getAsJsonPrimitive().isString()) { // Strings and chars
-            return "'" + obj.getAsJsonPrimitive().getAsString() + "'";
+            return "'" + obj.getAsJsonPrimitive().getAsString().replace("'", "''") + "'";
         }
 
         return obj.getAsString();
@@ -376,6 +376,10 @@ public class SearchParam implements ArrayJsonable, Sqlable {
             return new JsonPrimitive((Character) obj);
         }
 
+        if (obj instanceof Number) { // BigDecimal, BigInteger and the like
+            return new JsonPrimitive((Number) obj);
+        }
+
         return new JsonPrimitive(obj.toString());
     }
 }
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2016, BlobCity iSolutions Pvt. Ltd.
+ */
+package com.blobcity.db.entity;
+
+import com.blobcity.db.Db;
+import com.blobcity.db.annotations.Entity;
+import com.blobcity.db.annotations.Primary;
+import com.blobcity.db.enums.CollectionType;
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Entity with a column of each commonly mapped type, accessed both directly and through accessors
+ *
+ * @author Prikshit Kumar
+ */
+@Entity
+public class TypedTestTable extends Db {
+
+    @Primary
+    private String id;
+    long count;
+    boolean active;
+    Date created;
+    List<String> tags;
+    double score;
+    Integer rank;
+    BigDecimal amount;
+    CollectionType type;
+    private char grade;
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public void setCount(long count) {
+        this.count = count;
+    }
+
+    public void setTags(List<String> tags) {
+        this.tags = tags;
+    }
+
+    public void setScore(double score) {
+        this.score = score;
+    }
+
+    public char getGrade() {
+        return grade;
+    }
+
+    public void setGrade(char grade) {
+        this.grade = grade;
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright 2016, BlobCity iSolutions Pvt. Ltd.
+ */
+package com.blobcity.db.test.unit;
+
+import com.blobcity.db.Db;
+import com.blobcity.db.config.AdapterConfig;
+import com.blobcity.db.config.Credentials;
+import com.blobcity.db.entity.TestTable;
+import com.blobcity.db.enums.BalancingStrategy;
+import com.blobcity.db.exceptions.InternalAdapterException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests spreading requests across the nodes of a cluster and failing over to nodes not yet tried
+ *
+ * @author Prikshit Kumar
+ */
+public class BalancingTest {
+
+    private static final String NOT_FOUND = "{\"ack\":\"0\",\"code\":\"DB200\"}";
+    private static final String FAIL = "fail";
+    private static final String HOLD = "hold";
+    // collection metadata is cached per collection, so every test uses a datastore of its own
+    private static final AtomicInteger datastores = new AtomicInteger();
+
+    private final List<StubServer> nodes = new ArrayList<StubServer>();
+    private final Map<StubServer, String> responses = new HashMap<StubServer, String>();
+    private final Map<StubServer, Integer> warmUpQueries = new HashMap<StubServer, Integer>();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final CountDownLatch held = new CountDownLatch(1);
+
+    @Before
+    public void setUp() throws Exception {
+        final List<String> addresses = new ArrayList<String>();
+        for (int i = 0; i < 3; i++) {
+            final StubServer node = StubServer.start();
+            respond(node, NOT_FOUND);
+            node.respondWith(responder(node));
+            nodes.add(node);
+            addresses.add(node.getAddress());
+        }
+        Credentials.init(addresses, "root", "root", "balanced" + datastores.incrementAndGet());
+        awaitMetadata();
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        AdapterConfig.setBalancingStrategy(BalancingStrategy.POWER_OF_TWO_CHOICES);
+        AdapterConfig.setEjectionThreshold(3);
+        Credentials.unInit();
+        for (final StubServer node : nodes) {
+            node.stop();
+        }
+    }
+
+    @Test
+    public void roundRobinTakesNodesInTurn() {
+        AdapterConfig.setBalancingStrategy(BalancingStrategy.ROUND_ROBIN);
+        for (int i = 0; i < 9; i++) {
+            load();
+        }
+
+        for (final StubServer node : nodes) {
+            Assert.assertEquals(3, selects(node));
+        }
+    }
+
+    @Test
+    public void leastOutstandingRequestsAvoidsBusyNode() throws Exception {
+        AdapterConfig.setBalancingStrategy(BalancingStrategy.LEAST_OUTSTANDING_REQUESTS);
+        final StubServer busy = nodes.get(1);
+        respond(busy, HOLD);
+        final Thread holder = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (held.getCount() > 0) {
+                    try {
+                        load();
+                    } catch (InternalAdapterException ex) {
+                        // the held load may be given up on when the test ends
+                    }
+                }
+            }
+        });
+        holder.start();
+        Assert.assertTrue(held.await(5, TimeUnit.SECONDS));
+
+        final int busySelects = selects(busy);
+        final int otherSelects = selects(nodes.get(0)) + selects(nodes.get(2));
+        for (int i = 0; i < 6; i++) {
+            load();
+        }
+        Assert.assertEquals(busySelects, selects(busy));
+        Assert.assertEquals(otherSelects + 6, selects(nodes.get(0)) + selects(nodes.get(2)));
+
+        release.countDown();
+        holder.join(10000);
+    }
+
+    @Test
+    public void failedReadTriesEachOtherNodeOnce() {
+        respond(nodes.get(0), FAIL);
+        respond(nodes.get(1), FAIL);
+        respond(nodes.get(2), "{\"ack\":\"1\",\"p\":{\"myPk\":\"k1\",\"column1\":\"v1\"}}");
+
+        final TestTable record = Db.newInstance(TestTable.class, "k1");
+        Assert.assertTrue(record.load());
+        Assert.assertEquals("v1", record.getColumn1());
+        Assert.assertEquals(1, selects(nodes.get(2)));
+        Assert.assertTrue(selects(nodes.get(0)) <= 1 && selects(nodes.get(1)) <= 1);
+    }
+
+    @Test
+    public void readFailingOnEveryNodeIsNotRetried() {
+        for (final StubServer node : nodes) {
+            respond(node, FAIL);
+        }
+
+        try {
+            load();
+            Assert.fail("A read failing on every node was not reported");
+        } catch (InternalAdapterException ex) {
+            // expected
+        }
+        for (final StubServer node : nodes) {
+            Assert.assertEquals(1, selects(node));
+        }
+    }
+
+    @Test
+    public void failedWriteIsNotSentToOtherNodes() {
+        for (final StubServer node : nodes) {
+            respond(node, FAIL);
+        }
+
+        try {
+            final TestTable record = Db.newInstance(TestTable.class, "k1");
+            record.setColumn1("v1");
+            record.save();
+            Assert.fail("A failed write was not reported");
+        } catch (InternalAdapterException ex) {
+            // expected
+        }
+        int saves = 0;
+        for (final StubServer node : nodes) {
+            saves += queries(node, "save");
+        }
+        Assert.assertEquals(1, saves);
+    }
+
+    @Test
+    public void failingNodeIsEjected() {
+        AdapterConfig.setBalancingStrategy(BalancingStrategy.ROUND_ROBIN);
+        AdapterConfig.setEjectionThreshold(1);
+        final StubServer failing = nodes.get(1);
+        respond(failing, FAIL);
+
+        for (int i = 0; i < 9; i++) {
+            load();
+        }
+        Assert.assertEquals(1, selects(failing));
+    }
+
+    /**
+     * Sends a request until the metadata of the collection is cached, and from then on counts queries afresh
+     */
+    private void awaitMetadata() throws Exception {
+        load();
+        final long until = System.currentTimeMillis() + 5000;
+        while (metadataFetches() == 0 && System.currentTimeMillis() < until) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(1, metadataFetches());
+        // lets the background fetch store the metadata
+        Thread.sleep(100);
+
+        for (final StubServer node : nodes) {
+            warmUpQueries.put(node, node.getQueries().size());
+        }
+    }
+
+    private static void load() {
+        Assert.assertFalse(Db.newInstance(TestTable.class, "k1").load());
+    }
+
+    private int selects(final StubServer node) {
+        return queries(node, "select");
+    }
+
+    private int queries(final StubServer node, final String type) {
+        final List<String> queries = node.getQueries();
+        int count = 0;
+        for (final String query : queries.subList(warmUpQueries.get(node), queries.size())) {
+            if (type.equals(StubServer.parse(query).get("q").getAsString())) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private int metadataFetches() {
+        int count = 0;
+        for (final StubServer node : nodes) {
+            count += node.getQueries("collection-info").size();
+        }
+        return count;
+    }
+
+    private synchronized void respond(final StubServer node, final String body) {
+        responses.put(node, body);
+    }
+
+    private synchronized String responseOf(final StubServer node) {
+        return responses.get(node);
+    }
+
+    private StubServer.Responder responder(final StubServer node) {
+        return new StubServer.Responder() {
+            @Override
+            public String respond(final String service, final String query) throws Exception {
+                if ("collection-info".equals(StubServer.parse(query).get("q").getAsString())) {
+                    // no replication type, so requests are balanced as for any collection
+                    return "{\"ack\":\"1\",\"p\":{}}";
+                }
+
+                final String body = responseOf(node);
+                if (FAIL.equals(body)) {
+                    throw new IllegalStateException("node failing");
+                }
+                if (HOLD.equals(body)) {
+                    held.countDown();
+                    release.await(10, TimeUnit.SECONDS);
+                    return NOT_FOUND;
+                }
+                return body;
+            }
+        };
+    }
+}
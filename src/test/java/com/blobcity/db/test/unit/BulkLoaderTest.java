@@ -0,0 +1,216 @@
+/*
+ * Copyright 2016, BlobCity iSolutions Pvt. Ltd.
+ */
+package com.blobcity.db.test.unit;
+
+import com.blobcity.db.BulkLoadListener;
+import com.blobcity.db.BulkLoadResult;
+import com.blobcity.db.Db;
+import com.blobcity.db.config.Credentials;
+import com.blobcity.db.exceptions.DbOperationException;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests loading rows in chunks through an interpreter
+ *
+ * @author Prikshit Kumar
+ */
+public class BulkLoaderTest {
+
+    private static final int ROWS = 2500;
+
+    private StubServer server;
+    private File file;
+    private int inFlight; // guarded by this
+    private int maxInFlight; // guarded by this
+    private volatile String rejectedRow;
+    private volatile String failedRow;
+    private volatile long delayMillis;
+
+    @Before
+    public void setUp() throws Exception {
+        server = StubServer.start();
+        Credentials.init(server.getAddress(), "root", "root", "ds1");
+        file = File.createTempFile("rows", ".txt");
+        server.respondWith(new StubServer.Responder() {
+            @Override
+            public String respond(final String service, final String query) throws Exception {
+                requestStarted();
+                try {
+                    Thread.sleep(delayMillis);
+
+                    final String first = rowsOf(StubServer.parse(query)).get(0).getAsString();
+                    if (first.equals(failedRow)) {
+                        throw new IllegalStateException("node failing");
+                    }
+                    return first.equals(rejectedRow) ? "{\"ack\":\"0\",\"code\":\"DB300\",\"cause\":\"bad row\"}" : StubServer.ACK;
+                } finally {
+                    requestFinished();
+                }
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        Credentials.unInit();
+        server.stop();
+        file.delete();
+    }
+
+    @Test
+    public void rowsAreSentInChunks() {
+        final BulkLoadResult result = Db.bulkLoader("TestTable", "lines").load(rows(ROWS).iterator());
+        Assert.assertTrue(result.isSuccessful());
+        Assert.assertEquals(ROWS, result.getRowsRead());
+        Assert.assertEquals(ROWS, result.getRowsInserted());
+        Assert.assertEquals(3, result.getChunkCount());
+        Assert.assertEquals(0, result.getFailedChunkCount());
+
+        final List<JsonObject> inserts = server.getQueries("insert-custom");
+        Assert.assertEquals(3, inserts.size());
+        final List<String> sent = new ArrayList<String>();
+        for (final JsonObject insert : inserts) {
+            Assert.assertEquals("TestTable", insert.get("t").getAsString());
+            Assert.assertEquals("lines", insert.getAsJsonObject("p").get("interpreter").getAsString());
+            for (int i = 0; i < rowsOf(insert).size(); i++) {
+                sent.add(rowsOf(insert).get(i).getAsString());
+            }
+        }
+        Collections.sort(sent);
+        final List<String> expected = new ArrayList<String>();
+        for (int i = 0; i < ROWS; i++) {
+            expected.add(row(i));
+        }
+        Collections.sort(expected);
+        Assert.assertEquals(expected, sent);
+    }
+
+    @Test
+    public void lastChunkHoldsRemainingRows() {
+        final RecordingListener listener = new RecordingListener();
+        Db.bulkLoader("TestTable", "lines").chunkSize(1000).listener(listener).load(rows(ROWS).iterator());
+
+        Collections.sort(listener.inserted);
+        Assert.assertEquals("[0:1000, 1:1000, 2:500]", listener.inserted.toString());
+        synchronized (listener) {
+            Assert.assertEquals(ROWS, listener.totalRowsInserted);
+        }
+        Assert.assertTrue(listener.failed.isEmpty());
+    }
+
+    @Test
+    public void loadContinuesAfterFailedChunks() {
+        rejectedRow = row(1000);
+        failedRow = row(2000);
+        final RecordingListener listener = new RecordingListener();
+        final BulkLoadResult result = Db.bulkLoader("TestTable", "lines").concurrency(1).listener(listener).load(rows(ROWS + 1000).iterator());
+
+        Assert.assertFalse(result.isSuccessful());
+        Assert.assertEquals(ROWS + 1000, result.getRowsRead());
+        Assert.assertEquals(1500, result.getRowsInserted());
+        Assert.assertEquals(4, result.getChunkCount());
+        Assert.assertEquals(2, result.getFailedChunkCount());
+        // chunks are sent one at a time, so the rejected chunk fails first
+        Assert.assertTrue(result.getFirstFailure() instanceof DbOperationException);
+        Assert.assertEquals("DB300", ((DbOperationException) result.getFirstFailure()).getErrorCode());
+
+        Assert.assertEquals("[0:1000, 3:500]", listener.inserted.toString());
+        Assert.assertEquals("[1:1000, 2:1000]", listener.failed.toString());
+        Assert.assertEquals(row(1000), listener.failedRows.get(0).get(0));
+        Assert.assertEquals(4, server.getQueries("insert-custom").size());
+    }
+
+    @Test
+    public void chunksInFlightAreLimited() {
+        delayMillis = 50;
+        final BulkLoadResult result = Db.bulkLoader("TestTable", "lines").chunkSize(100).concurrency(2).load(rows(1000).iterator());
+
+        Assert.assertEquals(1000, result.getRowsInserted());
+        Assert.assertEquals(10, server.getQueries("insert-custom").size());
+        synchronized (this) {
+            Assert.assertEquals(2, maxInFlight);
+            Assert.assertEquals(0, inFlight);
+        }
+    }
+
+    @Test
+    public void fileIsLoadedLineByLine() throws Exception {
+        write("a,1\nb,2\nc,3\n");
+        final BulkLoadResult result = Db.bulkLoader("TestTable", "csv").chunkSize(2).concurrency(1).load(file);
+
+        Assert.assertEquals(3, result.getRowsRead());
+        Assert.assertEquals(3, result.getRowsInserted());
+        Assert.assertEquals(2, result.getChunkCount());
+        final List<JsonObject> inserts = server.getQueries("insert-custom");
+        Assert.assertEquals("[\"a,1\",\"b,2\"]", rowsOf(inserts.get(0)).toString());
+        Assert.assertEquals("[\"c,3\"]", rowsOf(inserts.get(1)).toString());
+    }
+
+    private synchronized void requestStarted() {
+        maxInFlight = Math.max(maxInFlight, ++inFlight);
+    }
+
+    private synchronized void requestFinished() {
+        inFlight--;
+    }
+
+    private static JsonArray rowsOf(final JsonObject insert) {
+        return insert.getAsJsonObject("p").getAsJsonArray("payload");
+    }
+
+    private static List<String> rows(final int count) {
+        final List<String> rows = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            rows.add(row(i));
+        }
+        return rows;
+    }
+
+    private static String row(final int i) {
+        return "row" + i;
+    }
+
+    private void write(final String content) throws IOException {
+        final FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Records chunks as {@code index:rows}, as reported
+     */
+    private static class RecordingListener implements BulkLoadListener {
+
+        private final List<String> inserted = Collections.synchronizedList(new ArrayList<String>());
+        private final List<String> failed = Collections.synchronizedList(new ArrayList<String>());
+        private final List<List<String>> failedRows = Collections.synchronizedList(new ArrayList<List<String>>());
+        private long totalRowsInserted; // guarded by this
+
+        @Override
+        public synchronized void onChunkInserted(final long chunkIndex, final int rowCount, final long totalRowsInserted) {
+            inserted.add(chunkIndex + ":" + rowCount);
+            this.totalRowsInserted = Math.max(this.totalRowsInserted, totalRowsInserted);
+        }
+
+        @Override
+        public void onChunkFailed(final long chunkIndex, final List<String> rows, final RuntimeException error) {
+            failed.add(chunkIndex + ":" + rows.size());
+            failedRows.add(rows);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2016, BlobCity iSolutions Pvt. Ltd.
+ */
+package com.blobcity.db.test.unit;
+
+import com.blobcity.db.Db;
+import com.blobcity.db.QueryType;
+import com.blobcity.db.config.AdapterConfig;
+import com.blobcity.db.config.BulkheadConfig;
+import com.blobcity.db.config.Credentials;
+import com.blobcity.db.entity.TestTable;
+import com.blobcity.db.exceptions.BulkheadFullException;
+import com.blobcity.db.exceptions.DeadlineExceededException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests waiting for a slot of a full bulkhead, with and without a deadline
+ *
+ * @author Prikshit Kumar
+ */
+public class BulkheadTest {
+
+    private StubServer server;
+    private final CountDownLatch received = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private Thread occupant;
+
+    @Before
+    public void setUp() throws Exception {
+        server = StubServer.start();
+        Credentials.init(server.getAddress(), "root", "root", "ds1");
+        server.respondWith(new StubServer.Responder() {
+            @Override
+            public String respond(final String service, final String query) throws Exception {
+                received.countDown();
+                release.await(10, TimeUnit.SECONDS);
+                return "{\"ack\":\"0\",\"code\":\"DB200\"}";
+            }
+        });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        release.countDown();
+        if (occupant != null) {
+            occupant.join(10000);
+        }
+        AdapterConfig.setBulkheadConfig(QueryType.Category.DATA, null);
+        Credentials.unInit();
+        server.stop();
+    }
+
+    @Test
+    public void fullBulkhead() throws Exception {
+        occupySingleSlot(50);
+        try {
+            Db.newInstance(TestTable.class, "k1").load();
+            Assert.fail("A request was sent beyond the capacity of the bulkhead");
+        } catch (DeadlineExceededException ex) {
+            Assert.fail("Reported an expired deadline without a deadline");
+        } catch (BulkheadFullException ex) {
+            // expected
+        }
+    }
+
+    @Test
+    public void fullBulkheadWithinDeadline() throws Exception {
+        occupySingleSlot(50);
+        try {
+            Db.withDeadline(5, TimeUnit.SECONDS).load(Db.newInstance(TestTable.class, "k1"));
+            Assert.fail("A request was sent beyond the capacity of the bulkhead");
+        } catch (DeadlineExceededException ex) {
+            Assert.fail("Reported an expired deadline before the deadline expired");
+        } catch (BulkheadFullException ex) {
+            // expected
+        }
+    }
+
+    @Test
+    public void deadlineExpiresWhileWaiting() throws Exception {
+        occupySingleSlot(5000);
+        final long start = System.currentTimeMillis();
+        try {
+            Db.withDeadline(100, TimeUnit.MILLISECONDS).load(Db.newInstance(TestTable.class, "k1"));
+            Assert.fail("A request was sent beyond the capacity of the bulkhead");
+        } catch (DeadlineExceededException ex) {
+            Assert.assertTrue("Waited beyond the deadline", System.currentTimeMillis() - start < 2000);
+        }
+    }
+
+    /**
+     * Limits data requests to one at a time and starts one that does not complete until the test ends
+     */
+    private void occupySingleSlot(final long maxWaitMillis) throws InterruptedException {
+        AdapterConfig.setBulkheadConfig(QueryType.Category.DATA, BulkheadConfig.create(1, maxWaitMillis));
+        occupant = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Db.newInstance(TestTable.class, "k0").load();
+            }
+        });
+        occupant.start();
+        Assert.assertTrue(received.await(5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright 2016, BlobCity iSolutions Pvt. Ltd.
+ */
+package com.blobcity.db.test.unit;
+
+import com.blobcity.db.Db;
+import com.blobcity.db.config.AdapterConfig;
+import com.blobcity.db.config.CircuitBreakerConfig;
+import com.blobcity.db.config.Credentials;
+import com.blobcity.db.entity.TestTable;
+import com.blobcity.db.exceptions.CircuitBreakerOpenException;
+import com.blobcity.db.exceptions.InternalAdapterException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests opening, probing and closing of the circuit breaker of a database node
+ *
+ * @author Prikshit Kumar
+ */
+public class CircuitBreakerTest {
+
+    private static final long SLOW_CALL_MILLIS = 200;
+    private static final long OPEN_MILLIS = 300;
+
+    private StubServer server;
+    private volatile boolean failing;
+    private volatile boolean slow;
+    private volatile CountDownLatch hold;
+
+    @Before
+    public void setUp() throws Exception {
+        server = StubServer.start();
+        Credentials.init(server.getAddress(), "root", "root", "ds1");
+        server.respondWith(new StubServer.Responder() {
+            @Override
+            public String respond(final String service, final String query) throws Exception {
+                final CountDownLatch latch = hold;
+                if (latch != null) {
+                    latch.await(10, TimeUnit.SECONDS);
+                }
+                if (slow) {
+                    Thread.sleep(SLOW_CALL_MILLIS + 50);
+                }
+                if (failing) {
+                    throw new IllegalStateException("node failing");
+                }
+                return "{\"ack\":\"0\",\"code\":\"DB200\"}";
+            }
+        });
+        // opens at half of a window of 4 calls failing or slow, and closes after 2 successful probes
+        AdapterConfig.setCircuitBreakerConfig(CircuitBreakerConfig.create(50, 50, SLOW_CALL_MILLIS, 4, 4, OPEN_MILLIS, 2));
+    }
+
+    @After
+    public void tearDown() {
+        final CountDownLatch latch = hold;
+        if (latch != null) {
+            latch.countDown();
+        }
+        AdapterConfig.setCircuitBreakerConfig(null);
+        Credentials.unInit();
+        server.stop();
+    }
+
+    @Test
+    public void failureRateOpensBreaker() {
+        load(true);
+        load(true);
+        failing = true;
+        load(false);
+        Assert.assertEquals(3, server.getQueries().size());
+        load(false);
+
+        assertRejected();
+        Assert.assertEquals(4, server.getQueries().size());
+    }
+
+    @Test
+    public void slowCallRateOpensBreaker() {
+        load(true);
+        load(true);
+        slow = true;
+        load(true);
+        load(true);
+
+        assertRejected();
+        Assert.assertEquals(4, server.getQueries().size());
+    }
+
+    @Test
+    public void breakerClosesAfterSuccessfulProbes() throws Exception {
+        open();
+        Thread.sleep(OPEN_MILLIS + 50);
+
+        failing = false;
+        load(true);
+        load(true);
+        // closed with an empty window, so a failure alone does not open it again
+        failing = true;
+        load(false);
+        load(false);
+        Assert.assertEquals(8, server.getQueries().size());
+    }
+
+    @Test
+    public void failedProbeOpensBreakerAgain() throws Exception {
+        open();
+        Thread.sleep(OPEN_MILLIS + 50);
+
+        load(false);
+        assertRejected();
+        Assert.assertEquals(5, server.getQueries().size());
+    }
+
+    @Test
+    public void slowProbeOpensBreakerAgain() throws Exception {
+        open();
+        Thread.sleep(OPEN_MILLIS + 50);
+
+        failing = false;
+        slow = true;
+        load(true);
+        slow = false;
+        assertRejected();
+    }
+
+    @Test
+    public void probesAreLimitedWhileHalfOpen() throws Exception {
+        open();
+        Thread.sleep(OPEN_MILLIS + 50);
+        failing = false;
+
+        // both probes are held by the node while a third call is attempted
+        final CountDownLatch latch = new CountDownLatch(1);
+        hold = latch;
+        final Thread[] probes = new Thread[2];
+        for (int i = 0; i < probes.length; i++) {
+            probes[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Db.newInstance(TestTable.class, "k1").load();
+                }
+            });
+            probes[i].start();
+        }
+        waitForQueries(6);
+
+        assertRejected();
+        latch.countDown();
+        hold = null;
+        for (final Thread probe : probes) {
+            probe.join(10000);
+        }
+
+        // both probes succeeded, so the breaker is closed again
+        load(true);
+        Assert.assertEquals(7, server.getQueries().size());
+    }
+
+    @Test
+    public void changedConfigResetsBreaker() {
+        open();
+
+        AdapterConfig.setCircuitBreakerConfig(CircuitBreakerConfig.create(50, 50, SLOW_CALL_MILLIS, 4, 4, OPEN_MILLIS, 2));
+        failing = false;
+        load(true);
+        Assert.assertEquals(5, server.getQueries().size());
+    }
+
+    /**
+     * Opens the breaker with a full window of failed calls; the node keeps failing
+     */
+    private void open() {
+        failing = true;
+        for (int i = 0; i < 4; i++) {
+            load(false);
+        }
+        assertRejected();
+    }
+
+    private static void load(final boolean expectSuccess) {
+        try {
+            Assert.assertFalse(Db.newInstance(TestTable.class, "k1").load());
+            Assert.assertTrue("A call to a failing node succeeded", expectSuccess);
+        } catch (CircuitBreakerOpenException ex) {
+            Assert.fail("A call was rejected by the circuit breaker");
+        } catch (InternalAdapterException ex) {
+            Assert.assertFalse("A call to a working node failed", expectSuccess);
+        }
+    }
+
+    private static void assertRejected() {
+        try {
+            Db.newInstance(TestTable.class, "k1").load();
+            Assert.fail("A call was sent through an open circuit breaker");
+        } catch (CircuitBreakerOpenException ex) {
+            // expected
+        }
+    }
+
+    private void waitForQueries(final int count) throws InterruptedException {
+        final long until = System.currentTimeMillis() + 5000;
+        while (server.getQueries().size() < count && System.currentTimeMillis() < until) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(count, server.getQueries().size());
+    }
+}
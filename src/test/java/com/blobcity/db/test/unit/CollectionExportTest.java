@@ -0,0 +1,210 @@
+/*
+ * Copyright 2016, BlobCity iSolutions Pvt. Ltd.
+ */
+package com.blobcity.db.test.unit;
+
+import com.blobcity.db.Db;
+import com.blobcity.db.config.Credentials;
+import com.blobcity.db.entity.TestTable;
+import com.blobcity.db.enums.FileFormat;
+import com.blobcity.db.exceptions.InternalAdapterException;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests exporting collections to files page by page, and resuming an export from its checkpoint
+ *
+ * @author Prikshit Kumar
+ */
+public class CollectionExportTest {
+
+    private static final int RECORDS = 2500;
+    private static final Pattern AFTER = Pattern.compile("`myPk` > '([^']*)'");
+    private static final Pattern LIMIT = Pattern.compile("LIMIT (\\d+)");
+
+    private final ConcurrentSkipListMap<String, String> collection = new ConcurrentSkipListMap<String, String>();
+    private StubServer server;
+    private File file;
+    private File checkpointFile;
+    private volatile int pagesServed;
+    private volatile int failFromPage = Integer.MAX_VALUE;
+    private volatile Runnable beforeSecondPage;
+
+    @Before
+    public void setUp() throws Exception {
+        server = StubServer.start();
+        Credentials.init(server.getAddress(), "root", "root", "ds1");
+        file = File.createTempFile("export", ".ndjson");
+        checkpointFile = new File(file.getPath() + ".checkpoint");
+        for (int i = 1; i <= RECORDS; i++) {
+            collection.put(key(i), "v" + i);
+        }
+        server.respondWith(new StubServer.Responder() {
+            @Override
+            public String respond(final String service, final String query) {
+                return page(query);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        Credentials.unInit();
+        server.stop();
+        file.delete();
+        checkpointFile.delete();
+    }
+
+    @Test
+    public void recordsAreExportedInKeyOrder() throws Exception {
+        Assert.assertEquals(RECORDS, Db.export(TestTable.class, file, FileFormat.NDJSON));
+        assertExported(readKeys());
+        Assert.assertFalse(checkpointFile.exists());
+
+        final List<String> queries = server.getQueries();
+        Assert.assertEquals(3, queries.size());
+        Assert.assertEquals("SELECT * FROM `ds1`.`TestTable` ORDER BY myPk ASC LIMIT 1000", queries.get(0));
+        Assert.assertEquals("SELECT * FROM `ds1`.`TestTable` WHERE `myPk` > '" + key(1000) + "' ORDER BY myPk ASC LIMIT 1000", queries.get(1));
+        Assert.assertEquals("SELECT * FROM `ds1`.`TestTable` WHERE `myPk` > '" + key(2000) + "' ORDER BY myPk ASC LIMIT 1000", queries.get(2));
+    }
+
+    @Test
+    public void recordsRemovedDuringExportDoNotShiftPages() throws Exception {
+        beforeSecondPage = new Runnable() {
+            @Override
+            public void run() {
+                // already exported; paging by offset would skip as many later records
+                for (int i = 1; i <= 100; i++) {
+                    collection.remove(key(i));
+                }
+            }
+        };
+
+        Assert.assertEquals(RECORDS, Db.export(TestTable.class, file, FileFormat.NDJSON));
+        assertExported(readKeys());
+    }
+
+    @Test
+    public void exportResumesAfterLastKeyWritten() throws Exception {
+        failFromPage = 3;
+        try {
+            Db.export(TestTable.class, file, FileFormat.NDJSON);
+            Assert.fail("The failure to fetch a page was not reported");
+        } catch (InternalAdapterException ex) {
+            // expected
+        }
+        Assert.assertTrue(checkpointFile.exists());
+        Assert.assertEquals(2000, readKeys().size());
+
+        // records before the last key written are not exported again
+        collection.put(key(0), "v0");
+        failFromPage = Integer.MAX_VALUE;
+        final int queries = server.getQueries().size();
+        Assert.assertEquals(RECORDS, Db.export(TestTable.class, file, FileFormat.NDJSON));
+        assertExported(readKeys());
+        Assert.assertFalse(checkpointFile.exists());
+        Assert.assertTrue(server.getQueries().get(queries).contains("`myPk` > '" + key(2000) + "'"));
+    }
+
+    @Test
+    public void collectionByNameIsOrderedOnKeyColumn() throws Exception {
+        Assert.assertEquals(RECORDS, Db.export("TestTable", "myPk", file, FileFormat.CSV));
+
+        final List<String> lines = readLines();
+        Assert.assertEquals(RECORDS + 1, lines.size());
+        Assert.assertEquals("myPk,column1", lines.get(0));
+        Assert.assertEquals(key(1) + ",v1", lines.get(1));
+        Assert.assertEquals(key(RECORDS) + ",v" + RECORDS, lines.get(RECORDS));
+        Assert.assertEquals("SELECT * FROM `ds1`.`TestTable` ORDER BY myPk ASC LIMIT 1000", server.getQueries().get(0));
+    }
+
+    @Test(expected = InternalAdapterException.class)
+    public void collectionByNameRequiresKeyColumn() {
+        Db.export("TestTable", null, file, FileFormat.NDJSON);
+    }
+
+    /**
+     * Answers a page query from the records of {@link #collection}
+     */
+    private String page(final String sql) {
+        final int served = ++pagesServed;
+        if (served >= failFromPage) {
+            throw new IllegalStateException("page " + served + " failed");
+        }
+        if (served == 2 && beforeSecondPage != null) {
+            beforeSecondPage.run();
+        }
+
+        final Matcher after = AFTER.matcher(sql);
+        final Matcher limit = LIMIT.matcher(sql);
+        Assert.assertTrue(sql, limit.find());
+        final Map<String, String> records = after.find() ? collection.tailMap(after.group(1), false) : collection;
+
+        final JsonArray page = new JsonArray();
+        for (final Map.Entry<String, String> record : records.entrySet()) {
+            if (page.size() == Integer.parseInt(limit.group(1))) {
+                break;
+            }
+            final JsonObject json = new JsonObject();
+            json.addProperty("myPk", record.getKey());
+            json.addProperty("column1", record.getValue());
+            page.add(json);
+        }
+
+        final JsonObject response = new JsonObject();
+        response.addProperty("ack", "1");
+        response.add("p", page);
+        return response.toString();
+    }
+
+    /**
+     * Checks that every one of the records was exported once, in key order
+     */
+    private static void assertExported(final List<String> keys) {
+        Assert.assertEquals(RECORDS, keys.size());
+        for (int i = 1; i <= RECORDS; i++) {
+            Assert.assertEquals(key(i), keys.get(i - 1));
+        }
+    }
+
+    private List<String> readKeys() throws IOException {
+        final List<String> keys = new ArrayList<String>();
+        for (final String line : readLines()) {
+            keys.add(StubServer.parse(line).get("myPk").getAsString());
+        }
+        return keys;
+    }
+
+    private List<String> readLines() throws IOException {
+        final List<String> lines = new ArrayList<String>();
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        } finally {
+            reader.close();
+        }
+        return lines;
+    }
+
+    private static String key(final int i) {
+        return String.format("k%04d", i);
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2016, BlobCity iSolutions Pvt. Ltd.
+ */
+package com.blobcity.db.test.unit;
+
+import com.blobcity.db.ColumnValues;
+import com.blobcity.db.entity.TypedTestTable;
+import com.blobcity.db.enums.CollectionType;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonPrimitive;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests conversions of column values to and from the types of entity fields
+ *
+ * @author Prikshit Kumar
+ */
+public class ColumnValuesTest {
+
+    @Test
+    public void numbers() {
+        Assert.assertEquals(7L, fromJson(new JsonPrimitive("7"), Long.class));
+        Assert.assertEquals(7L, fromJson(new JsonPrimitive(7), long.class));
+        Assert.assertEquals(0L, fromJson(new JsonPrimitive(""), long.class));
+        Assert.assertEquals(0, fromJson(new JsonPrimitive(""), int.class));
+        Assert.assertEquals(1.5, fromJson(new JsonPrimitive("1.5"), double.class));
+        Assert.assertNull(fromJson(new JsonPrimitive(""), Integer.class));
+    }
+
+    @Test
+    public void bigDecimalKeepsFraction() {
+        Assert.assertEquals(new BigDecimal("12.50"), fromJson(new JsonPrimitive("12.50"), BigDecimal.class));
+        Assert.assertEquals(new JsonPrimitive("12.50"), ColumnValues.toJson(new BigDecimal("12.50"), BigDecimal.class));
+    }
+
+    @Test
+    public void enums() {
+        Assert.assertEquals(CollectionType.IN_MEMORY, fromJson(new JsonPrimitive("IN_MEMORY"), CollectionType.class));
+        Assert.assertNull(fromJson(new JsonPrimitive(""), CollectionType.class));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownEnumConstant() {
+        fromJson(new JsonPrimitive("ON_TAPE"), CollectionType.class);
+    }
+
+    @Test
+    public void datesAndCollections() {
+        Assert.assertEquals(new Date(1450000000000L), fromJson(new JsonPrimitive(1450000000000L), Date.class));
+        Assert.assertEquals(new JsonPrimitive(1450000000000L), ColumnValues.toJson(new Date(1450000000000L), Date.class));
+
+        final JsonArray tags = new JsonArray();
+        tags.add(new JsonPrimitive("a"));
+        tags.add(new JsonPrimitive("b"));
+        Assert.assertEquals(Arrays.asList("a", "b"), fromJson(tags, List.class));
+        Assert.assertEquals(tags, ColumnValues.toJson(Arrays.asList("a", "b"), List.class));
+    }
+
+    @Test
+    public void nulls() {
+        Assert.assertNull(fromJson(JsonNull.INSTANCE, String.class));
+        Assert.assertEquals(JsonNull.INSTANCE, ColumnValues.toJson(null, String.class));
+    }
+
+    private static Object fromJson(final com.google.gson.JsonElement value, final Class<?> type) {
+        return ColumnValues.fromJson(value, type, "field", TypedTestTable.class);
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2016, BlobCity iSolutions Pvt. Ltd.
+ */
+package com.blobcity.db.test.unit;
+
+import com.blobcity.db.DbQueryResponse;
+import java.util.Arrays;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests decoding responses of the database
+ *
+ * @author Prikshit Kumar
+ */
+public class DbQueryResponseTest {
+
+    @Test
+    public void keysAreDecodedOnce() {
+        final DbQueryResponse response = new DbQueryResponse("{\"ack\":\"1\",\"keys\":[\"k1\",\"k2\"]}");
+        Assert.assertEquals(Arrays.asList("k1", "k2"), response.getKeys());
+        Assert.assertSame(response.getKeys(), response.getKeys());
+    }
+
+    @Test
+    public void noKeys() {
+        Assert.assertNull(new DbQueryResponse("{\"ack\":\"1\"}").getKeys());
+    }
+
+    @Test
+    public void errors() {
+        final DbQueryResponse response = new DbQueryResponse("{\"ack\":\"0\",\"code\":\"DB201\",\"cause\":\"no such collection\"}");
+        Assert.assertFalse(response.isSuccessful());
+        Assert.assertEquals("DB201", response.getErrorCode());
+        Assert.assertEquals("no such collection", response.getErrorCause());
+    }
+}
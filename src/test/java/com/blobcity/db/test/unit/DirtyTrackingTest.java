@@ -0,0 +1,162 @@
+/*
+ * Copyright 2016, BlobCity iSolutions Pvt. Ltd.
+ */
+package com.blobcity.db.test.unit;
+
+import com.blobcity.db.Db;
+import com.blobcity.db.config.AdapterConfig;
+import com.blobcity.db.config.Credentials;
+import com.blobcity.db.entity.TypedTestTable;
+import com.google.gson.JsonObject;
+import java.util.List;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that saves of records of dirty tracked classes send only the columns changed since the record was loaded
+ * or last saved
+ *
+ * @author Prikshit Kumar
+ */
+public class DirtyTrackingTest {
+
+    private static final String RECORD = "{\"ack\":\"1\",\"p\":{\"id\":\"r1\",\"count\":\"7\",\"active\":\"true\",\"created\":1450000000000,"
+            + "\"tags\":[\"a\"],\"score\":\"1.5\",\"rank\":\"3\",\"amount\":\"12.50\",\"type\":\"ON_DISK\",\"grade\":\"A\"}}";
+
+    private StubServer server;
+    private volatile String updateResponse = StubServer.ACK;
+
+    @Before
+    public void setUp() throws Exception {
+        server = StubServer.start();
+        Credentials.init(server.getAddress(), "root", "root", "ds1");
+        server.respondWith(new StubServer.Responder() {
+            @Override
+            public String respond(final String service, final String query) {
+                if (query.contains("\"update\"")) {
+                    return updateResponse;
+                }
+                return query.contains("\"select\"") ? RECORD : StubServer.ACK;
+            }
+        });
+        AdapterConfig.setDirtyTracking(TypedTestTable.class, true);
+    }
+
+    @After
+    public void tearDown() {
+        AdapterConfig.setDirtyTracking(TypedTestTable.class, false);
+        Credentials.unInit();
+        server.stop();
+    }
+
+    @Test
+    public void unchangedRecordIsNotSaved() {
+        Db.newLoadedInstance(TypedTestTable.class, "r1").save();
+        Assert.assertTrue(server.getQueries("save").isEmpty());
+        Assert.assertTrue(server.getQueries("update").isEmpty());
+    }
+
+    @Test
+    public void onlyChangedColumnsAreSent() {
+        final TypedTestTable record = Db.newLoadedInstance(TypedTestTable.class, "r1");
+        record.setCount(8);
+        record.setTags(null);
+        record.save();
+
+        final List<JsonObject> updates = server.getQueries("update");
+        Assert.assertEquals(1, updates.size());
+        Assert.assertEquals("r1", updates.get(0).get("pk").getAsString());
+        final JsonObject changes = updates.get(0).getAsJsonObject("p");
+        Assert.assertEquals(2, changes.entrySet().size());
+        Assert.assertEquals("8", changes.get("count").getAsString());
+        Assert.assertTrue(changes.get("tags").isJsonNull());
+        Assert.assertTrue(server.getQueries("save").isEmpty());
+    }
+
+    @Test
+    public void changesAreTrackedFromTheLastSave() {
+        final TypedTestTable record = Db.newLoadedInstance(TypedTestTable.class, "r1");
+        record.setCount(8);
+        record.save();
+        record.save();
+        record.setScore(2.5);
+        record.save();
+
+        final List<JsonObject> updates = server.getQueries("update");
+        Assert.assertEquals(2, updates.size());
+        Assert.assertEquals(1, updates.get(1).getAsJsonObject("p").entrySet().size());
+        Assert.assertEquals("2.5", updates.get(1).getAsJsonObject("p").get("score").getAsString());
+    }
+
+    @Test
+    public void changedPrimaryKeySavesWholeRecord() {
+        final TypedTestTable record = Db.newLoadedInstance(TypedTestTable.class, "r1");
+        record.setId("r2");
+        record.save();
+
+        Assert.assertTrue(server.getQueries("update").isEmpty());
+        final List<JsonObject> saves = server.getQueries("save");
+        Assert.assertEquals(1, saves.size());
+        Assert.assertEquals("r2", saves.get(0).getAsJsonObject("p").get("id").getAsString());
+        Assert.assertEquals("7", saves.get(0).getAsJsonObject("p").get("count").getAsString());
+    }
+
+    @Test
+    public void recordNotLoadedIsSavedWhole() {
+        final TypedTestTable record = Db.newInstance(TypedTestTable.class, "r1");
+        record.setCount(8);
+        record.save();
+
+        Assert.assertTrue(server.getQueries("update").isEmpty());
+        Assert.assertEquals(1, server.getQueries("save").size());
+    }
+
+    @Test
+    public void untrackedClassIsSavedWhole() {
+        AdapterConfig.setDirtyTracking(TypedTestTable.class, false);
+        Db.newLoadedInstance(TypedTestTable.class, "r1").save();
+
+        Assert.assertTrue(server.getQueries("update").isEmpty());
+        Assert.assertEquals(1, server.getQueries("save").size());
+    }
+
+    @Test
+    public void rejectedUpdateFallsBackToWholeSave() {
+        updateResponse = "{\"ack\":\"0\",\"code\":\"DB100\",\"cause\":\"unknown query\"}";
+        final TypedTestTable record = Db.newLoadedInstance(TypedTestTable.class, "r1");
+        record.setCount(8);
+        record.save();
+
+        Assert.assertEquals(1, server.getQueries("update").size());
+        List<JsonObject> saves = server.getQueries("save");
+        Assert.assertEquals(1, saves.size());
+        Assert.assertEquals("8", saves.get(0).getAsJsonObject("p").get("count").getAsString());
+        Assert.assertEquals("1.5", saves.get(0).getAsJsonObject("p").get("score").getAsString());
+
+        // saved whole from then on, but still only when changed
+        record.setScore(2.5);
+        record.save();
+        record.save();
+        Assert.assertEquals(1, server.getQueries("update").size());
+        saves = server.getQueries("save");
+        Assert.assertEquals(2, saves.size());
+        Assert.assertEquals("2.5", saves.get(1).getAsJsonObject("p").get("score").getAsString());
+    }
+
+    @Test
+    public void updateOfMissingRecordSavesItWhole() {
+        updateResponse = "{\"ack\":\"0\",\"code\":\"DB200\"}";
+        final TypedTestTable record = Db.newLoadedInstance(TypedTestTable.class, "r1");
+        record.setCount(8);
+        record.save();
+        Assert.assertEquals(1, server.getQueries("save").size());
+
+        updateResponse = StubServer.ACK;
+        record.setScore(2.5);
+        record.save();
+        Assert.assertEquals(2, server.getQueries("update").size());
+        Assert.assertEquals(1, server.getQueries("save").size());
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright 2016, BlobCity iSolutions Pvt. Ltd.
+ */
+package com.blobcity.db.test.unit;
+
+import com.blobcity.db.Db;
+import com.blobcity.db.config.Credentials;
+import com.blobcity.db.entity.TestTable;
+import com.blobcity.db.entity.TypedTestTable;
+import com.blobcity.db.processor.EntityMapperProcessor;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Compiles test entities with the {@link EntityMapperProcessor} and checks that records map alike through the
+ * generated mappers and through reflection. The test sources themselves are compiled without the processor, so the
+ * entity classes on the test class path are mapped through reflection.
+ *
+ * @author Prikshit Kumar
+ */
+public class EntityMapperProcessorTest {
+
+    private static final String ENTITY_SOURCES = "src/test/java/com/blobcity/db/entity/";
+    private static final String RECORD = "{\"id\":\"r1\",\"count\":\"7\",\"active\":\"true\",\"created\":1450000000000,\"tags\":[\"a\",\"b\"],"
+            + "\"score\":\"1.5\",\"rank\":\"3\",\"amount\":\"12.50\",\"type\":\"ON_DISK\",\"grade\":\"A\"}";
+
+    private final Gson gson = new Gson();
+    private StubServer server;
+    private File outputDir;
+
+    @Before
+    public void setUp() throws Exception {
+        server = StubServer.start();
+        Credentials.init(server.getAddress(), "root", "root", "ds1");
+        outputDir = File.createTempFile("entity-mappers", "");
+        Assert.assertTrue(outputDir.delete() && outputDir.mkdir());
+    }
+
+    @After
+    public void tearDown() {
+        Credentials.unInit();
+        server.stop();
+        delete(outputDir);
+    }
+
+    @Test
+    public void processorIsNotDiscovered() throws Exception {
+        final List<Diagnostic<? extends JavaFileObject>> diagnostics = compile(false, sourceFile("TestTable.java"));
+        Assert.assertTrue(diagnostics.toString(), diagnostics.isEmpty());
+        Assert.assertFalse("A mapper was generated without naming the processor", mapperClassFile("TestTableMapper").exists());
+    }
+
+    @Test
+    public void mapperIsGeneratedForAccessibleFields() throws Exception {
+        final List<Diagnostic<? extends JavaFileObject>> diagnostics = compile(true, sourceFile("TestTable.java"), sourceFile("TypedTestTable.java"));
+        Assert.assertTrue(diagnostics.toString(), diagnostics.isEmpty());
+        Assert.assertTrue(mapperClassFile("TestTableMapper").exists());
+        Assert.assertTrue(mapperClassFile("TypedTestTableMapper").exists());
+    }
+
+    @Test
+    public void inaccessibleFieldIsReportedAndMappedThroughReflection() throws Exception {
+        final JavaFileObject source = new SimpleJavaFileObject(URI.create("string:///com/blobcity/db/entity/SealedTestTable.java"), JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(final boolean ignoreEncodingErrors) {
+                return "package com.blobcity.db.entity;\n"
+                        + "@com.blobcity.db.annotations.Entity\n"
+                        + "public class SealedTestTable extends com.blobcity.db.Db {\n"
+                        + "    @com.blobcity.db.annotations.Primary\n"
+                        + "    private final String id = \"x\";\n"
+                        + "}\n";
+            }
+        };
+
+        final List<Diagnostic<? extends JavaFileObject>> diagnostics = compile(true, source);
+        Assert.assertEquals(diagnostics.toString(), 1, diagnostics.size());
+        Assert.assertEquals(Diagnostic.Kind.WARNING, diagnostics.get(0).getKind());
+        Assert.assertTrue(diagnostics.get(0).getMessage(null).contains("field id is private or final"));
+        Assert.assertFalse(mapperClassFile("SealedTestTableMapper").exists());
+    }
+
+    @Test
+    public void loadedRecordRoundTripsAlike() throws Exception {
+        compile(true, sourceFile("TestTable.java"), sourceFile("TypedTestTable.java"));
+        final ClassLoader loader = new EntityClassLoader(outputDir);
+        respondWith("{\"ack\":\"1\",\"p\":" + RECORD + "}");
+
+        final JsonObject reflective = loadAndSave(TypedTestTable.class);
+        final JsonObject mapped = loadAndSave(loader.loadClass(TypedTestTable.class.getName()).asSubclass(Db.class));
+        Assert.assertEquals(gson.fromJson(RECORD, JsonObject.class), reflective);
+        Assert.assertEquals(reflective, mapped);
+    }
+
+    @Test
+    public void searchedRecordRoundTripsAlike() throws Exception {
+        compile(true, sourceFile("TestTable.java"), sourceFile("TypedTestTable.java"));
+        final ClassLoader loader = new EntityClassLoader(outputDir);
+        final String record = "{\"myPk\":\"k1\",\"column1\":\"v1\"}";
+        respondWith("{\"ack\":\"1\",\"p\":[" + record + "]}");
+
+        final JsonObject reflective = searchAndSave(TestTable.class);
+        final JsonObject mapped = searchAndSave(loader.loadClass(TestTable.class.getName()).asSubclass(Db.class));
+        Assert.assertEquals(gson.fromJson(record, JsonObject.class), reflective);
+        Assert.assertEquals(reflective, mapped);
+    }
+
+    /**
+     * @return the payload of the save of the loaded record
+     */
+    private <T extends Db> JsonObject loadAndSave(final Class<T> clazz) {
+        final T entity = Db.newLoadedInstance(clazz, "r1");
+        Assert.assertNotNull(entity);
+        return saved(entity);
+    }
+
+    /**
+     * @return the payload of the save of the found record
+     */
+    private <T extends Db> JsonObject searchAndSave(final Class<T> clazz) {
+        final List<T> entities = Db.select(clazz, "myPk", "k1");
+        Assert.assertEquals(1, entities.size());
+        return saved(entities.get(0));
+    }
+
+    private JsonObject saved(final Db entity) {
+        final int saves = server.getQueries("save").size();
+        entity.save();
+        final List<JsonObject> sent = server.getQueries("save");
+        Assert.assertEquals(saves + 1, sent.size());
+        return sent.get(saves).getAsJsonObject("p");
+    }
+
+    private void respondWith(final String record) {
+        server.respondWith(new StubServer.Responder() {
+            @Override
+            public String respond(final String service, final String query) {
+                return query.contains("\"save\"") ? StubServer.ACK : record;
+            }
+        });
+    }
+
+    private List<Diagnostic<? extends JavaFileObject>> compile(final boolean withProcessor, final JavaFileObject... sources) throws Exception {
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        Assert.assertNotNull("Tests must run on a JDK", compiler);
+        final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+        final StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null, null);
+        try {
+            final List<String> options = new ArrayList<String>(Arrays.asList("-d", outputDir.getPath(),
+                    "-classpath", classPathOf(Db.class) + File.pathSeparator + classPathOf(Gson.class)));
+            if (withProcessor) {
+                options.addAll(Arrays.asList("-processor", EntityMapperProcessor.class.getName()));
+            }
+            Assert.assertTrue(diagnostics.getDiagnostics().toString(), compiler.getTask(null, fileManager, diagnostics, options, null, Arrays.asList(sources)).call());
+        } finally {
+            fileManager.close();
+        }
+        return diagnostics.getDiagnostics();
+    }
+
+    private static JavaFileObject sourceFile(final String name) throws IOException {
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        final StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null);
+        try {
+            return fileManager.getJavaFileObjects(new File(ENTITY_SOURCES + name)).iterator().next();
+        } finally {
+            fileManager.close();
+        }
+    }
+
+    private File mapperClassFile(final String mapperName) {
+        return new File(outputDir, "com/blobcity/db/entity/" + mapperName + ".class");
+    }
+
+    private static String classPathOf(final Class<?> clazz) throws URISyntaxException {
+        return new File(clazz.getProtectionDomain().getCodeSource().getLocation().toURI()).getPath();
+    }
+
+    private static void delete(final File file) {
+        final File[] children = file.listFiles();
+        if (children != null) {
+            for (final File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * Loads the test entities, and their mappers, from the classes compiled by the test rather than from the test
+     * class path
+     */
+    private static class EntityClassLoader extends URLClassLoader {
+
+        EntityClassLoader(final File classesDir) throws IOException {
+            super(new URL[]{classesDir.toURI().toURL()}, EntityMapperProcessorTest.class.getClassLoader());
+        }
+
+        @Override
+        protected synchronized Class<?> loadClass(final String name, final boolean resolve) throws ClassNotFoundException {
+            if (!name.startsWith("com.blobcity.db.entity.")) {
+                return super.loadClass(name, resolve);
+            }
+
+            Class<?> clazz = findLoadedClass(name);
+            if (clazz == null) {
+                clazz = findClass(name);
+            }
+            if (resolve) {
+                resolveClass(clazz);
+            }
+            return clazz;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2016, BlobCity iSolutions Pvt. Ltd.
+ */
+package com.blobcity.db.test.unit;
+
+import com.blobcity.db.BulkLoadResult;
+import com.blobcity.db.Db;
+import com.blobcity.db.config.Credentials;
+import com.blobcity.db.enums.FileFormat;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests importing records from files
+ *
+ * @author Prikshit Kumar
+ */
+public class FileImportTest {
+
+    private StubServer server;
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        server = StubServer.start();
+        Credentials.init(server.getAddress(), "root", "root", "ds1");
+        file = File.createTempFile("records", ".txt");
+    }
+
+    @After
+    public void tearDown() {
+        Credentials.unInit();
+        server.stop();
+        file.delete();
+    }
+
+    @Test
+    public void ndjsonRecordsAreSentAsWritten() throws Exception {
+        write("{\"myPk\":\"k1\",\"count\":7}\n\n{\"myPk\":\"k2\",\"count\":8}\n");
+        final BulkLoadResult result = Db.importFile("TestTable", file, FileFormat.NDJSON);
+        Assert.assertEquals(2, result.getRowsInserted());
+
+        final JsonObject insert = singleInsert();
+        Assert.assertEquals("ds1", insert.get("ds").getAsString());
+        Assert.assertEquals("TestTable", insert.get("t").getAsString());
+        Assert.assertEquals("root", insert.get("username").getAsString());
+        final JsonArray records = insert.getAsJsonArray("p");
+        Assert.assertEquals(2, records.size());
+        Assert.assertTrue(records.get(0).getAsJsonObject().get("count").getAsJsonPrimitive().isNumber());
+    }
+
+    @Test
+    public void csvFieldsAreSentAsStrings() throws Exception {
+        write("myPk,count,note\nk1,7,\"a, b\"\nk2,,\n");
+        final BulkLoadResult result = Db.importFile("TestTable", file, FileFormat.CSV);
+        Assert.assertEquals(2, result.getRowsInserted());
+
+        final JsonArray records = singleInsert().getAsJsonArray("p");
+        Assert.assertEquals(2, records.size());
+        final JsonObject first = records.get(0).getAsJsonObject();
+        Assert.assertTrue(first.get("count").getAsJsonPrimitive().isString());
+        Assert.assertEquals("7", first.get("count").getAsString());
+        Assert.assertEquals("a, b", first.get("note").getAsString());
+        Assert.assertEquals("", records.get(1).getAsJsonObject().get("count").getAsString());
+    }
+
+    private JsonObject singleInsert() {
+        final List<JsonObject> inserts = server.getQueries("insert");
+        Assert.assertEquals(1, inserts.size());
+        return inserts.get(0);
+    }
+
+    private void write(final String content) throws IOException {
+        final FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2016, BlobCity iSolutions Pvt. Ltd.
+ */
+package com.blobcity.db.test.unit;
+
+import com.blobcity.db.Db;
+import com.blobcity.db.DbQueryResponse;
+import com.blobcity.db.RecordIterator;
+import com.blobcity.db.RequestInterceptor;
+import com.blobcity.db.config.AdapterConfig;
+import com.blobcity.db.config.Credentials;
+import com.blobcity.db.entity.TestTable;
+import com.blobcity.db.exceptions.DbOperationException;
+import com.google.gson.JsonObject;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests searches through filters returning full records, buffered and streamed
+ *
+ * @author Prikshit Kumar
+ */
+public class FilteredSearchTest {
+
+    private static final String RECORDS = "{\"ack\":\"1\",\"p\":[{\"myPk\":\"k1\",\"column1\":\"v1\"},{\"myPk\":\"k2\",\"column1\":\"v2\"}]}";
+
+    private StubServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = StubServer.start();
+        Credentials.init(server.getAddress(), "root", "root", "ds1");
+    }
+
+    @After
+    public void tearDown() {
+        Credentials.unInit();
+        server.stop();
+    }
+
+    @Test
+    public void searchFilteredReturnsAllRecordsThroughInterceptors() {
+        respondWith(RECORDS);
+        final AtomicInteger intercepted = new AtomicInteger();
+        final RequestInterceptor interceptor = new RequestInterceptor() {
+            @Override
+            public DbQueryResponse intercept(final Chain chain) {
+                intercepted.incrementAndGet();
+                return chain.proceed();
+            }
+        };
+
+        AdapterConfig.addInterceptor(interceptor);
+        try {
+            final Iterator<TestTable> records = Db.searchFiltered(Credentials.getInstance(), TestTable.class, "byColumn", "v");
+            assertRecords(records);
+            Assert.assertEquals(1, intercepted.get());
+        } finally {
+            AdapterConfig.removeInterceptor(interceptor);
+        }
+
+        final List<JsonObject> queries = server.getQueries("search-filtered");
+        Assert.assertEquals(1, queries.size());
+        Assert.assertEquals("TestTable", queries.get(0).get("t").getAsString());
+        Assert.assertTrue(queries.get(0).getAsJsonObject("p").get("full-data").getAsBoolean());
+    }
+
+    @Test
+    public void streamFilteredDecodesRecordsInTurn() {
+        respondWith(RECORDS);
+        final RecordIterator<TestTable> records = Db.streamFiltered(TestTable.class, "byColumn", "v");
+        assertRecords(records);
+        records.close();
+    }
+
+    @Test
+    public void streamFilteredCanBeClosedEarly() {
+        respondWith(RECORDS);
+        final RecordIterator<TestTable> records = Db.streamFiltered(TestTable.class, "byColumn", "v");
+        Assert.assertEquals("k1", records.next().getMyPk());
+        records.close();
+        Assert.assertFalse(records.hasNext());
+    }
+
+    @Test
+    public void streamFilteredReportsErrors() {
+        respondWith("{\"ack\":\"0\",\"code\":\"DB201\",\"cause\":\"no such filter\"}");
+        try {
+            Db.streamFiltered(TestTable.class, "missing");
+            Assert.fail("An error response was not reported");
+        } catch (DbOperationException ex) {
+            Assert.assertEquals("DB201", ex.getErrorCode());
+        }
+    }
+
+    @Test
+    public void streamFilteredReportsErrorsAfterPayload() {
+        respondWith("{\"p\":\"no such filter\",\"ack\":\"0\",\"code\":\"DB201\",\"cause\":\"no such filter\"}");
+        try {
+            Db.streamFiltered(TestTable.class, "missing");
+            Assert.fail("An error reported after the payload was not reported");
+        } catch (DbOperationException ex) {
+            Assert.assertEquals("DB201", ex.getErrorCode());
+        }
+    }
+
+    @Test
+    public void streamFilteredReportsErrorsAfterRecords() {
+        respondWith("{\"p\":[{\"myPk\":\"k1\",\"column1\":\"v1\"}],\"ack\":\"0\",\"code\":\"DB500\",\"cause\":\"filter failed\"}");
+        final RecordIterator<TestTable> records = Db.streamFiltered(TestTable.class, "byColumn", "v");
+        Assert.assertEquals("k1", records.next().getMyPk());
+        try {
+            records.hasNext();
+            Assert.fail("An error reported after the records was not reported");
+        } catch (DbOperationException ex) {
+            Assert.assertEquals("DB500", ex.getErrorCode());
+        }
+        Assert.assertFalse(records.hasNext());
+    }
+
+    @Test
+    public void streamFilteredWithoutRecords() {
+        respondWith("{\"ack\":\"1\",\"p\":[]}");
+        Assert.assertFalse(Db.streamFiltered(TestTable.class, "byColumn", "v").hasNext());
+        respondWith("{\"p\":{},\"ack\":\"1\"}");
+        Assert.assertFalse(Db.streamFiltered(TestTable.class, "byColumn", "v").hasNext());
+    }
+
+    private static void assertRecords(final Iterator<TestTable> records) {
+        Assert.assertTrue(records.hasNext());
+        final TestTable first = records.next();
+        Assert.assertEquals("k1", first.getMyPk());
+        Assert.assertEquals("v1", first.getColumn1());
+        Assert.assertEquals("k2", records.next().getMyPk());
+        Assert.assertFalse(records.hasNext());
+    }
+
+    private void respondWith(final String body) {
+        server.respondWith(new StubServer.Responder() {
+            @Override
+            public String respond(final String service, final String query) {
+                return body;
+            }
+        });
+    }
+}
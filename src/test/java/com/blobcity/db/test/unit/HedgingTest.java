@@ -0,0 +1,183 @@
+/*
+ * Copyright 2016, BlobCity iSolutions Pvt. Ltd.
+ */
+package com.blobcity.db.test.unit;
+
+import com.blobcity.db.Db;
+import com.blobcity.db.config.AdapterConfig;
+import com.blobcity.db.config.Credentials;
+import com.blobcity.db.config.HedgingConfig;
+import com.blobcity.db.entity.TestTable;
+import com.blobcity.db.exceptions.DeadlineExceededException;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests hedging of reads across the nodes of a cluster when the node sent a read to is slow or fails
+ *
+ * @author Prikshit Kumar
+ */
+public class HedgingTest {
+
+    private static final long HEDGE_DELAY_MILLIS = 100;
+    private static final String ERROR = "{\"ack\":\"0\",\"code\":\"DB200\"}";
+
+    /**
+     * How a node answers the first load or save sent to the cluster; later ones are answered at once
+     */
+    private enum FirstAttempt {
+
+        HOLD, FAIL, ERROR
+    }
+
+    private StubServer node1;
+    private StubServer node2;
+    private final AtomicInteger attempts = new AtomicInteger();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private volatile FirstAttempt firstAttempt = FirstAttempt.HOLD;
+    private volatile long holdMillis = 10000;
+    private volatile boolean holdAll;
+    private volatile StubServer firstNode;
+
+    @Before
+    public void setUp() throws Exception {
+        node1 = StubServer.start();
+        node2 = StubServer.start();
+        node1.respondWith(responder(node1));
+        node2.respondWith(responder(node2));
+        Credentials.init(Arrays.asList(node1.getAddress(), node2.getAddress()), "root", "root", "ds1");
+        // too few samples for a percentile, so reads are hedged after the initial delay
+        AdapterConfig.setHedgingConfig(HedgingConfig.create(95, 10, HEDGE_DELAY_MILLIS, 1000000));
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        AdapterConfig.setHedgingConfig(null);
+        Credentials.unInit();
+        node1.stop();
+        node2.stop();
+    }
+
+    @Test
+    public void slowReadIsHedgedAfterDelay() {
+        final long start = System.currentTimeMillis();
+        final TestTable record = load();
+        final long elapsed = System.currentTimeMillis() - start;
+
+        Assert.assertEquals("fast", record.getColumn1());
+        Assert.assertTrue("Hedged after " + elapsed + " ms", elapsed >= HEDGE_DELAY_MILLIS - 10 && elapsed < 5000);
+        Assert.assertEquals(1, node1.getQueries("select").size());
+        Assert.assertEquals(1, node2.getQueries("select").size());
+    }
+
+    @Test
+    public void losingAttemptIsAborted() throws Exception {
+        load();
+        release.countDown();
+
+        // the response of the slow node finds its connection dropped
+        final long until = System.currentTimeMillis() + 5000;
+        while (firstNode.getAbandoned() == 0 && System.currentTimeMillis() < until) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(1, firstNode.getAbandoned());
+    }
+
+    @Test
+    public void earlyFailureIsHedgedImmediately() {
+        firstAttempt = FirstAttempt.FAIL;
+        AdapterConfig.setHedgingConfig(HedgingConfig.create(95, 10, 5000, 1000000));
+
+        final long start = System.currentTimeMillis();
+        Assert.assertEquals("fast", load().getColumn1());
+        Assert.assertTrue(System.currentTimeMillis() - start < 2000);
+        Assert.assertEquals(2, selects());
+    }
+
+    @Test
+    public void errorResponseIsNotHedged() {
+        firstAttempt = FirstAttempt.ERROR;
+        // only an early failure could hedge the read before this delay
+        AdapterConfig.setHedgingConfig(HedgingConfig.create(95, 10, 5000, 1000000));
+
+        Assert.assertFalse(Db.newInstance(TestTable.class, "k1").load());
+        Assert.assertEquals(1, selects());
+    }
+
+    @Test
+    public void slowWriteIsNotHedged() throws Exception {
+        holdMillis = HEDGE_DELAY_MILLIS * 3;
+
+        final TestTable record = Db.newInstance(TestTable.class, "k1");
+        record.setColumn1("v1");
+        record.save();
+        Thread.sleep(HEDGE_DELAY_MILLIS);
+        Assert.assertEquals(1, node1.getQueries("save").size() + node2.getQueries("save").size());
+    }
+
+    @Test
+    public void deadlineBoundsWaitForHedgedRead() {
+        holdAll = true;
+
+        final long start = System.currentTimeMillis();
+        try {
+            Db.withDeadline(HEDGE_DELAY_MILLIS * 4, TimeUnit.MILLISECONDS).load(Db.newInstance(TestTable.class, "k1"));
+            Assert.fail("A read outlived its deadline");
+        } catch (DeadlineExceededException ex) {
+            // expected
+        }
+        Assert.assertTrue(System.currentTimeMillis() - start < 2000);
+        Assert.assertEquals(2, selects());
+    }
+
+    private static TestTable load() {
+        final TestTable record = Db.newInstance(TestTable.class, "k1");
+        Assert.assertTrue(record.load());
+        return record;
+    }
+
+    private int selects() {
+        return node1.getQueries("select").size() + node2.getQueries("select").size();
+    }
+
+    private StubServer.Responder responder(final StubServer node) {
+        return new StubServer.Responder() {
+            @Override
+            public String respond(final String service, final String query) throws Exception {
+                final String type = StubServer.parse(query).get("q").getAsString();
+                if (!"select".equals(type) && !"save".equals(type)) {
+                    // metadata of the collection, which is not needed for routing here
+                    return StubServer.ACK;
+                }
+                if (attempts.incrementAndGet() > 1 && !holdAll) {
+                    return record("fast");
+                }
+
+                firstNode = node;
+                switch (firstAttempt) {
+                    case FAIL:
+                        throw new IllegalStateException("node failing");
+                    case ERROR:
+                        return ERROR;
+                    default:
+                        release.await(holdMillis, TimeUnit.MILLISECONDS);
+                        // large enough not to fit in socket buffers, so that writing it fails if the read was aborted
+                        final char[] padding = new char[8 * 1024 * 1024];
+                        Arrays.fill(padding, 'x');
+                        return record(new String(padding));
+                }
+            }
+        };
+    }
+
+    private static String record(final String column1) {
+        return "{\"ack\":\"1\",\"p\":{\"myPk\":\"k1\",\"column1\":\"" + column1 + "\"}}";
+    }
+}
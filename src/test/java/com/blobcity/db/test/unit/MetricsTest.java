@@ -0,0 +1,62 @@
+/*
+ * Copyright 2016, BlobCity iSolutions Pvt. Ltd.
+ */
+package com.blobcity.db.test.unit;
+
+import com.blobcity.db.Db;
+import com.blobcity.db.QueryType;
+import com.blobcity.db.config.AdapterConfig;
+import com.blobcity.db.config.Credentials;
+import com.blobcity.db.entity.TestTable;
+import com.blobcity.db.metrics.InMemoryMetricsRegistry;
+import com.blobcity.db.metrics.MetricTags;
+import java.net.URLEncoder;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the sizes of requests and responses reported to the metrics registry
+ *
+ * @author Prikshit Kumar
+ */
+public class MetricsTest {
+
+    private StubServer server;
+    private final InMemoryMetricsRegistry registry = new InMemoryMetricsRegistry();
+
+    @Before
+    public void setUp() throws Exception {
+        server = StubServer.start();
+        Credentials.init(server.getAddress(), "root", "root", "ds1");
+        AdapterConfig.setMetricsRegistry(registry);
+    }
+
+    @After
+    public void tearDown() {
+        AdapterConfig.setMetricsRegistry(null);
+        Credentials.unInit();
+        server.stop();
+    }
+
+    @Test
+    public void sizesAreCountedInBytesAsSent() throws Exception {
+        // multi-byte characters and line breaks, which are not part of the parsed response
+        final String body = "{\"ack\":\"1\",\n\"p\":{\"myPk\":\"k1\",\"column1\":\"naïve €\"}}\n";
+        server.respondWith(new StubServer.Responder() {
+            @Override
+            public String respond(final String service, final String query) {
+                return body;
+            }
+        });
+
+        final TestTable record = Db.newLoadedInstance(TestTable.class, "k1");
+        Assert.assertNotNull(record);
+
+        final String query = server.getQueries().get(0);
+        final InMemoryMetricsRegistry.OperationMetrics metrics = registry.get(MetricTags.of(QueryType.LOAD, "ds1", "TestTable"));
+        Assert.assertEquals(("username=root&password=root&ds=ds1&q=" + URLEncoder.encode(query, "UTF-8")).length(), metrics.getRequestBytes());
+        Assert.assertEquals(body.getBytes("UTF-8").length, metrics.getResponseBytes());
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2016, BlobCity iSolutions Pvt. Ltd.
+ */
+package com.blobcity.db.test.unit;
+
+import com.blobcity.db.Db;
+import com.blobcity.db.config.AdapterConfig;
+import com.blobcity.db.config.Credentials;
+import com.blobcity.db.entity.TestTable;
+import com.blobcity.db.enums.BalancingStrategy;
+import com.blobcity.db.enums.ReadRouting;
+import com.blobcity.db.exceptions.InternalAdapterException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that writes on mirrored collections go to the coordinator while reads are spread across all nodes
+ *
+ * @author Prikshit Kumar
+ */
+public class MirroredRoutingTest {
+
+    private static final String RECORD = "{\"ack\":\"1\",\"p\":{\"myPk\":\"k1\",\"column1\":\"v1\"}}";
+    private static final String FAIL = "fail";
+    // collection metadata is cached per collection, so every test uses a datastore of its own
+    private static final AtomicInteger datastores = new AtomicInteger();
+
+    private final List<StubServer> nodes = new ArrayList<StubServer>();
+    private final Map<StubServer, String> responses = new HashMap<StubServer, String>();
+    private final Map<StubServer, Long> delays = new HashMap<StubServer, Long>();
+    private final Map<StubServer, Integer> warmUpQueries = new HashMap<StubServer, Integer>();
+
+    @Before
+    public void setUp() throws Exception {
+        final List<String> addresses = new ArrayList<String>();
+        for (int i = 0; i < 3; i++) {
+            final StubServer node = StubServer.start();
+            respond(node, RECORD, 0);
+            node.respondWith(responder(node));
+            nodes.add(node);
+            addresses.add(node.getAddress());
+        }
+        Credentials.init(addresses, "root", "root", "mirrored" + datastores.incrementAndGet());
+        AdapterConfig.setBalancingStrategy(BalancingStrategy.ROUND_ROBIN);
+        awaitMetadata();
+    }
+
+    @After
+    public void tearDown() {
+        AdapterConfig.setMirroredReadRouting(ReadRouting.SPREAD);
+        AdapterConfig.setBalancingStrategy(BalancingStrategy.POWER_OF_TWO_CHOICES);
+        AdapterConfig.setEjectionThreshold(3);
+        Credentials.unInit();
+        for (final StubServer node : nodes) {
+            node.stop();
+        }
+    }
+
+    @Test
+    public void writesGoToCoordinator() {
+        for (int i = 0; i < 3; i++) {
+            save();
+            Assert.assertTrue(record().insert());
+        }
+
+        Assert.assertEquals(3, queries(nodes.get(0), "save"));
+        Assert.assertEquals(3, queries(nodes.get(0), "insert"));
+        for (final StubServer node : nodes.subList(1, nodes.size())) {
+            Assert.assertEquals(0, queries(node, "save") + queries(node, "insert"));
+        }
+    }
+
+    @Test
+    public void writesMoveOffEjectedCoordinator() {
+        AdapterConfig.setEjectionThreshold(1);
+        respond(nodes.get(0), FAIL, 0);
+
+        try {
+            save();
+            Assert.fail("A failed write was not reported");
+        } catch (InternalAdapterException ex) {
+            // expected
+        }
+        save();
+
+        Assert.assertEquals(1, queries(nodes.get(0), "save"));
+        Assert.assertEquals(1, queries(nodes.get(1), "save") + queries(nodes.get(2), "save"));
+    }
+
+    @Test
+    public void readsAreSpreadAcrossNodes() {
+        for (int i = 0; i < 6; i++) {
+            Assert.assertTrue(record().load());
+        }
+
+        for (final StubServer node : nodes) {
+            Assert.assertEquals(2, queries(node, "select"));
+        }
+    }
+
+    @Test
+    public void nearestReadsGoToFastestNode() {
+        AdapterConfig.setMirroredReadRouting(ReadRouting.NEAREST);
+        respond(nodes.get(0), RECORD, 100);
+        respond(nodes.get(2), RECORD, 100);
+
+        // latencies are averaged, so reads settle on the fastest node once the averages follow the new latencies
+        int consecutiveFastReads = 0;
+        for (int i = 0; i < 40 && consecutiveFastReads < 5; i++) {
+            final int fastSelects = queries(nodes.get(1), "select");
+            Assert.assertTrue(record().load());
+            consecutiveFastReads = queries(nodes.get(1), "select") > fastSelects ? consecutiveFastReads + 1 : 0;
+        }
+        Assert.assertEquals(5, consecutiveFastReads);
+    }
+
+    /**
+     * Sends a request until the metadata of the collection is cached, and from then on counts queries afresh
+     */
+    private void awaitMetadata() throws Exception {
+        Assert.assertTrue(record().load());
+        final long until = System.currentTimeMillis() + 5000;
+        while (metadataFetches() == 0 && System.currentTimeMillis() < until) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(1, metadataFetches());
+        // lets the background fetch store the metadata
+        Thread.sleep(100);
+
+        for (final StubServer node : nodes) {
+            warmUpQueries.put(node, node.getQueries().size());
+        }
+    }
+
+    private static TestTable record() {
+        final TestTable record = Db.newInstance(TestTable.class, "k1");
+        record.setColumn1("v1");
+        return record;
+    }
+
+    private static void save() {
+        record().save();
+    }
+
+    private int queries(final StubServer node, final String type) {
+        final List<String> queries = node.getQueries();
+        int count = 0;
+        for (final String query : queries.subList(warmUpQueries.get(node), queries.size())) {
+            if (type.equals(StubServer.parse(query).get("q").getAsString())) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private int metadataFetches() {
+        int count = 0;
+        for (final StubServer node : nodes) {
+            count += node.getQueries("collection-info").size();
+        }
+        return count;
+    }
+
+    private synchronized void respond(final StubServer node, final String body, final long delayMillis) {
+        responses.put(node, body);
+        delays.put(node, delayMillis);
+    }
+
+    private synchronized String responseOf(final StubServer node) {
+        return responses.get(node);
+    }
+
+    private synchronized long delayOf(final StubServer node) {
+        return delays.get(node);
+    }
+
+    private StubServer.Responder responder(final StubServer node) {
+        return new StubServer.Responder() {
+            @Override
+            public String respond(final String service, final String query) throws Exception {
+                Thread.sleep(delayOf(node));
+                if ("collection-info".equals(StubServer.parse(query).get("q").getAsString())) {
+                    return "{\"ack\":\"1\",\"p\":{\"replication-type\":\"mirrored\"}}";
+                }
+
+                final String body = responseOf(node);
+                if (FAIL.equals(body)) {
+                    throw new IllegalStateException("node failing");
+                }
+                return body;
+            }
+        };
+    }
+}
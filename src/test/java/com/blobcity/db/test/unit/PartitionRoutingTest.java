@@ -0,0 +1,226 @@
+/*
+ * Copyright 2016, BlobCity iSolutions Pvt. Ltd.
+ */
+package com.blobcity.db.test.unit;
+
+import com.blobcity.db.Db;
+import com.blobcity.db.config.Credentials;
+import com.blobcity.db.entity.TestTable;
+import com.blobcity.db.exceptions.DbOperationException;
+import com.blobcity.db.exceptions.InternalAdapterException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests that requests for single records of distributed collections are sent to the node owning the record, and
+ * that a refused request is sent once more to the node the refusal points to
+ *
+ * @author Prikshit Kumar
+ */
+public class PartitionRoutingTest {
+
+    private static final String NOT_FOUND = "{\"ack\":\"0\",\"code\":\"DB200\"}";
+    private static final String RECORD = "{\"ack\":\"1\",\"p\":{\"myPk\":\"k1\",\"column1\":\"v1\"}}";
+    private static final String FAIL = "fail";
+    // partition maps are cached per collection, so every test uses a datastore of its own
+    private static final AtomicInteger datastores = new AtomicInteger();
+
+    private StubServer coordinator;
+    private StubServer owner;
+    private StubServer other;
+    private final Map<StubServer, String> responses = new HashMap<StubServer, String>();
+    private final Map<StubServer, Integer> warmUpQueries = new HashMap<StubServer, Integer>();
+
+    @Before
+    public void setUp() throws Exception {
+        coordinator = StubServer.start();
+        owner = StubServer.start();
+        other = StubServer.start();
+        for (final StubServer node : Arrays.asList(coordinator, owner, other)) {
+            respond(node, NOT_FOUND);
+            node.respondWith(responder(node));
+        }
+        Credentials.init(Arrays.asList(coordinator.getAddress(), owner.getAddress(), other.getAddress()), "root", "root",
+                "partitioned" + datastores.incrementAndGet());
+        awaitPartitionMap();
+    }
+
+    @After
+    public void tearDown() {
+        Credentials.unInit();
+        coordinator.stop();
+        owner.stop();
+        other.stop();
+    }
+
+    @Test
+    public void recordRequestsGoToOwner() {
+        respond(owner, RECORD);
+        for (int i = 0; i < 5; i++) {
+            Assert.assertTrue(Db.newInstance(TestTable.class, "k" + i).load());
+        }
+        Assert.assertTrue(insert());
+
+        Assert.assertEquals(5, queries(owner, "select"));
+        Assert.assertEquals(1, queries(owner, "insert"));
+        Assert.assertEquals(0, queries(coordinator, "select") + queries(other, "select"));
+    }
+
+    @Test
+    public void refusedReadIsRedirected() {
+        respond(owner, notOwner(other));
+        respond(other, RECORD);
+
+        final TestTable record = Db.newInstance(TestTable.class, "k1");
+        Assert.assertTrue(record.load());
+        Assert.assertEquals("v1", record.getColumn1());
+        Assert.assertEquals(1, queries(owner, "select"));
+        Assert.assertEquals(1, queries(other, "select"));
+        Assert.assertEquals(0, queries(coordinator, "select"));
+    }
+
+    @Test
+    public void redirectIsFollowedOnlyOnce() {
+        respond(owner, notOwner(other));
+        respond(other, notOwner(coordinator));
+        respond(coordinator, RECORD);
+
+        try {
+            Db.newInstance(TestTable.class, "k1").load();
+            Assert.fail("A second refusal was not reported");
+        } catch (DbOperationException ex) {
+            Assert.assertEquals("NOT_OWNER", ex.getErrorCode());
+        }
+        Assert.assertEquals(1, queries(owner, "select"));
+        Assert.assertEquals(1, queries(other, "select"));
+        Assert.assertEquals(0, queries(coordinator, "select"));
+    }
+
+    @Test
+    public void refusedInsertIsSentOnceMore() {
+        respond(owner, notOwner(other));
+        respond(other, RECORD);
+
+        Assert.assertTrue(insert());
+        Assert.assertEquals(1, queries(owner, "insert"));
+        Assert.assertEquals(1, queries(other, "insert"));
+        Assert.assertEquals(0, queries(coordinator, "insert"));
+    }
+
+    @Test
+    public void failedRedirectedInsertIsNotSentAgain() {
+        respond(owner, notOwner(other));
+        respond(other, FAIL);
+
+        try {
+            insert();
+            Assert.fail("The failure of the redirected insert was not reported");
+        } catch (InternalAdapterException ex) {
+            // expected
+        }
+        Assert.assertEquals(1, queries(owner, "insert"));
+        Assert.assertEquals(1, queries(other, "insert"));
+        Assert.assertEquals(0, queries(coordinator, "insert"));
+    }
+
+    @Test
+    public void refusalWithoutRedirectGoesToCoordinatorAndRefreshesMap() throws Exception {
+        respond(owner, "{\"ack\":\"0\",\"code\":\"NOT_OWNER\"}");
+        respond(coordinator, RECORD);
+        final int mapFetches = partitionMapFetches();
+
+        Assert.assertTrue(Db.newInstance(TestTable.class, "k1").load());
+        Assert.assertEquals(1, queries(owner, "select"));
+        Assert.assertEquals(1, queries(coordinator, "select"));
+
+        // the next request finds the map dropped and has it fetched again
+        Db.newInstance(TestTable.class, "k1").load();
+        final long until = System.currentTimeMillis() + 5000;
+        while (partitionMapFetches() == mapFetches && System.currentTimeMillis() < until) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(mapFetches + 1, partitionMapFetches());
+    }
+
+    /**
+     * Sends requests until the metadata and partition map of the collection are cached, and from then on counts
+     * queries afresh
+     */
+    private void awaitPartitionMap() throws Exception {
+        final long until = System.currentTimeMillis() + 5000;
+        while (partitionMapFetches() == 0 && System.currentTimeMillis() < until) {
+            Db.newInstance(TestTable.class, "k1").load();
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(1, partitionMapFetches());
+        // lets the background fetch store the map
+        Thread.sleep(100);
+
+        for (final StubServer node : Arrays.asList(coordinator, owner, other)) {
+            warmUpQueries.put(node, node.getQueries().size());
+        }
+    }
+
+    private static boolean insert() {
+        final TestTable record = Db.newInstance(TestTable.class, "k1");
+        record.setColumn1("v1");
+        return record.insert();
+    }
+
+    private int queries(final StubServer node, final String type) {
+        final List<String> queries = node.getQueries();
+        int count = 0;
+        for (final String query : queries.subList(warmUpQueries.get(node), queries.size())) {
+            if (type.equals(StubServer.parse(query).get("q").getAsString())) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private int partitionMapFetches() {
+        return coordinator.getQueries("partition-map").size() + owner.getQueries("partition-map").size()
+                + other.getQueries("partition-map").size();
+    }
+
+    private synchronized void respond(final StubServer node, final String body) {
+        responses.put(node, body);
+    }
+
+    private synchronized String responseOf(final StubServer node) {
+        return responses.get(node);
+    }
+
+    private StubServer.Responder responder(final StubServer node) {
+        return new StubServer.Responder() {
+            @Override
+            public String respond(final String service, final String query) {
+                final String type = StubServer.parse(query).get("q").getAsString();
+                if ("collection-info".equals(type)) {
+                    return "{\"ack\":\"1\",\"p\":{\"replication-type\":\"distributed\"}}";
+                }
+                if ("partition-map".equals(type)) {
+                    // a single bucket, so the owner owns every record
+                    return "{\"ack\":\"1\",\"p\":{\"buckets\":[\"" + owner.getAddress() + "\"]}}";
+                }
+
+                final String body = responseOf(node);
+                if (FAIL.equals(body)) {
+                    throw new IllegalStateException("node failing");
+                }
+                return body;
+            }
+        };
+    }
+
+    private static String notOwner(final StubServer redirect) {
+        return "{\"ack\":\"0\",\"code\":\"NOT_OWNER\",\"redirect\":\"" + redirect.getAddress() + "\"}";
+    }
+}
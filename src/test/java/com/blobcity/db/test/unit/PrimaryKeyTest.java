@@ -0,0 +1,62 @@
+/*
+ * Copyright 2016, BlobCity iSolutions Pvt. Ltd.
+ */
+package com.blobcity.db.test.unit;
+
+import com.blobcity.db.Db;
+import com.blobcity.db.config.Credentials;
+import com.blobcity.db.entity.TestTable;
+import com.blobcity.db.entity.TypedTestTable;
+import com.google.gson.Gson;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests reading and comparing the primary keys of entities
+ *
+ * @author Prikshit Kumar
+ */
+public class PrimaryKeyTest {
+
+    @Before
+    public void setUp() {
+        Credentials.init("localhost:10111", "root", "root", "ds1");
+    }
+
+    @After
+    public void tearDown() {
+        Credentials.unInit();
+    }
+
+    @Test
+    public void pkOf() {
+        Assert.assertEquals("k1", Db.pkOf(Db.newInstance(TestTable.class, "k1")));
+        Assert.assertNull(Db.pkOf(Db.newInstance(TestTable.class)));
+
+        final TestTable entity = Db.newInstance(TestTable.class, "k1");
+        entity.setMyPk("k2");
+        Assert.assertEquals("k2", Db.pkOf(entity));
+    }
+
+    @Test
+    public void pkEquals() {
+        Assert.assertTrue(Db.pkEquals(Db.newInstance(TestTable.class, "k1"), Db.newInstance(TestTable.class, "k1")));
+        Assert.assertFalse(Db.pkEquals(Db.newInstance(TestTable.class, "k1"), Db.newInstance(TestTable.class, "k2")));
+        Assert.assertFalse(Db.pkEquals(Db.newInstance(TestTable.class, "k1"), Db.newInstance(TypedTestTable.class, "k1")));
+        Assert.assertFalse(Db.pkEquals(Db.newInstance(TestTable.class), Db.newInstance(TestTable.class)));
+    }
+
+    @Test
+    public void pkEqualsWithoutDatastore() {
+        // entities restored by a serialization framework need not have a datastore or collection set
+        final Gson gson = new Gson();
+        final TestTable restored = gson.fromJson("{\"myPk\":\"k1\",\"ds\":null,\"collection\":null}", TestTable.class);
+        final TestTable other = gson.fromJson("{\"myPk\":\"k1\",\"ds\":null,\"collection\":null}", TestTable.class);
+
+        Assert.assertFalse(Db.pkEquals(restored, Db.newInstance(TestTable.class, "k1")));
+        Assert.assertFalse(Db.pkEquals(Db.newInstance(TestTable.class, "k1"), restored));
+        Assert.assertTrue(Db.pkEquals(restored, other));
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2016, BlobCity iSolutions Pvt. Ltd.
+ */
+package com.blobcity.db.test.unit;
+
+import com.blobcity.db.Db;
+import com.blobcity.db.ProcedureCursor;
+import com.blobcity.db.config.Credentials;
+import com.blobcity.db.exceptions.DbOperationException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests reading the output of stored procedures through a {@link ProcedureCursor}
+ *
+ * @author Prikshit Kumar
+ */
+public class ProcedureCursorTest {
+
+    private StubServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = StubServer.start();
+        Credentials.init(server.getAddress(), "root", "root", "ds1");
+    }
+
+    @After
+    public void tearDown() {
+        Credentials.unInit();
+        server.stop();
+    }
+
+    @Test
+    public void arrayOutput() {
+        respondWith("{\"ack\":\"1\",\"p\":[1,2,3]}");
+        Assert.assertEquals(Arrays.asList(1, 2, 3), readAll(Db.invokeProcedureCursor("numbers", Integer.class)));
+    }
+
+    @Test
+    public void singleValueOutput() {
+        respondWith("{\"ack\":\"1\",\"p\":7}");
+        Assert.assertEquals(Arrays.asList(7), readAll(Db.invokeProcedureCursor("number", Integer.class)));
+    }
+
+    @Test
+    public void outputAsJsonText() {
+        respondWith("{\"ack\":\"1\",\"p\":\"[\\\"a\\\",\\\"b\\\"]\"}");
+        Assert.assertEquals(Arrays.asList("a", "b"), readAll(Db.invokeProcedureCursor("letters", String.class)));
+    }
+
+    @Test
+    public void singleValueOutputAsJsonText() {
+        respondWith("{\"ack\":\"1\",\"p\":\"7\"}");
+        Assert.assertEquals(Arrays.asList(7), readAll(Db.invokeProcedureCursor("number", Integer.class)));
+    }
+
+    @Test
+    public void noOutput() {
+        respondWith("{\"ack\":\"1\",\"p\":null}");
+        Assert.assertFalse(Db.invokeProcedureCursor("nothing", Integer.class).hasNext());
+        respondWith("{\"ack\":\"1\",\"p\":\"\"}");
+        Assert.assertFalse(Db.invokeProcedureCursor("nothing", Integer.class).hasNext());
+    }
+
+    @Test
+    public void closedEarly() {
+        respondWith("{\"ack\":\"1\",\"p\":[1,2,3]}");
+        final ProcedureCursor<Integer> cursor = Db.invokeProcedureCursor("numbers", Integer.class);
+        Assert.assertEquals(Integer.valueOf(1), cursor.next());
+        cursor.close();
+        Assert.assertFalse(cursor.hasNext());
+    }
+
+    @Test
+    public void errorsAreReported() {
+        respondWith("{\"ack\":\"0\",\"code\":\"DB201\",\"cause\":\"no such procedure\"}");
+        try {
+            Db.invokeProcedureCursor("missing", Integer.class);
+            Assert.fail("An error response was not reported");
+        } catch (DbOperationException ex) {
+            Assert.assertEquals("DB201", ex.getErrorCode());
+        }
+    }
+
+    private static <U> List<U> readAll(final ProcedureCursor<U> cursor) {
+        final List<U> elements = new ArrayList<U>();
+        while (cursor.hasNext()) {
+            elements.add(cursor.next());
+        }
+        return elements;
+    }
+
+    private void respondWith(final String body) {
+        server.respondWith(new StubServer.Responder() {
+            @Override
+            public String respond(final String service, final String query) {
+                return body;
+            }
+        });
+    }
+}
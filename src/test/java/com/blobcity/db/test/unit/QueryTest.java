@@ -0,0 +1,82 @@
+/*
+ * Copyright 2016, BlobCity iSolutions Pvt. Ltd.
+ */
+package com.blobcity.db.test.unit;
+
+import com.blobcity.db.config.Credentials;
+import com.blobcity.db.entity.TestTable;
+import com.blobcity.db.search.Order;
+import com.blobcity.db.search.OrderElement;
+import com.blobcity.db.search.Query;
+import com.blobcity.db.search.SearchParam;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the SQL generated for search queries
+ *
+ * @author Prikshit Kumar
+ */
+public class QueryTest {
+
+    @Before
+    public void setUp() {
+        Credentials.init("localhost:10111", "root", "root", "ds1");
+    }
+
+    @After
+    public void tearDown() {
+        Credentials.unInit();
+    }
+
+    @Test
+    public void stringsAreQuoted() {
+        Assert.assertEquals("SELECT * FROM `ds1`.`TestTable` WHERE `column1` = 'v1'",
+                Query.table(TestTable.class).where(SearchParam.create("column1").eq("v1")).asSql());
+    }
+
+    @Test
+    public void quotesInStringsAreDoubled() {
+        Assert.assertEquals("SELECT * FROM `ds1`.`TestTable` WHERE `column1` = 'O''Brien'",
+                Query.table(TestTable.class).where(SearchParam.create("column1").eq("O'Brien")).asSql());
+        Assert.assertEquals("SELECT * FROM `ds1`.`TestTable` WHERE `column1` IN ('it''s','''')",
+                Query.table(TestTable.class).where(SearchParam.create("column1").in("it's", "'")).asSql());
+    }
+
+    @Test
+    public void numbersAreNotQuoted() {
+        Assert.assertEquals("SELECT * FROM `ds1`.`TestTable` WHERE `column1` = 7",
+                Query.table(TestTable.class).where(SearchParam.create("column1").eq(7)).asSql());
+        Assert.assertEquals("SELECT * FROM `ds1`.`TestTable` WHERE `column1` BETWEEN 1 and 9000000000",
+                Query.table(TestTable.class).where(SearchParam.create("column1").between(1L, 9000000000L)).asSql());
+        Assert.assertEquals("SELECT * FROM `ds1`.`TestTable` WHERE `column1` > 12.50",
+                Query.table(TestTable.class).where(SearchParam.create("column1").gt(new BigDecimal("12.50"))).asSql());
+        Assert.assertEquals("SELECT * FROM `ds1`.`TestTable` WHERE `column1` > 123456789012345678901234567890",
+                Query.table(TestTable.class).where(SearchParam.create("column1").gt(new BigInteger("123456789012345678901234567890"))).asSql());
+    }
+
+    @Test
+    public void limit() {
+        Assert.assertEquals("SELECT * FROM `ds1`.`TestTable` LIMIT 10", Query.table(TestTable.class).limit(10).asSql());
+    }
+
+    @Test
+    public void limitWithOffset() {
+        Assert.assertEquals("SELECT * FROM `ds1`.`TestTable` LIMIT 10 OFFSET 20", Query.table(TestTable.class).limit(10, 20).asSql());
+        Assert.assertEquals("SELECT `myPk` FROM `ds1`.`coll` LIMIT 10 OFFSET 0", Query.select("myPk").from("coll").limit(10, 0).asSql());
+    }
+
+    @Test
+    public void limitFollowsWhereAndOrderBy() {
+        Assert.assertEquals("SELECT * FROM `ds1`.`TestTable` WHERE `myPk` > 'k1' ORDER BY myPk ASC LIMIT 10 OFFSET 20",
+                Query.table(TestTable.class)
+                .where(SearchParam.create("myPk").gt("k1"))
+                .orderBy(OrderElement.create("myPk", Order.ASC))
+                .limit(10, 20)
+                .asSql());
+    }
+}
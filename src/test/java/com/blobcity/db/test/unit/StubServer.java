@@ -0,0 +1,179 @@
+/*
+ * Copyright 2016, BlobCity iSolutions Pvt. Ltd.
+ */
+package com.blobcity.db.test.unit;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+
+/**
+ * In-process HTTP server standing in for the database in unit tests. Records every query it receives and answers
+ * using a {@link Responder}, which by default acknowledges every query with an empty payload.
+ *
+ * @author Prikshit Kumar
+ */
+public class StubServer {
+
+    public static final String ACK = "{\"ack\":\"1\"}";
+
+    /**
+     * Produces the body of the response to a query
+     */
+    public interface Responder {
+
+        /**
+         * @param service the service the query was sent to, {@code bquery} or {@code sql}
+         * @param query the query as sent, JSON for {@code bquery} and SQL text for {@code sql}
+         * @return the body of the response
+         */
+        String respond(String service, String query) throws Exception;
+    }
+
+    private static final Gson gson = new Gson();
+
+    private final HttpServer server;
+    private final List<String> queries = new ArrayList<String>(); // guarded by this
+    private int abandoned; // guarded by this
+    private volatile Responder responder;
+
+    private StubServer(final HttpServer server) {
+        this.server = server;
+    }
+
+    public static StubServer start() throws IOException {
+        final StubServer stub = new StubServer(HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0));
+        stub.server.createContext("/rest/", new HttpHandler() {
+            @Override
+            public void handle(final HttpExchange exchange) throws IOException {
+                stub.handle(exchange);
+            }
+        });
+        // requests are served concurrently, so that a slow response does not hold up others
+        stub.server.setExecutor(Executors.newCachedThreadPool());
+        stub.server.start();
+        return stub;
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+
+    /**
+     * @return host and port of the server, as passed to {@link com.blobcity.db.config.Credentials}
+     */
+    public String getAddress() {
+        return "127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public void respondWith(final Responder responder) {
+        this.responder = responder;
+    }
+
+    /**
+     * @return the queries received so far, in order of arrival
+     */
+    public synchronized List<String> getQueries() {
+        return new ArrayList<String>(queries);
+    }
+
+    /**
+     * @return the number of responses that could not be delivered, because the adapter dropped the connection
+     */
+    public synchronized int getAbandoned() {
+        return abandoned;
+    }
+
+    /**
+     * @param type the value of the {@code q} field of the queries of interest, such as {@code save}
+     * @return the JSON queries of the type received so far, in order of arrival
+     */
+    public List<JsonObject> getQueries(final String type) {
+        final List<JsonObject> matching = new ArrayList<JsonObject>();
+        for (final String query : getQueries()) {
+            final JsonObject json = parse(query);
+            if (json != null && json.has("q") && type.equals(json.get("q").getAsString())) {
+                matching.add(json);
+            }
+        }
+        return matching;
+    }
+
+    /**
+     * @return the query parsed as JSON, or {@code null} if it is not a JSON object
+     */
+    public static JsonObject parse(final String query) {
+        try {
+            return gson.fromJson(query, JsonObject.class);
+        } catch (JsonParseException ex) {
+            return null;
+        } catch (ClassCastException ex) {
+            // valid JSON, but not an object
+            return null;
+        }
+    }
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        try {
+            final String path = exchange.getRequestURI().getPath();
+            final String service = path.substring(path.lastIndexOf('/') + 1);
+            final String query = queryOf(new String(readFully(exchange.getRequestBody()), "UTF-8"));
+            synchronized (this) {
+                queries.add(query);
+            }
+
+            final Responder current = responder;
+            final String body;
+            try {
+                body = current != null ? current.respond(service, query) : ACK;
+            } catch (Exception ex) {
+                exchange.sendResponseHeaders(500, -1);
+                return;
+            }
+
+            final byte[] bytes = body.getBytes("UTF-8");
+            exchange.sendResponseHeaders(200, bytes.length);
+            final OutputStream out = exchange.getResponseBody();
+            out.write(bytes);
+            out.close();
+        } catch (IOException ex) {
+            // the adapter gave up on the request
+            synchronized (this) {
+                abandoned++;
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static String queryOf(final String postParams) throws IOException {
+        for (final String param : postParams.split("&")) {
+            if (param.startsWith("q=")) {
+                return URLDecoder.decode(param.substring(2), "UTF-8");
+            }
+        }
+        return "";
+    }
+
+    private static byte[] readFully(final InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2016, BlobCity iSolutions Pvt. Ltd.
+ */
+package com.blobcity.db.test.unit;
+
+import com.blobcity.db.Db;
+import com.blobcity.db.config.AdapterConfig;
+import com.blobcity.db.config.Credentials;
+import com.blobcity.db.config.WriteBehindConfig;
+import com.blobcity.db.entity.TestTable;
+import com.google.gson.JsonObject;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests buffering of saves by write-behind, against a {@link StubServer}
+ *
+ * @author Prikshit Kumar
+ */
+public class WriteBehindTest {
+
+    private StubServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = StubServer.start();
+        Credentials.init(server.getAddress(), "root", "root", "ds1");
+    }
+
+    @After
+    public void tearDown() {
+        AdapterConfig.setWriteBehindConfig(TestTable.class, null);
+        Db.flush(TestTable.class);
+        Credentials.unInit();
+        server.stop();
+    }
+
+    @Test
+    public void savesAreBufferedUntilFlushed() {
+        AdapterConfig.setWriteBehindConfig(TestTable.class, WriteBehindConfig.create(100, 100, 60000, 0));
+
+        save("k1", "first");
+        save("k2", "other");
+        save("k1", "second");
+        Assert.assertTrue("Saves were sent before being flushed", server.getQueries("save").isEmpty());
+
+        Db.flush(TestTable.class);
+        final List<JsonObject> saves = server.getQueries("save");
+        Assert.assertEquals("Repeated saves of a record were not coalesced", 2, saves.size());
+        Assert.assertEquals("second", columnOf(saves, "k1"));
+        Assert.assertEquals("other", columnOf(saves, "k2"));
+    }
+
+    @Test
+    public void savesAreFlushedOnceBatchIsFull() throws Exception {
+        AdapterConfig.setWriteBehindConfig(TestTable.class, WriteBehindConfig.create(100, 2, 60000, 0));
+
+        save("k1", "first");
+        Assert.assertTrue(server.getQueries("save").isEmpty());
+        save("k2", "second");
+        Assert.assertTrue("A full batch was not sent", awaitSaves(2, 5000));
+    }
+
+    @Test
+    public void bufferIsFlushedOffTheTimerWhenDisabled() throws Exception {
+        AdapterConfig.setWriteBehindConfig(TestTable.class, WriteBehindConfig.create(100, 100, 20, 0));
+        final CountDownLatch received = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        server.respondWith(new StubServer.Responder() {
+            @Override
+            public String respond(final String service, final String query) throws Exception {
+                if (query.contains("\"save\"")) {
+                    received.countDown();
+                    release.await(10, TimeUnit.SECONDS);
+                }
+                return StubServer.ACK;
+            }
+        });
+
+        save("k1", "in flight");
+        Assert.assertTrue("The background flush did not send the save", received.await(5, TimeUnit.SECONDS));
+        try {
+            // closing the buffer waits for the save in flight, which must not hold up the timer thread
+            AdapterConfig.setWriteBehindConfig(TestTable.class, null);
+            Thread.sleep(200);
+            Assert.assertFalse("The buffer was flushed on the timer thread", isFlushingOnTimer());
+        } finally {
+            release.countDown();
+        }
+
+        server.respondWith(null);
+        save("k2", "direct");
+        Assert.assertEquals("A save was buffered after write-behind was disabled", 2, server.getQueries("save").size());
+    }
+
+    private void save(final String pk, final String column1) {
+        final TestTable record = new TestTable();
+        record.setMyPk(pk);
+        record.setColumn1(column1);
+        record.save();
+    }
+
+    private boolean awaitSaves(final int count, final long timeoutMillis) throws InterruptedException {
+        final long waitUntil = System.currentTimeMillis() + timeoutMillis;
+        while (server.getQueries("save").size() < count) {
+            if (System.currentTimeMillis() > waitUntil) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    private static String columnOf(final List<JsonObject> saves, final String pk) {
+        for (final JsonObject save : saves) {
+            final JsonObject payload = save.getAsJsonObject("p");
+            if (pk.equals(payload.get("myPk").getAsString())) {
+                return payload.get("column1").getAsString();
+            }
+        }
+        Assert.fail("No save of " + pk);
+        return null;
+    }
+
+    private static boolean isFlushingOnTimer() {
+        for (final Map.Entry<Thread, StackTraceElement[]> entry : Thread.getAllStackTraces().entrySet()) {
+            if (!entry.getKey().getName().startsWith("blobcity-adapter-timer")) {
+                continue;
+            }
+            for (final StackTraceElement element : entry.getValue()) {
+                if (element.getClassName().startsWith("com.blobcity.db.WriteBehindBuffer") && element.getMethodName().startsWith("flush")) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2016, BlobCity iSolutions Pvt. Ltd.
+ */
+package com.blobcity.db.test.unit;
+
+import com.blobcity.db.Db;
+import com.blobcity.db.config.AdapterConfig;
+import com.blobcity.db.config.Credentials;
+import com.blobcity.db.config.JournalConfig;
+import com.google.gson.JsonObject;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the local write journal of inserts, in particular its replay after the application stopped with inserts still
+ * to be sent
+ *
+ * @author Prikshit Kumar
+ */
+public class WriteJournalTest {
+
+    private static final int SEGMENT_SIZE = 4096;
+
+    private StubServer server;
+    private File directory;
+
+    @Before
+    public void setUp() throws Exception {
+        server = StubServer.start();
+        Credentials.init(server.getAddress(), "root", "root", "ds1");
+        directory = File.createTempFile("journal", "");
+        Assert.assertTrue(directory.delete() && directory.mkdir());
+    }
+
+    @After
+    public void tearDown() {
+        disableJournal();
+        Credentials.unInit();
+        server.stop();
+        delete(directory);
+    }
+
+    @Test
+    public void insertsAreSentThroughTheJournal() {
+        enableJournal();
+        Db.insertJsonData("TestTable", record(1));
+        Db.insertJsonData("TestTable", record(2));
+        Db.flushJournal();
+
+        Assert.assertEquals(Arrays.asList(1, 2), sorted(sentSince(0)));
+        Assert.assertEquals("ds1", server.getQueries("insert").get(0).get("ds").getAsString());
+    }
+
+    @Test
+    public void pendingInsertsAreReplayedAfterRestart() throws Exception {
+        final int count = 100; // more than fit in one segment
+        final int failedAttempts = journalWhileUnreachable(count);
+        Assert.assertTrue("Records were not spread over several segments", segmentFiles().length > 1);
+
+        enableJournal();
+        Db.flushJournal();
+        Assert.assertEquals(numbers(count), sorted(sentSince(failedAttempts)));
+    }
+
+    @Test
+    public void tornAppendIsDiscardedOnRestart() throws Exception {
+        final int failedAttempts = journalWhileUnreachable(3);
+        // the application stopped while appending the last record
+        corruptRecord(segmentFiles()[0], 2);
+
+        enableJournal();
+        Db.flushJournal();
+        Assert.assertEquals(numbers(2), sorted(sentSince(failedAttempts)));
+    }
+
+    @Test
+    public void drainedInsertsAreNotSentAgainAfterRestart() {
+        enableJournal();
+        Db.insertJsonData("TestTable", record(1));
+        Db.insertJsonData("TestTable", record(2));
+        Db.flushJournal();
+        disableJournal();
+
+        enableJournal();
+        Db.insertJsonData("TestTable", record(3));
+        Db.flushJournal();
+        Assert.assertEquals(numbers(3), sorted(sentSince(0)));
+    }
+
+    /**
+     * Journals records while the database refuses every request, then disables the journal as a restart of the
+     * application would, and lets the database accept requests again
+     *
+     * @return number of inserts refused
+     */
+    private int journalWhileUnreachable(final int count) throws InterruptedException {
+        server.respondWith(new StubServer.Responder() {
+            @Override
+            public String respond(final String service, final String query) throws Exception {
+                throw new IOException("unavailable");
+            }
+        });
+        enableJournal();
+        for (int i = 1; i <= count; i++) {
+            Db.insertJsonData("TestTable", record(i));
+        }
+
+        // wait for the drainer to give up
+        int attempts;
+        do {
+            attempts = server.getQueries("insert").size();
+            Thread.sleep(200);
+        } while (attempts != server.getQueries("insert").size());
+        disableJournal();
+
+        server.respondWith(null);
+        return attempts;
+    }
+
+    private void enableJournal() {
+        // the drain interval keeps the timer from retrying during a test
+        AdapterConfig.setJournalConfig(JournalConfig.create(directory, SEGMENT_SIZE, 10, 60000, false));
+    }
+
+    private static void disableJournal() {
+        AdapterConfig.setJournalConfig(null);
+        // closes the journal
+        Db.flushJournal();
+    }
+
+    private static JsonObject record(final int n) {
+        final JsonObject record = new JsonObject();
+        record.addProperty("myPk", "k" + n);
+        record.addProperty("n", n);
+        return record;
+    }
+
+    /**
+     * @return numbers of the records inserted, following the first {@code from} inserts
+     */
+    private List<Integer> sentSince(final int from) {
+        final List<JsonObject> inserts = server.getQueries("insert");
+        final List<Integer> sent = new ArrayList<Integer>();
+        for (final JsonObject insert : inserts.subList(from, inserts.size())) {
+            sent.add(insert.getAsJsonObject("p").get("n").getAsInt());
+        }
+        return sent;
+    }
+
+    private static List<Integer> sorted(final List<Integer> numbers) {
+        Collections.sort(numbers);
+        return numbers;
+    }
+
+    private static List<Integer> numbers(final int count) {
+        final List<Integer> numbers = new ArrayList<Integer>(count);
+        for (int i = 1; i <= count; i++) {
+            numbers.add(i);
+        }
+        return numbers;
+    }
+
+    private File[] segmentFiles() {
+        final File[] files = directory.listFiles();
+        Arrays.sort(files);
+        return files;
+    }
+
+    /**
+     * Alters the data of a record of a segment so that it no longer matches its checksum
+     *
+     * @param index index of the record in the segment
+     */
+    private static void corruptRecord(final File segment, final int index) throws IOException {
+        final RandomAccessFile file = new RandomAccessFile(segment, "rw");
+        try {
+            // records are laid out as [length:int][crc32:int][state:byte][data]
+            long offset = 0;
+            for (int i = 0; i < index; i++) {
+                file.seek(offset);
+                offset += 9 + file.readInt();
+            }
+            file.seek(offset + 9);
+            final int b = file.read();
+            file.seek(offset + 9);
+            file.write(b ^ 0xFF);
+        } finally {
+            file.close();
+        }
+    }
+
+    private static void delete(final File file) {
+        final File[] children = file.listFiles();
+        if (children != null) {
+            for (final File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}